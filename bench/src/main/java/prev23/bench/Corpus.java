@@ -0,0 +1,58 @@
+package prev23.bench;
+
+import java.io.*;
+import java.nio.file.*;
+
+import prev23.tools.*;
+
+/**
+ * Sources of benchmark inputs.
+ *
+ * An input is either the name of a source file (e.g., one from the
+ * <code>prg/</code> directory, relative to the working directory) or a program
+ * produced by {@link ProgramGenerator}, specified as <code>gen:</code> followed
+ * by colon-separated generator options, e.g.,
+ * <code>gen:size=1M:nesting=3:loops=4</code>. A plain number, as in
+ * <code>gen:100</code>, stands for the number of functions.
+ */
+public class Corpus {
+
+	/** (Unused but included to keep javadoc happy.) */
+	private Corpus() {
+	}
+
+	/** The prefix of generated inputs. */
+	public static final String GENERATED = "gen:";
+
+	/**
+	 * Returns the name of the source file of an input (generating the program
+	 * first if necessary).
+	 *
+	 * @param input The input.
+	 * @return The name of the source file.
+	 * @throws IOException If the generated program cannot be written.
+	 */
+	public static String srcFileName(String input) throws IOException {
+		if (!input.startsWith(GENERATED)) {
+			if (!Files.isReadable(Paths.get(input)))
+				throw new FileNotFoundException(input + " (benchmarks must be run from the root directory)");
+			return input;
+		}
+		ProgramGenerator generator = new ProgramGenerator();
+		for (String option : input.substring(GENERATED.length()).split(":")) {
+			if (option.matches("[0-9]+"))
+				generator.configure("funs", option);
+			else if (option.contains("="))
+				generator.configure(option.substring(0, option.indexOf('=')), option.substring(option.indexOf('=') + 1));
+			else
+				throw new IllegalArgumentException("Invalid generator option '" + option + "'.");
+		}
+		Path srcFile = Files.createTempFile("prev23-bench-", ".p23");
+		srcFile.toFile().deleteOnExit();
+		try (Writer out = Files.newBufferedWriter(srcFile)) {
+			generator.generate(out);
+		}
+		return srcFile.toString();
+	}
+
+}
@@ -0,0 +1,146 @@
+package prev23.bench;
+
+import java.io.*;
+import java.nio.file.*;
+import java.util.concurrent.*;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.*;
+
+import prev23.bench.Pipeline.Step;
+
+/**
+ * Benchmarks of individual compiler phases.
+ *
+ * Every benchmark measures a single step of the {@link Pipeline}: before each
+ * invocation, a fresh compilation context is set up and all preceding steps are
+ * run (outside the measurement). Inputs are selected by the parameter
+ * <code>input</code> (see {@link Corpus}), e.g.,
+ *
+ * <p>
+ * <code>$ java -jar bench/target/benchmarks.jar -p input=prg/test2.p23,gen:size=10M:temps=32 PhaseBenchmark.regall</code>
+ * </p>
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = { "-Xss64m" })
+public class PhaseBenchmark {
+
+	/** The input (see {@link Corpus}). */
+	@Param({ "prg/test.p23", "prg/test2.p23", "prg/imcgen_test.p23", "gen:10", "gen:100", "gen:size=1M" })
+	public String input;
+
+	/** The name of the source file. */
+	private String srcFileName;
+
+	/** The name of the destination file. */
+	private String dstFileName;
+
+	/** The pipeline of the current invocation. */
+	private Pipeline pipeline;
+
+	@Setup(Level.Trial)
+	public void prepareInput() throws IOException {
+		srcFileName = Corpus.srcFileName(input);
+		Path dstFile = Files.createTempFile("prev23-bench-", ".mms");
+		dstFile.toFile().deleteOnExit();
+		dstFileName = dstFile.toString();
+	}
+
+	@Setup(Level.Invocation)
+	public void prepareStep(BenchmarkParams params) {
+		String benchmark = params.getBenchmark();
+		Step step = Step.valueOf(benchmark.substring(benchmark.lastIndexOf('.') + 1).toUpperCase());
+		pipeline = new Pipeline(srcFileName, dstFileName);
+		pipeline.open();
+		pipeline.runUpTo(step);
+	}
+
+	@TearDown(Level.Invocation)
+	public void releaseStep() {
+		pipeline.close();
+		pipeline = null;
+	}
+
+	/** Tokenization by {@link prev23.phase.lexan.PrevLexer}. */
+	@Benchmark
+	public Object lexan() {
+		return pipeline.run(Step.LEXAN);
+	}
+
+	/** Parsing by {@link prev23.phase.synan.PrevParser} (including tokenization). */
+	@Benchmark
+	public Object synan() {
+		return pipeline.run(Step.SYNAN);
+	}
+
+	/** Name resolution by {@link prev23.phase.seman.NameResolver}. */
+	@Benchmark
+	public Object names() {
+		return pipeline.run(Step.NAMES);
+	}
+
+	/** Type resolution by {@link prev23.phase.seman.TypeResolver}. */
+	@Benchmark
+	public Object types() {
+		return pipeline.run(Step.TYPES);
+	}
+
+	/** Address resolution by {@link prev23.phase.seman.AddrResolver}. */
+	@Benchmark
+	public Object addrs() {
+		return pipeline.run(Step.ADDRS);
+	}
+
+	/** Memory layout by {@link prev23.phase.memory.MemEvaluator}. */
+	@Benchmark
+	public Object memory() {
+		return pipeline.run(Step.MEMORY);
+	}
+
+	/** Intermediate code generation by {@link prev23.phase.imcgen.CodeGenerator}. */
+	@Benchmark
+	public Object imcgen() {
+		return pipeline.run(Step.IMCGEN);
+	}
+
+	/** Linearization by {@link prev23.phase.imclin.ChunkGenerator}. */
+	@Benchmark
+	public Object imclin() {
+		return pipeline.run(Step.IMCLIN);
+	}
+
+	/** Instruction selection by {@link prev23.phase.asmgen.AsmGen#genAsmCodes()}. */
+	@Benchmark
+	public Object asmgen() {
+		return pipeline.run(Step.ASMGEN);
+	}
+
+	/** Liveness analysis by {@link prev23.phase.livean.LiveAn#analysis()}. */
+	@Benchmark
+	public Object livean() {
+		return pipeline.run(Step.LIVEAN);
+	}
+
+	/** Register allocation by {@link prev23.phase.regall.RegAll#allocate()}. */
+	@Benchmark
+	public Object regall() {
+		return pipeline.run(Step.REGALL);
+	}
+
+	/** Peephole optimization by {@link prev23.phase.peephole.Peephole#optimize()}. */
+	@Benchmark
+	public Object peephole() {
+		return pipeline.run(Step.PEEPHOLE);
+	}
+
+	/** Assembly code emission by {@link prev23.phase.all.LastPhase#prepare()}. */
+	@Benchmark
+	public Object all() {
+		return pipeline.run(Step.ALL);
+	}
+
+}
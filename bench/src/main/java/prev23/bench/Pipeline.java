@@ -0,0 +1,172 @@
+package prev23.bench;
+
+import java.io.*;
+
+import prev23.CompilationContext;
+import prev23.data.sym.Token;
+import prev23.phase.lexan.*;
+import prev23.phase.synan.*;
+import prev23.phase.abstr.*;
+import prev23.phase.seman.*;
+import prev23.phase.memory.*;
+import prev23.phase.imcgen.*;
+import prev23.phase.imclin.*;
+import prev23.phase.asmgen.*;
+import prev23.phase.livean.*;
+import prev23.phase.regall.*;
+import prev23.phase.peephole.*;
+import prev23.phase.all.*;
+
+/**
+ * The compiler pipeline split into individually runnable steps.
+ *
+ * Each step does exactly what {@link prev23.Compiler#compile(String[])} does in
+ * the corresponding part of its phase chain (without logging), so that a
+ * benchmark can run all steps up to the measured one during its setup and then
+ * measure that step alone. All steps run within the compilation context of the
+ * pipeline, which is bound to the current thread by {@link #open()}.
+ */
+public class Pipeline {
+
+	/** The steps of the compiler, in the order they are run. */
+	public enum Step {
+		LEXAN, SYNAN, NAMES, TYPES, ADDRS, MEMORY, IMCGEN, IMCLIN, ASMGEN, LIVEAN, REGALL, PEEPHOLE, ALL
+	}
+
+	/** The compilation context of the pipeline. */
+	private final CompilationContext context;
+
+	/** The context bound to the current thread before {@link #open()}. */
+	private CompilationContext previous = null;
+
+	/**
+	 * Constructs a new pipeline compiling the specified source file.
+	 *
+	 * @param srcFileName The name of the source file.
+	 * @param dstFileName The name of the destination file.
+	 */
+	public Pipeline(String srcFileName, String dstFileName) {
+		PrintStream nowhere = new PrintStream(OutputStream.nullOutputStream());
+		context = new CompilationContext(nowhere, nowhere);
+		context.cmdLineArgs.put("--src-file-name", srcFileName);
+		context.cmdLineArgs.put("--dst-file-name", dstFileName);
+		context.cmdLineArgs.put("--target-phase", "all");
+	}
+
+	/**
+	 * Binds the compilation context of this pipeline to the current thread.
+	 */
+	public void open() {
+		previous = CompilationContext.bind(context);
+	}
+
+	/**
+	 * Restores the compilation context bound to the current thread before
+	 * {@link #open()}.
+	 */
+	public void close() {
+		CompilationContext.bind(previous);
+		previous = null;
+	}
+
+	/**
+	 * Runs all steps preceding the specified one.
+	 *
+	 * @param step The step.
+	 */
+	public void runUpTo(Step step) {
+		for (Step prev : Step.values()) {
+			if (prev == step)
+				break;
+			// Tokenization alone is not a prerequisite of anything.
+			if (prev != Step.LEXAN)
+				run(prev);
+		}
+	}
+
+	/**
+	 * Runs a single step.
+	 *
+	 * @param step The step.
+	 * @return A value depending on the result of the step (to be consumed by the
+	 *         benchmark).
+	 */
+	public Object run(Step step) {
+		switch (step) {
+		case LEXAN:
+			try (LexAn lexan = new LexAn()) {
+				int numTokens = 0;
+				while (lexan.lexer.nextToken().getType() != Token.EOF)
+					numTokens++;
+				return numTokens;
+			}
+		case SYNAN:
+			try (LexAn lexan = new LexAn(); SynAn synan = new SynAn(lexan)) {
+				SynAn.setTree(synan.parser.source());
+			}
+			try (Abstr abstr = new Abstr()) {
+				Abstr.setTree(SynAn.tree().ast);
+			}
+			return Abstr.tree();
+		case NAMES:
+			try (SemAn seman = new SemAn()) {
+				Abstr.tree().accept(new NameResolver(), null);
+			}
+			return SemAn.declaredAt();
+		case TYPES:
+			try (SemAn seman = new SemAn()) {
+				Abstr.tree().accept(new TypeResolver(), null);
+			}
+			return SemAn.ofType();
+		case ADDRS:
+			try (SemAn seman = new SemAn()) {
+				Abstr.tree().accept(new AddrResolver(), null);
+			}
+			return SemAn.isAddr();
+		case MEMORY:
+			try (Memory memory = new Memory()) {
+				EscapeAnalyzer escapes = new EscapeAnalyzer();
+				Abstr.tree().accept(escapes, null);
+				Abstr.tree().accept(new MemEvaluator(escapes), null);
+			}
+			return Memory.frames();
+		case IMCGEN:
+			try (ImcGen imcgen = new ImcGen()) {
+				Abstr.tree().accept(new CodeGenerator(), null);
+			}
+			return ImcGen.stmtImc();
+		case IMCLIN:
+			try (ImcLin imclin = new ImcLin()) {
+				Abstr.tree().accept(new ChunkGenerator(imclin), null);
+			}
+			return ImcLin.codeChunks();
+		case ASMGEN:
+			try (AsmGen asmgen = new AsmGen()) {
+				asmgen.genAsmCodes();
+			}
+			return AsmGen.codes();
+		case LIVEAN:
+			try (LiveAn livean = new LiveAn()) {
+				livean.analysis();
+			}
+			return AsmGen.codes();
+		case REGALL:
+			try (RegAll regall = new RegAll()) {
+				regall.allocate();
+			}
+			return RegAll.tempToReg();
+		case PEEPHOLE:
+			try (Peephole peephole = new Peephole()) {
+				peephole.optimize();
+			}
+			return AsmGen.codes();
+		case ALL:
+			try (LastPhase lastphase = new LastPhase()) {
+				lastphase.prepare();
+				return lastphase.asm;
+			}
+		}
+		return null;
+	}
+
+}
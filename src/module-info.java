@@ -3,5 +3,6 @@
  */
 module prev23 {
 	requires java.xml;
+	requires jdk.management;
 	requires antlr;
 }
\ No newline at end of file
@@ -0,0 +1,252 @@
+package prev23;
+
+import java.io.*;
+import java.util.*;
+
+import prev23.common.report.*;
+import prev23.data.ast.attribute.*;
+import prev23.data.ast.tree.*;
+import prev23.data.ast.tree.decl.*;
+import prev23.data.ast.tree.expr.*;
+import prev23.data.ast.tree.stmt.*;
+import prev23.data.ast.tree.type.*;
+import prev23.data.asm.*;
+import prev23.data.imc.code.expr.*;
+import prev23.data.imc.code.stmt.*;
+import prev23.data.lin.*;
+import prev23.data.mem.*;
+import prev23.data.typ.*;
+import prev23.phase.seman.*;
+import prev23.phase.synan.*;
+
+/**
+ * The context of a single compilation.
+ *
+ * A compilation context holds all the state of one compilation: the command
+ * line arguments, the streams reports are written to, the counters used for
+ * generating ids of AST nodes, temporary variables and labels, and the results
+ * of all phases. Phases reach the context of the compilation they are part of
+ * through {@link #current()}, i.e., the context bound to the current thread.
+ *
+ * Compilations carried out on different threads thus share no state and
+ * produce exactly the same output as if they were carried out one by one.
+ */
+public class CompilationContext {
+
+	/** The context bound to each thread. */
+	private static final ThreadLocal<CompilationContext> current = ThreadLocal.withInitial(CompilationContext::new);
+
+	/**
+	 * Returns the context bound to the current thread (a new context is created
+	 * and bound if none has been bound yet).
+	 *
+	 * @return The context bound to the current thread.
+	 */
+	public static CompilationContext current() {
+		return current.get();
+	}
+
+	/**
+	 * Binds a context to the current thread.
+	 *
+	 * @param context The context.
+	 * @return The context bound to the current thread before.
+	 */
+	public static CompilationContext bind(CompilationContext context) {
+		CompilationContext previous = current.get();
+		current.set(context);
+		return previous;
+	}
+
+	// COMMAND LINE ARGUMENTS AND REPORTS
+
+	/** Values of command line arguments indexed by their command line switch. */
+	public final HashMap<String, String> cmdLineArgs = new HashMap<String, String>();
+
+	/** The stream informative messages (and the output of interpreted programs) are written to. */
+	public final PrintStream out;
+
+	/** The stream warnings and errors are written to. */
+	public final PrintStream err;
+
+	/** The stream interpreted programs read from. */
+	public final InputStream in;
+
+	/** The number of informative messages reported. */
+	public int numOfInfos = 0;
+
+	/** The number of warnings reported. */
+	public int numOfWarnings = 0;
+
+	/** Statistics of the compilation (or {@code null} if not requested). */
+	public Stats stats = null;
+
+	// COUNTERS
+
+	/** The number of AST nodes constructed so far. */
+	private int numNodes = 0;
+
+	/** The number of temporary variables created so far. */
+	private long numTemps = 0;
+
+	/** The number of (anonymous) labels created so far. */
+	private long numLabels = 0;
+
+	// PHASE RESULTS
+
+	/** The parse tree (phase 'synan'). */
+	public PrevParser.SourceContext synTree;
+
+	/** The abstract syntax tree (phase 'abstr'). */
+	public AstTree absTree;
+
+	/** Declarations of names (phase 'seman'). */
+	public final AstAttribute<AstName, AstNameDecl> declaredAt = new AstAttribute<AstName, AstNameDecl>();
+
+	/** Types declared by type declarations (phase 'seman'). */
+	public final AstAttribute<AstTypDecl, SemName> declaresType = new AstAttribute<AstTypDecl, SemName>();
+
+	/** Types denoted by type expressions (phase 'seman'). */
+	public final AstAttribute<AstType, SemType> isType = new AstAttribute<AstType, SemType>();
+
+	/** Types of expressions and statements (phase 'seman'). */
+	public final AstAttribute<AstExec, SemType> ofType = new AstAttribute<AstExec, SemType>();
+
+	/** Whether expressions denote addresses (phase 'seman'). */
+	public final AstAttribute<AstExpr, Boolean> isAddr = new AstAttribute<AstExpr, Boolean>();
+
+	/** Symbol tables of record components (phase 'seman'). */
+	public final HashMap<SemRec, SymbTable> recDeclares = new HashMap<SemRec, SymbTable>();
+
+	/** Frames of functions (phase 'memory'). */
+	public final AstAttribute<AstFunDecl, MemFrame> frames = new AstAttribute<AstFunDecl, MemFrame>();
+
+	/** Accesses of variables, parameters and components (phase 'memory'). */
+	public final AstAttribute<AstMemDecl, MemAccess> accesses = new AstAttribute<AstMemDecl, MemAccess>();
+
+	/** Accesses of string constants (phase 'memory'). */
+	public final AstAttribute<AstAtomExpr, MemAbsAccess> strings = new AstAttribute<AstAtomExpr, MemAbsAccess>();
+
+	/** Intermediate code of statements (phase 'imcgen'). */
+	public final AstAttribute<AstStmt, ImcStmt> stmtImc = new AstAttribute<AstStmt, ImcStmt>();
+
+	/** Intermediate code of expressions (phase 'imcgen'). */
+	public final AstAttribute<AstExpr, ImcExpr> exprImc = new AstAttribute<AstExpr, ImcExpr>();
+
+	/** Data chunks (phase 'imclin'). */
+	public final Vector<LinDataChunk> dataChunks = new Vector<LinDataChunk>();
+
+	/** Code chunks (phase 'imclin'). */
+	public final Vector<LinCodeChunk> codeChunks = new Vector<LinCodeChunk>();
+
+	/** Assembly code of functions (phase 'asmgen'). */
+	public final Vector<Code> codes = new Vector<Code>();
+
+	/** Labels of constants in the constant pool (phase 'asmgen'). */
+	public final LinkedHashMap<Long, MemLabel> constants = new LinkedHashMap<Long, MemLabel>();
+
+	/** Mapping of temporary variables to registers (phase 'regall'). */
+	public final HashMap<MemTemp, Integer> tempToReg = new HashMap<MemTemp, Integer>();
+
+	/**
+	 * Constructs a new context reporting to the standard output and error
+	 * streams (and reading from the standard input stream).
+	 */
+	public CompilationContext() {
+		this(System.in, System.out, System.err);
+	}
+
+	/**
+	 * Constructs a new context reading from the standard input stream.
+	 *
+	 * @param out The stream informative messages are written to.
+	 * @param err The stream warnings and errors are written to.
+	 */
+	public CompilationContext(PrintStream out, PrintStream err) {
+		this(System.in, out, err);
+	}
+
+	/**
+	 * Constructs a new context.
+	 *
+	 * @param in  The stream interpreted programs read from.
+	 * @param out The stream informative messages are written to.
+	 * @param err The stream warnings and errors are written to.
+	 */
+	public CompilationContext(InputStream in, PrintStream out, PrintStream err) {
+		this.in = in;
+		this.out = out;
+		this.err = err;
+	}
+
+	/**
+	 * Carries out a compilation within this context: the context is bound to the
+	 * current thread for the duration of the compilation.
+	 *
+	 * @param args Command line arguments (see {@link prev23.Compiler}).
+	 * @return {@code true} if the compilation succeeded, {@code false} otherwise.
+	 */
+	public boolean compile(String... args) {
+		CompilationContext previous = bind(this);
+		try {
+			return Compiler.compile(args);
+		} finally {
+			bind(previous);
+		}
+	}
+
+	/**
+	 * Returns the id of a new AST node.
+	 *
+	 * @return The id of a new AST node.
+	 */
+	public int newNodeId() {
+		return numNodes++;
+	}
+
+	/**
+	 * Returns the name of a new temporary variable.
+	 *
+	 * @return The name of a new temporary variable.
+	 */
+	public long newTempName() {
+		return numTemps++;
+	}
+
+	/**
+	 * Returns the number of a new anonymous label.
+	 *
+	 * @return The number of a new anonymous label.
+	 */
+	public long newLabelNum() {
+		return numLabels++;
+	}
+
+	/**
+	 * Returns the number of AST nodes constructed so far.
+	 *
+	 * @return The number of AST nodes constructed so far.
+	 */
+	public int numNodes() {
+		return numNodes;
+	}
+
+	/**
+	 * Returns the number of temporary variables created so far.
+	 *
+	 * @return The number of temporary variables created so far.
+	 */
+	public long numTemps() {
+		return numTemps;
+	}
+
+	/**
+	 * Returns the number of labels created so far.
+	 *
+	 * @return The number of labels created so far.
+	 */
+	public long numLabels() {
+		return numLabels;
+	}
+
+}
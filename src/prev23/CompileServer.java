@@ -0,0 +1,199 @@
+package prev23;
+
+import java.io.*;
+import java.net.*;
+import java.nio.channels.*;
+import java.nio.charset.*;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+
+import prev23.common.report.*;
+
+/**
+ * The compile server and its client.
+ *
+ * The server keeps a warm JVM (with the lexer, the parser and the XML stack
+ * already loaded) and serves compile requests arriving on a local socket, each
+ * on its own virtual thread and within its own {@link CompilationContext}. A
+ * socket address is either a TCP port (bound to the loopback interface only),
+ * <code>host:port</code>, or the path of a Unix domain socket.
+ *
+ * The protocol is line based. A request consists of the number of command line
+ * arguments followed by the arguments, one per line. The response consists of
+ * the diagnostics of the compilation, one per line, followed by the status line
+ *
+ * <p>
+ * <code>#ok </code><i>output-file</i><code> </code><i>latency</i> or
+ * <code>#failed - </code><i>latency</i>
+ * </p>
+ *
+ * where the latency is in milliseconds and the output file is {@code -} if no
+ * assembly code has been produced.
+ */
+public class CompileServer {
+
+	/** (Unused but included to keep javadoc happy.) */
+	private CompileServer() {
+		throw new Report.InternalError();
+	}
+
+	/** The prefix of the status line. */
+	private static final String STATUS = "#";
+
+	/**
+	 * Parses a socket address.
+	 *
+	 * @param address The socket address (a port, a host and a port, or a path).
+	 * @return The socket address.
+	 */
+	private static SocketAddress socketAddress(String address) {
+		if (address.matches("[0-9]+"))
+			return new InetSocketAddress(InetAddress.getLoopbackAddress(), Integer.parseInt(address));
+		if (address.matches("[^/]+:[0-9]+")) {
+			int colon = address.lastIndexOf(':');
+			return new InetSocketAddress(address.substring(0, colon), Integer.parseInt(address.substring(colon + 1)));
+		}
+		return UnixDomainSocketAddress.of(address);
+	}
+
+	// THE SERVER
+
+	/**
+	 * Runs the server (until the JVM is terminated).
+	 *
+	 * @param address The socket address to listen on.
+	 * @throws IOException If the socket cannot be opened.
+	 */
+	public static void serve(String address) throws IOException {
+		SocketAddress socketAddress = socketAddress(address);
+		ServerSocketChannel server;
+		if (socketAddress instanceof UnixDomainSocketAddress) {
+			Files.deleteIfExists(((UnixDomainSocketAddress) socketAddress).getPath());
+			server = ServerSocketChannel.open(StandardProtocolFamily.UNIX);
+		} else
+			server = ServerSocketChannel.open();
+		server.bind(socketAddress);
+		System.out.println(":-) PREV'23 compile server listening on " + address + ".");
+
+		AtomicLong numRequests = new AtomicLong(0);
+		try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+			while (true) {
+				SocketChannel client = server.accept();
+				long request = numRequests.incrementAndGet();
+				executor.submit(() -> {
+					try (client) {
+						serveRequest(request, client);
+					} catch (IOException __) {
+						System.out.println(":-o Request " + request + ": connection failed.");
+					}
+				});
+			}
+		}
+	}
+
+	/**
+	 * Serves a single compile request.
+	 *
+	 * @param request The number of the request.
+	 * @param client  The channel connected to the client.
+	 * @throws IOException If the communication with the client fails.
+	 */
+	private static void serveRequest(long request, SocketChannel client) throws IOException {
+		BufferedReader in = new BufferedReader(
+				new InputStreamReader(Channels.newInputStream(client), StandardCharsets.UTF_8));
+		PrintStream out = new PrintStream(Channels.newOutputStream(client), false, StandardCharsets.UTF_8);
+
+		String numArgs = in.readLine();
+		if (numArgs == null || !numArgs.matches("[0-9]+"))
+			return;
+		String[] args = new String[Integer.parseInt(numArgs)];
+		for (int a = 0; a < args.length; a++) {
+			args[a] = in.readLine();
+			if (args[a] == null)
+				return;
+		}
+
+		long start = System.nanoTime();
+		ByteArrayOutputStream diagnostics = new ByteArrayOutputStream();
+		PrintStream diagnosticsStream = new PrintStream(diagnostics, true, StandardCharsets.UTF_8);
+		// an interpreted program writes to the client and reads no input
+		CompilationContext context = new CompilationContext(InputStream.nullInputStream(), diagnosticsStream,
+				diagnosticsStream);
+		boolean ok;
+		try {
+			ok = context.compile(args);
+		} catch (RuntimeException | StackOverflowError e) {
+			diagnosticsStream.println(":-( " + e);
+			ok = false;
+		}
+		double latency = (System.nanoTime() - start) / 1e6;
+
+		String dstFileName = "-";
+		if (ok && "all".equals(context.cmdLineArgs.get("--target-phase")))
+			dstFileName = context.cmdLineArgs.get("--dst-file-name");
+		out.print(diagnostics.toString(StandardCharsets.UTF_8));
+		out.printf(Locale.ROOT, "%s%s %s %.3f\n", STATUS, ok ? "ok" : "failed", dstFileName, latency);
+		out.flush();
+
+		System.out.printf(Locale.ROOT, ":-) Request %d: %s %s (%.3f ms)\n", request,
+				context.cmdLineArgs.get("--src-file-name"), ok ? "ok" : "failed", latency);
+	}
+
+	// THE CLIENT
+
+	/**
+	 * Sends a compile request to the server and prints out the response.
+	 *
+	 * Names of the source, destination and XML files are made absolute before the
+	 * request is sent as the server may run in a different working directory.
+	 *
+	 * @param address The socket address of the server.
+	 * @param args    Command line arguments (see {@link prev23.Compiler}).
+	 * @return {@code true} if the compilation succeeded, {@code false} otherwise.
+	 * @throws IOException If the communication with the server fails.
+	 */
+	public static boolean request(String address, String[] args) throws IOException {
+		Vector<String> requestArgs = new Vector<String>();
+		for (String arg : args) {
+			if (arg.startsWith("--connect="))
+				continue;
+			if (!arg.startsWith("--"))
+				arg = Paths.get(arg).toAbsolutePath().toString();
+			else if (arg.matches("--(src-file-name|dst-file-name|xml)=.*")) {
+				int eq = arg.indexOf('=');
+				arg = arg.substring(0, eq + 1) + Paths.get(arg.substring(eq + 1)).toAbsolutePath();
+			}
+			requestArgs.add(arg);
+		}
+
+		SocketAddress socketAddress = socketAddress(address);
+		try (SocketChannel server = socketAddress instanceof UnixDomainSocketAddress
+				? SocketChannel.open(StandardProtocolFamily.UNIX)
+				: SocketChannel.open()) {
+			server.connect(socketAddress);
+			PrintStream out = new PrintStream(Channels.newOutputStream(server), false, StandardCharsets.UTF_8);
+			out.print(requestArgs.size() + "\n");
+			for (String arg : requestArgs)
+				out.print(arg + "\n");
+			out.flush();
+
+			BufferedReader in = new BufferedReader(
+					new InputStreamReader(Channels.newInputStream(server), StandardCharsets.UTF_8));
+			String line;
+			while ((line = in.readLine()) != null) {
+				if (line.startsWith(STATUS)) {
+					System.out.println(line);
+					return line.startsWith(STATUS + "ok");
+				}
+				if (line.startsWith(":-(") || line.startsWith(":-o"))
+					System.err.println(line);
+				else
+					System.out.println(line);
+			}
+			return false;
+		}
+	}
+
+}
@@ -13,6 +13,7 @@ import prev23.phase.imclin.*;
 import prev23.phase.asmgen.*;
 import prev23.phase.livean.*;
 import prev23.phase.regall.*;
+import prev23.phase.peephole.*;
 import prev23.phase.all.*;
 
 /**
@@ -31,6 +32,30 @@ import prev23.phase.all.*;
  * containing the code to be compiled.</li>
  * <li><code>--dst-file-name</code>: The name of the destination file, i.e., the
  * file containing the compiled code.</li>
+ * <li><code>--inline-budget</code>: The number of intermediate code nodes
+ * inlining may add to a function body (default 400, <code>0</code> disables
+ * inlining; see {@link prev23.phase.imclin.Inliner}).</li>
+ * <li><code>--inline-depth</code>: The maximal depth of inlining calls in
+ * inlined function bodies, which also limits the unrolling of recursion
+ * (default 3).</li>
+ * <li><code>--inline-report</code>: Whether the calls inlined are reported.</li>
+ * <li><code>--interpret</code>: Whether the linearized intermediate code is
+ * run by {@link prev23.phase.imclin.ClosureInterpreter} (starting at
+ * <code>_main</code>) and its exit code is reported; with
+ * <code>--interpret=stackless</code> calls do not nest Java calls, so the depth
+ * of recursion is limited by the heap size only.</li>
+ * <li><code>--peephole</code>: The peephole rules applied after register
+ * allocation: <code>all</code> (the default), <code>none</code> or a
+ * comma-separated list of rule names (see
+ * {@link prev23.phase.peephole.Peephole}).</li>
+ * <li><code>--stats</code>: Whether statistics of all phases (time, memory
+ * allocation and phase-specific counters) are printed out; with
+ * <code>--stats=json</code> they are written to a JSON file instead (see
+ * {@link prev23.common.report.Stats}).</li>
+ * <li><code>--server</code>: The socket address the compiler listens on for
+ * compile requests (see {@link CompileServer}).</li>
+ * <li><code>--connect</code>: The socket address of the compile server the
+ * compilation is delegated to (see {@link CompileServer}).</li>
  * </ul>
  * 
  * The source file can be specified by its name only, i.e., without
@@ -48,19 +73,16 @@ public class Compiler {
 	// COMMAND LINE ARGUMENTS
 
 	/** All valid phases of the compiler. */
-	private static final String phases = "none|lexan|synan|abstr|seman|memory|imcgen|imclin|asmgen|livean|regall|all";
-
-	/** Values of command line arguments indexed by their command line switch. */
-	private static HashMap<String, String> cmdLineArgs = new HashMap<String, String>();
+	private static final String phases = "none|lexan|synan|abstr|seman|memory|imcgen|imclin|asmgen|livean|regall|peephole|all";
 
 	/**
-	 * Returns the value of a command line argument.
+	 * Returns the value of a command line argument of the current compilation.
 	 *
 	 * @param cmdLineArgName Command line argument name.
 	 * @return Command line argument value.
 	 */
 	public static String cmdLineArgValue(String cmdLineArgName) {
-		return cmdLineArgs.get(cmdLineArgName);
+		return CompilationContext.current().cmdLineArgs.get(cmdLineArgName);
 	}
 
 	// THE COMPILER'S STARTUP METHOD
@@ -71,6 +93,36 @@ public class Compiler {
 	 * @param args Command line arguments (see {@link prev23.Compiler}).
 	 */
 	public static void main(String[] args) {
+		for (String arg : args) {
+			try {
+				if (arg.startsWith("--server=")) {
+					CompileServer.serve(arg.replaceFirst("^[^=]*=", ""));
+					return;
+				}
+				if (arg.startsWith("--connect=")) {
+					if (!CompileServer.request(arg.replaceFirst("^[^=]*=", ""), args))
+						System.exit(1);
+					return;
+				}
+			} catch (java.io.IOException exception) {
+				System.err.println(":-( Compile server: " + exception.getMessage());
+				System.exit(1);
+			}
+		}
+		if (!compile(args))
+			System.exit(1);
+	}
+
+	/**
+	 * Compiles a single source file within the compilation context bound to the
+	 * current thread (see {@link CompilationContext#compile(String...)}).
+	 * 
+	 * @param args Command line arguments (see {@link prev23.Compiler}).
+	 * @return {@code true} if the compilation succeeded, {@code false} otherwise.
+	 */
+	public static boolean compile(String[] args) {
+		CompilationContext context = CompilationContext.current();
+		HashMap<String, String> cmdLineArgs = context.cmdLineArgs;
 		try {
 			Report.info("This is PREV'23 compiler:");
 
@@ -106,6 +158,9 @@ public class Compiler {
 			if ((cmdLineArgs.get("--target-phase") == null) || (cmdLineArgs.get("--target-phase").equals("all"))) {
 				cmdLineArgs.put("--target-phase", phases.replaceFirst("^.*\\|", ""));
 			}
+			if (cmdLineArgs.get("--stats") != null) {
+				context.stats = new Stats(cmdLineArgs.get("--stats"));
+			}
 
 			// Compilation process carried out phase by phase.
 			while (true) {
@@ -120,64 +175,74 @@ public class Compiler {
 
 				// Syntax analysis.
 				try (LexAn lexan = new LexAn(); SynAn synan = new SynAn(lexan)) {
-					SynAn.tree = synan.parser.source();
-					synan.log(SynAn.tree);
+					SynAn.setTree(synan.parser.source());
+					synan.log(SynAn.tree());
 				}
 				if (Compiler.cmdLineArgValue("--target-phase").equals("synan"))
 					break;
 
 				// Abstract syntax tree construction.
 				try (Abstr abstr = new Abstr()) {
-					Abstr.tree = SynAn.tree.ast;
+					Abstr.setTree(SynAn.tree().ast);
 					AbsLogger logger = new AbsLogger(abstr.logger);
-					Abstr.tree.accept(logger, null);
+					Abstr.tree().accept(logger, null);
 				}
 				if (Compiler.cmdLineArgValue("--target-phase").equals("abstr"))
 					break;
 
 				// Semantic analysis.
 				try (SemAn seman = new SemAn()) {
-					Abstr.tree.accept(new NameResolver(), null);
-					Abstr.tree.accept(new TypeResolver(), null);
-					Abstr.tree.accept(new AddrResolver(), null);
+					Abstr.tree().accept(new NameResolver(), null);
+					Abstr.tree().accept(new TypeResolver(), null);
+					Abstr.tree().accept(new AddrResolver(), null);
 					AbsLogger logger = new AbsLogger(seman.logger);
 					logger.addSubvisitor(new SemLogger(seman.logger));
-					Abstr.tree.accept(logger, null);
+					Abstr.tree().accept(logger, null);
 				}
 				if (Compiler.cmdLineArgValue("--target-phase").equals("seman"))
 					break;
 
 				// Memory layout.
 				try (Memory memory = new Memory()) {
-					Abstr.tree.accept(new MemEvaluator(), null);
+					EscapeAnalyzer escapes = new EscapeAnalyzer();
+					Abstr.tree().accept(escapes, null);
+					Abstr.tree().accept(new MemEvaluator(escapes), null);
 					AbsLogger logger = new AbsLogger(memory.logger);
 					logger.addSubvisitor(new SemLogger(memory.logger));
 					logger.addSubvisitor(new MemLogger(memory.logger));
-					Abstr.tree.accept(logger, "Decls");
+					Abstr.tree().accept(logger, "Decls");
 				}
 				if (Compiler.cmdLineArgValue("--target-phase").equals("memory"))
 					break;
 
 				// Intermediate code generation.
 				try (ImcGen imcgen = new ImcGen()) {
-					Abstr.tree.accept(new CodeGenerator(), null);
+					Abstr.tree().accept(new CodeGenerator(), null);
 					AbsLogger logger = new AbsLogger(imcgen.logger);
 					logger.addSubvisitor(new SemLogger(imcgen.logger));
 					logger.addSubvisitor(new MemLogger(imcgen.logger));
 					logger.addSubvisitor(new ImcLogger(imcgen.logger));
-					Abstr.tree.accept(logger, "Decls");
+					Abstr.tree().accept(logger, "Decls");
 				}
 				if (Compiler.cmdLineArgValue("--target-phase").equals("imcgen"))
 					break;
 
 				// Linearization of intermediate code.
 				try (ImcLin imclin = new ImcLin()) {
-					Abstr.tree.accept(new ChunkGenerator(), null);
+					Abstr.tree().accept(new ChunkGenerator(imclin), null);
 					imclin.log();
 
-					// Interpreter interpreter = new Interpreter(ImcLin.dataChunks(),
-					// ImcLin.codeChunks());
-					// System.out.println("EXIT CODE: " + interpreter.run("_main"));
+					if (cmdLineArgs.get("--interpret") != null) {
+						ClosureInterpreter interpreter = new ClosureInterpreter(ImcLin.dataChunks(),
+								ImcLin.codeChunks(), cmdLineArgs.get("--interpret").equals("stackless"));
+						long exitCode;
+						try {
+							exitCode = interpreter.run("_main");
+						} catch (ClosureInterpreter.Exit exit) {
+							exitCode = exit.code;
+						}
+						Report.info("Exit code: " + exitCode + ".");
+					}
 				}
 				if (Compiler.cmdLineArgValue("--target-phase").equals("imclin"))
 					break;
@@ -211,6 +276,14 @@ public class Compiler {
 				if (Compiler.cmdLineArgValue("--target-phase").equals("regall"))
 					break;
 
+				// Peephole optimization.
+				try (Peephole peephole = new Peephole()) {
+					peephole.optimize();
+					peephole.log();
+				}
+				if (Compiler.cmdLineArgValue("--target-phase").equals("peephole"))
+					break;
+
 				// Last phase
 				try (LastPhase lastphase = new LastPhase()){
 					lastphase.prepare();
@@ -224,8 +297,12 @@ public class Compiler {
 			}
 			
 			Report.info("Done.");
+			return true;
 		} catch (Report.Error __) {
-			System.exit(1);
+			return false;
+		} finally {
+			if (context.stats != null)
+				context.stats.report();
 		}
 	}
 
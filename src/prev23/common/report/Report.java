@@ -1,5 +1,7 @@
 package prev23.common.report;
 
+import prev23.CompilationContext;
+
 /**
  * Generating reports.
  * 
@@ -7,16 +9,13 @@ package prev23.common.report;
  */
 public class Report {
 
-	/** Counter of information messages printed out. */
-	private static int numOfInfos = 0;
-
 	/**
 	 * Returns the number of information messages printed out.
 	 * 
 	 * @return The number of information messages printed out.
 	 */
 	public static int numOfInfos() {
-		return numOfInfos;
+		return CompilationContext.current().numOfInfos;
 	}
 
 	/**
@@ -25,9 +24,9 @@ public class Report {
 	 * @param message The information message to be printed.
 	 */
 	public static void info(String message) {
-		numOfInfos++;
-		System.out.print(":-) ");
-		System.out.println(message);
+		CompilationContext context = CompilationContext.current();
+		context.numOfInfos++;
+		context.out.println(":-) " + message);
 	}
 
 	/**
@@ -38,22 +37,18 @@ public class Report {
 	 * @param message  The information message to be printed.
 	 */
 	public static void info(Locatable location, String message) {
-		numOfInfos++;
-		System.out.print(":-) ");
-		System.out.print("[" + location.location() + "] ");
-		System.out.println(message);
+		CompilationContext context = CompilationContext.current();
+		context.numOfInfos++;
+		context.out.println(":-) [" + location.location() + "] " + message);
 	}
 
-	/** Counter of warnings printed out. */
-	private static int numOfWarnings = 0;
-
 	/**
 	 * Returns the number of warnings printed out.
 	 * 
 	 * @return The number of warnings printed out.
 	 */
 	public static int numOfWarnings() {
-		return numOfWarnings;
+		return CompilationContext.current().numOfWarnings;
 	}
 
 	/**
@@ -62,9 +57,9 @@ public class Report {
 	 * @param message The warning message.
 	 */
 	public static void warning(String message) {
-		numOfWarnings++;
-		System.err.print(":-o ");
-		System.err.println(message);
+		CompilationContext context = CompilationContext.current();
+		context.numOfWarnings++;
+		context.err.println(":-o " + message);
 	}
 
 	/**
@@ -74,10 +69,9 @@ public class Report {
 	 * @param message  The warning message to be printed.
 	 */
 	public static void warning(Locatable location, String message) {
-		numOfWarnings++;
-		System.err.print(":-o ");
-		System.err.print("[" + location.location() + "] ");
-		System.err.println(message);
+		CompilationContext context = CompilationContext.current();
+		context.numOfWarnings++;
+		context.err.println(":-o [" + location.location() + "] " + message);
 	}
 
 	/**
@@ -96,8 +90,7 @@ public class Report {
 		 */
 		public Error(String message) {
 			super(message);
-			System.err.print(":-( ");
-			System.err.println(message);
+			CompilationContext.current().err.println(":-( " + message);
 		}
 
 		/**
@@ -107,9 +100,8 @@ public class Report {
 		 * @param message  The error message.
 		 */
 		public Error(Locatable location, String message) {
-			System.err.print(":-( ");
-			System.err.print("[" + location.location() + "] ");
-			System.err.println(message);
+			super("[" + location.location() + "] " + message);
+			CompilationContext.current().err.println(":-( [" + location.location() + "] " + message);
 		}
 
 	}
@@ -0,0 +1,287 @@
+package prev23.common.report;
+
+import java.io.*;
+import java.lang.management.*;
+import java.util.*;
+
+import prev23.CompilationContext;
+
+/**
+ * Statistics of a compilation (see the command line argument
+ * <code>--stats</code> of {@link prev23.Compiler}).
+ *
+ * For every phase, the wall time, the CPU time and the number of bytes
+ * allocated by the compiling thread are measured, as well as the number of AST
+ * nodes, temporary variables and labels created. Phases are measured
+ * exclusively: if a phase is started while another one is still running (as
+ * the lexical analysis is run lazily by the syntax analysis), the outer phase
+ * is paused until the inner one ends. Additionally, each phase can record its
+ * own counters, either for the whole program or per item (e.g., per function).
+ *
+ * The statistics are reported either as a table (<code>--stats</code>) or as a
+ * JSON document written to a file (<code>--stats=json</code>).
+ */
+public class Stats {
+
+	/** The names of measures taken for every phase. */
+	private static final String[] measures = { "wall-ns", "cpu-ns", "alloc-bytes", "ast-nodes", "temps", "labels" };
+
+	private static final int WALL = 0;
+
+	private static final int CPU = 1;
+
+	private static final int ALLOC = 2;
+
+	private static final int NODES = 3;
+
+	private static final int TEMPS = 4;
+
+	private static final int LABELS = 5;
+
+	/** The thread MX bean used for measuring CPU time and allocation. */
+	private static final com.sun.management.ThreadMXBean threadBean = threadBean();
+
+	private static com.sun.management.ThreadMXBean threadBean() {
+		java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+		if (!(bean instanceof com.sun.management.ThreadMXBean))
+			return null;
+		com.sun.management.ThreadMXBean threadBean = (com.sun.management.ThreadMXBean) bean;
+		try {
+			if (threadBean.isThreadAllocatedMemorySupported() && !threadBean.isThreadAllocatedMemoryEnabled())
+				threadBean.setThreadAllocatedMemoryEnabled(true);
+			if (threadBean.isThreadCpuTimeSupported() && !threadBean.isThreadCpuTimeEnabled())
+				threadBean.setThreadCpuTimeEnabled(true);
+		} catch (UnsupportedOperationException | SecurityException __) {
+		}
+		return threadBean;
+	}
+
+	/**
+	 * Statistics of a single phase.
+	 */
+	public static class PhaseStats {
+
+		/** The name of the phase. */
+		public final String phaseName;
+
+		/** The measures (indexed as {@link Stats#measures}, negative if unknown). */
+		private final long[] values = new long[measures.length];
+
+		/** The measures taken when the phase was (last) resumed. */
+		private long[] resumed;
+
+		/** Counters of the phase. */
+		private final LinkedHashMap<String, Long> counters = new LinkedHashMap<String, Long>();
+
+		/** Counters of the phase per item. */
+		private final LinkedHashMap<String, LinkedHashMap<String, Long>> items = new LinkedHashMap<String, LinkedHashMap<String, Long>>();
+
+		/**
+		 * Constructs new statistics of a phase.
+		 *
+		 * @param phaseName The name of the phase.
+		 */
+		private PhaseStats(String phaseName) {
+			this.phaseName = phaseName;
+		}
+
+		/**
+		 * Adds a value to a counter of the phase.
+		 *
+		 * @param counter The name of the counter.
+		 * @param value   The value to be added.
+		 */
+		public void count(String counter, long value) {
+			counters.merge(counter, value, Long::sum);
+		}
+
+		/**
+		 * Adds a value to a counter of an item (and to the counter of the phase).
+		 *
+		 * @param item    The name of the item.
+		 * @param counter The name of the counter.
+		 * @param value   The value to be added.
+		 */
+		public void count(String item, String counter, long value) {
+			items.computeIfAbsent(item, __ -> new LinkedHashMap<String, Long>()).merge(counter, value, Long::sum);
+			count(counter, value);
+		}
+
+		private void resume(long[] sample) {
+			resumed = sample;
+		}
+
+		private void pause(long[] sample) {
+			for (int m = 0; m < measures.length; m++) {
+				if (values[m] < 0 || resumed[m] < 0 || sample[m] < 0)
+					values[m] = -1;
+				else
+					values[m] += sample[m] - resumed[m];
+			}
+			resumed = null;
+		}
+
+	}
+
+	/** Statistics of all phases started so far (in order). */
+	private final Vector<PhaseStats> phases = new Vector<PhaseStats>();
+
+	/** Phases running at the moment (innermost last). */
+	private final Vector<PhaseStats> running = new Vector<PhaseStats>();
+
+	/** The format of the report (<code>json</code> or anything else for text). */
+	private final String format;
+
+	/**
+	 * Constructs new statistics of a compilation.
+	 *
+	 * @param format The format of the report.
+	 */
+	public Stats(String format) {
+		this.format = format;
+	}
+
+	/**
+	 * Takes all measures of the current thread.
+	 *
+	 * @return The measures (indexed as {@link #measures}).
+	 */
+	private static long[] sample() {
+		CompilationContext context = CompilationContext.current();
+		long[] sample = new long[measures.length];
+		sample[WALL] = System.nanoTime();
+		sample[CPU] = threadBean == null ? -1 : threadBean.getCurrentThreadCpuTime();
+		sample[ALLOC] = threadBean == null ? -1 : threadBean.getCurrentThreadAllocatedBytes();
+		sample[NODES] = context.numNodes();
+		sample[TEMPS] = context.numTemps();
+		sample[LABELS] = context.numLabels();
+		return sample;
+	}
+
+	/**
+	 * Starts measuring a phase.
+	 *
+	 * @param phaseName The name of the phase.
+	 * @return Statistics of the phase.
+	 */
+	public PhaseStats begin(String phaseName) {
+		PhaseStats phase = new PhaseStats(phaseName);
+		long[] sample = sample();
+		if (!running.isEmpty())
+			running.lastElement().pause(sample);
+		phases.add(phase);
+		running.add(phase);
+		phase.resume(sample);
+		return phase;
+	}
+
+	/**
+	 * Stops measuring a phase.
+	 *
+	 * @param phase Statistics of the phase.
+	 */
+	public void end(PhaseStats phase) {
+		long[] sample = sample();
+		if (phase.resumed != null)
+			phase.pause(sample);
+		running.remove(phase);
+		if (!running.isEmpty() && running.lastElement().resumed == null)
+			running.lastElement().resume(sample);
+	}
+
+	/**
+	 * Reports the statistics of all phases.
+	 */
+	public void report() {
+		if ("json".equals(format)) {
+			String jsonFileName = prev23.Compiler.cmdLineArgValue("--src-file-name").replaceFirst("\\.[^./]*$", "")
+					+ ".stats.json";
+			try (PrintStream json = new PrintStream(new FileOutputStream(jsonFileName))) {
+				json.print(toJson());
+			} catch (IOException __) {
+				Report.warning("Cannot write statistics to file '" + jsonFileName + "'.");
+				return;
+			}
+			Report.info("Statistics written to file '" + jsonFileName + "'.");
+		} else {
+			PrintStream out = CompilationContext.current().out;
+			out.println(String.format(Locale.ROOT, "%-8s %10s %10s %12s %8s %8s %8s  %s", "phase", "wall[ms]",
+					"cpu[ms]", "alloc[KiB]", "nodes", "temps", "labels", "counters"));
+			for (PhaseStats phase : phases) {
+				StringBuffer counters = new StringBuffer();
+				for (Map.Entry<String, Long> counter : phase.counters.entrySet())
+					counters.append((counters.length() == 0 ? "" : " ") + counter.getKey() + "=" + counter.getValue());
+				out.println(String.format(Locale.ROOT, "%-8s %10s %10s %12s %8d %8d %8d  %s", phase.phaseName,
+						scaled(phase.values[WALL], 1e6), scaled(phase.values[CPU], 1e6),
+						scaled(phase.values[ALLOC], 1024), phase.values[NODES], phase.values[TEMPS], phase.values[LABELS],
+						counters));
+			}
+		}
+	}
+
+	private static String scaled(long value, double unit) {
+		return value < 0 ? "-" : String.format(Locale.ROOT, "%.3f", value / unit);
+	}
+
+	/**
+	 * Produces the JSON document with the statistics of all phases.
+	 *
+	 * @return The JSON document.
+	 */
+	private String toJson() {
+		StringBuffer json = new StringBuffer();
+		json.append("{\n");
+		json.append("  \"source\": " + jsonString(prev23.Compiler.cmdLineArgValue("--src-file-name")) + ",\n");
+		json.append("  \"phases\": [");
+		for (int p = 0; p < phases.size(); p++) {
+			PhaseStats phase = phases.get(p);
+			json.append(p == 0 ? "\n" : ",\n");
+			json.append("    {\n");
+			json.append("      \"phase\": " + jsonString(phase.phaseName));
+			for (int m = 0; m < measures.length; m++)
+				json.append(",\n      \"" + measures[m] + "\": "
+						+ (phase.values[m] < 0 ? "null" : Long.toString(phase.values[m])));
+			json.append(",\n      \"counters\": " + jsonObject(phase.counters));
+			json.append(",\n      \"items\": {");
+			boolean first = true;
+			for (Map.Entry<String, LinkedHashMap<String, Long>> item : phase.items.entrySet()) {
+				json.append((first ? "" : ",") + "\n        " + jsonString(item.getKey()) + ": "
+						+ jsonObject(item.getValue()));
+				first = false;
+			}
+			json.append(first ? "}\n" : "\n      }\n");
+			json.append("    }");
+		}
+		json.append("\n  ]\n");
+		json.append("}\n");
+		return json.toString();
+	}
+
+	private static String jsonObject(LinkedHashMap<String, Long> counters) {
+		StringBuffer json = new StringBuffer();
+		json.append("{");
+		boolean first = true;
+		for (Map.Entry<String, Long> counter : counters.entrySet()) {
+			json.append((first ? " " : ", ") + jsonString(counter.getKey()) + ": " + counter.getValue());
+			first = false;
+		}
+		json.append(first ? "}" : " }");
+		return json.toString();
+	}
+
+	private static String jsonString(String string) {
+		StringBuffer json = new StringBuffer();
+		json.append('"');
+		for (char c : string.toCharArray()) {
+			if (c == '"' || c == '\\')
+				json.append('\\').append(c);
+			else if (c < 0x20)
+				json.append(String.format("\\u%04x", (int) c));
+			else
+				json.append(c);
+		}
+		json.append('"');
+		return json.toString();
+	}
+
+}
@@ -1,5 +1,6 @@
 package prev23.data.ast.tree;
 
+import prev23.CompilationContext;
 import prev23.common.report.*;
 
 /**
@@ -7,9 +8,6 @@ import prev23.common.report.*;
  */
 public abstract class AstNode implements AstTree {
 
-	/** The number of nodes constructed so far. */
-	private static int numNodes = 0;
-
 	/** The unique id of this node. */
 	public final int id;
 
@@ -22,7 +20,7 @@ public abstract class AstNode implements AstTree {
 	 * @param location The location.
 	 */
 	public AstNode(Location location) {
-		id = numNodes++;
+		id = CompilationContext.current().newNodeId();
 		this.location = location;
 	}
 
@@ -3,6 +3,7 @@ package prev23.data.lin;
 import java.util.*;
 
 import prev23.data.mem.*;
+import prev23.data.imc.code.expr.*;
 import prev23.data.imc.code.stmt.*;
 
 /**
@@ -26,6 +27,9 @@ public class LinCodeChunk {
 	 */
 	public final MemLabel exitLabel;
 
+	/** The calls in tail position made without the frame of the function. */
+	private final HashSet<ImcCALL> tailCalls;
+
 	/**
 	 * Constructs a new code chunk.
 	 * 
@@ -37,10 +41,29 @@ public class LinCodeChunk {
 	 *                   the epilogue starts.
 	 */
 	public LinCodeChunk(MemFrame frame, Vector<ImcStmt> stmts, MemLabel entryLabel, MemLabel exitLabel) {
+		this(frame, stmts, entryLabel, exitLabel, new HashSet<ImcCALL>());
+	}
+
+	/**
+	 * Constructs a new code chunk with tail calls.
+	 * 
+	 * @param frame      A frame of a function.
+	 * @param stmts      The statements of a function body.
+	 * @param entryLabel The function's body entry label, i.e., the label the
+	 *                   prologue jumps to.
+	 * @param exitLabel  The function's body exit label, i.e., the label at which
+	 *                   the epilogue starts.
+	 * @param tailCalls  The calls in tail position made without the frame of the
+	 *                   function (the function called returns to the caller of
+	 *                   the function directly).
+	 */
+	public LinCodeChunk(MemFrame frame, Vector<ImcStmt> stmts, MemLabel entryLabel, MemLabel exitLabel,
+			Set<ImcCALL> tailCalls) {
 		this.frame = frame;
 		this.stmts = new Vector<ImcStmt>(stmts);
 		this.entryLabel = entryLabel;
 		this.exitLabel = exitLabel;
+		this.tailCalls = new HashSet<ImcCALL>(tailCalls);
 	}
 
 	/**
@@ -52,4 +75,14 @@ public class LinCodeChunk {
 		return new Vector<ImcStmt>(stmts);
 	}
 
+	/**
+	 * Checks whether a call of a function body is a tail call.
+	 * 
+	 * @param call A call.
+	 * @return {@code true} if the call is made without the frame of the function.
+	 */
+	public boolean isTailCall(ImcCALL call) {
+		return tailCalls.contains(call);
+	}
+
 }
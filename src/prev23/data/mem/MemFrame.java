@@ -47,6 +47,22 @@ public class MemFrame implements Loggable {
 		this.RV = new MemTemp();
 	}
 
+	/**
+	 * Constructs a copy of a frame with a larger block of arguments.
+	 * 
+	 * @param frame    The frame.
+	 * @param argsSize The size of the block of arguments within a frame.
+	 */
+	public MemFrame(MemFrame frame, long argsSize) {
+		this.label = frame.label;
+		this.depth = frame.depth;
+		this.locsSize = frame.locsSize;
+		this.argsSize = Math.max(frame.argsSize, argsSize);
+		this.size = this.locsSize + 2 * (new SemPtr(new SemVoid())).size() + this.argsSize;
+		this.FP = frame.FP;
+		this.RV = frame.RV;
+	}
+
 	@Override
 	public void log(Logger logger) {
 		if (logger == null)
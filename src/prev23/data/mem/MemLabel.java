@@ -1,5 +1,7 @@
 package prev23.data.mem;
 
+import prev23.CompilationContext;
+
 /**
  * A label.
  */
@@ -8,13 +10,9 @@ public class MemLabel {
 	/** The name of a label. */
 	public final String name;
 
-	/** Counter of anonymous labels. */
-	private static long count = 0;
-
 	/** Creates a new anonymous label. */
 	public MemLabel() {
-		this.name = "L" + count;
-		count++;
+		this.name = "L" + CompilationContext.current().newLabelNum();
 	}
 
 	/**
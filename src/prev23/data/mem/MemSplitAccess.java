@@ -0,0 +1,44 @@
+package prev23.data.mem;
+
+import java.util.*;
+
+import prev23.common.logger.*;
+
+/**
+ * An access to an aggregate variable whose words are kept in temporary
+ * variables.
+ *
+ * (Used for records and arrays that are only accessed through components
+ * selected by constant names and indices.)
+ */
+public class MemSplitAccess extends MemAccess {
+
+	/** The temporary variables holding the words of the variable. */
+	public final Vector<MemTemp> temps;
+
+	/**
+	 * Constructs a new access to an aggregate variable kept in temporary
+	 * variables.
+	 *
+	 * @param size  The size of the variable.
+	 * @param temps The temporary variables holding the words of the variable.
+	 */
+	public MemSplitAccess(long size, Vector<MemTemp> temps) {
+		super(size);
+		this.temps = temps;
+	}
+
+	@Override
+	public void log(Logger logger) {
+		if (logger == null)
+			return;
+		logger.begElement("access");
+		logger.addAttribute("size", Long.toString(size));
+		StringBuffer temps = new StringBuffer();
+		for (MemTemp temp : this.temps)
+			temps.append((temps.length() == 0 ? "" : ",") + temp.toString());
+		logger.addAttribute("temps", temps.toString());
+		logger.endElement();
+	}
+
+}
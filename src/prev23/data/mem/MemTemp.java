@@ -1,5 +1,7 @@
 package prev23.data.mem;
 
+import prev23.CompilationContext;
+
 /**
  * A temporary variable.
  */
@@ -8,13 +10,9 @@ public class MemTemp {
 	/** The name of a temporary variable. */
 	public final long temp;
 
-	/** Counter of temporary variables. */
-	private static long count = 0;
-
 	/** Creates a new temporary variable. */
 	public MemTemp() {
-		this.temp = count;
-		count++;
+		this.temp = CompilationContext.current().newTempName();
 	}
 
 	@Override
@@ -0,0 +1,46 @@
+package prev23.data.mem;
+
+import prev23.common.logger.*;
+
+/**
+ * An access to a variable kept in a temporary variable.
+ *
+ * (Used for scalar variables and parameters whose address is never needed.)
+ */
+public class MemTempAccess extends MemAccess {
+
+	/** The temporary variable holding the variable. */
+	public final MemTemp temp;
+
+	/** The access to the argument of a parameter (or {@code null}). */
+	public final MemRelAccess arg;
+
+	/**
+	 * Constructs a new access to a variable kept in a temporary variable.
+	 *
+	 * @param size The size of the variable.
+	 * @param temp The temporary variable holding the variable.
+	 * @param arg  The access to the argument the parameter is initialized
+	 *             from (or {@code null} for a local variable).
+	 */
+	public MemTempAccess(long size, MemTemp temp, MemRelAccess arg) {
+		super(size);
+		this.temp = temp;
+		this.arg = arg;
+	}
+
+	@Override
+	public void log(Logger logger) {
+		if (logger == null)
+			return;
+		logger.begElement("access");
+		logger.addAttribute("size", Long.toString(size));
+		logger.addAttribute("temp", temp.toString());
+		if (arg != null) {
+			logger.addAttribute("offset", Long.toString(arg.offset));
+			logger.addAttribute("depth", Integer.toString(arg.depth));
+		}
+		logger.endElement();
+	}
+
+}
@@ -0,0 +1,65 @@
+package prev23.data.ssa;
+
+import java.util.*;
+
+import prev23.data.mem.*;
+import prev23.data.imc.code.stmt.*;
+
+/**
+ * A basic block of a function body in static single assignment form.
+ */
+public class SsaBlock {
+
+	/** The label at the start of the block. */
+	public final MemLabel label;
+
+	/** The phi functions at the start of the block. */
+	public final Vector<SsaPhi> phis = new Vector<SsaPhi>();
+
+	/** The statements of the block (without the label, the last one is a jump). */
+	public final Vector<ImcStmt> stmts = new Vector<ImcStmt>();
+
+	/** The predecessors of the block. */
+	public final Vector<SsaBlock> preds = new Vector<SsaBlock>();
+
+	/** The successors of the block (the targets of its last statement within the body). */
+	public final Vector<SsaBlock> succs = new Vector<SsaBlock>();
+
+	/** The immediate dominator of the block ({@code null} for the entry). */
+	public SsaBlock idom = null;
+
+	/** The blocks immediately dominated by the block. */
+	public final Vector<SsaBlock> children = new Vector<SsaBlock>();
+
+	/**
+	 * Constructs a new basic block.
+	 * 
+	 * @param label The label at the start of the block.
+	 */
+	public SsaBlock(MemLabel label) {
+		this.label = label;
+	}
+
+	/**
+	 * Returns the last statement of the block.
+	 * 
+	 * @return The jump ending the block.
+	 */
+	public ImcStmt last() {
+		return stmts.lastElement();
+	}
+
+	/**
+	 * Checks whether the block dominates another block.
+	 * 
+	 * @param block The other block.
+	 * @return {@code true} if every path from the entry to the other block
+	 *         passes this block.
+	 */
+	public boolean dominates(SsaBlock block) {
+		while (block != null && block != this)
+			block = block.idom;
+		return block == this;
+	}
+
+}
@@ -0,0 +1,93 @@
+package prev23.data.ssa;
+
+import java.util.*;
+
+import prev23.data.mem.*;
+
+/**
+ * A function body in static single assignment form.
+ * 
+ * Every temporary is defined at most once, either by a move or by a phi
+ * function, and every use of a temporary is dominated by its definition. The
+ * temporaries that are never renamed (the frame pointer and the return value)
+ * and the temporaries used before they are defined keep their original names.
+ */
+public class SsaCode {
+
+	/** The frame of the function. */
+	public final MemFrame frame;
+
+	/** The basic blocks (the first one is the entry). */
+	public final Vector<SsaBlock> blocks = new Vector<SsaBlock>();
+
+	/**
+	 * Constructs a new function body in static single assignment form.
+	 * 
+	 * @param frame The frame of the function.
+	 */
+	public SsaCode(MemFrame frame) {
+		this.frame = frame;
+	}
+
+	/**
+	 * Returns the entry block.
+	 * 
+	 * @return The entry block.
+	 */
+	public SsaBlock entry() {
+		return blocks.firstElement();
+	}
+
+	/**
+	 * Checks whether a temporary is excluded from renaming.
+	 * 
+	 * @param temp The temporary.
+	 * @return {@code true} if the temporary is the frame pointer or the return
+	 *         value.
+	 */
+	public boolean pinned(MemTemp temp) {
+		return temp == frame.FP || temp == frame.RV;
+	}
+
+	/**
+	 * Removes an edge of the control flow graph (and the corresponding
+	 * arguments of phi functions).
+	 * 
+	 * @param from The source of the edge.
+	 * @param to   The target of the edge.
+	 */
+	public void removeEdge(SsaBlock from, SsaBlock to) {
+		from.succs.remove(to);
+		to.preds.remove(from);
+		for (SsaPhi phi : to.phis)
+			phi.args.remove(from);
+	}
+
+	/**
+	 * Removes the blocks that cannot be reached from the entry.
+	 * 
+	 * @return The number of blocks removed.
+	 */
+	public int removeUnreachable() {
+		HashSet<SsaBlock> reachable = new HashSet<SsaBlock>();
+		Stack<SsaBlock> pending = new Stack<SsaBlock>();
+		pending.push(entry());
+		while (!pending.isEmpty()) {
+			SsaBlock block = pending.pop();
+			if (reachable.add(block))
+				pending.addAll(block.succs);
+		}
+
+		int removed = 0;
+		for (SsaBlock block : new Vector<SsaBlock>(blocks)) {
+			if (reachable.contains(block))
+				continue;
+			for (SsaBlock succ : new Vector<SsaBlock>(block.succs))
+				removeEdge(block, succ);
+			blocks.remove(block);
+			removed++;
+		}
+		return removed;
+	}
+
+}
@@ -0,0 +1,40 @@
+package prev23.data.ssa;
+
+import java.util.*;
+
+import prev23.data.mem.*;
+import prev23.data.imc.code.expr.*;
+
+/**
+ * A phi function at the start of a basic block.
+ */
+public class SsaPhi {
+
+	/** The temporary of the original code the phi function merges. */
+	public final MemTemp var;
+
+	/** The temporary defined by the phi function. */
+	public MemTemp dst;
+
+	/** The arguments (a temporary or a constant for every predecessor). */
+	public final LinkedHashMap<SsaBlock, ImcExpr> args = new LinkedHashMap<SsaBlock, ImcExpr>();
+
+	/**
+	 * Constructs a new phi function.
+	 * 
+	 * @param var The temporary of the original code the phi function merges.
+	 */
+	public SsaPhi(MemTemp var) {
+		this.var = var;
+		this.dst = var;
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder str = new StringBuilder(dst + " = PHI(");
+		for (Map.Entry<SsaBlock, ImcExpr> arg : args.entrySet())
+			str.append((str.charAt(str.length() - 1) == '(' ? "" : ",") + arg.getKey().label.name + ":" + arg.getValue());
+		return str.append(")").toString();
+	}
+
+}
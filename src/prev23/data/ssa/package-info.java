@@ -0,0 +1,4 @@
+/**
+ * Intermediate code of function bodies in static single assignment form.
+ */
+package prev23.data.ssa;
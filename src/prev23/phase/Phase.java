@@ -1,6 +1,8 @@
 package prev23.phase;
 
+import prev23.CompilationContext;
 import prev23.common.logger.*;
+import prev23.common.report.*;
 
 /**
  * An abstract compiler phase. All concrete compiler phases should be
@@ -12,14 +14,22 @@ public abstract class Phase implements AutoCloseable {
 	/** The logger used to produce the log of this phase. */
 	public final Logger logger;
 
+	/** Statistics of this phase (or {@code null} if not requested). */
+	public final Stats.PhaseStats stats;
+
 	/**
 	 * Constructs a new phase of a compiler. If logging of this phase has been
 	 * requested, it prepares a logger using the phase name for naming the XML and
 	 * XSL files as well as for the topmost XML element within the XML file.
 	 * 
+	 * If statistics have been requested, it also starts measuring this phase.
+	 * 
 	 * @param phaseName The phase name.
 	 */
 	protected Phase(String phaseName) {
+		Stats compilationStats = CompilationContext.current().stats;
+		stats = compilationStats == null ? null : compilationStats.begin(phaseName);
+
 		String loggedPhase = prev23.Compiler.cmdLineArgValue("--logged-phase");
 		if ((loggedPhase != null) && loggedPhase.matches(phaseName + "|all")) {
 			// Prepare the name of the xml file.
@@ -41,10 +51,36 @@ public abstract class Phase implements AutoCloseable {
 		}
 	}
 
+	/**
+	 * Adds a value to a counter of this phase (if statistics have been requested).
+	 * 
+	 * @param counter The name of the counter.
+	 * @param value   The value to be added.
+	 */
+	public void count(String counter, long value) {
+		if (stats != null)
+			stats.count(counter, value);
+	}
+
+	/**
+	 * Adds a value to a counter of an item of this phase (if statistics have been
+	 * requested).
+	 * 
+	 * @param item    The name of the item.
+	 * @param counter The name of the counter.
+	 * @param value   The value to be added.
+	 */
+	public void count(String item, String counter, long value) {
+		if (stats != null)
+			stats.count(item, counter, value);
+	}
+
 	@Override
 	public void close() {
 		if (logger != null)
 			logger.close();
+		if (stats != null)
+			CompilationContext.current().stats.end(stats);
 	}
 
 }
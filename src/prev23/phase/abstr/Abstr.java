@@ -1,5 +1,6 @@
 package prev23.phase.abstr;
 
+import prev23.CompilationContext;
 import prev23.phase.*;
 import prev23.data.ast.tree.*;
 
@@ -8,8 +9,23 @@ import prev23.data.ast.tree.*;
  */
 public class Abstr extends Phase {
 
-	/** The abstract syntax tree. */
-	public static AstTree tree;
+	/**
+	 * Returns the abstract syntax tree of the current compilation.
+	 * 
+	 * @return The abstract syntax tree.
+	 */
+	public static AstTree tree() {
+		return CompilationContext.current().absTree;
+	}
+
+	/**
+	 * Sets the abstract syntax tree of the current compilation.
+	 * 
+	 * @param tree The abstract syntax tree.
+	 */
+	public static void setTree(AstTree tree) {
+		CompilationContext.current().absTree = tree;
+	}
 		
 	/**
 	 * Phase construction.
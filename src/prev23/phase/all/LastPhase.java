@@ -6,11 +6,13 @@ import java.util.*;
 
 import prev23.data.asm.*;
 import prev23.data.lin.LinDataChunk;
+import prev23.data.mem.MemLabel;
 import prev23.phase.*;
 import prev23.phase.asmgen.*;
 import prev23.phase.imclin.*;
 import prev23.phase.regall.RegAll;
 import prev23.Compiler;
+import prev23.CompilationContext;
 
 public class LastPhase extends Phase {
     public final long SP_init = 0x7FFFFFFFFFFFFFF8l;
@@ -24,14 +26,8 @@ public class LastPhase extends Phase {
 	}
 
     public void saveNumber(long number, int register) {
-		asm.add("\t\t\tSETL $" + register + "," + Long.toString(number & 0x000000000000FFFFL));
-
-		if((number & 0x00000000FFFF0000L) > 0)
-			asm.add("\t\t\tINCML $" + register + "," + Long.toString((number & 0x00000000FFFF0000L) >> 16));
-		if((number & 0x0000FFFF00000000L) > 0)
-			asm.add("\t\t\tINCMH $" + register + "," + Long.toString((number & 0x0000FFFF00000000L) >> 32));
-		if((number & 0xFFFF000000000000L) > 0)
-			asm.add("\t\t\tINCH $" + register + "," + Long.toString((number & 0xFFFF000000000000L) >> 48));
+		for (String instr : ConstMaterializer.materialize(number, register))
+			asm.add("\t\t\t" + instr);
 	}
 
     public void prepare() {
@@ -40,7 +36,7 @@ public class LastPhase extends Phase {
 
         // loop through all the codes
         // add the prologue, the code and the epilogue
-        for (Code code : AsmGen.codes) {
+        for (Code code : AsmGen.codes()) {
 			addPrologue(code);
 			
 			asm.add("# " + code.frame.label.name + " - Body");
@@ -56,7 +52,7 @@ public class LastPhase extends Phase {
 						line += "\t\t\tSWYM";
 					}
 					else {
-						line += "\t\t\t" + curr.toString(RegAll.tempToReg);
+						line += "\t\t\t" + curr.toString(RegAll.tempToReg());
 					}
 					asm.add(line);
 				}
@@ -64,11 +60,15 @@ public class LastPhase extends Phase {
 					if(curr instanceof AsmLABEL) {
 						continue;
 					}
-					line = curr.toString(RegAll.tempToReg);
+					line = curr.toString(RegAll.tempToReg());
 					asm.add("\t\t\t" + line);
 				}
 			}
 
+			// a label at the end of the body (or an empty body)
+			if (code.instrs.lastElement() instanceof AsmLABEL)
+				asm.add(((AsmLABEL) code.instrs.lastElement()).getLabel().name + "\t\t\tSWYM");
+
 			addEpilogue(code);
 		}
 
@@ -115,6 +115,16 @@ public class LastPhase extends Phase {
             }
         }
 
+		// add the constant pool (every global register covers 32 constants)
+		if (ConstMaterializer.pool().size() > 0)
+			asm.add("# Constants");
+		int numConsts = 0;
+		for (Map.Entry<Long, MemLabel> constant : ConstMaterializer.pool().entrySet()) {
+			if (numConsts++ % 32 == 0)
+				asm.add("\t\t\tGREG @");
+			asm.add(constant.getValue().name + "\t\tOCTA\t#" + Long.toHexString(constant.getKey()));
+		}
+
 		// setup location
 		asm.add("\t\t\tLOC #100");
 		asm.add("Main\t\tSWYM");
@@ -149,18 +159,19 @@ public class LastPhase extends Phase {
 		asm.add("\t\t\tOR $253,$254,0");	// FP = SP
 
 		// Move FP, SP
-		saveNumber(code.frame.size, 1);		// save framesize to $1
+		saveNumber(code.frame.size + code.tempSize, 1);		// save framesize (with spilled temps) to $1
 		asm.add("\t\t\tSUB $254,$254,$1");	  // SP -= framesize
 		
-		// Jump
-		asm.add("\t\t\tJMP " + code.entryLabel.name);
+		// Jump (unless the body starts right here)
+		if (!(code.instrs.firstElement() instanceof AsmLABEL && ((AsmLABEL) code.instrs.firstElement()).getLabel() == code.entryLabel))
+			asm.add("\t\t\tJMP " + code.entryLabel.name);
     }
 
     public void addEpilogue(Code code) {
 		asm.add("# " + code.frame.label.name + " - Epilogue");
 
 		// return value
-		asm.add(code.exitLabel.name + "\t\t\tSTO $" + RegAll.tempToReg.get(code.frame.RV) + ",$253,0");
+		asm.add(code.exitLabel.name + "\t\t\tSTO $" + RegAll.tempToReg().get(code.frame.RV) + ",$253,0");
 		asm.add("\t\t\tOR $254,$253,0");	// SP = FP
 
 		long oldFP = code.frame.locsSize + 8;
@@ -214,7 +225,7 @@ public class LastPhase extends Phase {
 
     public void exportToFile() {
         String filename = Compiler.cmdLineArgValue("--dst-file-name");
-		System.out.println("Exporting to file: " + filename);
+		CompilationContext.current().out.println("Exporting to file: " + filename);
 		try {
 			FileWriter writer = new FileWriter(filename);
 
@@ -223,6 +234,7 @@ public class LastPhase extends Phase {
 			}
 
 			writer.close();
+			count("lines", asm.size());
 		} catch (IOException e) {
 			e.printStackTrace();
 		}
@@ -232,7 +244,7 @@ public class LastPhase extends Phase {
 		if(logger == null)
 			return;
 
-		for (Code code : AsmGen.codes) {
+		for (Code code : AsmGen.codes()) {
 			logger.begElement("code");
 			logger.addAttribute("entrylabel", code.entryLabel.name);
 			logger.addAttribute("exitlabel", code.exitLabel.name);
@@ -244,7 +256,7 @@ public class LastPhase extends Phase {
 			logger.begElement("instructions");
 			for(AsmInstr instr : code.instrs) {
 				logger.begElement("instruction");
-				logger.addAttribute("code", instr.toString(RegAll.tempToReg));
+				logger.addAttribute("code", instr.toString(RegAll.tempToReg()));
 				logger.endElement();
 			}
 
@@ -2,6 +2,7 @@ package prev23.phase.asmgen;
 
 import java.util.*;
 
+import prev23.CompilationContext;
 import prev23.data.imc.code.stmt.*;
 import prev23.data.lin.*;
 import prev23.data.asm.*;
@@ -13,7 +14,9 @@ import prev23.phase.imclin.*;
  */
 public class AsmGen extends Phase {
 
-	public static Vector<Code> codes = new Vector<Code>();
+	public static Vector<Code> codes() {
+		return CompilationContext.current().codes;
+	}
 
 	public AsmGen() {
 		super("asmgen");
@@ -22,14 +25,16 @@ public class AsmGen extends Phase {
 	public void genAsmCodes() {
 		for (LinCodeChunk codeChunk : ImcLin.codeChunks()) {
 			Code code = genAsmCode(codeChunk);
-			codes.add(code);
+			codes().add(code);
+			count(code.frame.label.name, "instrs", code.instrs.size());
 		}
 	}
 
 	public Code genAsmCode(LinCodeChunk codeChunk) {
 		Vector<AsmInstr> instrs = new Vector<AsmInstr>();
+		StmtGenerator generator = new StmtGenerator(codeChunk);
 		for (ImcStmt stmt : codeChunk.stmts()) {
-			instrs.addAll(stmt.accept(new StmtGenerator(), null));
+			instrs.addAll(stmt.accept(generator, null));
 		}
 		return new Code(codeChunk.frame, codeChunk.entryLabel, codeChunk.exitLabel, instrs);
 	}
@@ -37,7 +42,7 @@ public class AsmGen extends Phase {
 	public void log() {
 		if (logger == null)
 			return;
-		for (Code code : AsmGen.codes) {
+		for (Code code : AsmGen.codes()) {
 			logger.begElement("code");
 			logger.addAttribute("entrylabel", code.entryLabel.name);
 			logger.addAttribute("exitlabel", code.exitLabel.name);
@@ -0,0 +1,167 @@
+package prev23.phase.asmgen;
+
+import java.util.*;
+import prev23.CompilationContext;
+import prev23.data.mem.*;
+import prev23.data.asm.*;
+
+/**
+ * Materialization of constants.
+ *
+ * A constant is loaded into a register by the shortest of the following
+ * sequences:
+ *
+ * <ul>
+ * <li><code>SETL</code>, <code>SETML</code>, <code>SETMH</code> or
+ * <code>SETH</code> followed by an <code>OR*</code> for every further nonzero
+ * wyde of the value;</li>
+ * <li><code>NEG $X,0,Z</code> for values between -255 and -1;</li>
+ * <li>the sequence of the negated value followed by <code>NEGU</code>;</li>
+ * <li>the sequence of the complemented value followed by <code>NOR</code>;</li>
+ * <li>a single <code>LDO</code> from the constant pool if every sequence is
+ * longer than {@link #MAX_SEQUENCE} instructions.</li>
+ * </ul>
+ *
+ * Within a basic block, a constant that needs more than one instruction is
+ * loaded once and reused afterwards.
+ */
+public class ConstMaterializer {
+
+    /** The length of the longest sequence preferred to a load from the pool. */
+    public static final int MAX_SEQUENCE = 3;
+
+    /** The names of the wydes of an octa (from the lowest to the highest). */
+    private static final String[] WYDES = { "L", "ML", "MH", "H" };
+
+    /** The temporaries holding constants in the current basic block. */
+    private final HashMap<Long, MemTemp> live = new HashMap<Long, MemTemp>();
+
+    /**
+     * Loads a constant into a temporary (or reuses a temporary already holding
+     * it within the current basic block).
+     *
+     * @param value  The constant.
+     * @param instrs The generated instructions.
+     * @return The temporary holding the constant.
+     */
+    public MemTemp materialize(long value, Vector<AsmInstr> instrs) {
+        MemTemp temp = live.get(value);
+        if (temp != null)
+            return temp;
+        temp = new MemTemp();
+        Vector<AsmInstr> seq = materialize(value, temp);
+        if (seq.size() > 1)
+            live.put(value, temp);
+        instrs.addAll(seq);
+        return temp;
+    }
+
+    /**
+     * Ends the current basic block: constants loaded so far are no longer
+     * reused.
+     */
+    public void endBlock() {
+        live.clear();
+    }
+
+    /**
+     * Returns the instructions loading a constant into a temporary.
+     *
+     * @param value The constant.
+     * @param temp  The temporary.
+     * @return The instructions.
+     */
+    public static Vector<AsmInstr> materialize(long value, MemTemp temp) {
+        Vector<AsmInstr> instrs = new Vector<AsmInstr>();
+        Vector<MemTemp> temps = new Vector<MemTemp>();
+        temps.add(temp);
+        // all but the first instruction modify the value loaded so far
+        for (String instr : sequence(value, true))
+            instrs.add(new AsmOPER(instr, instrs.isEmpty() ? null : temps, temps, null));
+        return instrs;
+    }
+
+    /**
+     * Returns the instructions loading a constant into a register (without
+     * using the constant pool).
+     *
+     * @param value    The constant.
+     * @param register The register.
+     * @return The instructions.
+     */
+    public static Vector<String> materialize(long value, int register) {
+        Vector<String> instrs = new Vector<String>();
+        for (String instr : sequence(value, false))
+            instrs.add(instr.replace("`d0", "$" + register).replace("`s0", "$" + register));
+        return instrs;
+    }
+
+    /**
+     * Returns the shortest sequence of instructions loading a constant into
+     * <code>`d0</code>.
+     *
+     * @param value The constant.
+     * @param pool  Whether the constant pool may be used.
+     * @return The sequence.
+     */
+    public static Vector<String> sequence(long value, boolean pool) {
+        Vector<String> best = wydes(value);
+        if (value < 0 && value >= -255) {
+            best = new Vector<String>();
+            best.add("NEG `d0,0," + (-value));
+            return best;
+        }
+
+        Vector<String> negated = wydes(-value);
+        if (negated.size() + 1 < best.size()) {
+            best = negated;
+            best.add("NEGU `d0,0,`s0");
+        }
+        Vector<String> complemented = wydes(~value);
+        if (complemented.size() + 1 < best.size()) {
+            best = complemented;
+            best.add("NOR `d0,`s0,0");
+        }
+
+        if (pool && best.size() > MAX_SEQUENCE) {
+            best = new Vector<String>();
+            best.add("LDO `d0," + poolLabel(value).name);
+        }
+        return best;
+    }
+
+    /** Returns the sequence of <code>SET*</code> and <code>OR*</code> instructions. */
+    private static Vector<String> wydes(long value) {
+        Vector<String> instrs = new Vector<String>();
+        for (int wyde = 0; wyde < 4; wyde++) {
+            long bits = (value >>> (16 * wyde)) & 0xFFFFL;
+            if (bits == 0)
+                continue;
+            instrs.add((instrs.isEmpty() ? "SET" + WYDES[wyde] + " `d0," : "OR" + WYDES[wyde] + " `d0,") + bits);
+        }
+        if (instrs.isEmpty())
+            instrs.add("SETL `d0,0");
+        return instrs;
+    }
+
+    /**
+     * Returns the label of a constant in the constant pool (adding it to the
+     * pool if necessary).
+     *
+     * @param value The constant.
+     * @return The label.
+     */
+    public static MemLabel poolLabel(long value) {
+        return CompilationContext.current().constants.computeIfAbsent(value, __ -> new MemLabel());
+    }
+
+    /**
+     * Returns all constants in the constant pool.
+     *
+     * @return The constants and their labels.
+     */
+    public static LinkedHashMap<Long, MemLabel> pool() {
+        return CompilationContext.current().constants;
+    }
+
+}
@@ -9,9 +9,35 @@ import prev23.data.asm.*;
 
 /**
  * Machine code generator for expressions.
+ *
+ * Instructions are selected by maximal munch: at every node the largest tile
+ * that matches is taken. Constants between 0 and 255 end up as immediate
+ * operands of arithmetic, logical and comparison instructions, and an
+ * address that is a sum of a base and a constant offset or of two registers
+ * ends up as the operands of a load or store.
  */
 public class ExprGenerator implements ImcVisitor<MemTemp, Vector<AsmInstr>> {
 
+    /** The materializer of constants. */
+    private final ConstMaterializer consts;
+
+    /**
+     * Constructs a new expression generator.
+     *
+     * @param consts The materializer of constants (shared within a basic block).
+     */
+    public ExprGenerator(ConstMaterializer consts) {
+        this.consts = consts;
+    }
+
+    /**
+     * Constructs a new expression generator with its own materializer of
+     * constants.
+     */
+    public ExprGenerator() {
+        this(new ConstMaterializer());
+    }
+
     @Override
     public MemTemp visit(ImcBINOP binop, Vector<AsmInstr> instrs) {
         Vector<MemTemp> uses = new Vector<>();
@@ -19,44 +45,90 @@ public class ExprGenerator implements ImcVisitor<MemTemp, Vector<AsmInstr>> {
         MemTemp ret = new MemTemp();
 
         defs.add(ret);
-        uses.add(binop.fstExpr.accept(this, instrs));
-        uses.add(binop.sndExpr.accept(this, instrs));
-
-        switch (binop.oper) {
-            case ADD -> { instrs.add(new AsmOPER("ADD `d0,`s0,`s1", uses, defs, null)); }
-            case SUB -> { instrs.add(new AsmOPER("SUB `d0,`s0,`s1", uses, defs, null)); }
-            case MUL -> { instrs.add(new AsmOPER("MUL `d0,`s0,`s1", uses, defs, null)); }
-            case DIV -> { instrs.add(new AsmOPER("DIV `d0,`s0,`s1", uses, defs, null)); }
-            case MOD -> { 
-                instrs.add(new AsmOPER("DIV `d0,`s0,`s1", uses, defs, null)); 
+
+        // constants are moved to the second operand if possible
+        ImcBINOP.Oper oper = binop.oper;
+        ImcExpr fstExpr = binop.fstExpr;
+        ImcExpr sndExpr = binop.sndExpr;
+        if (fstExpr instanceof ImcCONST && !(sndExpr instanceof ImcCONST) && swapped(oper) != null) {
+            oper = swapped(oper);
+            fstExpr = binop.sndExpr;
+            sndExpr = binop.fstExpr;
+        }
+
+        // multiplication, division and remainder by constants
+        if (sndExpr instanceof ImcCONST && (oper == ImcBINOP.Oper.MUL || oper == ImcBINOP.Oper.DIV || oper == ImcBINOP.Oper.MOD)) {
+            long value = ((ImcCONST) sndExpr).value;
+            MemTemp operand = fstExpr.accept(this, instrs);
+            MemTemp reduced = switch (oper) {
+                case MUL -> StrengthReducer.mul(operand, value, instrs);
+                case DIV -> StrengthReducer.div(operand, value, consts, instrs);
+                default -> StrengthReducer.mod(operand, value, consts, instrs);
+            };
+            if (reduced != null)
+                return reduced;
+            uses.add(operand);
+        }
+
+        // c - e
+        if (oper == ImcBINOP.Oper.SUB && isImm(fstExpr) && !(sndExpr instanceof ImcCONST)) {
+            uses.add(sndExpr.accept(this, instrs));
+            instrs.add(new AsmOPER("NEG `d0," + ((ImcCONST) fstExpr).value + ",`s0", uses, defs, null));
+            return ret;
+        }
+
+        if (uses.isEmpty())
+            uses.add(fstExpr.accept(this, instrs));
+
+        // a small constant is an immediate operand, a negative one of an addition or a subtraction is negated
+        String operand;
+        if ((oper == ImcBINOP.Oper.ADD || oper == ImcBINOP.Oper.SUB) && sndExpr instanceof ImcCONST
+                && isImm(-((ImcCONST) sndExpr).value)) {
+            oper = oper == ImcBINOP.Oper.ADD ? ImcBINOP.Oper.SUB : ImcBINOP.Oper.ADD;
+            operand = Long.toString(-((ImcCONST) sndExpr).value);
+        }
+        else if (isImm(sndExpr))
+            operand = Long.toString(((ImcCONST) sndExpr).value);
+        else {
+            uses.add(sndExpr.accept(this, instrs));
+            operand = "`s1";
+        }
+
+        switch (oper) {
+            case ADD -> { instrs.add(new AsmOPER("ADD `d0,`s0," + operand, uses, defs, null)); }
+            case SUB -> { instrs.add(new AsmOPER("SUB `d0,`s0," + operand, uses, defs, null)); }
+            case MUL -> { instrs.add(new AsmOPER("MUL `d0,`s0," + operand, uses, defs, null)); }
+            case DIV -> { instrs.add(new AsmOPER("DIV `d0,`s0," + operand, uses, defs, null)); }
+            case MOD -> {
+                instrs.add(new AsmOPER("DIV `d0,`s0," + operand, uses, defs, null));
                 instrs.add(new AsmOPER("GET `d0,rR", null, defs, null));
             }
 
-            case OR -> { instrs.add(new AsmOPER("OR `d0,`s0,`s1", uses, defs, null)); }
-            case AND -> { instrs.add(new AsmOPER("AND `d0,`s0,`s1", uses, defs, null)); }
+            case OR -> { instrs.add(new AsmOPER("OR `d0,`s0," + operand, uses, defs, null)); }
+            case AND -> { instrs.add(new AsmOPER("AND `d0,`s0," + operand, uses, defs, null)); }
 
-            case EQU -> { 
-                instrs.add(new AsmOPER("CMP `d0,`s0,`s1", uses, defs, null)); 
+            case EQU -> {
+                instrs.add(new AsmOPER("CMP `d0,`s0," + operand, uses, defs, null));
                 instrs.add(new AsmOPER("ZSZ `d0,`s0,1", defs, defs, null));
             }
-            case NEQ -> { 
-                instrs.add(new AsmOPER("CMP `d0,`s0,`s1", uses, defs, null)); 
+            case NEQ -> {
+                instrs.add(new AsmOPER("CMP `d0,`s0," + operand, uses, defs, null));
                 instrs.add(new AsmOPER("ZSNZ `d0,`s0,1", defs, defs, null));
             }
-            case LTH -> { 
-                instrs.add(new AsmOPER("CMP `d0,`s0,`s1", uses, defs, null)); 
+            case LTH -> {
+                instrs.add(new AsmOPER("CMP `d0,`s0," + operand, uses, defs, null));
                 instrs.add(new AsmOPER("ZSN `d0,`s0,1", defs, defs, null));
             }
-            case LEQ -> { 
-                instrs.add(new AsmOPER("CMP `d0,`s0,`s1", uses, defs, null)); 
+            case LEQ -> {
+                instrs.add(new AsmOPER("CMP `d0,`s0," + operand, uses, defs, null));
                 instrs.add(new AsmOPER("ZSNP `d0,`s0,1", defs, defs, null));
             }
-            case GTH -> { 
-                instrs.add(new AsmOPER("CMP `d0,`s0,`s1", uses, defs, null)); 
+            case GTH -> {
+                instrs.add(new AsmOPER("CMP `d0,`s0," + operand, uses, defs, null));
                 instrs.add(new AsmOPER("ZSP `d0,`s0,1", defs, defs, null));
             }
-            case GEQ -> { 
-                instrs.add(new AsmOPER("CMP `d0,`s0,`s1", uses, defs, null)); 
+            case GEQ -> {
+                instrs.add(new AsmOPER("CMP `d0,`s0," + operand, uses, defs, null));
                 instrs.add(new AsmOPER("ZSNN `d0,`s0,1", defs, defs, null));
             }
         };
@@ -81,7 +153,8 @@ public class ExprGenerator implements ImcVisitor<MemTemp, Vector<AsmInstr>> {
         }
 
         jumps.add(call.label);
-        instrs.add(new AsmOPER("PUSHJ $" + RegAll.NUM_REGISTERS + "," + call.label.name, uses, null, jumps));
+        // the arguments are passed in memory, the call itself does not use them
+        instrs.add(new AsmOPER("PUSHJ $" + RegAll.NUM_REGISTERS + "," + call.label.name, null, null, jumps));
 
         MemTemp ret = new MemTemp();
         defs.add(ret);
@@ -91,24 +164,7 @@ public class ExprGenerator implements ImcVisitor<MemTemp, Vector<AsmInstr>> {
 
     @Override
     public MemTemp visit(ImcCONST constant, Vector<AsmInstr> instrs) {
-        Vector<MemTemp> defs = new Vector<>();
-        MemTemp ret = new MemTemp();
-        long value = Math.abs(constant.value);
-
-        defs.add(ret);
-
-        instrs.add(new AsmOPER(String.format("SETL `d0,%d", value & 0x000000000000FFFFL), null, defs, null));
-        if((value & 0x00000000FFFF0000L) > 0)
-            instrs.add(new AsmOPER(String.format("INCML `d0,%d", ((value & 0x00000000FFFF0000L) >> 16)), defs, defs, null));
-        if((value & 0x0000FFFF00000000L) > 0)
-            instrs.add(new AsmOPER(String.format("INCMH `d0,%d", ((value & 0x0000FFFF00000000L) >> 32)), defs, defs, null));
-        if((value & 0xFFFF000000000000L) > 0)
-            instrs.add(new AsmOPER(String.format("INCH `d0,%d", ((value & 0xFFFF000000000000L) >> 48)), defs, defs, null));
-
-        if (constant.value < 0)
-            instrs.add(new AsmOPER("NEG `d0,0,`s0", defs, defs, null));
-
-        return ret;
+        return consts.materialize(constant.value, instrs);
     }
 
     @Override
@@ -118,9 +174,9 @@ public class ExprGenerator implements ImcVisitor<MemTemp, Vector<AsmInstr>> {
         MemTemp ret = new MemTemp();
 
         defs.add(ret);
-        uses.add(mem.addr.accept(this, instrs));
+        String address = address(mem.addr, uses, instrs);
 
-        instrs.add(new AsmOPER("LDO `d0,`s0,0", uses, defs, null));
+        instrs.add(new AsmOPER("LDO `d0," + address, uses, defs, null));
         return ret;
     }
 
@@ -142,16 +198,81 @@ public class ExprGenerator implements ImcVisitor<MemTemp, Vector<AsmInstr>> {
     @Override
     public MemTemp visit(ImcUNOP unop, Vector<AsmInstr> instrs) {
         Vector<MemTemp> uses = new Vector<>();
+        Vector<MemTemp> defs = new Vector<>();
+        MemTemp ret = new MemTemp();
 
-        MemTemp ret = unop.subExpr.accept(this, instrs);
-        uses.add(ret);
+        uses.add(unop.subExpr.accept(this, instrs));
+        defs.add(ret);
 
         switch(unop.oper) {
-            case NOT -> { instrs.add(new AsmOPER("XOR `d0,`s0,1", uses, uses, null)); }
-            case NEG -> { instrs.add(new AsmOPER("NEG `d0,0,`s0", uses, uses, null)); }
+            case NOT -> { instrs.add(new AsmOPER("XOR `d0,`s0,1", uses, defs, null)); }
+            case NEG -> { instrs.add(new AsmOPER("NEG `d0,0,`s0", uses, defs, null)); }
         }
 
         return ret;
     }
 
+    /**
+     * Generates the operands of a load or a store accessing an address.
+     *
+     * @param addr   The address.
+     * @param uses   The temporaries used by the load or the store (the base
+     *               and the index are appended).
+     * @param instrs The generated instructions.
+     * @return The operands <code>$Y,$Z</code> or <code>$Y,Z</code>.
+     */
+    public String address(ImcExpr addr, Vector<MemTemp> uses, Vector<AsmInstr> instrs) {
+        String base = "`s" + uses.size();
+        if (addr instanceof ImcBINOP binop) {
+            if (binop.oper == ImcBINOP.Oper.ADD && isImm(binop.sndExpr)) {
+                uses.add(binop.fstExpr.accept(this, instrs));
+                return base + "," + ((ImcCONST) binop.sndExpr).value;
+            }
+            if (binop.oper == ImcBINOP.Oper.ADD && isImm(binop.fstExpr)) {
+                uses.add(binop.sndExpr.accept(this, instrs));
+                return base + "," + ((ImcCONST) binop.fstExpr).value;
+            }
+            if (binop.oper == ImcBINOP.Oper.SUB && binop.sndExpr instanceof ImcCONST
+                    && isImm(-((ImcCONST) binop.sndExpr).value)) {
+                uses.add(binop.fstExpr.accept(this, instrs));
+                return base + "," + -((ImcCONST) binop.sndExpr).value;
+            }
+            if (binop.oper == ImcBINOP.Oper.ADD && !(binop.fstExpr instanceof ImcCONST)
+                    && !(binop.sndExpr instanceof ImcCONST)) {
+                uses.add(binop.fstExpr.accept(this, instrs));
+                uses.add(binop.sndExpr.accept(this, instrs));
+                return base + ",`s" + (uses.size() - 1);
+            }
+        }
+        uses.add(addr.accept(this, instrs));
+        return base + ",0";
+    }
+
+    /**
+     * Checks whether an expression is a constant that fits into an immediate
+     * operand.
+     */
+    static boolean isImm(ImcExpr expr) {
+        return expr instanceof ImcCONST && isImm(((ImcCONST) expr).value);
+    }
+
+    static boolean isImm(long value) {
+        return value >= 0 && value < 256;
+    }
+
+    /**
+     * Returns the operator yielding the same result if the operands are
+     * swapped (or {@code null} if there is none).
+     */
+    static ImcBINOP.Oper swapped(ImcBINOP.Oper oper) {
+        return switch (oper) {
+            case ADD, MUL, AND, OR, EQU, NEQ -> oper;
+            case LTH -> ImcBINOP.Oper.GTH;
+            case GTH -> ImcBINOP.Oper.LTH;
+            case LEQ -> ImcBINOP.Oper.GEQ;
+            case GEQ -> ImcBINOP.Oper.LEQ;
+            default -> null;
+        };
+    }
+
 }
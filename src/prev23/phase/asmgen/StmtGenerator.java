@@ -6,32 +6,105 @@ import prev23.data.imc.code.stmt.*;
 import prev23.data.imc.visitor.*;
 import prev23.data.mem.*;
 import prev23.data.asm.*;
+import prev23.data.lin.*;
 
 /**
  * Machine code generator for statements.
+ *
+ * A tail call stores its arguments over the arguments of the function, drops
+ * the frame (as the epilogue does, but without storing the return value) and
+ * jumps to the function called, which then returns to the caller's caller.
  */
 public class StmtGenerator implements ImcVisitor<Vector<AsmInstr>, Object> {
 
+    /** The materializer of constants (shared by all statements of a function). */
+    private final ConstMaterializer consts = new ConstMaterializer();
+
+    /** The code chunk of the function. */
+    private final LinCodeChunk codeChunk;
+
+    /**
+     * Constructs a new machine code generator for statements.
+     *
+     * @param codeChunk The code chunk of the function.
+     */
+    public StmtGenerator(LinCodeChunk codeChunk) {
+        this.codeChunk = codeChunk;
+    }
+
     @Override
     public Vector<AsmInstr> visit(ImcCJUMP cjump, Object object) {
         Vector<AsmInstr> instrs = new Vector<>();
         Vector<MemLabel> jumps = new Vector<>();
         Vector<MemTemp> uses = new Vector<>();
 
-        MemTemp cond = cjump.cond.accept(new ExprGenerator(), instrs);
-        uses.add(cond);
-
         jumps.add(cjump.posLabel);
         jumps.add(cjump.negLabel);
 
-        instrs.add(new AsmOPER("BP `s0," + cjump.posLabel.name, uses, null, jumps));
+        // comparisons are fused with the branch
+        if (cjump.cond instanceof ImcBINOP) {
+            ImcBINOP binop = (ImcBINOP) cjump.cond;
+            ImcBINOP.Oper oper = binop.oper;
+            ImcExpr fstExpr = binop.fstExpr;
+            ImcExpr sndExpr = binop.sndExpr;
+            if (fstExpr instanceof ImcCONST && !(sndExpr instanceof ImcCONST) && ExprGenerator.swapped(oper) != null) {
+                oper = ExprGenerator.swapped(oper);
+                fstExpr = binop.sndExpr;
+                sndExpr = binop.fstExpr;
+            }
+            String branch = switch (oper) {
+                case EQU -> "BZ";
+                case NEQ -> "BNZ";
+                case LTH -> "BN";
+                case GEQ -> "BNN";
+                case GTH -> "BP";
+                case LEQ -> "BNP";
+                default -> null;
+            };
+            if (branch != null) {
+                ExprGenerator generator = new ExprGenerator(consts);
+                MemTemp fst = fstExpr.accept(generator, instrs);
+                if (sndExpr instanceof ImcCONST && ((ImcCONST) sndExpr).value == 0) {
+                    // the operand itself is tested
+                    uses.add(fst);
+                }
+                else {
+                    Vector<MemTemp> operands = new Vector<>();
+                    Vector<MemTemp> defs = new Vector<>();
+                    operands.add(fst);
+                    String operand;
+                    if (ExprGenerator.isImm(sndExpr))
+                        operand = Long.toString(((ImcCONST) sndExpr).value);
+                    else {
+                        operands.add(sndExpr.accept(generator, instrs));
+                        operand = "`s1";
+                    }
+                    MemTemp cmp = new MemTemp();
+                    defs.add(cmp);
+                    instrs.add(new AsmOPER("CMP `d0,`s0," + operand, operands, defs, null));
+                    uses.add(cmp);
+                }
+                instrs.add(new AsmOPER(branch + " `s0," + cjump.posLabel.name, uses, null, jumps));
+                return instrs;
+            }
+        }
+
+        // a negated condition is tested for zero
+        if (cjump.cond instanceof ImcUNOP && ((ImcUNOP) cjump.cond).oper == ImcUNOP.Oper.NOT) {
+            uses.add(((ImcUNOP) cjump.cond).subExpr.accept(new ExprGenerator(consts), instrs));
+            instrs.add(new AsmOPER("BZ `s0," + cjump.posLabel.name, uses, null, jumps));
+            return instrs;
+        }
+
+        uses.add(cjump.cond.accept(new ExprGenerator(consts), instrs));
+        instrs.add(new AsmOPER("BNZ `s0," + cjump.posLabel.name, uses, null, jumps));
         return instrs;
     }
 
     @Override
     public Vector<AsmInstr> visit(ImcESTMT estmt, Object object) {
         Vector<AsmInstr> instrs = new Vector<>();
-        estmt.expr.accept(new ExprGenerator(), instrs);
+        estmt.expr.accept(new ExprGenerator(consts), instrs);
         return instrs;
     }
 
@@ -49,6 +122,7 @@ public class StmtGenerator implements ImcVisitor<Vector<AsmInstr>, Object> {
     public Vector<AsmInstr> visit(ImcLABEL label, Object object) {
         Vector<AsmInstr> instrs = new Vector<>();
         instrs.add(new AsmLABEL(label.label));
+        consts.endBlock();
         return instrs;
     }
 
@@ -58,22 +132,84 @@ public class StmtGenerator implements ImcVisitor<Vector<AsmInstr>, Object> {
         Vector<MemTemp> uses = new Vector<>();
         Vector<MemTemp> defs = new Vector<>();
 
-        MemTemp src = move.src.accept(new ExprGenerator(), instrs);
+        ExprGenerator generator = new ExprGenerator(consts);
+
+        if (move.src instanceof ImcCALL call && codeChunk.isTailCall(call))
+            return tailCall(call, generator);
 
         if (move.dst instanceof ImcMEM) {
             ImcMEM mem = (ImcMEM) move.dst;
-            MemTemp tmp = mem.addr.accept(new ExprGenerator(), instrs);
-            uses.add(src);
-            uses.add(tmp);
-            instrs.add(new AsmOPER("STO `s0,`s1,0", uses, null, null));
+            // a small constant is stored directly
+            if (ExprGenerator.isImm(move.src)) {
+                String address = generator.address(mem.addr, uses, instrs);
+                instrs.add(new AsmOPER("STCO " + ((ImcCONST) move.src).value + "," + address, uses, null, null));
+                return instrs;
+            }
+            uses.add(move.src.accept(generator, instrs));
+            String address = generator.address(mem.addr, uses, instrs);
+            instrs.add(new AsmOPER("STO `s0," + address, uses, null, null));
             return instrs;
         }
 
-        MemTemp dst = move.dst.accept(new ExprGenerator(), instrs);
+        MemTemp dst = move.dst.accept(generator, instrs);
+        int first = instrs.size();
+        MemTemp src = move.src.accept(generator, instrs);
+
+        // the last instruction computing the source defines the destination directly
+        if (!(move.src instanceof ImcTEMP) && instrs.size() > first && instrs.lastElement() instanceof AsmOPER last
+                && last.defs().size() == 1 && last.defs().get(0) == src && !last.uses().contains(src)) {
+            boolean retarget = true;
+            for (int i = first; i < instrs.size() - 1; i++)
+                retarget &= !instrs.get(i).uses().contains(src) && !instrs.get(i).defs().contains(src);
+            if (retarget) {
+                defs.add(dst);
+                instrs.set(instrs.size() - 1, new AsmOPER(last.instr(), last.uses(), defs, last.jumps()));
+                return instrs;
+            }
+        }
+
         uses.add(src);
         defs.add(dst);
-        instrs.add(new AsmOPER("ADD `d0,`s0,0", uses, defs, null));
+        instrs.add(new AsmMOVE("ADD `d0,`s0,0", uses, defs));
+        return instrs;
+    }
+
+    /** Generates a tail call. */
+    private Vector<AsmInstr> tailCall(ImcCALL call, ExprGenerator generator) {
+        Vector<AsmInstr> instrs = new Vector<>();
+        Vector<MemTemp> args = new Vector<>();
+        for (ImcExpr arg : call.args)
+            args.add(arg.accept(generator, instrs));
+        for (int i = 0; i < call.args.size(); i++) {
+            Vector<MemTemp> uses = new Vector<>();
+            uses.add(args.get(i));
+            instrs.add(new AsmOPER("STO `s0,$253," + call.offs.get(i), uses, null, null));
+        }
+
+        // the old FP and the return address are stored below the local variables
+        MemTemp oldFP = new MemTemp();
+        MemTemp retAddr = new MemTemp();
+        long locsSize = codeChunk.frame.locsSize + 8;
+        if (locsSize < 256)
+            instrs.add(new AsmOPER("SUB `d0,$253," + locsSize, null, temps(oldFP), null));
+        else
+            instrs.add(new AsmOPER("SUB `d0,$253,`s0", temps(consts.materialize(locsSize, instrs)), temps(oldFP), null));
+        instrs.add(new AsmOPER("SUB `d0,`s0,8", temps(oldFP), temps(retAddr), null));
+        instrs.add(new AsmOPER("LDO `d0,`s0,0", temps(retAddr), temps(retAddr), null));
+        instrs.add(new AsmOPER("PUT rJ,`s0", temps(retAddr), null, null));
+        instrs.add(new AsmOPER("OR $254,$253,0", null, null, null));
+        instrs.add(new AsmOPER("LDO $253,`s0,0", temps(oldFP), null, null));
+
+        // the function called returns to the caller's caller (the code after the call is never reached)
+        Vector<MemLabel> jumps = new Vector<>();
+        jumps.add(call.label);
+        instrs.add(new AsmOPER("JMP " + call.label.name, null, null, jumps));
+        consts.endBlock();
         return instrs;
     }
 
+    private static Vector<MemTemp> temps(MemTemp... temps) {
+        return new Vector<>(Arrays.asList(temps));
+    }
+
 }
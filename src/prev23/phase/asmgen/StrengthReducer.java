@@ -0,0 +1,190 @@
+package prev23.phase.asmgen;
+
+import java.math.*;
+import java.util.*;
+import prev23.data.mem.*;
+import prev23.data.asm.*;
+
+/**
+ * Strength reduction of multiplication, division and remainder by constants.
+ *
+ * Multiplication is replaced by shifts and by <code>2ADDU</code> ...
+ * <code>16ADDU</code> and additions or subtractions, division by a power of
+ * two by an arithmetic right shift, remainder by a power of two by a mask, and
+ * division and remainder by other positive constants by a multiplication with
+ * the reciprocal (the high part of the product is taken from <code>rH</code>).
+ * All sequences yield the same results as <code>MUL</code> and
+ * <code>DIV</code> (i.e., division rounds towards negative infinity and the
+ * remainder has the sign of the divisor) for all values of the dividend.
+ *
+ * Each method returns {@code null} if the operation is not worth reducing.
+ */
+public class StrengthReducer {
+
+    /** The maximal number of instructions replacing a multiplication. */
+    private static final int MAX_MUL_INSTRS = 4;
+
+    /** The multipliers of <code>2ADDU</code>, <code>4ADDU</code>, ... */
+    private static final long[] ADDU_FACTORS = { 3, 5, 9, 17 };
+
+    /**
+     * Generates the multiplication of a temporary by a constant.
+     *
+     * @param x      The temporary.
+     * @param c      The constant.
+     * @param instrs The generated instructions.
+     * @return The temporary containing the product or {@code null}.
+     */
+    public static MemTemp mul(MemTemp x, long c, Vector<AsmInstr> instrs) {
+        if (c == 0) {
+            MemTemp ret = new MemTemp();
+            instrs.add(new AsmOPER("SETL `d0,0", null, temps(ret), null));
+            return ret;
+        }
+        if (c == Long.MIN_VALUE)
+            return oper("SL `d0,`s0,63", x, instrs);
+
+        Vector<AsmInstr> mulInstrs = new Vector<AsmInstr>();
+        MemTemp ret = mulPositive(x, Math.abs(c), mulInstrs);
+        if (ret == null || mulInstrs.size() + (c < 0 ? 1 : 0) > MAX_MUL_INSTRS)
+            return null;
+        instrs.addAll(mulInstrs);
+
+        if (ret == x)
+            ret = oper("ADD `d0,`s0,0", x, instrs);
+        if (c < 0)
+            ret = oper("NEG `d0,0,`s0", ret, instrs);
+        return ret;
+    }
+
+    /**
+     * Generates the multiplication by a positive constant as a sequence of
+     * shifts, scaled additions, additions and subtractions.
+     */
+    private static MemTemp mulPositive(MemTemp x, long c, Vector<AsmInstr> instrs) {
+        int shift = Long.numberOfTrailingZeros(c);
+        long odd = c >>> shift;
+        MemTemp ret = x;
+
+        if (odd != 1) {
+            ret = null;
+            // x * (2^k + 1)
+            for (long fst : ADDU_FACTORS) {
+                if (ret == null && odd == fst)
+                    ret = addu(x, fst, instrs);
+            }
+            // x * (2^k + 1) * (2^l + 1)
+            for (long fst : ADDU_FACTORS) {
+                for (long snd : ADDU_FACTORS) {
+                    if (ret == null && odd == fst * snd)
+                        ret = addu(addu(x, fst, instrs), snd, instrs);
+                }
+            }
+            // x * 2^k + x and x * 2^k - x
+            if (ret == null && Long.bitCount(odd - 1) == 1) {
+                MemTemp shifted = oper("SL `d0,`s0," + Long.numberOfTrailingZeros(odd - 1), x, instrs);
+                ret = new MemTemp();
+                instrs.add(new AsmOPER("ADD `d0,`s0,`s1", temps(shifted, x), temps(ret), null));
+            }
+            if (ret == null && odd != Long.MAX_VALUE && Long.bitCount(odd + 1) == 1) {
+                MemTemp shifted = oper("SL `d0,`s0," + Long.numberOfTrailingZeros(odd + 1), x, instrs);
+                ret = new MemTemp();
+                instrs.add(new AsmOPER("SUB `d0,`s0,`s1", temps(shifted, x), temps(ret), null));
+            }
+            if (ret == null)
+                return null;
+        }
+        if (shift > 0)
+            ret = oper("SL `d0,`s0," + shift, ret, instrs);
+        return ret;
+    }
+
+    /** Generates <code>2ADDU</code> ... <code>16ADDU</code> multiplying by 3 ... 17. */
+    private static MemTemp addu(MemTemp x, long factor, Vector<AsmInstr> instrs) {
+        MemTemp ret = new MemTemp();
+        instrs.add(new AsmOPER((factor - 1) + "ADDU `d0,`s0,`s1", temps(x, x), temps(ret), null));
+        return ret;
+    }
+
+    /**
+     * Generates the division of a temporary by a constant.
+     *
+     * @param x      The temporary (the dividend).
+     * @param d      The constant (the divisor).
+     * @param consts The materializer of constants.
+     * @param instrs The generated instructions.
+     * @return The temporary containing the quotient or {@code null}.
+     */
+    public static MemTemp div(MemTemp x, long d, ConstMaterializer consts, Vector<AsmInstr> instrs) {
+        if (d <= 0)
+            return null;
+        if (d == 1)
+            return oper("ADD `d0,`s0,0", x, instrs);
+        if (Long.bitCount(d) == 1)
+            return oper("SR `d0,`s0," + Long.numberOfTrailingZeros(d), x, instrs);
+
+        // floor(x / d) = ~(~x / d) for a negative x, where ~x is non-negative
+        MemTemp sign = oper("SR `d0,`s0,63", x, instrs);
+        MemTemp abs = new MemTemp();
+        instrs.add(new AsmOPER("XOR `d0,`s0,`s1", temps(x, sign), temps(abs), null));
+
+        // abs < 2^63, hence abs / d = (abs * m) >> (64 + s) where 2^s < d < 2^(s+1)
+        int s = 63 - Long.numberOfLeadingZeros(d);
+        BigInteger pow = BigInteger.ONE.shiftLeft(64 + s);
+        BigInteger m = pow.add(BigInteger.valueOf(d - 1)).divide(BigInteger.valueOf(d));
+        MemTemp magic = consts.materialize(m.longValue(), instrs);
+
+        instrs.add(new AsmOPER("MULU `d0,`s0,`s1", temps(abs, magic), temps(new MemTemp()), null));
+        MemTemp high = new MemTemp();
+        instrs.add(new AsmOPER("GET `d0,rH", null, temps(high), null));
+        MemTemp quot = s == 0 ? high : oper("SRU `d0,`s0," + s, high, instrs);
+
+        MemTemp ret = new MemTemp();
+        instrs.add(new AsmOPER("XOR `d0,`s0,`s1", temps(quot, sign), temps(ret), null));
+        return ret;
+    }
+
+    /**
+     * Generates the remainder of the division of a temporary by a constant.
+     *
+     * @param x      The temporary (the dividend).
+     * @param d      The constant (the divisor).
+     * @param consts The materializer of constants.
+     * @param instrs The generated instructions.
+     * @return The temporary containing the remainder or {@code null}.
+     */
+    public static MemTemp mod(MemTemp x, long d, ConstMaterializer consts, Vector<AsmInstr> instrs) {
+        if (d <= 0)
+            return null;
+        if (Long.bitCount(d) == 1) {
+            if (d - 1 < 256)
+                return oper("AND `d0,`s0," + (d - 1), x, instrs);
+            MemTemp mask = consts.materialize(d - 1, instrs);
+            MemTemp ret = new MemTemp();
+            instrs.add(new AsmOPER("AND `d0,`s0,`s1", temps(x, mask), temps(ret), null));
+            return ret;
+        }
+
+        MemTemp quot = div(x, d, consts, instrs);
+        MemTemp prod = mul(quot, d, instrs);
+        if (prod == null) {
+            MemTemp divisor = consts.materialize(d, instrs);
+            prod = new MemTemp();
+            instrs.add(new AsmOPER("MUL `d0,`s0,`s1", temps(quot, divisor), temps(prod), null));
+        }
+        MemTemp ret = new MemTemp();
+        instrs.add(new AsmOPER("SUB `d0,`s0,`s1", temps(x, prod), temps(ret), null));
+        return ret;
+    }
+
+    private static MemTemp oper(String instr, MemTemp src, Vector<AsmInstr> instrs) {
+        MemTemp ret = new MemTemp();
+        instrs.add(new AsmOPER(instr, temps(src), temps(ret), null));
+        return ret;
+    }
+
+    private static Vector<MemTemp> temps(MemTemp... temps) {
+        return new Vector<MemTemp>(Arrays.asList(temps));
+    }
+
+}
@@ -43,10 +43,10 @@ public class CodeGenerator extends AstNullVisitor<Object, Stack<MemFrame>> {
 			case BOOL -> new ImcCONST(atomExpr.value.equals("true") ? 1 : 0);
 			case PTR ->	new ImcCONST(0);
 			case VOID -> new ImcCONST(0);
-			case STR -> new ImcNAME(Memory.strings.get(atomExpr).label);
+			case STR -> new ImcNAME(Memory.strings().get(atomExpr).label);
 		};
 
-		ImcGen.exprImc.put(atomExpr, ret);
+		ImcGen.exprImc().put(atomExpr, ret);
 		return ret;
 	}
 
@@ -56,8 +56,8 @@ public class CodeGenerator extends AstNullVisitor<Object, Stack<MemFrame>> {
 		pfxExpr.expr.accept(this, stack);
 
 		if (pfxExpr.oper == AstPfxExpr.Oper.PTR) {
-			ImcMEM mem = (ImcMEM)ImcGen.exprImc.get(pfxExpr.expr);
-			ImcGen.exprImc.put(pfxExpr, mem.addr);
+			ImcMEM mem = (ImcMEM)ImcGen.exprImc().get(pfxExpr.expr);
+			ImcGen.exprImc().put(pfxExpr, mem.addr);
 			return mem.addr;
 		}
 
@@ -69,11 +69,11 @@ public class CodeGenerator extends AstNullVisitor<Object, Stack<MemFrame>> {
 
 		ImcExpr ret = null;
 		if (oper != null)
-			ret = new ImcUNOP(oper, ImcGen.exprImc.get(pfxExpr.expr));
+			ret = new ImcUNOP(oper, ImcGen.exprImc().get(pfxExpr.expr));
 		else
-			ret = ImcGen.exprImc.get(pfxExpr.expr);
+			ret = ImcGen.exprImc().get(pfxExpr.expr);
 
-		ImcGen.exprImc.put(pfxExpr, ret);
+		ImcGen.exprImc().put(pfxExpr, ret);
         return ret;
     }
 
@@ -100,8 +100,8 @@ public class CodeGenerator extends AstNullVisitor<Object, Stack<MemFrame>> {
 			default -> null;
 		};
 
-		ImcBINOP ret = new ImcBINOP(oper, ImcGen.exprImc.get(binExpr.fstExpr), ImcGen.exprImc.get(binExpr.sndExpr));
-		ImcGen.exprImc.put(binExpr, ret);
+		ImcBINOP ret = new ImcBINOP(oper, ImcGen.exprImc().get(binExpr.fstExpr), ImcGen.exprImc().get(binExpr.sndExpr));
+		ImcGen.exprImc().put(binExpr, ret);
 		return ret;
 	}
 
@@ -111,9 +111,9 @@ public class CodeGenerator extends AstNullVisitor<Object, Stack<MemFrame>> {
 		sfxExpr.expr.accept(this, stack);
 
 		if(sfxExpr.oper == AstSfxExpr.Oper.PTR) {
-			ImcExpr mem = ImcGen.exprImc.get(sfxExpr.expr);
+			ImcExpr mem = ImcGen.exprImc().get(sfxExpr.expr);
 			ImcMEM ret = new ImcMEM(mem);
-			ImcGen.exprImc.put(sfxExpr, ret);
+			ImcGen.exprImc().put(sfxExpr, ret);
 			return ret;
 		}
 
@@ -123,7 +123,7 @@ public class CodeGenerator extends AstNullVisitor<Object, Stack<MemFrame>> {
 	// Ex7
 	@Override
 	public Object visit(AstNewExpr newExpr, Stack<MemFrame> stack) {
-		SemType type = SemAn.isType.get(newExpr.type).actualType();
+		SemType type = SemAn.isType().get(newExpr.type).actualType();
 		ImcExpr size = new ImcCONST(type.size());
 
 		Vector<Long> offs = new Vector<>();
@@ -132,7 +132,7 @@ public class CodeGenerator extends AstNullVisitor<Object, Stack<MemFrame>> {
 		args.add(size);
 
 		ImcCALL call = new ImcCALL(new MemLabel("new"), offs, args);
-		ImcGen.exprImc.put(newExpr, call);
+		ImcGen.exprImc().put(newExpr, call);
 		return call;
 	}
 
@@ -141,25 +141,35 @@ public class CodeGenerator extends AstNullVisitor<Object, Stack<MemFrame>> {
 	public Object visit(AstDelExpr delExpr, Stack<MemFrame> stack) {
 		delExpr.expr.accept(this, stack);
 
-		ImcExpr mem = ImcGen.exprImc.get(delExpr.expr);
+		ImcExpr mem = ImcGen.exprImc().get(delExpr.expr);
 		Vector<Long> offs = new Vector<>();
 		Vector<ImcExpr> args = new Vector<>();
 		offs.add(8L);
 		args.add(mem);
 
 		ImcCALL call = new ImcCALL(new MemLabel("delete"), offs, args);
-		ImcGen.exprImc.put(delExpr, call);
+		ImcGen.exprImc().put(delExpr, call);
 		return call;
 	}
 
 	// Ex9
 	@Override
 	public Object visit(AstNameExpr nameExpr, Stack<MemFrame> stack) {
-		AstMemDecl decl = (AstMemDecl)SemAn.declaredAt.get(nameExpr);
-		MemAccess mem = Memory.accesses.get(decl);
+		AstMemDecl decl = (AstMemDecl)SemAn.declaredAt().get(nameExpr);
+		MemAccess mem = Memory.accesses().get(decl);
 
 		ImcExpr ret = null;
-		if (mem instanceof MemAbsAccess) {
+		if (mem instanceof MemSplitAccess) {
+			// only its components are ever accessed
+			return null;
+		}
+		else if (mem instanceof MemTempAccess) {
+			MemTempAccess temp = (MemTempAccess)mem;
+			ret = new ImcTEMP(temp.temp);
+			ImcGen.exprImc().put(nameExpr, ret);
+			return ret;
+		}
+		else if (mem instanceof MemAbsAccess) {
 			MemAbsAccess abs = (MemAbsAccess)mem;
 			ret = new ImcNAME(abs.label);
 		}
@@ -176,34 +186,53 @@ public class CodeGenerator extends AstNullVisitor<Object, Stack<MemFrame>> {
 		}
 
 		ret = new ImcMEM(ret);
-		ImcGen.exprImc.put(nameExpr, ret);
+		ImcGen.exprImc().put(nameExpr, ret);
 		return ret;
 	}
 
 	// Ex10
 	@Override
 	public Object visit(AstArrExpr arrExpr, Stack<MemFrame> stack) {
+		if (split(arrExpr))
+			return component(arrExpr);
+
 		arrExpr.arr.accept(this, stack);
 		arrExpr.idx.accept(this, stack);
 
-		SemType type = ((SemArr)SemAn.ofType.get(arrExpr.arr).actualType()).elemType;
+		SemType type = ((SemArr)SemAn.ofType().get(arrExpr.arr).actualType()).elemType;
 		ImcCONST typeSize = new ImcCONST(type.size());
-		ImcBINOP arrOffset = new ImcBINOP(ImcBINOP.Oper.MUL, ImcGen.exprImc.get(arrExpr.idx), typeSize);
-		ImcMEM arrMem = (ImcMEM)ImcGen.exprImc.get(arrExpr.arr);
+		ImcBINOP arrOffset = new ImcBINOP(ImcBINOP.Oper.MUL, ImcGen.exprImc().get(arrExpr.idx), typeSize);
+		ImcMEM arrMem = (ImcMEM)ImcGen.exprImc().get(arrExpr.arr);
 		ImcBINOP arrAddress = new ImcBINOP(ImcBINOP.Oper.ADD, arrMem.addr, arrOffset);
 
 		ImcMEM mem = new ImcMEM(arrAddress);
-		ImcGen.exprImc.put(arrExpr, mem);
+		ImcGen.exprImc().put(arrExpr, mem);
 		return mem;
 	}
 
 	// Ex11
 	@Override
 	public Object visit(AstRecExpr recExpr, Stack<MemFrame> stack) {
+		if (split(recExpr))
+			return component(recExpr);
+
 		recExpr.rec.accept(this, stack);
 
-		SemRec rec = (SemRec)SemAn.ofType.get(recExpr.rec).actualType();
-		SymbTable table = TypeResolver.recDeclares.get(rec);
+		MemRelAccess mem = compAccess(recExpr);
+		ImcCONST compOffset = new ImcCONST(mem.offset);
+
+		ImcMEM recMem = (ImcMEM)ImcGen.exprImc().get(recExpr.rec);
+		ImcExpr compAddress = new ImcBINOP(ImcBINOP.Oper.ADD, recMem.addr, compOffset);
+		ImcMEM compMem = new ImcMEM(compAddress);
+
+		ImcGen.exprImc().put(recExpr, compMem);
+		return compMem;
+	}
+
+	/** Returns the access to the component a record expression selects. */
+	private static MemRelAccess compAccess(AstRecExpr recExpr) {
+		SemRec rec = (SemRec)SemAn.ofType().get(recExpr.rec).actualType();
+		SymbTable table = TypeResolver.recDeclares().get(rec);
 
 		AstCmpDecl decl = null;
 		try {
@@ -211,16 +240,50 @@ public class CodeGenerator extends AstNullVisitor<Object, Stack<MemFrame>> {
 		} catch (CannotFndNameException e) {
 			throw new Report.Error(recExpr, "Imc error: RecExpr name not found!");
 		}
+		return (MemRelAccess)Memory.accesses().get(decl);
+	}
 
-		MemRelAccess mem = (MemRelAccess)Memory.accesses.get(decl);
-		ImcCONST compOffset = new ImcCONST(mem.offset);
+	/** Checks whether a component selection selects a component of a split variable. */
+	private static boolean split(AstExpr expr) {
+		while (true) {
+			if (expr instanceof AstArrExpr arrExpr)
+				expr = arrExpr.arr;
+			else if (expr instanceof AstRecExpr recExpr)
+				expr = recExpr.rec;
+			else
+				break;
+		}
+		return expr instanceof AstNameExpr nameExpr && SemAn.declaredAt().get(nameExpr) instanceof AstMemDecl decl
+				&& Memory.accesses().get(decl) instanceof MemSplitAccess;
+	}
 
-		ImcMEM recMem = (ImcMEM)ImcGen.exprImc.get(recExpr.rec);
-		ImcExpr compAddress = new ImcBINOP(ImcBINOP.Oper.ADD, recMem.addr, compOffset);
-		ImcMEM compMem = new ImcMEM(compAddress);
+	/**
+	 * Generates the code of a component of a split variable: the temporary
+	 * variable holding it if it is scalar (an aggregate component is only
+	 * selected from).
+	 */
+	private static ImcExpr component(AstExpr expr) {
+		long offset = 0;
+		AstExpr root = expr;
+		while (!(root instanceof AstNameExpr)) {
+			if (root instanceof AstArrExpr arrExpr) {
+				SemType elemType = ((SemArr)SemAn.ofType().get(arrExpr.arr).actualType()).elemType;
+				offset += EscapeAnalyzer.index(arrExpr.idx) * elemType.size();
+				root = arrExpr.arr;
+			}
+			else {
+				offset += compAccess((AstRecExpr)root).offset;
+				root = ((AstRecExpr)root).rec;
+			}
+		}
+		SemType type = SemAn.ofType().get(expr).actualType();
+		if (type instanceof SemRec || type instanceof SemArr)
+			return null;
 
-		ImcGen.exprImc.put(recExpr, compMem);
-		return compMem;
+		MemSplitAccess split = (MemSplitAccess)Memory.accesses().get((AstMemDecl)SemAn.declaredAt().get((AstNameExpr)root));
+		ImcTEMP ret = new ImcTEMP(split.temps.get((int)(offset / 8)));
+		ImcGen.exprImc().put(expr, ret);
+		return ret;
 	}
 
 	// Ex12
@@ -229,8 +292,8 @@ public class CodeGenerator extends AstNullVisitor<Object, Stack<MemFrame>> {
 		if(callExpr.args != null)
 			callExpr.args.accept(this, stack);
 		
-		AstFunDecl funDecl = (AstFunDecl)SemAn.declaredAt.get(callExpr);
-		MemFrame funFrame = Memory.frames.get(funDecl);
+		AstFunDecl funDecl = (AstFunDecl)SemAn.declaredAt().get(callExpr);
+		MemFrame funFrame = Memory.frames().get(funDecl);
 
 		Vector<Long> offs = new Vector<>();
 		Vector<ImcExpr> args = new Vector<>();
@@ -252,15 +315,15 @@ public class CodeGenerator extends AstNullVisitor<Object, Stack<MemFrame>> {
 		if(callExpr.args != null) {
 			long offset = 8;
 			for(AstExpr arg : callExpr.args) {
-				SemType type = SemAn.ofType.get(arg);
+				SemType type = SemAn.ofType().get(arg);
 				offs.add(offset);
-				args.add(ImcGen.exprImc.get(arg));
+				args.add(ImcGen.exprImc().get(arg));
 				offset += type.size();
 			}
 		}
 
 		ImcCALL call = new ImcCALL(funFrame.label, offs, args);
-		ImcGen.exprImc.put(callExpr, call);
+		ImcGen.exprImc().put(callExpr, call);
 		return call;
 	}
 
@@ -270,14 +333,14 @@ public class CodeGenerator extends AstNullVisitor<Object, Stack<MemFrame>> {
 		castExpr.type.accept(this, stack);
 		castExpr.expr.accept(this, stack);
 
-		SemType type = SemAn.isType.get(castExpr.type).actualType();
-		ImcExpr expr = ImcGen.exprImc.get(castExpr.expr);
+		SemType type = SemAn.isType().get(castExpr.type).actualType();
+		ImcExpr expr = ImcGen.exprImc().get(castExpr.expr);
 
 		if(type instanceof SemChar) {
 			expr = new ImcBINOP(ImcBINOP.Oper.MOD, expr, new ImcCONST(256));
 		}
 
-		ImcGen.exprImc.put(castExpr, expr);
+		ImcGen.exprImc().put(castExpr, expr);
 		return expr;
 	}
 
@@ -286,9 +349,9 @@ public class CodeGenerator extends AstNullVisitor<Object, Stack<MemFrame>> {
 	@Override
 	public Object visit(AstExprStmt exprStmt, Stack<MemFrame> stack) {
 		exprStmt.expr.accept(this, stack);
-		ImcExpr expr = ImcGen.exprImc.get(exprStmt.expr);
+		ImcExpr expr = ImcGen.exprImc().get(exprStmt.expr);
 		ImcStmt exprImc = new ImcESTMT(expr);
-		ImcGen.stmtImc.put(exprStmt, exprImc);
+		ImcGen.stmtImc().put(exprStmt, exprImc);
 		return exprImc;
 	}
 
@@ -298,11 +361,11 @@ public class CodeGenerator extends AstNullVisitor<Object, Stack<MemFrame>> {
 		assignStmt.dst.accept(this, stack);
 		assignStmt.src.accept(this, stack);
 
-		ImcExpr dst = ImcGen.exprImc.get(assignStmt.dst);
-		ImcExpr src = ImcGen.exprImc.get(assignStmt.src);
+		ImcExpr dst = ImcGen.exprImc().get(assignStmt.dst);
+		ImcExpr src = ImcGen.exprImc().get(assignStmt.src);
 
 		ImcStmt move = new ImcMOVE(dst, src);
-		ImcGen.stmtImc.put(assignStmt, move);
+		ImcGen.stmtImc().put(assignStmt, move);
 		return move;
 	}
 
@@ -321,18 +384,18 @@ public class CodeGenerator extends AstNullVisitor<Object, Stack<MemFrame>> {
 		MemLabel fls = new MemLabel();
 		MemLabel end = new MemLabel();
 
-		stmts.add(new ImcCJUMP(ImcGen.exprImc.get(ifStmt.cond), tru, fls));
+		stmts.addAll(new CondGenerator().translate(ifStmt.cond, tru, fls));
 		stmts.add(new ImcLABEL(tru));
-		stmts.add(ImcGen.stmtImc.get(ifStmt.thenStmt));
+		stmts.add(ImcGen.stmtImc().get(ifStmt.thenStmt));
 		stmts.add(new ImcJUMP(end));
 
 		stmts.add(new ImcLABEL(fls));
 		if(ifStmt.elseStmt != null)
-			stmts.add(ImcGen.stmtImc.get(ifStmt.elseStmt));
+			stmts.add(ImcGen.stmtImc().get(ifStmt.elseStmt));
 		stmts.add(new ImcLABEL(end));
 
 		ImcSTMTS imcStmt = new ImcSTMTS(stmts);
-		ImcGen.stmtImc.put(ifStmt, imcStmt);
+		ImcGen.stmtImc().put(ifStmt, imcStmt);
 		return imcStmt;
 	}
 
@@ -349,14 +412,14 @@ public class CodeGenerator extends AstNullVisitor<Object, Stack<MemFrame>> {
 		MemLabel end = new MemLabel();
 
 		stmts.add(new ImcLABEL(beg));
-		stmts.add(new ImcCJUMP(ImcGen.exprImc.get(whileStmt.cond), tru, end));
+		stmts.addAll(new CondGenerator().translate(whileStmt.cond, tru, end));
 		stmts.add(new ImcLABEL(tru));
-		stmts.add(ImcGen.stmtImc.get(whileStmt.bodyStmt));
+		stmts.add(ImcGen.stmtImc().get(whileStmt.bodyStmt));
 		stmts.add(new ImcJUMP(beg));
 		stmts.add(new ImcLABEL(end));
 
 		ImcSTMTS imcStmt = new ImcSTMTS(stmts);
-		ImcGen.stmtImc.put(whileStmt, imcStmt);
+		ImcGen.stmtImc().put(whileStmt, imcStmt);
 		return imcStmt;
 	}
 
@@ -366,7 +429,7 @@ public class CodeGenerator extends AstNullVisitor<Object, Stack<MemFrame>> {
 		declStmt.stmt.accept(this, stack);
 		declStmt.decls.accept(this, stack);
 
-		ImcStmt stmt = ImcGen.stmtImc.get(declStmt.stmt);
+		ImcStmt stmt = ImcGen.stmtImc().get(declStmt.stmt);
 		// ImcESTMT estmt = null;
 
 		// if(stmt instanceof ImcESTMT) {
@@ -385,7 +448,7 @@ public class CodeGenerator extends AstNullVisitor<Object, Stack<MemFrame>> {
 		// 	throw new Report.Error(declStmt, "Unknown statement type");
 		// }
 
-		ImcGen.stmtImc.put(declStmt, stmt);
+		ImcGen.stmtImc().put(declStmt, stmt);
 		return stmt;
 	}
 
@@ -396,17 +459,17 @@ public class CodeGenerator extends AstNullVisitor<Object, Stack<MemFrame>> {
 
 		Vector<ImcStmt> imcStmts = new Vector<>();
 		for(AstStmt stmt : stmts.stmts) {
-			imcStmts.add(ImcGen.stmtImc.get(stmt));
+			imcStmts.add(ImcGen.stmtImc().get(stmt));
 		}
 
 		ImcStmt retStmts = new ImcSTMTS(imcStmts);
-		ImcGen.stmtImc.put(stmts, retStmts);
+		ImcGen.stmtImc().put(stmts, retStmts);
 		return retStmts;
 	}
 
 
 	public Object visit(AstFunDecl funDecl, Stack<MemFrame> stack) {
-		stack.push(Memory.frames.get(funDecl));
+		stack.push(Memory.frames().get(funDecl));
 
 		if(funDecl.stmt != null) {
 			funDecl.stmt.accept(this, stack);
@@ -0,0 +1,66 @@
+package prev23.phase.imcgen;
+
+import java.util.*;
+
+import prev23.data.ast.tree.expr.*;
+import prev23.data.mem.*;
+import prev23.data.imc.code.expr.*;
+import prev23.data.imc.code.stmt.*;
+
+/**
+ * Translation of conditions into jumps.
+ *
+ * A condition of an if or a while statement is not translated into a value
+ * that is tested afterwards but into a chain of conditional jumps to the true
+ * and the false label: the operands of <code>&amp;</code> and <code>|</code>
+ * are evaluated only until the value of the condition is known, <code>!</code>
+ * swaps the labels, boolean constants become unconditional jumps, and all other
+ * expressions (comparisons in particular) end up as conditions of
+ * {@link ImcCJUMP}s.
+ *
+ * The code of the subexpressions must already be generated by
+ * {@link CodeGenerator}.
+ */
+public class CondGenerator {
+
+	/**
+	 * Translates a condition.
+	 *
+	 * @param cond The condition.
+	 * @param tru  The label to jump to if the condition is true.
+	 * @param fls  The label to jump to if the condition is false.
+	 * @return The statements evaluating the condition.
+	 */
+	public Vector<ImcStmt> translate(AstExpr cond, MemLabel tru, MemLabel fls) {
+		Vector<ImcStmt> stmts = new Vector<ImcStmt>();
+		translate(cond, tru, fls, stmts);
+		return stmts;
+	}
+
+	private void translate(AstExpr cond, MemLabel tru, MemLabel fls, Vector<ImcStmt> stmts) {
+		if (cond instanceof AstBinExpr binExpr && binExpr.oper == AstBinExpr.Oper.AND) {
+			MemLabel snd = new MemLabel();
+			translate(binExpr.fstExpr, snd, fls, stmts);
+			stmts.add(new ImcLABEL(snd));
+			translate(binExpr.sndExpr, tru, fls, stmts);
+			return;
+		}
+		if (cond instanceof AstBinExpr binExpr && binExpr.oper == AstBinExpr.Oper.OR) {
+			MemLabel snd = new MemLabel();
+			translate(binExpr.fstExpr, tru, snd, stmts);
+			stmts.add(new ImcLABEL(snd));
+			translate(binExpr.sndExpr, tru, fls, stmts);
+			return;
+		}
+		if (cond instanceof AstPfxExpr pfxExpr && pfxExpr.oper == AstPfxExpr.Oper.NOT) {
+			translate(pfxExpr.expr, fls, tru, stmts);
+			return;
+		}
+		if (cond instanceof AstAtomExpr atomExpr && atomExpr.type == AstAtomExpr.Type.BOOL) {
+			stmts.add(new ImcJUMP(atomExpr.value.equals("true") ? tru : fls));
+			return;
+		}
+		stmts.add(new ImcCJUMP(ImcGen.exprImc().get(cond), tru, fls));
+	}
+
+}
@@ -1,5 +1,6 @@
 package prev23.phase.imcgen;
 
+import prev23.CompilationContext;
 import prev23.data.ast.tree.expr.*;
 import prev23.data.ast.tree.stmt.*;
 import prev23.data.ast.attribute.*;
@@ -14,10 +15,14 @@ import prev23.phase.*;
 public class ImcGen extends Phase implements AstVisitor<Object, Object> {
 
 	/** Maps statements to intermediate code. */
-	public static final AstAttribute<AstStmt, ImcStmt> stmtImc = new AstAttribute<AstStmt, ImcStmt>();
+	public static AstAttribute<AstStmt, ImcStmt> stmtImc() {
+		return CompilationContext.current().stmtImc;
+	}
 
 	/** Maps expressions to intermediate code. */
-	public static final AstAttribute<AstExpr, ImcExpr> exprImc = new AstAttribute<AstExpr, ImcExpr>();
+	public static AstAttribute<AstExpr, ImcExpr> exprImc() {
+		return CompilationContext.current().exprImc;
+	}
 
 	/**
 	 * Constructs a new phase for intermediate code generation.
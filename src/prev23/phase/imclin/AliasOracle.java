@@ -0,0 +1,294 @@
+package prev23.phase.imclin;
+
+import java.util.*;
+
+import prev23.data.ast.tree.*;
+import prev23.data.ast.tree.decl.*;
+import prev23.data.ast.tree.expr.*;
+import prev23.data.ast.visitor.*;
+import prev23.data.mem.*;
+import prev23.data.typ.*;
+import prev23.data.imc.code.expr.*;
+import prev23.phase.memory.*;
+import prev23.phase.seman.*;
+
+/**
+ * Alias oracle for memory accesses in canonical intermediate code.
+ *
+ * An address is located relative to the frame pointer, to a frame reached
+ * through a chain of static links or to a global label, either at an exact
+ * offset or (if indexed) anywhere within that frame or variable. Accesses to
+ * different frames or globals never alias, and neither do exact accesses to
+ * different words of the same one. A variable escapes if its address is taken
+ * or if a nested function accesses it; only escaping variables can be
+ * accessed through a pointer or by a called function. Static links are never
+ * written while a frame is active.
+ */
+public class AliasOracle {
+
+    /** The size of every memory access. */
+    private static final long SIZE = 8;
+
+    /** The level of a location that may be anywhere. */
+    private static final int ANY = -2;
+
+    /** The location of an address. */
+    public static class Location {
+
+        /**
+         * The number of static links followed from the frame pointer (-1 for
+         * a global, {@link #ANY} if unknown).
+         */
+        final int level;
+
+        /** The label of a global (or {@code null}). */
+        final MemLabel label;
+
+        /** The offset from the frame pointer or from the label. */
+        final long offset;
+
+        /** Whether the offset is exact (if not, the address is indexed). */
+        final boolean exact;
+
+        Location(int level, MemLabel label, long offset, boolean exact) {
+            this.level = level;
+            this.label = label;
+            this.offset = offset;
+            this.exact = exact;
+        }
+
+        /** Checks whether the location is a static link. */
+        boolean link() {
+            return level >= 0 && exact && offset == 0;
+        }
+
+    }
+
+    /** The accesses of the escaping parameters and local variables of every frame. */
+    private final HashMap<MemFrame, Vector<MemRelAccess>> escaping = new HashMap<MemFrame, Vector<MemRelAccess>>();
+
+    /** The labels of global variables. */
+    private final HashSet<MemLabel> globals = new HashSet<MemLabel>();
+
+    /** The labels of escaping global variables. */
+    private final HashSet<MemLabel> escapingGlobals = new HashSet<MemLabel>();
+
+    /**
+     * Constructs a new alias oracle.
+     *
+     * @param tree The abstract syntax tree of the program.
+     */
+    public AliasOracle(AstTree tree) {
+        HashMap<AstMemDecl, AstFunDecl> owners = new HashMap<AstMemDecl, AstFunDecl>();
+        HashSet<AstMemDecl> escapes = new HashSet<AstMemDecl>();
+        tree.accept(new AstFullVisitor<Object, AstFunDecl>() {
+
+            @Override
+            public Object visit(AstFunDecl funDecl, AstFunDecl fun) {
+                return super.visit(funDecl, funDecl);
+            }
+
+            @Override
+            public Object visit(AstParDecl parDecl, AstFunDecl fun) {
+                owners.put(parDecl, fun);
+                return super.visit(parDecl, fun);
+            }
+
+            @Override
+            public Object visit(AstVarDecl varDecl, AstFunDecl fun) {
+                if (Memory.accesses().get(varDecl) instanceof MemAbsAccess access)
+                    globals.add(access.label);
+                else
+                    owners.put(varDecl, fun);
+                return super.visit(varDecl, fun);
+            }
+
+            @Override
+            public Object visit(AstNameExpr nameExpr, AstFunDecl fun) {
+                // a variable of an enclosing function
+                if (fun != null && SemAn.declaredAt().get(nameExpr) instanceof AstMemDecl decl
+                        && Memory.accesses().get(decl) instanceof MemRelAccess access
+                        && access.depth != Memory.frames().get(fun).depth + 1)
+                    escapes.add(decl);
+                return super.visit(nameExpr, fun);
+            }
+
+            @Override
+            public Object visit(AstPfxExpr pfxExpr, AstFunDecl fun) {
+                if (pfxExpr.oper == AstPfxExpr.Oper.PTR) {
+                    AstMemDecl decl = root(pfxExpr.expr);
+                    if (decl != null)
+                        escapes.add(decl);
+                }
+                return super.visit(pfxExpr, fun);
+            }
+
+        }, null);
+
+        for (AstMemDecl decl : escapes) {
+            MemAccess access = Memory.accesses().get(decl);
+            if (access instanceof MemAbsAccess absAccess)
+                escapingGlobals.add(absAccess.label);
+            else if (access instanceof MemRelAccess relAccess && owners.get(decl) != null)
+                escaping.computeIfAbsent(Memory.frames().get(owners.get(decl)), __ -> new Vector<MemRelAccess>())
+                        .add(relAccess);
+        }
+    }
+
+    /**
+     * Returns the variable containing the value of an expression (or
+     * {@code null} if it is not a component of a variable).
+     */
+    private static AstMemDecl root(AstExpr expr) {
+        while (true) {
+            if (expr instanceof AstArrExpr arrExpr && SemAn.ofType().get(arrExpr.arr).actualType() instanceof SemArr)
+                expr = arrExpr.arr;
+            else if (expr instanceof AstRecExpr recExpr && SemAn.ofType().get(recExpr.rec).actualType() instanceof SemRec)
+                expr = recExpr.rec;
+            else
+                break;
+        }
+        if (expr instanceof AstNameExpr nameExpr && SemAn.declaredAt().get(nameExpr) instanceof AstMemDecl decl)
+            return decl;
+        return null;
+    }
+
+    /**
+     * Locates an address.
+     *
+     * @param frame The frame of the function.
+     * @param addr  The address.
+     * @param defs  The expressions assigned to temporaries that are defined
+     *              once (followed when locating the address).
+     * @return The location or {@code null} if the address is a pointer that
+     *         cannot be located.
+     */
+    public Location locate(MemFrame frame, ImcExpr addr, Map<MemTemp, ImcExpr> defs) {
+        Vector<ImcExpr> terms = new Vector<ImcExpr>();
+        Vector<Long> signs = new Vector<Long>();
+        long[] offset = { 0 };
+        terms(addr, 1, terms, signs, offset, defs, 0);
+
+        Location base = null;
+        for (int t = 0; t < terms.size(); t++) {
+            Location location = base(frame, terms.get(t), defs);
+            if (location == null)
+                continue;
+            // a subtracted base or two bases may point anywhere
+            if (base != null || signs.get(t) < 0)
+                return new Location(ANY, null, 0, false);
+            base = location;
+        }
+        if (base == null)
+            return null;
+        return new Location(base.level, base.label, offset[0], terms.size() == 1);
+    }
+
+    /** Splits an address into its terms (with their signs) and its constant offset. */
+    private static void terms(ImcExpr expr, long sign, Vector<ImcExpr> terms, Vector<Long> signs, long[] offset,
+            Map<MemTemp, ImcExpr> defs, int depth) {
+        if (expr instanceof ImcCONST constant) {
+            offset[0] += sign * constant.value;
+            return;
+        }
+        if (expr instanceof ImcBINOP binOp
+                && (binOp.oper == ImcBINOP.Oper.ADD || binOp.oper == ImcBINOP.Oper.SUB)) {
+            terms(binOp.fstExpr, sign, terms, signs, offset, defs, depth);
+            terms(binOp.sndExpr, binOp.oper == ImcBINOP.Oper.ADD ? sign : -sign, terms, signs, offset, defs, depth);
+            return;
+        }
+        if (expr instanceof ImcTEMP temp && defs.containsKey(temp.temp) && depth < defs.size()) {
+            terms(defs.get(temp.temp), sign, terms, signs, offset, defs, depth + 1);
+            return;
+        }
+        terms.add(expr);
+        signs.add(sign);
+    }
+
+    /** Returns the location a term is the base of (or {@code null}). */
+    private static Location base(MemFrame frame, ImcExpr term, Map<MemTemp, ImcExpr> defs) {
+        if (term instanceof ImcNAME name)
+            return new Location(-1, name.label, 0, true);
+        int level = 0;
+        int depth = 0;
+        while (true) {
+            if (term instanceof ImcMEM mem) {
+                term = mem.addr;
+                level++;
+            }
+            else if (term instanceof ImcTEMP temp && defs.containsKey(temp.temp) && depth++ < defs.size())
+                term = defs.get(temp.temp);
+            else
+                break;
+        }
+        if (term instanceof ImcTEMP temp && temp.temp == frame.FP)
+            return new Location(level, null, 0, true);
+        return null;
+    }
+
+    /**
+     * Checks whether a store may write to the memory read by a load.
+     *
+     * @param frame The frame of the function.
+     * @param store The location of the store (or {@code null}).
+     * @param load  The location of the load (or {@code null}).
+     * @return {@code true} if the accesses may overlap.
+     */
+    public boolean mayAlias(MemFrame frame, Location store, Location load) {
+        if ((store != null && store.link()) || (load != null && load.link()))
+            return false;
+        if ((store != null && store.level == ANY) || (load != null && load.level == ANY))
+            return true;
+        if (store == null)
+            return load == null || escapes(frame, load);
+        if (load == null)
+            return escapes(frame, store);
+        if (store.level != load.level || store.label != load.label)
+            return false;
+        if (store.exact && load.exact)
+            return Math.abs(store.offset - load.offset) < SIZE;
+        return true;
+    }
+
+    /**
+     * Checks whether a call may write to the memory read by a load.
+     *
+     * @param frame The frame of the function.
+     * @param load  The location of the load (or {@code null}).
+     * @return {@code true} if the callee may write to the location.
+     */
+    public boolean clobbered(MemFrame frame, Location load) {
+        if (load == null)
+            return true;
+        if (load.link())
+            return false;
+        return load.level != 0 || escapes(frame, load);
+    }
+
+    /**
+     * Checks whether any parameter or local variable of a frame escapes.
+     *
+     * @param frame The frame.
+     * @return {@code true} if the frame may be accessed other than by its own
+     *         function.
+     */
+    public boolean escapes(MemFrame frame) {
+        return !escaping.getOrDefault(frame, new Vector<MemRelAccess>()).isEmpty();
+    }
+
+    /** Checks whether a location may be accessed through a pointer or by a callee. */
+    private boolean escapes(MemFrame frame, Location location) {
+        if (location.link())
+            return false;
+        if (location.level == -1)
+            return !globals.contains(location.label) || escapingGlobals.contains(location.label);
+        if (location.level != 0)
+            return true;
+        for (MemRelAccess access : escaping.getOrDefault(frame, new Vector<MemRelAccess>()))
+            if (!location.exact
+                    || (location.offset < access.offset + access.size && access.offset < location.offset + SIZE))
+                return true;
+        return false;
+    }
+
+}
@@ -0,0 +1,357 @@
+package prev23.phase.imclin;
+
+import java.util.*;
+
+import prev23.data.mem.*;
+import prev23.data.imc.code.expr.*;
+import prev23.data.imc.code.stmt.*;
+
+/**
+ * Cleaner of canonical statements of a function body.
+ *
+ * Propagates copies and constants assigned to temporaries (a use of a
+ * temporary is replaced if the same copy or constant reaches it along all
+ * paths), removes moves to temporaries that are not live afterwards (the call
+ * in a move of its result is kept) and removes statements that cannot be
+ * reached from the entry. The steps are repeated until none of them changes
+ * the code. Temporaries that may be used before they are assigned to (i.e.,
+ * that are live at the entry) are set to zero at the entry first.
+ */
+public class ChunkCleaner {
+
+    /** The frame of the function. */
+    private final MemFrame frame;
+
+    /** The number of uses of temporaries replaced. */
+    private int propagated = 0;
+
+    /** The number of moves removed. */
+    private int deadMoves = 0;
+
+    /** The number of unreachable statements removed. */
+    private int unreachable = 0;
+
+    /** The number of temporaries set to zero at the entry. */
+    private int initialized = 0;
+
+    /**
+     * Constructs a new cleaner.
+     *
+     * @param frame The frame of the function (its return value is live at the exit).
+     */
+    public ChunkCleaner(MemFrame frame) {
+        this.frame = frame;
+    }
+
+    /**
+     * Cleans the canonical statements of a function body.
+     *
+     * @param stmts The statements (the first one is the entry label).
+     * @return The cleaned statements.
+     */
+    public Vector<ImcStmt> clean(Vector<ImcStmt> stmts) {
+        Vector<ImcStmt> code = new Vector<ImcStmt>(stmts);
+        removeUnreachable(code);
+        initialize(code);
+        boolean changed = true;
+        while (changed) {
+            changed = removeUnreachable(code);
+            changed |= propagate(code);
+            changed |= removeDeadMoves(code);
+        }
+        return code;
+    }
+
+    /** Returns the number of uses of temporaries replaced. */
+    public int propagated() {
+        return propagated;
+    }
+
+    /** Returns the number of moves removed. */
+    public int deadMoves() {
+        return deadMoves;
+    }
+
+    /** Returns the number of unreachable statements removed. */
+    public int unreachable() {
+        return unreachable;
+    }
+
+    /** Returns the number of temporaries set to zero at the entry. */
+    public int initialized() {
+        return initialized;
+    }
+
+    // ----- Control flow -----
+
+    /** Returns the positions of all labels. */
+    private static HashMap<MemLabel, Integer> labels(Vector<ImcStmt> code) {
+        HashMap<MemLabel, Integer> labels = new HashMap<MemLabel, Integer>();
+        for (int s = 0; s < code.size(); s++)
+            if (code.get(s) instanceof ImcLABEL label)
+                labels.put(label.label, s);
+        return labels;
+    }
+
+    /**
+     * Returns the positions of the successors of a statement (a jump out of
+     * the body has none).
+     */
+    private static Vector<Integer> successors(Vector<ImcStmt> code, HashMap<MemLabel, Integer> labels, int s) {
+        Vector<Integer> succs = new Vector<Integer>();
+        ImcStmt stmt = code.get(s);
+        if (stmt instanceof ImcJUMP jump) {
+            if (labels.containsKey(jump.label))
+                succs.add(labels.get(jump.label));
+        }
+        else if (stmt instanceof ImcCJUMP cjump) {
+            if (labels.containsKey(cjump.posLabel))
+                succs.add(labels.get(cjump.posLabel));
+            if (labels.containsKey(cjump.negLabel))
+                succs.add(labels.get(cjump.negLabel));
+        }
+        else if (s + 1 < code.size())
+            succs.add(s + 1);
+        return succs;
+    }
+
+    /** Checks whether a statement jumps out of the body. */
+    private static boolean exits(HashMap<MemLabel, Integer> labels, ImcStmt stmt) {
+        return stmt instanceof ImcJUMP jump && !labels.containsKey(jump.label);
+    }
+
+    /** Removes the statements that cannot be reached from the entry. */
+    private boolean removeUnreachable(Vector<ImcStmt> code) {
+        HashMap<MemLabel, Integer> labels = labels(code);
+        boolean[] reachable = new boolean[code.size()];
+        Stack<Integer> pending = new Stack<Integer>();
+        pending.push(0);
+        while (!pending.isEmpty()) {
+            int s = pending.pop();
+            if (reachable[s])
+                continue;
+            reachable[s] = true;
+            for (int succ : successors(code, labels, s))
+                pending.push(succ);
+        }
+
+        Vector<ImcStmt> reached = new Vector<ImcStmt>();
+        for (int s = 0; s < code.size(); s++)
+            if (reachable[s])
+                reached.add(code.get(s));
+        if (reached.size() == code.size())
+            return false;
+        unreachable += code.size() - reached.size();
+        code.clear();
+        code.addAll(reached);
+        return true;
+    }
+
+    // ----- Copy and constant propagation -----
+
+    /** Replaces uses of temporaries by the copies and constants reaching them. */
+    private boolean propagate(Vector<ImcStmt> code) {
+        HashMap<MemLabel, Integer> labels = labels(code);
+
+        // the copies and constants available before every statement (null if not reached yet)
+        Vector<HashMap<MemTemp, ImcExpr>> facts = new Vector<HashMap<MemTemp, ImcExpr>>();
+        for (int s = 0; s < code.size(); s++)
+            facts.add(null);
+        facts.set(0, new HashMap<MemTemp, ImcExpr>());
+
+        ArrayDeque<Integer> pending = new ArrayDeque<Integer>();
+        pending.add(0);
+        while (!pending.isEmpty()) {
+            int s = pending.poll();
+            HashMap<MemTemp, ImcExpr> out = transfer(facts.get(s), code.get(s));
+            for (int succ : successors(code, labels, s)) {
+                HashMap<MemTemp, ImcExpr> in = facts.get(succ);
+                if (in == null)
+                    facts.set(succ, new HashMap<MemTemp, ImcExpr>(out));
+                else if (!in.entrySet().removeIf(fact -> !same(fact.getValue(), out.get(fact.getKey()))))
+                    continue;
+                pending.add(succ);
+            }
+        }
+
+        boolean changed = false;
+        for (int s = 0; s < code.size(); s++) {
+            int before = propagated;
+            ImcStmt stmt = substitute(code.get(s), facts.get(s));
+            if (propagated != before) {
+                code.set(s, stmt.accept(new StmtFolder(), null));
+                changed = true;
+            }
+        }
+        return changed;
+    }
+
+    /** Returns the copies and constants available after a statement. */
+    private static HashMap<MemTemp, ImcExpr> transfer(HashMap<MemTemp, ImcExpr> in, ImcStmt stmt) {
+        HashMap<MemTemp, ImcExpr> out = new HashMap<MemTemp, ImcExpr>(in);
+        if (stmt instanceof ImcMOVE move && move.dst instanceof ImcTEMP dst) {
+            out.remove(dst.temp);
+            out.values().removeIf(value -> value instanceof ImcTEMP temp && temp.temp == dst.temp);
+            if (move.src instanceof ImcCONST || (move.src instanceof ImcTEMP src && src.temp != dst.temp))
+                out.put(dst.temp, move.src);
+        }
+        return out;
+    }
+
+    /** Checks whether two copied values (temporaries or constants) are the same. */
+    private static boolean same(ImcExpr fst, ImcExpr snd) {
+        if (fst instanceof ImcTEMP fstTemp && snd instanceof ImcTEMP sndTemp)
+            return fstTemp.temp == sndTemp.temp;
+        if (fst instanceof ImcCONST fstConst && snd instanceof ImcCONST sndConst)
+            return fstConst.value == sndConst.value;
+        return false;
+    }
+
+    /** Replaces the uses of temporaries within a statement. */
+    private ImcStmt substitute(ImcStmt stmt, HashMap<MemTemp, ImcExpr> facts) {
+        if (facts.isEmpty())
+            return stmt;
+        if (stmt instanceof ImcMOVE move) {
+            ImcExpr dst = move.dst instanceof ImcMEM mem ? new ImcMEM(substitute(mem.addr, facts)) : move.dst;
+            return new ImcMOVE(dst, substitute(move.src, facts));
+        }
+        if (stmt instanceof ImcCJUMP cjump)
+            return new ImcCJUMP(substitute(cjump.cond, facts), cjump.posLabel, cjump.negLabel);
+        if (stmt instanceof ImcESTMT eStmt)
+            return new ImcESTMT(substitute(eStmt.expr, facts));
+        return stmt;
+    }
+
+    /** Replaces the uses of temporaries within a canonical expression. */
+    private ImcExpr substitute(ImcExpr expr, HashMap<MemTemp, ImcExpr> facts) {
+        if (expr instanceof ImcTEMP temp) {
+            ImcExpr value = expr;
+            // follow chains of copies (all facts hold at the same point)
+            for (int depth = 0; depth <= facts.size() && value instanceof ImcTEMP valueTemp
+                    && facts.containsKey(valueTemp.temp); depth++)
+                value = facts.get(valueTemp.temp);
+            if (value != expr && !(value instanceof ImcTEMP valueTemp && valueTemp.temp == temp.temp)) {
+                propagated++;
+                return value;
+            }
+            return expr;
+        }
+        if (expr instanceof ImcBINOP binOp)
+            return new ImcBINOP(binOp.oper, substitute(binOp.fstExpr, facts), substitute(binOp.sndExpr, facts));
+        if (expr instanceof ImcUNOP unOp)
+            return new ImcUNOP(unOp.oper, substitute(unOp.subExpr, facts));
+        if (expr instanceof ImcMEM mem)
+            return new ImcMEM(substitute(mem.addr, facts));
+        if (expr instanceof ImcCALL call) {
+            Vector<ImcExpr> args = new Vector<ImcExpr>();
+            for (ImcExpr arg : call.args)
+                args.add(substitute(arg, facts));
+            return new ImcCALL(call.label, call.offs, args);
+        }
+        return expr;
+    }
+
+    // ----- Dead code elimination -----
+
+    /** Sets the temporaries live at the entry (except the frame pointer) to zero. */
+    private void initialize(Vector<ImcStmt> code) {
+        Vector<HashSet<MemTemp>> liveIn = new Vector<HashSet<MemTemp>>();
+        liveness(code, liveIn, new Vector<HashSet<MemTemp>>());
+        Vector<MemTemp> temps = new Vector<MemTemp>(liveIn.get(0));
+        temps.sort(Comparator.comparingLong(temp -> temp.temp));
+        for (MemTemp temp : temps) {
+            if (temp == frame.FP)
+                continue;
+            code.add(1, new ImcMOVE(new ImcTEMP(temp), new ImcCONST(0)));
+            initialized++;
+        }
+    }
+
+    /** Removes moves to temporaries that are not live afterwards. */
+    private boolean removeDeadMoves(Vector<ImcStmt> code) {
+        Vector<HashSet<MemTemp>> liveOut = new Vector<HashSet<MemTemp>>();
+        liveness(code, new Vector<HashSet<MemTemp>>(), liveOut);
+
+        boolean removed = false;
+        for (int s = code.size() - 1; s >= 0; s--) {
+            if (!(code.get(s) instanceof ImcMOVE move) || !(move.dst instanceof ImcTEMP dst))
+                continue;
+            boolean self = move.src instanceof ImcTEMP src && src.temp == dst.temp;
+            if (!self && liveOut.get(s).contains(dst.temp))
+                continue;
+            if (move.src instanceof ImcCALL)
+                code.set(s, new ImcESTMT(move.src));
+            else if (ExprFolder.pure(move.src))
+                code.remove(s);
+            else
+                continue;
+            deadMoves++;
+            removed = true;
+        }
+        return removed;
+    }
+
+    /**
+     * Computes the temporaries live before and after every statement.
+     *
+     * @param code    The statements.
+     * @param liveIn  The temporaries live before every statement (filled in).
+     * @param liveOut The temporaries live after every statement (filled in).
+     */
+    private void liveness(Vector<ImcStmt> code, Vector<HashSet<MemTemp>> liveIn, Vector<HashSet<MemTemp>> liveOut) {
+        HashMap<MemLabel, Integer> labels = labels(code);
+        for (int s = 0; s < code.size(); s++) {
+            liveOut.add(new HashSet<MemTemp>());
+            liveIn.add(new HashSet<MemTemp>());
+        }
+        boolean changed = true;
+        while (changed) {
+            changed = false;
+            for (int s = code.size() - 1; s >= 0; s--) {
+                HashSet<MemTemp> out = liveOut.get(s);
+                // the epilogue returns the value of the function
+                if (exits(labels, code.get(s)))
+                    out.add(frame.RV);
+                for (int succ : successors(code, labels, s))
+                    out.addAll(liveIn.get(succ));
+                HashSet<MemTemp> in = new HashSet<MemTemp>(out);
+                ImcStmt stmt = code.get(s);
+                if (stmt instanceof ImcMOVE move && move.dst instanceof ImcTEMP dst)
+                    in.remove(dst.temp);
+                uses(stmt, in);
+                changed |= liveIn.get(s).addAll(in);
+            }
+        }
+    }
+
+    /** Adds the temporaries used by a statement. */
+    private static void uses(ImcStmt stmt, HashSet<MemTemp> temps) {
+        if (stmt instanceof ImcMOVE move) {
+            if (move.dst instanceof ImcMEM mem)
+                uses(mem.addr, temps);
+            uses(move.src, temps);
+        }
+        if (stmt instanceof ImcCJUMP cjump)
+            uses(cjump.cond, temps);
+        if (stmt instanceof ImcESTMT eStmt)
+            uses(eStmt.expr, temps);
+    }
+
+    /** Adds the temporaries used by an expression. */
+    private static void uses(ImcExpr expr, HashSet<MemTemp> temps) {
+        if (expr instanceof ImcTEMP temp)
+            temps.add(temp.temp);
+        if (expr instanceof ImcBINOP binOp) {
+            uses(binOp.fstExpr, temps);
+            uses(binOp.sndExpr, temps);
+        }
+        if (expr instanceof ImcUNOP unOp)
+            uses(unOp.subExpr, temps);
+        if (expr instanceof ImcMEM mem)
+            uses(mem.addr, temps);
+        if (expr instanceof ImcCALL call)
+            for (ImcExpr arg : call.args)
+                uses(arg, temps);
+    }
+
+}
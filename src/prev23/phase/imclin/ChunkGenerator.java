@@ -2,6 +2,7 @@ package prev23.phase.imclin;
 
 import java.util.*;
 
+import prev23.Compiler;
 import prev23.common.report.Report;
 import prev23.data.ast.tree.decl.*;
 import prev23.data.ast.tree.expr.*;
@@ -10,15 +11,60 @@ import prev23.data.mem.*;
 import prev23.data.imc.code.expr.*;
 import prev23.data.imc.code.stmt.*;
 import prev23.data.lin.*;
+import prev23.data.ssa.*;
+import prev23.phase.abstr.*;
 import prev23.phase.imcgen.*;
 import prev23.phase.memory.*;
 
 public class ChunkGenerator extends AstFullVisitor<Object, Object> {
 
+    /** The linearization phase (receiving the statistics). */
+    private final ImcLin imclin;
+
+    /** The alias oracle of the program. */
+    private final AliasOracle oracle;
+
+    /** The inliner of function calls. */
+    private final Inliner inliner;
+
+    /** Whether the calls inlined are reported. */
+    private final boolean inlineReport;
+
+    /** The eliminator of calls in tail position. */
+    private final TailCallEliminator tails;
+
+    /**
+     * Constructs a new chunk generator.
+     *
+     * @param imclin The linearization phase.
+     */
+    public ChunkGenerator(ImcLin imclin) {
+        this.imclin = imclin;
+        this.oracle = new AliasOracle(Abstr.tree());
+        this.inliner = new Inliner(Abstr.tree(), option("--inline-budget", Inliner.DEFAULT_BUDGET),
+                option("--inline-depth", Inliner.DEFAULT_DEPTH));
+        this.inlineReport = Compiler.cmdLineArgValue("--inline-report") != null;
+        this.tails = new TailCallEliminator(Abstr.tree(), oracle);
+    }
+
+    /** Returns the value of a nonnegative integer command line argument. */
+    private static int option(String name, int defaultValue) {
+        String value = Compiler.cmdLineArgValue(name);
+        if (value == null)
+            return defaultValue;
+        try {
+            int number = Integer.parseInt(value);
+            if (number >= 0)
+                return number;
+        } catch (NumberFormatException __) {
+        }
+        throw new Report.Error("Illegal value '" + value + "' of command line argument '" + name + "'.");
+    }
+
     @Override
     public Object visit(AstAtomExpr atomExpr, Object arg) {
         if(atomExpr.type == AstAtomExpr.Type.STR) {
-            MemAbsAccess access = Memory.strings.get(atomExpr);
+            MemAbsAccess access = Memory.strings().get(atomExpr);
             ImcLin.addDataChunk(new LinDataChunk(access));
         }
 
@@ -27,7 +73,7 @@ public class ChunkGenerator extends AstFullVisitor<Object, Object> {
 
     @Override
     public Object visit(AstVarDecl varDecl, Object arg) {
-        MemAccess access = Memory.accesses.get(varDecl);
+        MemAccess access = Memory.accesses().get(varDecl);
 
         if(access instanceof MemAbsAccess) {
             MemAbsAccess absAccess = (MemAbsAccess) access;
@@ -44,14 +90,34 @@ public class ChunkGenerator extends AstFullVisitor<Object, Object> {
 
         funDecl.stmt.accept(this, arg);
 
-        MemFrame frame = Memory.frames.get(funDecl);
+        MemFrame frame = Memory.frames().get(funDecl);
         MemLabel entryLabel = new MemLabel();
         MemLabel exitLabel = new MemLabel();
 
         Vector<ImcStmt> canonStmts = new Vector<>();
         canonStmts.add(new ImcLABEL(entryLabel));
+
+        // parameters kept in temporaries are loaded from their arguments
+        if (funDecl.pars != null) {
+            for (AstParDecl parDecl : funDecl.pars) {
+                if (Memory.accesses().get(parDecl) instanceof MemTempAccess access) {
+                    ImcExpr addr = new ImcBINOP(ImcBINOP.Oper.ADD, new ImcTEMP(frame.FP), new ImcCONST(access.arg.offset));
+                    canonStmts.add(new ImcMOVE(new ImcTEMP(access.temp), new ImcMEM(addr)));
+                }
+            }
+        }
+        int bodyStart = canonStmts.size();
         
-        ImcStmt bodyStmt = ImcGen.stmtImc.get(funDecl.stmt);
+        ImcStmt bodyStmt = inliner.inline(funDecl, ImcGen.stmtImc().get(funDecl.stmt));
+        imclin.count(frame.label.name, "inlined", inliner.inlined().size());
+        if (inlineReport)
+            for (String inlined : inliner.inlined())
+                Report.info("Inlined " + inlined + ".");
+
+        // fold constants before canonization
+        ImcStmt foldedStmt = bodyStmt.accept(new StmtFolder(), null);
+        imclin.count(frame.label.name, "folded-nodes", StmtFolder.size(bodyStmt) - StmtFolder.size(foldedStmt));
+        bodyStmt = foldedStmt;
 
         if (bodyStmt instanceof ImcESTMT) {
             ImcExpr bodyExpr = ((ImcESTMT) bodyStmt).expr;
@@ -83,30 +149,42 @@ public class ChunkGenerator extends AstFullVisitor<Object, Object> {
 
         canonStmts.add(new ImcJUMP(exitLabel));
 
-        Vector<ImcStmt> linearStmts = linearize(canonStmts);
-        ImcLin.addCodeChunk(new LinCodeChunk(frame, linearStmts, entryLabel, exitLabel));
+        canonStmts = tails.loop(funDecl, canonStmts, bodyStart, exitLabel);
+        imclin.count(frame.label.name, "tail-loops", tails.loops());
+
+        ChunkCleaner cleaner = new ChunkCleaner(frame);
+        canonStmts = cleaner.clean(canonStmts);
+        imclin.count(frame.label.name, "propagated", cleaner.propagated());
+        imclin.count(frame.label.name, "dead-moves", cleaner.deadMoves());
+        imclin.count(frame.label.name, "unreachable-stmts", cleaner.unreachable());
+        imclin.count(frame.label.name, "initialized", cleaner.initialized());
+
+        SsaBuilder builder = new SsaBuilder();
+        SsaCode ssaCode = builder.build(frame, canonStmts);
+        ConstPropagator propagator = new ConstPropagator();
+        propagator.propagate(ssaCode);
+        ValueNumberer numberer = new ValueNumberer(oracle);
+        numberer.number(ssaCode);
+        canonStmts = new SsaDestructor().destruct(ssaCode);
+        imclin.count(frame.label.name, "phis", builder.phis());
+        imclin.count(frame.label.name, "sccp-constants", propagator.constants());
+        imclin.count(frame.label.name, "sccp-removed-blocks", propagator.removedBlocks());
+        imclin.count(frame.label.name, "gvn-redundant", numberer.redundant());
+        imclin.count(frame.label.name, "gvn-loads", numberer.loads());
+
+        TraceScheduler scheduler = new TraceScheduler();
+        Vector<ImcStmt> linearStmts = scheduler.schedule(canonStmts, entryLabel);
+        imclin.count(frame.label.name, "blocks", scheduler.blocks());
+        imclin.count(frame.label.name, "unreachable-blocks", scheduler.unreachable());
+        imclin.count(frame.label.name, "removed-jumps", scheduler.removedJumps());
+        HashSet<ImcCALL> tailCalls = tails.tailCalls(funDecl, linearStmts, exitLabel);
+        imclin.count(frame.label.name, "tail-calls", tailCalls.size());
+
+        // the calls of the functions inlined are made from this frame
+        if (inliner.argsSize() > frame.argsSize)
+            frame = new MemFrame(frame, inliner.argsSize());
+        ImcLin.addCodeChunk(new LinCodeChunk(frame, linearStmts, entryLabel, exitLabel, tailCalls));
         return null;
     }
 
-    private Vector<ImcStmt> linearize(Vector<ImcStmt> stmts) {
-        Vector<ImcStmt> linearStmts = new Vector<>();
-
-        for(int s = 0; s < stmts.size(); s++) {
-            ImcStmt stmt = stmts.get(s);
-
-            if(stmt instanceof ImcCJUMP) {
-                ImcCJUMP cjump = (ImcCJUMP) stmt;
-                MemLabel negLabel = new MemLabel();
-                linearStmts.add(new ImcCJUMP(cjump.cond, cjump.posLabel, negLabel));
-                linearStmts.add(new ImcLABEL(negLabel));
-                linearStmts.add(new ImcJUMP(cjump.negLabel));
-            }
-            else {
-                linearStmts.add(stmt);
-            }
-        }
-
-        return linearStmts;
-    }
-
 }
@@ -0,0 +1,665 @@
+package prev23.phase.imclin;
+
+import java.io.*;
+import java.util.*;
+import prev23.CompilationContext;
+import prev23.common.report.*;
+import prev23.data.mem.*;
+import prev23.data.imc.code.expr.*;
+import prev23.data.imc.code.stmt.*;
+import prev23.data.imc.visitor.*;
+import prev23.data.lin.*;
+
+/**
+ * Closure-compiled interpreter - for testing purposes only.
+ *
+ * Unlike {@link Interpreter}, which walks the linearized intermediate code with
+ * visitors, this interpreter first compiles each code chunk into an array of
+ * statement closures. Temporary variables of a chunk are renumbered into a
+ * register file, i.e., a slice of the register stack allocated for every
+ * activation of the chunk, labels are resolved into statement indices, data labels into addresses and
+ * function labels into direct references to callees. Executing a statement thus
+ * involves no hashing, no boxing and no visitor allocation.
+ *
+ * In stackless mode, calls do not nest Java calls but are performed by the
+ * dispatch loop itself (see {@link #runStackless(Chunk)}).
+ *
+ * The memory layout and the calling convention are the same as those of
+ * {@link Interpreter}.
+ */
+public class ClosureInterpreter {
+
+	/** The index of the statement that returns from a function. */
+	static final int RETURN = -1;
+
+	/** The index of the statement that calls a function in stackless mode. */
+	static final int CALL = -2;
+
+	/** The seed used for filling uninitialized memory. */
+	private static final long MEMORY_SEED = 0x5EED_2023L;
+
+	/**
+	 * Termination of the program interpreted.
+	 * 
+	 * Thrown whenever the program interpreted calls <code>_exit</code>.
+	 */
+	@SuppressWarnings("serial")
+	public static class Exit extends RuntimeException {
+
+		/** The exit code. */
+		public final long code;
+
+		/**
+		 * Constructs a new termination of the program interpreted.
+		 *
+		 * @param code The exit code.
+		 */
+		public Exit(long code) {
+			super("Exit code " + code + ".");
+			this.code = code;
+		}
+
+	}
+
+	/**
+	 * A compiled expression.
+	 */
+	interface Expr {
+
+		/**
+		 * Evaluates the expression.
+		 *
+		 * @param regs The register stack.
+		 * @param base The index of the register file of the current activation.
+		 * @return The value of the expression.
+		 */
+		long eval(long[] regs, int base);
+
+	}
+
+	/**
+	 * A compiled statement.
+	 */
+	interface Stmt {
+
+		/**
+		 * Executes the statement.
+		 *
+		 * @param regs The register stack.
+		 * @param base The index of the register file of the current activation.
+		 * @return The index of the next statement, {@link #RETURN} or {@link #CALL}.
+		 */
+		int exec(long[] regs, int base);
+
+	}
+
+	/**
+	 * A function that can be called, i.e., either a compiled code chunk or a
+	 * built-in function.
+	 */
+	interface Callee {
+
+		/**
+		 * Calls the function (arguments have already been stored on the stack).
+		 */
+		void invoke();
+
+	}
+
+	/**
+	 * A compiled code chunk.
+	 */
+	final class Chunk implements Callee {
+
+		/** The original code chunk. */
+		final LinCodeChunk chunk;
+
+		/** The statements. */
+		Stmt[] code;
+
+		/** The index of the first statement. */
+		int entry;
+
+		/** The size of the register file. */
+		int numRegs;
+
+		/** The register holding the frame pointer. */
+		int fp;
+
+		/** The register holding the return value. */
+		int rv;
+
+		/** The size of the frame. */
+		final long frameSize;
+
+		Chunk(LinCodeChunk chunk) {
+			this.chunk = chunk;
+			this.frameSize = chunk.frame.size;
+		}
+
+		/**
+		 * Creates a new activation: allocates its register file on top of the register
+		 * stack and its frame on top of the stack.
+		 *
+		 * @return The index of the register file of the new activation.
+		 */
+		int enter() {
+			int base = regTop;
+			regTop += numRegs;
+			if (regTop > regStack.length)
+				regStack = Arrays.copyOf(regStack, Math.max(2 * regStack.length, regTop));
+			Arrays.fill(regStack, base, regTop, 0L);
+			regStack[base + fp] = sp;
+			sp -= frameSize;
+			return base;
+		}
+
+		/**
+		 * Destroys the topmost activation and stores the result.
+		 *
+		 * @param base The index of the register file of the activation.
+		 */
+		void leave(int base) {
+			memory.st(regStack[base + fp], regStack[base + rv]);
+			sp += frameSize;
+			regTop = base;
+		}
+
+		@Override
+		public void invoke() {
+			int base = enter();
+			Stmt[] code = this.code;
+			int pc = entry;
+			while (pc != RETURN)
+				pc = code[pc].exec(regStack, base);
+			leave(base);
+		}
+
+	}
+
+	/**
+	 * A compiled function call, i.e., {@code ESTMT(CALL)}, {@code MOVE(TEMP,CALL)}
+	 * or {@code MOVE(MEM,CALL)}.
+	 */
+	final class Call implements Stmt {
+
+		/** The function called. */
+		final Callee callee;
+
+		/** The arguments. */
+		private final Expr[] args;
+
+		/** The offsets of the arguments. */
+		private final long[] offs;
+
+		/** The register the result is stored to (or -1). */
+		private final int dstReg;
+
+		/** The address the result is stored to (or {@code null}). */
+		private final Expr dstAddr;
+
+		/** The index of the next statement. */
+		final int next;
+
+		Call(Callee callee, Expr[] args, long[] offs, int dstReg, Expr dstAddr, int next) {
+			this.callee = callee;
+			this.args = args;
+			this.offs = offs;
+			this.dstReg = dstReg;
+			this.dstAddr = dstAddr;
+			this.next = next;
+		}
+
+		/**
+		 * Evaluates the destination address of the result (if any) and stores the
+		 * arguments on the stack.
+		 *
+		 * @param regs The register stack.
+		 * @param base The index of the register file of the caller.
+		 * @return The destination address of the result (or 0).
+		 */
+		long prepare(long[] regs, int base) {
+			long addr = dstAddr == null ? 0 : dstAddr.eval(regs, base);
+			for (int a = 0; a < args.length; a++)
+				memory.st(sp + offs[a], args[a].eval(regs, base));
+			return addr;
+		}
+
+		/**
+		 * Stores the result of the call.
+		 *
+		 * @param regs The register stack.
+		 * @param base The index of the register file of the caller.
+		 * @param addr The destination address of the result.
+		 */
+		void complete(long[] regs, int base, long addr) {
+			if (dstReg >= 0)
+				regs[base + dstReg] = memory.ld(sp);
+			else if (dstAddr != null)
+				memory.st(addr, memory.ld(sp));
+		}
+
+		@Override
+		public int exec(long[] regs, int base) {
+			long addr = prepare(regs, base);
+			if (stackless && callee instanceof Chunk) {
+				pendingCall = this;
+				pendingAddr = addr;
+				return CALL;
+			}
+			callee.invoke();
+			// The register stack might have been reallocated by the callee.
+			complete(regStack, base, addr);
+			return next;
+		}
+
+	}
+
+	/** The memory. */
+	final PagedMemory memory;
+
+	/** The stack pointer. */
+	long sp;
+
+	/** The heap pointer. */
+	long hp;
+
+	/** The stream the program interpreted writes to. */
+	private final PrintStream out;
+
+	/** The stream the program interpreted reads from. */
+	private final InputStream in;
+
+	/** The register stack holding register files of all activations. */
+	long[] regStack = new long[1024];
+
+	/** The index of the first free register of the register stack. */
+	int regTop = 0;
+
+	/**
+	 * Whether functions are called by the dispatch loop using an explicit frame
+	 * stack instead of by Java calls.
+	 */
+	private final boolean stackless;
+
+	/** The call being made in stackless mode. */
+	private Call pendingCall;
+
+	/** The destination address of the result of the call being made. */
+	private long pendingAddr;
+
+	/** The addresses of data chunks. */
+	private final HashMap<MemLabel, Long> dataAddrs;
+
+	/** Compiled code chunks and built-in functions by name. */
+	private final HashMap<String, Callee> callees;
+
+	public ClosureInterpreter(Vector<LinDataChunk> dataChunks, Vector<LinCodeChunk> codeChunks) {
+		this(dataChunks, codeChunks, false);
+	}
+
+	/**
+	 * Constructs a new interpreter.
+	 *
+	 * @param dataChunks The data chunks.
+	 * @param codeChunks The code chunks.
+	 * @param stackless  Whether to run in stackless mode, i.e., with the recursion
+	 *                   depth limited by the heap size only.
+	 */
+	public ClosureInterpreter(Vector<LinDataChunk> dataChunks, Vector<LinCodeChunk> codeChunks, boolean stackless) {
+		this.stackless = stackless;
+		this.out = CompilationContext.current().out;
+		this.in = CompilationContext.current().in;
+		memory = new PagedMemory(MEMORY_SEED);
+		sp = 0x7FFFFFFFFFFFFFF8L;
+		hp = 0x2000000000000000L;
+
+		dataAddrs = new HashMap<MemLabel, Long>();
+		for (LinDataChunk dataChunk : dataChunks) {
+			dataAddrs.put(dataChunk.label, hp);
+			if (dataChunk.init != null) {
+				for (int c = 0; c < dataChunk.init.length(); c++)
+					memory.st(hp + 8 * c, dataChunk.init.charAt(c));
+				memory.st(hp + 8 * dataChunk.init.length(), 0);
+			}
+			hp += dataChunk.size;
+		}
+
+		callees = new HashMap<String, Callee>();
+		callees.put("_new", () -> {
+			long size = memory.ld(sp + 8);
+			memory.st(sp, hp);
+			hp += size;
+		});
+		callees.put("_del", () -> {
+		});
+		callees.put("_exit", () -> {
+			out.flush();
+			throw new Exit(1);
+		});
+		callees.put("_putChar", () -> out.print((char) (memory.ld(sp + 8) & 0xFF)));
+		callees.put("_getChar", () -> {
+			out.flush();
+			long c = '\n';
+			try {
+				c = in.read();
+			} catch (Exception __) {
+			}
+			memory.st(sp, c);
+		});
+
+		Vector<Chunk> chunks = new Vector<Chunk>();
+		for (LinCodeChunk codeChunk : codeChunks) {
+			Chunk chunk = new Chunk(codeChunk);
+			chunks.add(chunk);
+			callees.put(codeChunk.frame.label.name, chunk);
+		}
+		for (Chunk chunk : chunks)
+			new ChunkCompiler(chunk).compile();
+	}
+
+	/**
+	 * Returns the callee with the specified name.
+	 *
+	 * @param name The name of the function.
+	 * @return The callee.
+	 */
+	private Callee callee(String name) {
+		Callee callee = callees.get(name);
+		if (callee == null)
+			return () -> {
+				throw new Report.Error("INTERPRETER: Undefined function " + name + ".");
+			};
+		return callee;
+	}
+
+	/**
+	 * Compiles a single code chunk.
+	 */
+	private class ChunkCompiler {
+
+		private final Chunk chunk;
+
+		/** The registers of temporary variables. */
+		private final HashMap<MemTemp, Integer> regs = new HashMap<MemTemp, Integer>();
+
+		/** The statement indices of labels. */
+		private final HashMap<MemLabel, Integer> labels = new HashMap<MemLabel, Integer>();
+
+		ChunkCompiler(Chunk chunk) {
+			this.chunk = chunk;
+		}
+
+		private int reg(MemTemp temp) {
+			Integer reg = regs.get(temp);
+			if (reg == null) {
+				reg = regs.size();
+				regs.put(temp, reg);
+			}
+			return reg;
+		}
+
+		private int target(MemLabel label) {
+			if (label == chunk.chunk.exitLabel)
+				return RETURN;
+			Integer target = labels.get(label);
+			if (target == null)
+				throw new Report.InternalError();
+			return target;
+		}
+
+		void compile() {
+			chunk.fp = reg(chunk.chunk.frame.FP);
+			chunk.rv = reg(chunk.chunk.frame.RV);
+
+			// Labels are not compiled: each label refers to the statement following it.
+			Vector<ImcStmt> stmts = new Vector<ImcStmt>();
+			for (ImcStmt stmt : chunk.chunk.stmts()) {
+				if (stmt instanceof ImcLABEL)
+					labels.put(((ImcLABEL) stmt).label, stmts.size());
+				else
+					stmts.add(stmt);
+			}
+
+			chunk.code = new Stmt[stmts.size()];
+			for (int s = 0; s < stmts.size(); s++)
+				chunk.code[s] = stmts.get(s).accept(new StmtCompiler(), s + 1);
+			chunk.entry = target(chunk.chunk.entryLabel);
+			chunk.numRegs = regs.size();
+		}
+
+		private class StmtCompiler implements ImcVisitor<Stmt, Integer> {
+
+			@Override
+			public Stmt visit(ImcCJUMP imcCJump, Integer next) {
+				Expr cond = imcCJump.cond.accept(new ExprCompiler(), null);
+				int posTarget = target(imcCJump.posLabel);
+				int negTarget = target(imcCJump.negLabel);
+				return (regs, base) -> cond.eval(regs, base) != 0 ? posTarget : negTarget;
+			}
+
+			@Override
+			public Stmt visit(ImcESTMT imcEStmt, Integer next) {
+				if (imcEStmt.expr instanceof ImcCALL)
+					return call((ImcCALL) imcEStmt.expr, -1, null, next);
+				Expr expr = imcEStmt.expr.accept(new ExprCompiler(), null);
+				return (regs, base) -> {
+					expr.eval(regs, base);
+					return next;
+				};
+			}
+
+			@Override
+			public Stmt visit(ImcJUMP imcJump, Integer next) {
+				int target = target(imcJump.label);
+				return (regs, base) -> target;
+			}
+
+			@Override
+			public Stmt visit(ImcMOVE imcMove, Integer next) {
+				if (imcMove.dst instanceof ImcTEMP) {
+					int dst = reg(((ImcTEMP) imcMove.dst).temp);
+					if (imcMove.src instanceof ImcCALL)
+						return call((ImcCALL) imcMove.src, dst, null, next);
+					Expr src = imcMove.src.accept(new ExprCompiler(), null);
+					return (regs, base) -> {
+						regs[base + dst] = src.eval(regs, base);
+						return next;
+					};
+				}
+				if (imcMove.dst instanceof ImcMEM) {
+					Expr dst = ((ImcMEM) imcMove.dst).addr.accept(new ExprCompiler(), null);
+					if (imcMove.src instanceof ImcCALL)
+						return call((ImcCALL) imcMove.src, -1, dst, next);
+					Expr src = imcMove.src.accept(new ExprCompiler(), null);
+					return (regs, base) -> {
+						memory.st(dst.eval(regs, base), src.eval(regs, base));
+						return next;
+					};
+				}
+				throw new Report.InternalError();
+			}
+
+			private Stmt call(ImcCALL imcCall, int dstReg, Expr dstAddr, int next) {
+				Expr[] args = new Expr[imcCall.args.size()];
+				long[] offs = new long[imcCall.args.size()];
+				for (int a = 0; a < args.length; a++) {
+					args[a] = imcCall.args.get(a).accept(new ExprCompiler(), null);
+					offs[a] = imcCall.offs.get(a);
+				}
+				return new Call(callee(imcCall.label.name), args, offs, dstReg, dstAddr, next);
+			}
+
+		}
+
+		private class ExprCompiler implements ImcVisitor<Expr, Object> {
+
+			@Override
+			public Expr visit(ImcBINOP imcBinop, Object arg) {
+				Expr fst = imcBinop.fstExpr.accept(this, null);
+				if (imcBinop.sndExpr instanceof ImcCONST) {
+					long snd = ((ImcCONST) imcBinop.sndExpr).value;
+					switch (imcBinop.oper) {
+					case ADD:
+						return (regs, base) -> fst.eval(regs, base) + snd;
+					case SUB:
+						return (regs, base) -> fst.eval(regs, base) - snd;
+					case MUL:
+						return (regs, base) -> fst.eval(regs, base) * snd;
+					default:
+						break;
+					}
+				}
+				Expr snd = imcBinop.sndExpr.accept(this, null);
+				switch (imcBinop.oper) {
+				case OR:
+					return (regs, base) -> (fst.eval(regs, base) != 0) | (snd.eval(regs, base) != 0) ? 1 : 0;
+				case AND:
+					return (regs, base) -> (fst.eval(regs, base) != 0) & (snd.eval(regs, base) != 0) ? 1 : 0;
+				case EQU:
+					return (regs, base) -> fst.eval(regs, base) == snd.eval(regs, base) ? 1 : 0;
+				case NEQ:
+					return (regs, base) -> fst.eval(regs, base) != snd.eval(regs, base) ? 1 : 0;
+				case LEQ:
+					return (regs, base) -> fst.eval(regs, base) <= snd.eval(regs, base) ? 1 : 0;
+				case GEQ:
+					return (regs, base) -> fst.eval(regs, base) >= snd.eval(regs, base) ? 1 : 0;
+				case LTH:
+					return (regs, base) -> fst.eval(regs, base) < snd.eval(regs, base) ? 1 : 0;
+				case GTH:
+					return (regs, base) -> fst.eval(regs, base) > snd.eval(regs, base) ? 1 : 0;
+				case ADD:
+					return (regs, base) -> fst.eval(regs, base) + snd.eval(regs, base);
+				case SUB:
+					return (regs, base) -> fst.eval(regs, base) - snd.eval(regs, base);
+				case MUL:
+					return (regs, base) -> fst.eval(regs, base) * snd.eval(regs, base);
+				case DIV:
+					return (regs, base) -> fst.eval(regs, base) / snd.eval(regs, base);
+				case MOD:
+					return (regs, base) -> fst.eval(regs, base) % snd.eval(regs, base);
+				}
+				throw new Report.InternalError();
+			}
+
+			@Override
+			public Expr visit(ImcCONST imcConst, Object arg) {
+				long value = imcConst.value;
+				return (regs, base) -> value;
+			}
+
+			@Override
+			public Expr visit(ImcMEM imcMem, Object arg) {
+				if (imcMem.addr instanceof ImcBINOP) {
+					ImcBINOP addr = (ImcBINOP) imcMem.addr;
+					if (addr.oper == ImcBINOP.Oper.ADD && addr.fstExpr instanceof ImcTEMP
+							&& addr.sndExpr instanceof ImcCONST) {
+						int baseReg = reg(((ImcTEMP) addr.fstExpr).temp);
+						long offset = ((ImcCONST) addr.sndExpr).value;
+						return (regs, base) -> memory.ld(regs[base + baseReg] + offset);
+					}
+				}
+				Expr addr = imcMem.addr.accept(this, null);
+				return (regs, base) -> memory.ld(addr.eval(regs, base));
+			}
+
+			@Override
+			public Expr visit(ImcNAME imcName, Object arg) {
+				Long addr = dataAddrs.get(imcName.label);
+				if (addr == null)
+					throw new Report.InternalError();
+				long value = addr;
+				return (regs, base) -> value;
+			}
+
+			@Override
+			public Expr visit(ImcTEMP imcTemp, Object arg) {
+				int reg = reg(imcTemp.temp);
+				return (regs, base) -> regs[base + reg];
+			}
+
+			@Override
+			public Expr visit(ImcUNOP imcUnop, Object arg) {
+				Expr sub = imcUnop.subExpr.accept(this, null);
+				switch (imcUnop.oper) {
+				case NOT:
+					return (regs, base) -> sub.eval(regs, base) == 0 ? 1 : 0;
+				case NEG:
+					return (regs, base) -> -sub.eval(regs, base);
+				}
+				throw new Report.InternalError();
+			}
+
+		}
+
+	}
+
+	/**
+	 * Runs a function in stackless mode. Instead of nesting Java calls, the
+	 * dispatch loop keeps an explicit frame stack: for every pending call it holds
+	 * the caller's chunk, the index of its register file, the call statement (and
+	 * thus the index of the statement to continue with) and the destination address
+	 * of the result.
+	 *
+	 * @param main The function.
+	 */
+	private void runStackless(Chunk main) {
+		Chunk[] frameChunks = new Chunk[64];
+		int[] frameBases = new int[64];
+		Call[] frameCalls = new Call[64];
+		long[] frameAddrs = new long[64];
+		int depth = 0;
+
+		Chunk chunk = main;
+		Stmt[] code = chunk.code;
+		int base = chunk.enter();
+		int pc = chunk.entry;
+		while (true) {
+			pc = code[pc].exec(regStack, base);
+			if (pc >= 0)
+				continue;
+			if (pc == CALL) {
+				if (depth == frameChunks.length) {
+					frameChunks = Arrays.copyOf(frameChunks, 2 * depth);
+					frameBases = Arrays.copyOf(frameBases, 2 * depth);
+					frameCalls = Arrays.copyOf(frameCalls, 2 * depth);
+					frameAddrs = Arrays.copyOf(frameAddrs, 2 * depth);
+				}
+				frameChunks[depth] = chunk;
+				frameBases[depth] = base;
+				frameCalls[depth] = pendingCall;
+				frameAddrs[depth] = pendingAddr;
+				depth++;
+				chunk = (Chunk) pendingCall.callee;
+				code = chunk.code;
+				base = chunk.enter();
+				pc = chunk.entry;
+				continue;
+			}
+			chunk.leave(base);
+			if (depth == 0)
+				break;
+			depth--;
+			chunk = frameChunks[depth];
+			code = chunk.code;
+			base = frameBases[depth];
+			Call call = frameCalls[depth];
+			frameCalls[depth] = null;
+			call.complete(regStack, base, frameAddrs[depth]);
+			pc = call.next;
+		}
+	}
+
+	public long run(String entryMemLabel) {
+		Callee callee = callees.get(entryMemLabel);
+		if (!(callee instanceof Chunk))
+			throw new Report.InternalError();
+		if (stackless)
+			runStackless((Chunk) callee);
+		else
+			callee.invoke();
+		out.flush();
+		return memory.ld(sp);
+	}
+
+}
@@ -0,0 +1,260 @@
+package prev23.phase.imclin;
+
+import java.util.*;
+
+import prev23.data.mem.*;
+import prev23.data.imc.code.expr.*;
+import prev23.data.imc.code.stmt.*;
+import prev23.data.ssa.*;
+
+/**
+ * Sparse conditional constant propagation (Wegman and Zadeck) over a function
+ * body in static single assignment form.
+ *
+ * Every temporary starts as undefined and is lowered to a constant or to
+ * unknown as the definitions in blocks found to be executable are evaluated.
+ * Only the edges a conditional jump can take given the values known so far are
+ * followed, and a phi function merges the arguments of executable incoming
+ * edges only. Afterwards, uses of constant temporaries are replaced by the
+ * constants, their definitions are removed, conditional jumps on constant
+ * conditions become unconditional and blocks that can no longer be reached are
+ * removed.
+ */
+public class ConstPropagator {
+
+    /** The value of a temporary that is not constant (compared by identity only). */
+    private static final ImcExpr UNKNOWN = new ImcTEMP(null);
+
+    /** The use of a temporary in a phi function or in a statement of a block. */
+    private static class Use {
+
+        final SsaBlock block;
+
+        /** The phi function (or {@code null}). */
+        final SsaPhi phi;
+
+        /** The statement (if the use is not in a phi function). */
+        final int stmt;
+
+        Use(SsaBlock block, SsaPhi phi, int stmt) {
+            this.block = block;
+            this.phi = phi;
+            this.stmt = stmt;
+        }
+
+    }
+
+    /** The values of the temporaries defined (absent if undefined so far). */
+    private final HashMap<MemTemp, ImcExpr> values = new HashMap<MemTemp, ImcExpr>();
+
+    /** The temporaries defined in the body. */
+    private final HashSet<MemTemp> defined = new HashSet<MemTemp>();
+
+    /** The uses of every temporary. */
+    private final HashMap<MemTemp, Vector<Use>> uses = new HashMap<MemTemp, Vector<Use>>();
+
+    /** The executable edges (by their targets). */
+    private final HashMap<SsaBlock, HashSet<SsaBlock>> executable = new HashMap<SsaBlock, HashSet<SsaBlock>>();
+
+    /** The pending edges (pairs of a source, {@code null} for the entry, and a target). */
+    private final ArrayDeque<SsaBlock[]> pendingEdges = new ArrayDeque<SsaBlock[]>();
+
+    /** The temporaries whose values have been lowered. */
+    private final ArrayDeque<MemTemp> pendingTemps = new ArrayDeque<MemTemp>();
+
+    /** The number of temporaries found to be constant. */
+    private int constants = 0;
+
+    /** The number of blocks removed. */
+    private int removedBlocks = 0;
+
+    /**
+     * Propagates constants through a function body.
+     *
+     * @param code The function body in static single assignment form.
+     */
+    public void propagate(SsaCode code) {
+        collect(code);
+
+        pendingEdges.add(new SsaBlock[] { null, code.entry() });
+        while (!pendingEdges.isEmpty() || !pendingTemps.isEmpty()) {
+            if (!pendingEdges.isEmpty()) {
+                SsaBlock[] edge = pendingEdges.poll();
+                HashSet<SsaBlock> sources = executable.get(edge[1]);
+                boolean visited = sources != null;
+                if (!visited)
+                    executable.put(edge[1], sources = new HashSet<SsaBlock>());
+                if (edge[0] != null && !sources.add(edge[0]))
+                    continue;
+                for (SsaPhi phi : edge[1].phis)
+                    evaluate(phi, edge[1]);
+                if (!visited)
+                    for (int s = 0; s < edge[1].stmts.size(); s++)
+                        evaluate(edge[1], s);
+                continue;
+            }
+            for (Use use : uses.getOrDefault(pendingTemps.poll(), new Vector<Use>())) {
+                if (!executable.containsKey(use.block))
+                    continue;
+                if (use.phi != null)
+                    evaluate(use.phi, use.block);
+                else
+                    evaluate(use.block, use.stmt);
+            }
+        }
+
+        rewrite(code);
+    }
+
+    /** Returns the number of temporaries found to be constant. */
+    public int constants() {
+        return constants;
+    }
+
+    /** Returns the number of blocks removed. */
+    public int removedBlocks() {
+        return removedBlocks;
+    }
+
+    /** Collects the definitions and the uses of temporaries. */
+    private void collect(SsaCode code) {
+        for (SsaBlock block : code.blocks) {
+            for (SsaPhi phi : block.phis) {
+                defined.add(phi.dst);
+                for (ImcExpr arg : phi.args.values())
+                    if (arg instanceof ImcTEMP temp)
+                        use(temp.temp, new Use(block, phi, -1));
+            }
+            for (int s = 0; s < block.stmts.size(); s++) {
+                MemTemp def = TempReplacer.def(block.stmts.get(s));
+                if (def != null && !code.pinned(def))
+                    defined.add(def);
+                Vector<MemTemp> temps = new Vector<MemTemp>();
+                TempReplacer.uses(block.stmts.get(s), temps);
+                for (MemTemp temp : temps)
+                    use(temp, new Use(block, null, s));
+            }
+        }
+    }
+
+    private void use(MemTemp temp, Use use) {
+        uses.computeIfAbsent(temp, __ -> new Vector<Use>()).add(use);
+    }
+
+    /** Evaluates a phi function in an executable block. */
+    private void evaluate(SsaPhi phi, SsaBlock block) {
+        ImcExpr value = null;
+        for (Map.Entry<SsaBlock, ImcExpr> arg : phi.args.entrySet()) {
+            if (!executable.get(block).contains(arg.getKey()))
+                continue;
+            value = meet(value, value(arg.getValue()));
+        }
+        lower(phi.dst, value);
+    }
+
+    /** Evaluates a statement of an executable block. */
+    private void evaluate(SsaBlock block, int s) {
+        ImcStmt stmt = block.stmts.get(s);
+        if (stmt instanceof ImcMOVE move && move.dst instanceof ImcTEMP dst && defined.contains(dst.temp))
+            lower(dst.temp, value(move.src));
+        if (stmt instanceof ImcJUMP jump)
+            follow(block, jump.label);
+        if (stmt instanceof ImcCJUMP cjump) {
+            ImcExpr cond = value(cjump.cond);
+            if (cond == null)
+                return;
+            if (cond == UNKNOWN || ((ImcCONST) cond).value != 0)
+                follow(block, cjump.posLabel);
+            if (cond == UNKNOWN || ((ImcCONST) cond).value == 0)
+                follow(block, cjump.negLabel);
+        }
+    }
+
+    /** Adds the edge from a block to the successor with a label (if it is in the body). */
+    private void follow(SsaBlock block, MemLabel label) {
+        for (SsaBlock succ : block.succs)
+            if (succ.label == label)
+                pendingEdges.add(new SsaBlock[] { block, succ });
+    }
+
+    /**
+     * Returns the value of an expression: {@code null} if undefined, a
+     * constant or {@link #UNKNOWN}.
+     */
+    private ImcExpr value(ImcExpr expr) {
+        Vector<MemTemp> temps = new Vector<MemTemp>();
+        TempReplacer.uses(new ImcESTMT(expr), temps);
+        for (MemTemp temp : temps)
+            if (defined.contains(temp) && !values.containsKey(temp))
+                return null;
+        if (expr instanceof ImcCALL)
+            return UNKNOWN;
+        ImcExpr folded = expr.accept(new TempReplacer(temp -> {
+            ImcExpr value = values.get(temp);
+            return value instanceof ImcCONST ? value : null;
+        }), null).accept(new ExprFolder(), null);
+        return folded instanceof ImcCONST ? folded : UNKNOWN;
+    }
+
+    /** Returns the meet of two values. */
+    private static ImcExpr meet(ImcExpr fst, ImcExpr snd) {
+        if (fst == null)
+            return snd;
+        if (snd == null)
+            return fst;
+        if (fst instanceof ImcCONST fstConst && snd instanceof ImcCONST sndConst && fstConst.value == sndConst.value)
+            return fst;
+        return UNKNOWN;
+    }
+
+    /** Lowers the value of a temporary to its meet with a new value. */
+    private void lower(MemTemp temp, ImcExpr value) {
+        ImcExpr old = values.get(temp);
+        ImcExpr lowered = meet(old, value);
+        if (lowered == null || lowered == old)
+            return;
+        values.put(temp, lowered);
+        pendingTemps.add(temp);
+    }
+
+    /** Replaces constant temporaries and removes what has become dead or unreachable. */
+    private void rewrite(SsaCode code) {
+        for (SsaBlock block : new Vector<SsaBlock>(code.blocks))
+            if (!executable.containsKey(block))
+                for (SsaBlock succ : new Vector<SsaBlock>(block.succs))
+                    code.removeEdge(block, succ);
+
+        TempReplacer replacer = new TempReplacer(temp -> {
+            ImcExpr value = values.get(temp);
+            return value instanceof ImcCONST ? value : null;
+        });
+        for (ImcExpr value : values.values())
+            if (value instanceof ImcCONST)
+                constants++;
+
+        for (SsaBlock block : code.blocks) {
+            if (!executable.containsKey(block))
+                continue;
+            block.phis.removeIf(phi -> values.get(phi.dst) instanceof ImcCONST);
+            for (SsaPhi phi : block.phis)
+                phi.args.replaceAll((pred, arg) -> arg.accept(replacer, null));
+
+            Vector<ImcStmt> stmts = new Vector<ImcStmt>();
+            for (ImcStmt stmt : block.stmts) {
+                MemTemp def = TempReplacer.def(stmt);
+                if (def != null && values.get(def) instanceof ImcCONST && ExprFolder.pure(((ImcMOVE) stmt).src))
+                    continue;
+                stmts.add(replacer.replace(stmt).accept(new StmtFolder(), null));
+            }
+            block.stmts.clear();
+            block.stmts.addAll(stmts);
+
+            Vector<MemLabel> targets = SsaBuilder.targets(block.last());
+            for (SsaBlock succ : new Vector<SsaBlock>(block.succs))
+                if (!targets.contains(succ.label))
+                    code.removeEdge(block, succ);
+        }
+        removedBlocks = code.removeUnreachable();
+    }
+
+}
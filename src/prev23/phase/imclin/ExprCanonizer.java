@@ -8,33 +8,30 @@ import prev23.data.imc.visitor.*;
 
 /**
  * Expression canonizer.
+ *
+ * Calls and statement expressions are moved out of expressions into the
+ * preceding statements. An operand is moved into a temporary only if the
+ * statements generated for the operands evaluated after it could change its
+ * value, i.e., if it reads memory and they call a function or write to memory,
+ * or if it uses a temporary they assign to.
  */
 public class ExprCanonizer implements ImcVisitor<ImcExpr, Vector<ImcStmt>> {
 
     @Override
 	public ImcExpr visit(ImcBINOP binOp, Vector<ImcStmt> stmts) {
         ImcExpr first = binOp.fstExpr.accept(this, stmts);
-        ImcTEMP firstTemp = new ImcTEMP(new MemTemp());
-        stmts.add(new ImcMOVE(firstTemp, first));
 
-        ImcExpr second = binOp.sndExpr.accept(this, stmts);
-        ImcTEMP secondTemp = new ImcTEMP(new MemTemp());
-        stmts.add(new ImcMOVE(secondTemp, second));
+        Vector<ImcStmt> secondStmts = new Vector<ImcStmt>();
+        ImcExpr second = binOp.sndExpr.accept(this, secondStmts);
+        first = protect(first, secondStmts, stmts);
+        stmts.addAll(secondStmts);
 
-        return new ImcBINOP(binOp.oper, firstTemp, secondTemp);
+        return new ImcBINOP(binOp.oper, first, second);
     }
 
     @Override
 	public ImcExpr visit(ImcCALL call, Vector<ImcStmt> stmts) {
-        Vector<ImcExpr> args = new Vector<ImcExpr>();
-
-        for (ImcExpr arg : call.args) {
-            ImcExpr acc = arg.accept(this, stmts);
-            ImcTEMP temp = new ImcTEMP(new MemTemp());
-
-            stmts.add(new ImcMOVE(temp, acc));
-            args.add(temp);
-        }
+        Vector<ImcExpr> args = args(call, stmts);
 
         ImcTEMP ret = new ImcTEMP(new MemTemp());
         stmts.add(new ImcMOVE(ret, new ImcCALL(call.label, call.offs, args)));
@@ -73,4 +70,83 @@ public class ExprCanonizer implements ImcVisitor<ImcExpr, Vector<ImcStmt>> {
 		ImcExpr acc = unOp.subExpr.accept(this, stmts);
 		return new ImcUNOP(unOp.oper, acc);
 	}
+
+    /**
+     * Canonizes the arguments of a call.
+     *
+     * @param call  The call.
+     * @param stmts The statements preceding the call.
+     * @return The canonized arguments.
+     */
+    Vector<ImcExpr> args(ImcCALL call, Vector<ImcStmt> stmts) {
+        Vector<ImcExpr> args = new Vector<ImcExpr>();
+        for (ImcExpr arg : call.args) {
+            Vector<ImcStmt> argStmts = new Vector<ImcStmt>();
+            ImcExpr acc = arg.accept(this, argStmts);
+            for (int a = 0; a < args.size(); a++)
+                args.set(a, protect(args.get(a), argStmts, stmts));
+            stmts.addAll(argStmts);
+            args.add(acc);
+        }
+        return args;
+    }
+
+    /**
+     * Moves an expression into a temporary if the statements evaluated after it
+     * could change its value.
+     *
+     * @param expr  The canonized expression.
+     * @param later The statements evaluated after the expression.
+     * @param stmts The statements preceding the expression.
+     * @return The expression or the temporary holding its value.
+     */
+    static ImcExpr protect(ImcExpr expr, Vector<ImcStmt> later, Vector<ImcStmt> stmts) {
+        if (later.isEmpty() || expr instanceof ImcCONST || expr instanceof ImcNAME)
+            return expr;
+
+        boolean writesMemory = false;
+        HashSet<MemTemp> writtenTemps = new HashSet<MemTemp>();
+        for (ImcStmt stmt : later) {
+            if (stmt instanceof ImcESTMT)
+                writesMemory = true;
+            if (stmt instanceof ImcMOVE move) {
+                writesMemory |= move.dst instanceof ImcMEM || move.src instanceof ImcCALL;
+                if (move.dst instanceof ImcTEMP)
+                    writtenTemps.add(((ImcTEMP) move.dst).temp);
+            }
+        }
+        if (!(writesMemory && readsMemory(expr)) && !usesTemps(expr, writtenTemps))
+            return expr;
+
+        ImcTEMP temp = new ImcTEMP(new MemTemp());
+        stmts.add(new ImcMOVE(temp, expr));
+        return temp;
+    }
+
+    /** Checks whether a canonized expression reads memory. */
+    private static boolean readsMemory(ImcExpr expr) {
+        if (expr instanceof ImcMEM)
+            return true;
+        if (expr instanceof ImcBINOP binOp)
+            return readsMemory(binOp.fstExpr) || readsMemory(binOp.sndExpr);
+        if (expr instanceof ImcUNOP unOp)
+            return readsMemory(unOp.subExpr);
+        return false;
+    }
+
+    /** Checks whether a canonized expression uses any of the temporaries. */
+    private static boolean usesTemps(ImcExpr expr, HashSet<MemTemp> temps) {
+        if (temps.isEmpty())
+            return false;
+        if (expr instanceof ImcTEMP temp)
+            return temps.contains(temp.temp);
+        if (expr instanceof ImcMEM mem)
+            return usesTemps(mem.addr, temps);
+        if (expr instanceof ImcBINOP binOp)
+            return usesTemps(binOp.fstExpr, temps) || usesTemps(binOp.sndExpr, temps);
+        if (expr instanceof ImcUNOP unOp)
+            return usesTemps(unOp.subExpr, temps);
+        return false;
+    }
+
 }
@@ -0,0 +1,250 @@
+package prev23.phase.imclin;
+
+import java.util.*;
+import prev23.data.imc.code.expr.*;
+import prev23.data.imc.visitor.*;
+
+/**
+ * Expression folder.
+ *
+ * Folds operations on constants, applies algebraic identities and moves
+ * constant addends of additions and subtractions outwards, so that an address
+ * computation like <code>((FP + -8) + (i * 8)) + 16</code> ends up as
+ * <code>(FP + (i * 8)) + 8</code>. Division and remainder are folded for
+ * non-negative operands only as their results for negative operands differ
+ * between the interpreter and the target machine.
+ */
+public class ExprFolder implements ImcVisitor<ImcExpr, Object> {
+
+    @Override
+    public ImcExpr visit(ImcBINOP binOp, Object arg) {
+        ImcExpr fst = binOp.fstExpr.accept(this, arg);
+        ImcExpr snd = binOp.sndExpr.accept(this, arg);
+
+        if (fst instanceof ImcCONST && snd instanceof ImcCONST) {
+            Long value = fold(binOp.oper, ((ImcCONST) fst).value, ((ImcCONST) snd).value);
+            if (value != null)
+                return new ImcCONST(value);
+        }
+
+        switch (binOp.oper) {
+            case ADD, SUB -> {
+                // split both operands into a base and a constant addend
+                long fstConst = addend(fst);
+                long sndConst = addend(snd);
+                ImcExpr fstBase = base(fst);
+                ImcExpr sndBase = base(snd);
+                long value = binOp.oper == ImcBINOP.Oper.ADD ? fstConst + sndConst : fstConst - sndConst;
+
+                ImcExpr base;
+                if (sndBase == null)
+                    base = fstBase;
+                else if (fstBase == null)
+                    base = binOp.oper == ImcBINOP.Oper.ADD ? sndBase : new ImcUNOP(ImcUNOP.Oper.NEG, sndBase);
+                else
+                    base = new ImcBINOP(binOp.oper, fstBase, sndBase);
+                return offset(base, value);
+            }
+            case MUL -> {
+                if (fst instanceof ImcCONST) {
+                    ImcExpr swap = fst;
+                    fst = snd;
+                    snd = swap;
+                }
+                if (snd instanceof ImcCONST) {
+                    long value = ((ImcCONST) snd).value;
+                    if (value == 1)
+                        return fst;
+                    if (value == 0 && pure(fst))
+                        return new ImcCONST(0);
+                    if (value == -1)
+                        return new ImcUNOP(ImcUNOP.Oper.NEG, fst).accept(this, arg);
+                    // (x * c1) * c2 = x * (c1 * c2)
+                    if (fst instanceof ImcBINOP && ((ImcBINOP) fst).oper == ImcBINOP.Oper.MUL
+                            && ((ImcBINOP) fst).sndExpr instanceof ImcCONST)
+                        return new ImcBINOP(ImcBINOP.Oper.MUL, ((ImcBINOP) fst).fstExpr,
+                                new ImcCONST(((ImcCONST) ((ImcBINOP) fst).sndExpr).value * value));
+                }
+                return new ImcBINOP(ImcBINOP.Oper.MUL, fst, snd);
+            }
+            case DIV -> {
+                if (snd instanceof ImcCONST && ((ImcCONST) snd).value == 1)
+                    return fst;
+                return new ImcBINOP(binOp.oper, fst, snd);
+            }
+            case AND -> {
+                if (fst instanceof ImcCONST)
+                    return ((ImcCONST) fst).value != 0 ? truth(snd) : (pure(snd) ? new ImcCONST(0) : binOp(binOp, fst, snd));
+                if (snd instanceof ImcCONST)
+                    return ((ImcCONST) snd).value != 0 ? truth(fst) : (pure(fst) ? new ImcCONST(0) : binOp(binOp, fst, snd));
+                return binOp(binOp, fst, snd);
+            }
+            case OR -> {
+                if (fst instanceof ImcCONST)
+                    return ((ImcCONST) fst).value == 0 ? truth(snd) : (pure(snd) ? new ImcCONST(1) : binOp(binOp, fst, snd));
+                if (snd instanceof ImcCONST)
+                    return ((ImcCONST) snd).value == 0 ? truth(fst) : (pure(fst) ? new ImcCONST(1) : binOp(binOp, fst, snd));
+                return binOp(binOp, fst, snd);
+            }
+            default -> {
+                return binOp(binOp, fst, snd);
+            }
+        }
+    }
+
+    @Override
+    public ImcExpr visit(ImcCALL call, Object arg) {
+        Vector<ImcExpr> args = new Vector<ImcExpr>();
+        for (ImcExpr argExpr : call.args)
+            args.add(argExpr.accept(this, arg));
+        return new ImcCALL(call.label, call.offs, args);
+    }
+
+    @Override
+    public ImcExpr visit(ImcCONST constant, Object arg) {
+        return constant;
+    }
+
+    @Override
+    public ImcExpr visit(ImcMEM mem, Object arg) {
+        return new ImcMEM(mem.addr.accept(this, arg));
+    }
+
+    @Override
+    public ImcExpr visit(ImcNAME name, Object arg) {
+        return name;
+    }
+
+    @Override
+    public ImcExpr visit(ImcSEXPR sExpr, Object arg) {
+        return new ImcSEXPR(sExpr.stmt.accept(new StmtFolder(), arg), sExpr.expr.accept(this, arg));
+    }
+
+    @Override
+    public ImcExpr visit(ImcTEMP temp, Object arg) {
+        return temp;
+    }
+
+    @Override
+    public ImcExpr visit(ImcUNOP unOp, Object arg) {
+        ImcExpr sub = unOp.subExpr.accept(this, arg);
+
+        if (sub instanceof ImcCONST) {
+            long value = ((ImcCONST) sub).value;
+            return new ImcCONST(unOp.oper == ImcUNOP.Oper.NEG ? -value : (value == 0 ? 1 : 0));
+        }
+        if (sub instanceof ImcUNOP && ((ImcUNOP) sub).oper == unOp.oper)
+            return unOp.oper == ImcUNOP.Oper.NEG ? ((ImcUNOP) sub).subExpr : truth(((ImcUNOP) sub).subExpr);
+        if (unOp.oper == ImcUNOP.Oper.NOT && sub instanceof ImcBINOP) {
+            ImcBINOP binOp = (ImcBINOP) sub;
+            ImcBINOP.Oper oper = switch (binOp.oper) {
+                case EQU -> ImcBINOP.Oper.NEQ;
+                case NEQ -> ImcBINOP.Oper.EQU;
+                case LTH -> ImcBINOP.Oper.GEQ;
+                case GEQ -> ImcBINOP.Oper.LTH;
+                case GTH -> ImcBINOP.Oper.LEQ;
+                case LEQ -> ImcBINOP.Oper.GTH;
+                default -> null;
+            };
+            if (oper != null)
+                return new ImcBINOP(oper, binOp.fstExpr, binOp.sndExpr);
+        }
+        return new ImcUNOP(unOp.oper, sub);
+    }
+
+    /**
+     * Folds a binary operation on constants.
+     *
+     * @param oper The operator.
+     * @param fst  The first operand.
+     * @param snd  The second operand.
+     * @return The result or {@code null} if the operation cannot be folded.
+     */
+    private static Long fold(ImcBINOP.Oper oper, long fst, long snd) {
+        return switch (oper) {
+            case OR -> (fst != 0) | (snd != 0) ? 1L : 0L;
+            case AND -> (fst != 0) & (snd != 0) ? 1L : 0L;
+            case EQU -> fst == snd ? 1L : 0L;
+            case NEQ -> fst != snd ? 1L : 0L;
+            case LTH -> fst < snd ? 1L : 0L;
+            case GTH -> fst > snd ? 1L : 0L;
+            case LEQ -> fst <= snd ? 1L : 0L;
+            case GEQ -> fst >= snd ? 1L : 0L;
+            case ADD -> fst + snd;
+            case SUB -> fst - snd;
+            case MUL -> fst * snd;
+            case DIV -> fst >= 0 && snd > 0 ? fst / snd : null;
+            case MOD -> fst >= 0 && snd > 0 ? fst % snd : null;
+        };
+    }
+
+    /** Returns the constant addend of an expression in its folded form. */
+    private static long addend(ImcExpr expr) {
+        if (expr instanceof ImcCONST)
+            return ((ImcCONST) expr).value;
+        if (expr instanceof ImcBINOP && ((ImcBINOP) expr).sndExpr instanceof ImcCONST) {
+            ImcBINOP binOp = (ImcBINOP) expr;
+            if (binOp.oper == ImcBINOP.Oper.ADD)
+                return ((ImcCONST) binOp.sndExpr).value;
+            if (binOp.oper == ImcBINOP.Oper.SUB)
+                return -((ImcCONST) binOp.sndExpr).value;
+        }
+        return 0;
+    }
+
+    /** Returns the expression without its constant addend (or {@code null}). */
+    private static ImcExpr base(ImcExpr expr) {
+        if (expr instanceof ImcCONST)
+            return null;
+        if (expr instanceof ImcBINOP && ((ImcBINOP) expr).sndExpr instanceof ImcCONST) {
+            ImcBINOP binOp = (ImcBINOP) expr;
+            if (binOp.oper == ImcBINOP.Oper.ADD || binOp.oper == ImcBINOP.Oper.SUB)
+                return binOp.fstExpr;
+        }
+        return expr;
+    }
+
+    /** Returns the sum of an expression (possibly {@code null}) and a constant. */
+    private static ImcExpr offset(ImcExpr base, long value) {
+        if (base == null)
+            return new ImcCONST(value);
+        if (value == 0)
+            return base;
+        if (value < 0 && value != Long.MIN_VALUE)
+            return new ImcBINOP(ImcBINOP.Oper.SUB, base, new ImcCONST(-value));
+        return new ImcBINOP(ImcBINOP.Oper.ADD, base, new ImcCONST(value));
+    }
+
+    /** Returns a boolean expression with the same truth value (0 or 1). */
+    private static ImcExpr truth(ImcExpr expr) {
+        if (expr instanceof ImcCONST)
+            return new ImcCONST(((ImcCONST) expr).value != 0 ? 1 : 0);
+        return expr;
+    }
+
+    private static ImcExpr binOp(ImcBINOP binOp, ImcExpr fst, ImcExpr snd) {
+        if (fst == binOp.fstExpr && snd == binOp.sndExpr)
+            return binOp;
+        return new ImcBINOP(binOp.oper, fst, snd);
+    }
+
+    /**
+     * Checks whether an expression can be dropped, i.e., whether evaluating it
+     * has no side effects.
+     *
+     * @param expr The expression.
+     * @return {@code true} if the expression has no side effects.
+     */
+    static boolean pure(ImcExpr expr) {
+        if (expr instanceof ImcCONST || expr instanceof ImcNAME || expr instanceof ImcTEMP)
+            return true;
+        if (expr instanceof ImcMEM)
+            return pure(((ImcMEM) expr).addr);
+        if (expr instanceof ImcUNOP)
+            return pure(((ImcUNOP) expr).subExpr);
+        if (expr instanceof ImcBINOP)
+            return pure(((ImcBINOP) expr).fstExpr) && pure(((ImcBINOP) expr).sndExpr);
+        return false;
+    }
+
+}
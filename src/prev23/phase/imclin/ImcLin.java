@@ -2,6 +2,7 @@ package prev23.phase.imclin;
 
 import java.util.*;
 
+import prev23.CompilationContext;
 import prev23.data.lin.*;
 import prev23.phase.*;
 
@@ -10,12 +11,6 @@ import prev23.phase.*;
  */
 public class ImcLin extends Phase {
 
-	/** All data chunks of the program. */
-	private final static Vector<LinDataChunk> dataChunks = new Vector<LinDataChunk>();
-
-	/** All code chinks of the program. */
-	private final static Vector<LinCodeChunk> codeChunks = new Vector<LinCodeChunk>();
-
 	/**
 	 * Constructs a new phase for the linearization of intermediate code.
 	 */
@@ -23,11 +18,21 @@ public class ImcLin extends Phase {
 		super("imclin");
 	}
 
+	@Override
+	public void close() {
+		if (stats != null) {
+			count("data-chunks", CompilationContext.current().dataChunks.size());
+			for (LinCodeChunk codeChunk : CompilationContext.current().codeChunks)
+				count(codeChunk.frame.label.name, "stmts", codeChunk.stmts().size());
+		}
+		super.close();
+	}
+
 	public void log() {
 		LinLogger linLogger = new LinLogger(logger);
-		for (LinDataChunk dataChunk : dataChunks)
+		for (LinDataChunk dataChunk : CompilationContext.current().dataChunks)
 			linLogger.log(dataChunk);
-		for (LinCodeChunk codeChunk : codeChunks)
+		for (LinCodeChunk codeChunk : CompilationContext.current().codeChunks)
 			linLogger.log(codeChunk);
 	}
 
@@ -37,7 +42,7 @@ public class ImcLin extends Phase {
 	 * @param dataChunk A data chunk.
 	 */
 	public static void addDataChunk(LinDataChunk dataChunk) {
-		dataChunks.add(dataChunk);
+		CompilationContext.current().dataChunks.add(dataChunk);
 	}
 
 	/**
@@ -46,7 +51,7 @@ public class ImcLin extends Phase {
 	 * @return A collection of all data chunks of the program.
 	 */
 	public static Vector<LinDataChunk> dataChunks() {
-		return new Vector<LinDataChunk>(dataChunks);
+		return new Vector<LinDataChunk>(CompilationContext.current().dataChunks);
 	}
 
 	/**
@@ -55,7 +60,7 @@ public class ImcLin extends Phase {
 	 * @param codeChunk A code chunk.
 	 */
 	public static void addCodeChunk(LinCodeChunk codeChunk) {
-		codeChunks.add(codeChunk);
+		CompilationContext.current().codeChunks.add(codeChunk);
 	}
 
 	/**
@@ -64,7 +69,7 @@ public class ImcLin extends Phase {
 	 * @return A collection of all code chunks of the program.
 	 */
 	public static Vector<LinCodeChunk> codeChunks() {
-		return new Vector<LinCodeChunk>(codeChunks);
+		return new Vector<LinCodeChunk>(CompilationContext.current().codeChunks);
 	}
 
 }
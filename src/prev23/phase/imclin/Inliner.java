@@ -0,0 +1,372 @@
+package prev23.phase.imclin;
+
+import java.util.*;
+
+import prev23.data.ast.tree.*;
+import prev23.data.ast.tree.decl.*;
+import prev23.data.ast.tree.expr.*;
+import prev23.data.ast.visitor.*;
+import prev23.data.mem.*;
+import prev23.data.imc.code.*;
+import prev23.data.imc.code.expr.*;
+import prev23.data.imc.code.stmt.*;
+import prev23.data.imc.visitor.*;
+import prev23.phase.imcgen.*;
+import prev23.phase.memory.*;
+import prev23.phase.seman.*;
+
+/**
+ * Inliner of function calls in intermediate code.
+ *
+ * Only a function that needs no frame of its own is inlined: it has no
+ * variables in the frame, all its parameters are kept in temporaries and it
+ * uses its frame pointer only to load its static link (or to pass it to a
+ * function declared at the outermost level, which never uses it). The call is
+ * replaced by a copy of the body in which the temporaries and labels are
+ * renamed, the arguments are moved into the temporaries of the parameters and
+ * the static link passed is kept in a temporary replacing the loads of the
+ * static link. The variables of the enclosing functions are thus accessed
+ * relative to the static link passed, i.e., relative to the frame pointer of
+ * the caller if the function is inlined into the function it is declared in.
+ *
+ * A function is inlined if its body is small or if it is called only once, as
+ * long as the growth of the caller stays within the budget. Calls in the
+ * inlined copies are inlined up to the maximal depth, which also limits the
+ * unrolling of recursive functions.
+ */
+public class Inliner {
+
+    /** The maximal size of a body inlined wherever it is called. */
+    private static final int SMALL_SIZE = 40;
+
+    /** The default growth of a function body allowed (in intermediate code nodes). */
+    public static final int DEFAULT_BUDGET = 400;
+
+    /** The default maximal depth of inlining. */
+    public static final int DEFAULT_DEPTH = 3;
+
+    /** The growth of a function body allowed. */
+    private final int budget;
+
+    /** The maximal depth of inlining. */
+    private final int maxDepth;
+
+    /** The frames of all functions (by their labels). */
+    private final HashMap<MemLabel, MemFrame> frames = new HashMap<MemLabel, MemFrame>();
+
+    /** The functions that need no frame of their own (by their labels). */
+    private final HashMap<MemLabel, AstFunDecl> inlinable = new HashMap<MemLabel, AstFunDecl>();
+
+    /** The temporaries of the variables of every function (set to zero on entry). */
+    private final HashMap<AstFunDecl, Vector<MemTemp>> locals = new HashMap<AstFunDecl, Vector<MemTemp>>();
+
+    /** The number of calls of every function in the program. */
+    private final HashMap<AstFunDecl, Integer> calls = new HashMap<AstFunDecl, Integer>();
+
+    /** The descriptions of the calls inlined into the last function. */
+    private final Vector<String> inlined = new Vector<String>();
+
+    /** The growth of the last function still allowed. */
+    private int remaining;
+
+    /** The size of the block of arguments the calls inlined into the last function need. */
+    private long argsSize;
+
+    /**
+     * Constructs a new inliner.
+     *
+     * @param tree     The abstract syntax tree of the program.
+     * @param budget   The growth of a function body allowed (in intermediate
+     *                 code nodes).
+     * @param maxDepth The maximal depth of inlining.
+     */
+    public Inliner(AstTree tree, int budget, int maxDepth) {
+        this.budget = budget;
+        this.maxDepth = maxDepth;
+
+        Vector<AstFunDecl> funDecls = new Vector<AstFunDecl>();
+        tree.accept(new AstFullVisitor<Object, Object>() {
+
+            @Override
+            public Object visit(AstFunDecl funDecl, Object arg) {
+                funDecls.add(funDecl);
+                frames.put(Memory.frames().get(funDecl).label, Memory.frames().get(funDecl));
+                return super.visit(funDecl, arg);
+            }
+
+            @Override
+            public Object visit(AstCallExpr callExpr, Object arg) {
+                if (SemAn.declaredAt().get(callExpr) instanceof AstFunDecl funDecl)
+                    calls.merge(funDecl, 1, Integer::sum);
+                return super.visit(callExpr, arg);
+            }
+
+        }, null);
+
+        for (AstFunDecl funDecl : funDecls) {
+            MemFrame frame = Memory.frames().get(funDecl);
+            if (funDecl.stmt == null || frame.locsSize != 0)
+                continue;
+            boolean promoted = true;
+            if (funDecl.pars != null)
+                for (AstParDecl parDecl : funDecl.pars)
+                    promoted &= Memory.accesses().get(parDecl) instanceof MemTempAccess;
+            if (!promoted || needsFrame(ImcGen.stmtImc().get(funDecl.stmt), frame))
+                continue;
+            inlinable.put(frame.label, funDecl);
+
+            Vector<MemTemp> temps = new Vector<MemTemp>();
+            funDecl.stmt.accept(new AstFullVisitor<Object, Object>() {
+
+                @Override
+                public Object visit(AstFunDecl nestedDecl, Object arg) {
+                    return null;
+                }
+
+                @Override
+                public Object visit(AstVarDecl varDecl, Object arg) {
+                    MemAccess access = Memory.accesses().get(varDecl);
+                    if (access instanceof MemTempAccess tempAccess)
+                        temps.add(tempAccess.temp);
+                    if (access instanceof MemSplitAccess splitAccess)
+                        temps.addAll(splitAccess.temps);
+                    return null;
+                }
+
+            }, null);
+            locals.put(funDecl, temps);
+        }
+    }
+
+    /**
+     * Checks whether code uses the frame pointer other than to load the static
+     * link or to pass it to a function declared at the outermost level.
+     */
+    private boolean needsFrame(ImcInstr instr, MemFrame frame) {
+        if (instr instanceof ImcTEMP temp)
+            return temp.temp == frame.FP;
+        if (instr instanceof ImcMEM mem)
+            return !(mem.addr instanceof ImcTEMP addr && addr.temp == frame.FP) && needsFrame(mem.addr, frame);
+        if (instr instanceof ImcCALL call) {
+            MemFrame callee = frames.get(call.label);
+            for (int a = 0; a < call.args.size(); a++) {
+                boolean ignored = a == 0 && callee != null && callee.depth == 0;
+                if (!ignored && needsFrame(call.args.get(a), frame))
+                    return true;
+            }
+            return false;
+        }
+        if (instr instanceof ImcBINOP binOp)
+            return needsFrame(binOp.fstExpr, frame) || needsFrame(binOp.sndExpr, frame);
+        if (instr instanceof ImcUNOP unOp)
+            return needsFrame(unOp.subExpr, frame);
+        if (instr instanceof ImcSEXPR sExpr)
+            return needsFrame(sExpr.stmt, frame) || needsFrame(sExpr.expr, frame);
+        if (instr instanceof ImcCJUMP cjump)
+            return needsFrame(cjump.cond, frame);
+        if (instr instanceof ImcESTMT eStmt)
+            return needsFrame(eStmt.expr, frame);
+        if (instr instanceof ImcMOVE move)
+            return needsFrame(move.dst, frame) || needsFrame(move.src, frame);
+        if (instr instanceof ImcSTMTS stmts) {
+            for (ImcStmt stmt : stmts.stmts)
+                if (needsFrame(stmt, frame))
+                    return true;
+            return false;
+        }
+        return false;
+    }
+
+    /**
+     * Inlines the calls in a function body.
+     *
+     * @param funDecl The function.
+     * @param body    The intermediate code of the body (left unchanged).
+     * @return The body with the calls inlined.
+     */
+    public ImcStmt inline(AstFunDecl funDecl, ImcStmt body) {
+        inlined.clear();
+        remaining = budget;
+        argsSize = 0;
+        return (ImcStmt) body.accept(new Copier(funDecl, 0, null, null), null);
+    }
+
+    /** Returns the descriptions of the calls inlined into the last function. */
+    public Vector<String> inlined() {
+        return new Vector<String>(inlined);
+    }
+
+    /**
+     * Returns the size of the block of arguments the calls inlined into the
+     * last function need (the calls made by the functions inlined are made
+     * from the frame of the last function).
+     */
+    public long argsSize() {
+        return argsSize;
+    }
+
+    /** Replaces a call by a copy of the body of the function called. */
+    private ImcExpr expand(Copier caller, AstFunDecl funDecl, Vector<ImcExpr> args) {
+        MemFrame frame = Memory.frames().get(funDecl);
+        ImcStmt body = ImcGen.stmtImc().get(funDecl.stmt);
+        remaining -= StmtFolder.size(body);
+        argsSize = Math.max(argsSize, frame.argsSize);
+        inlined.add(funDecl.name + " into " + caller.funDecl.name + " (" + StmtFolder.size(body)
+                + " nodes, depth " + (caller.depth + 1) + ")");
+
+        Copier copier = new Copier(funDecl, caller.depth + 1, frame, new MemTemp());
+        Vector<ImcStmt> stmts = new Vector<ImcStmt>();
+        stmts.add(new ImcMOVE(new ImcTEMP(copier.link), args.get(0)));
+        if (funDecl.pars != null) {
+            int a = 1;
+            for (AstParDecl parDecl : funDecl.pars) {
+                MemTempAccess access = (MemTempAccess) Memory.accesses().get(parDecl);
+                stmts.add(new ImcMOVE(copier.visit(new ImcTEMP(access.temp), null), args.get(a++)));
+            }
+        }
+        for (MemTemp temp : locals.get(funDecl))
+            stmts.add(new ImcMOVE(copier.visit(new ImcTEMP(temp), null), new ImcCONST(0)));
+
+        // the value of the body is the value of its last expression statement
+        ImcExpr result = new ImcCONST(0);
+        if (body instanceof ImcESTMT eStmt)
+            result = eStmt.expr;
+        else if (body instanceof ImcSTMTS bodyStmts && bodyStmts.stmts.lastElement() instanceof ImcESTMT eStmt) {
+            for (int s = 0; s < bodyStmts.stmts.size() - 1; s++)
+                stmts.add((ImcStmt) bodyStmts.stmts.get(s).accept(copier, null));
+            result = eStmt.expr;
+        }
+        else
+            stmts.add((ImcStmt) body.accept(copier, null));
+        return new ImcSEXPR(new ImcSTMTS(stmts), (ImcExpr) result.accept(copier, null));
+    }
+
+    /**
+     * Copier of intermediate code that inlines the calls in the copy (and
+     * renames the temporaries and labels if the code is inlined).
+     */
+    private class Copier implements ImcVisitor<ImcInstr, Object> {
+
+        /** The function whose code is copied. */
+        final AstFunDecl funDecl;
+
+        /** The depth of inlining of the code copied. */
+        final int depth;
+
+        /** The frame of the function if the code is inlined (or {@code null}). */
+        final MemFrame frame;
+
+        /** The temporary holding the static link if the code is inlined. */
+        final MemTemp link;
+
+        final HashMap<MemTemp, MemTemp> temps = new HashMap<MemTemp, MemTemp>();
+
+        final HashMap<MemLabel, MemLabel> labels = new HashMap<MemLabel, MemLabel>();
+
+        Copier(AstFunDecl funDecl, int depth, MemFrame frame, MemTemp link) {
+            this.funDecl = funDecl;
+            this.depth = depth;
+            this.frame = frame;
+            this.link = link;
+        }
+
+        MemLabel label(MemLabel label) {
+            return frame == null ? label : labels.computeIfAbsent(label, __ -> new MemLabel());
+        }
+
+        @Override
+        public ImcExpr visit(ImcBINOP binOp, Object arg) {
+            return new ImcBINOP(binOp.oper, (ImcExpr) binOp.fstExpr.accept(this, arg),
+                    (ImcExpr) binOp.sndExpr.accept(this, arg));
+        }
+
+        @Override
+        public ImcExpr visit(ImcCALL call, Object arg) {
+            Vector<ImcExpr> args = new Vector<ImcExpr>();
+            for (ImcExpr argExpr : call.args)
+                args.add((ImcExpr) argExpr.accept(this, arg));
+
+            AstFunDecl callee = inlinable.get(call.label);
+            if (callee != null && depth < maxDepth) {
+                int size = StmtFolder.size(ImcGen.stmtImc().get(callee.stmt));
+                boolean once = calls.getOrDefault(callee, 0) == 1 && callee != funDecl;
+                if ((size <= SMALL_SIZE || once) && size <= remaining)
+                    return expand(this, callee, args);
+            }
+            return new ImcCALL(call.label, call.offs, args);
+        }
+
+        @Override
+        public ImcStmt visit(ImcCJUMP cjump, Object arg) {
+            return new ImcCJUMP((ImcExpr) cjump.cond.accept(this, arg), label(cjump.posLabel), label(cjump.negLabel));
+        }
+
+        @Override
+        public ImcExpr visit(ImcCONST constant, Object arg) {
+            return constant;
+        }
+
+        @Override
+        public ImcStmt visit(ImcESTMT eStmt, Object arg) {
+            return new ImcESTMT((ImcExpr) eStmt.expr.accept(this, arg));
+        }
+
+        @Override
+        public ImcStmt visit(ImcJUMP jump, Object arg) {
+            return new ImcJUMP(label(jump.label));
+        }
+
+        @Override
+        public ImcStmt visit(ImcLABEL label, Object arg) {
+            return new ImcLABEL(label(label.label));
+        }
+
+        @Override
+        public ImcExpr visit(ImcMEM mem, Object arg) {
+            // the static link is the one passed to the inlined function
+            if (frame != null && mem.addr instanceof ImcTEMP addr && addr.temp == frame.FP)
+                return new ImcTEMP(link);
+            return new ImcMEM((ImcExpr) mem.addr.accept(this, arg));
+        }
+
+        @Override
+        public ImcStmt visit(ImcMOVE move, Object arg) {
+            return new ImcMOVE((ImcExpr) move.dst.accept(this, arg), (ImcExpr) move.src.accept(this, arg));
+        }
+
+        @Override
+        public ImcExpr visit(ImcNAME name, Object arg) {
+            return name;
+        }
+
+        @Override
+        public ImcExpr visit(ImcSEXPR sExpr, Object arg) {
+            return new ImcSEXPR((ImcStmt) sExpr.stmt.accept(this, arg), (ImcExpr) sExpr.expr.accept(this, arg));
+        }
+
+        @Override
+        public ImcStmt visit(ImcSTMTS stmts, Object arg) {
+            Vector<ImcStmt> copies = new Vector<ImcStmt>();
+            for (ImcStmt stmt : stmts.stmts)
+                copies.add((ImcStmt) stmt.accept(this, arg));
+            return new ImcSTMTS(copies);
+        }
+
+        @Override
+        public ImcExpr visit(ImcTEMP temp, Object arg) {
+            if (frame == null)
+                return temp;
+            // (passed to a function declared at the outermost level only)
+            if (temp.temp == frame.FP)
+                return new ImcTEMP(link);
+            return new ImcTEMP(temps.computeIfAbsent(temp.temp, __ -> new MemTemp()));
+        }
+
+        @Override
+        public ImcExpr visit(ImcUNOP unOp, Object arg) {
+            return new ImcUNOP(unOp.oper, (ImcExpr) unOp.subExpr.accept(this, arg));
+        }
+
+    }
+
+}
@@ -15,9 +15,10 @@ public class Interpreter {
 
 	private boolean debug = false;
 
-	private Random random;
+	/** The seed used for filling uninitialized memory. */
+	private static final long MEMORY_SEED = 0x5EED_2023L;
 
-	private HashMap<Long, Byte> memory;
+	private PagedMemory memory;
 
 	private HashMap<MemTemp, Long> temps;
 
@@ -36,9 +37,7 @@ public class Interpreter {
 	private MemTemp HP;
 
 	public Interpreter(Vector<LinDataChunk> dataChunks, Vector<LinCodeChunk> codeChunks) {
-		random = new Random();
-
-		this.memory = new HashMap<Long, Byte>();
+		this.memory = new PagedMemory(MEMORY_SEED);
 		this.temps = new HashMap<MemTemp, Long>();
 
 		SP = new MemTemp();
@@ -81,12 +80,7 @@ public class Interpreter {
 	private void memST(Long address, Long value, boolean debug) {
 		if (debug)
 			System.out.printf("### [%d] <- %d\n", address, value);
-		for (int b = 0; b <= 7; b++) {
-			long longval = value % 0x100;
-			byte byteval = (byte) longval;
-			memory.put(address + b, byteval);
-			value = value >> 8;
-		}
+		memory.st(address, value);
 	}
 
 	private Long memLD(Long address) {
@@ -94,17 +88,7 @@ public class Interpreter {
 	}
 
 	private Long memLD(Long address, boolean debug) {
-		Long value = 0L;
-		for (int b = 7; b >= 0; b--) {
-			Byte byteval = memory.get(address + b);
-			if (byteval == null) {
-				byteval = (byte) (random.nextLong() / 0x100);
-				// throw new Report.Error("INTERPRETER: Uninitialized memory location " +
-				// (address + b) + ".");
-			}
-			long longval = (long) byteval;
-			value = (value * 0x100) + (longval < 0 ? longval + 0x100 : longval);
-		}
+		Long value = memory.ld(address);
 		if (debug)
 			System.out.printf("### %d <- [%d]\n", value, address);
 		return value;
@@ -145,7 +129,6 @@ public class Interpreter {
 	private Long tempLD(MemTemp temp, boolean debug) {
 		Long value = temps.get(temp);
 		if (value == null) {
-			value = random.nextLong();
 			throw new Report.Error("Uninitialized temporary variable T" + temp.temp + ".");
 		}
 		if (debug) {
@@ -0,0 +1,185 @@
+package prev23.phase.imclin;
+
+import java.util.*;
+
+/**
+ * Sparse paged memory of the interpreter.
+ *
+ * The 64-bit address space is divided into 4 KiB pages, each held as an array
+ * of 512 octas. Pages are found through a two-level page table: the directory
+ * maps the upper bits of an address to a table of 1024 pages (4 MiB), the table
+ * maps the middle bits to a page. Bytes are stored in little-endian order, i.e.,
+ * the byte at the lowest address is the least significant byte of an octa.
+ *
+ * Aligned octa loads and stores access the page array directly; unaligned ones
+ * fall back to byte-by-byte access. Pages are allocated when first touched and
+ * are filled deterministically (see {@link #fill(long, long[])}), so reading
+ * uninitialized memory yields garbage that is the same on every run.
+ */
+class PagedMemory {
+
+	/** The number of address bits within a page. */
+	private static final int PAGE_BITS = 12;
+
+	/** The number of address bits selecting a page within a table. */
+	private static final int TABLE_BITS = 10;
+
+	private static final int PAGE_SIZE = 1 << PAGE_BITS;
+
+	private static final int TABLE_SIZE = 1 << TABLE_BITS;
+
+	/** The page directory. */
+	private final HashMap<Long, long[][]> directory = new HashMap<Long, long[][]>();
+
+	/** The seed of the fill policy. */
+	private final long seed;
+
+	/** The key of the most recently used page table. */
+	private long lastTableKey = -1;
+
+	/** The most recently used page table. */
+	private long[][] lastTable = null;
+
+	/** The number of the most recently used page. */
+	private long lastPageNum = -1;
+
+	/** The most recently used page. */
+	private long[] lastPage = null;
+
+	/** The number of pages allocated. */
+	private int numPages = 0;
+
+	/**
+	 * Constructs a new empty memory.
+	 *
+	 * @param seed The seed used for filling uninitialized memory.
+	 */
+	PagedMemory(long seed) {
+		this.seed = seed;
+	}
+
+	/**
+	 * Returns the page containing the specified address (allocating it if
+	 * necessary).
+	 *
+	 * @param address The address.
+	 * @return The page.
+	 */
+	private long[] page(long address) {
+		long pageNum = address >>> PAGE_BITS;
+		if (pageNum == lastPageNum)
+			return lastPage;
+
+		long tableKey = pageNum >>> TABLE_BITS;
+		long[][] table;
+		if (tableKey == lastTableKey)
+			table = lastTable;
+		else {
+			table = directory.get(tableKey);
+			if (table == null) {
+				table = new long[TABLE_SIZE][];
+				directory.put(tableKey, table);
+			}
+			lastTableKey = tableKey;
+			lastTable = table;
+		}
+
+		int index = (int) (pageNum & (TABLE_SIZE - 1));
+		long[] page = table[index];
+		if (page == null) {
+			page = new long[PAGE_SIZE >> 3];
+			fill(pageNum, page);
+			table[index] = page;
+			numPages++;
+		}
+		lastPageNum = pageNum;
+		lastPage = page;
+		return page;
+	}
+
+	/**
+	 * Fills a newly allocated page. The contents depend only on the seed and on the
+	 * page number (splitmix64 sequence).
+	 *
+	 * @param pageNum The page number.
+	 * @param page    The page.
+	 */
+	private void fill(long pageNum, long[] page) {
+		long state = seed ^ (pageNum * 0x9E3779B97F4A7C15L);
+		for (int i = 0; i < page.length; i++) {
+			state += 0x9E3779B97F4A7C15L;
+			long z = state;
+			z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+			z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+			page[i] = z ^ (z >>> 31);
+		}
+	}
+
+	/**
+	 * Loads an octa.
+	 *
+	 * @param address The address.
+	 * @return The octa stored at the address.
+	 */
+	long ld(long address) {
+		int offset = (int) (address & (PAGE_SIZE - 1));
+		if ((offset & 7) == 0)
+			return page(address)[offset >> 3];
+		long value = 0;
+		for (int b = 7; b >= 0; b--)
+			value = (value << 8) | ldByte(address + b);
+		return value;
+	}
+
+	/**
+	 * Stores an octa.
+	 *
+	 * @param address The address.
+	 * @param value   The octa to be stored at the address.
+	 */
+	void st(long address, long value) {
+		int offset = (int) (address & (PAGE_SIZE - 1));
+		if ((offset & 7) == 0) {
+			page(address)[offset >> 3] = value;
+			return;
+		}
+		for (int b = 0; b <= 7; b++) {
+			stByte(address + b, value);
+			value = value >>> 8;
+		}
+	}
+
+	/**
+	 * Loads a byte.
+	 *
+	 * @param address The address.
+	 * @return The byte stored at the address (as an unsigned value).
+	 */
+	long ldByte(long address) {
+		int offset = (int) (address & (PAGE_SIZE - 1));
+		return (page(address)[offset >> 3] >>> ((offset & 7) << 3)) & 0xFFL;
+	}
+
+	/**
+	 * Stores a byte.
+	 *
+	 * @param address The address.
+	 * @param value   The value whose least significant byte is stored.
+	 */
+	void stByte(long address, long value) {
+		int offset = (int) (address & (PAGE_SIZE - 1));
+		int shift = (offset & 7) << 3;
+		long[] page = page(address);
+		page[offset >> 3] = (page[offset >> 3] & ~(0xFFL << shift)) | ((value & 0xFFL) << shift);
+	}
+
+	/**
+	 * Returns the number of pages allocated.
+	 *
+	 * @return The number of pages allocated.
+	 */
+	int numPages() {
+		return numPages;
+	}
+
+}
@@ -0,0 +1,310 @@
+package prev23.phase.imclin;
+
+import java.util.*;
+
+import prev23.data.mem.*;
+import prev23.data.imc.code.expr.*;
+import prev23.data.imc.code.stmt.*;
+import prev23.data.ssa.*;
+
+/**
+ * Construction of the static single assignment form.
+ *
+ * The canonical statements of a function body are split into basic blocks,
+ * dominators are computed by the iterative algorithm of Cooper, Harvey and
+ * Kennedy over the reverse postorder, phi functions are placed at the
+ * iterated dominance frontiers of the definitions of every temporary where the
+ * temporary is live (pruned form) and the temporaries are renamed in a walk of
+ * the dominator tree.
+ */
+public class SsaBuilder {
+
+    /** The number of phi functions placed in the last body built. */
+    private int phis = 0;
+
+    /**
+     * Builds the static single assignment form of a function body.
+     *
+     * @param frame The frame of the function.
+     * @param stmts The canonical statements (the first one is the entry label,
+     *              which is not jumped to, the last one is a jump).
+     * @return The function body in static single assignment form.
+     */
+    public SsaCode build(MemFrame frame, Vector<ImcStmt> stmts) {
+        SsaCode code = split(frame, stmts);
+        if (!code.entry().preds.isEmpty())
+            throw new IllegalArgumentException("The entry label is jumped to.");
+        code.removeUnreachable();
+        Vector<SsaBlock> order = dominators(code);
+        placePhis(code, order);
+        rename(code);
+        return code;
+    }
+
+    /** Returns the number of phi functions placed in the last body built. */
+    public int phis() {
+        return phis;
+    }
+
+    /** Splits the statements into basic blocks and connects them. */
+    private static SsaCode split(MemFrame frame, Vector<ImcStmt> stmts) {
+        SsaCode code = new SsaCode(frame);
+        HashMap<MemLabel, SsaBlock> blocks = new HashMap<MemLabel, SsaBlock>();
+        SsaBlock block = null;
+        for (ImcStmt stmt : stmts) {
+            if (stmt instanceof ImcLABEL label) {
+                // a block falling through to a label jumps to it
+                if (block != null)
+                    block.stmts.add(new ImcJUMP(label.label));
+                block = new SsaBlock(label.label);
+                code.blocks.add(block);
+                blocks.put(label.label, block);
+                continue;
+            }
+            // a statement following a jump starts an (unreachable) block
+            if (block == null) {
+                block = new SsaBlock(new MemLabel());
+                code.blocks.add(block);
+                blocks.put(block.label, block);
+            }
+            block.stmts.add(stmt);
+            if (stmt instanceof ImcJUMP || stmt instanceof ImcCJUMP)
+                block = null;
+        }
+        if (block != null)
+            throw new IllegalArgumentException("The last statement is not a jump.");
+
+        for (SsaBlock from : code.blocks) {
+            for (MemLabel label : targets(from.last())) {
+                SsaBlock to = blocks.get(label);
+                // the exit label is not in the body
+                if (to != null && !from.succs.contains(to)) {
+                    from.succs.add(to);
+                    to.preds.add(from);
+                }
+            }
+        }
+        return code;
+    }
+
+    /**
+     * Returns the labels a jump may jump to.
+     *
+     * @param jump The jump.
+     * @return The labels.
+     */
+    public static Vector<MemLabel> targets(ImcStmt jump) {
+        Vector<MemLabel> targets = new Vector<MemLabel>();
+        if (jump instanceof ImcJUMP ujump)
+            targets.add(ujump.label);
+        if (jump instanceof ImcCJUMP cjump) {
+            targets.add(cjump.posLabel);
+            targets.add(cjump.negLabel);
+        }
+        return targets;
+    }
+
+    /**
+     * Computes the dominator tree of a function body whose blocks are all
+     * reachable from the entry.
+     *
+     * @param code The function body.
+     * @return The blocks in reverse postorder.
+     */
+    public static Vector<SsaBlock> dominators(SsaCode code) {
+        Vector<SsaBlock> order = reversePostorder(code);
+        HashMap<SsaBlock, Integer> index = new HashMap<SsaBlock, Integer>();
+        for (int b = 0; b < order.size(); b++) {
+            index.put(order.get(b), b);
+            order.get(b).idom = null;
+            order.get(b).children.clear();
+        }
+
+        SsaBlock entry = code.entry();
+        entry.idom = entry;
+        boolean changed = true;
+        while (changed) {
+            changed = false;
+            for (SsaBlock block : order) {
+                if (block == entry)
+                    continue;
+                SsaBlock idom = null;
+                for (SsaBlock pred : block.preds) {
+                    if (pred.idom == null)
+                        continue;
+                    idom = idom == null ? pred : intersect(pred, idom, index);
+                }
+                if (idom != block.idom) {
+                    block.idom = idom;
+                    changed = true;
+                }
+            }
+        }
+
+        entry.idom = null;
+        for (SsaBlock block : order)
+            if (block != entry)
+                block.idom.children.add(block);
+        return order;
+    }
+
+    /** Returns the nearest common dominator of two blocks. */
+    private static SsaBlock intersect(SsaBlock fst, SsaBlock snd, HashMap<SsaBlock, Integer> index) {
+        while (fst != snd) {
+            while (index.get(fst) > index.get(snd))
+                fst = fst.idom;
+            while (index.get(snd) > index.get(fst))
+                snd = snd.idom;
+        }
+        return fst;
+    }
+
+    /** Returns the blocks in reverse postorder of a depth-first search from the entry. */
+    private static Vector<SsaBlock> reversePostorder(SsaCode code) {
+        Vector<SsaBlock> postorder = new Vector<SsaBlock>();
+        HashSet<SsaBlock> visited = new HashSet<SsaBlock>();
+        // the blocks on the path and the number of their successors visited so far
+        Stack<SsaBlock> path = new Stack<SsaBlock>();
+        Stack<Integer> next = new Stack<Integer>();
+        visited.add(code.entry());
+        path.push(code.entry());
+        next.push(0);
+        while (!path.isEmpty()) {
+            SsaBlock block = path.peek();
+            int succ = next.pop();
+            if (succ < block.succs.size()) {
+                next.push(succ + 1);
+                if (visited.add(block.succs.get(succ))) {
+                    path.push(block.succs.get(succ));
+                    next.push(0);
+                }
+            }
+            else
+                postorder.add(path.pop());
+        }
+        Collections.reverse(postorder);
+        return postorder;
+    }
+
+    /**
+     * Places phi functions at the iterated dominance frontiers of definitions
+     * where the temporaries are live.
+     */
+    private void placePhis(SsaCode code, Vector<SsaBlock> order) {
+        // dominance frontiers
+        HashMap<SsaBlock, HashSet<SsaBlock>> frontiers = new HashMap<SsaBlock, HashSet<SsaBlock>>();
+        for (SsaBlock block : order)
+            frontiers.put(block, new HashSet<SsaBlock>());
+        for (SsaBlock block : order) {
+            if (block.preds.size() < 2)
+                continue;
+            for (SsaBlock pred : block.preds) {
+                for (SsaBlock runner = pred; runner != block.idom; runner = runner.idom)
+                    frontiers.get(runner).add(block);
+            }
+        }
+
+        // the temporaries used before they are defined in every block and the blocks defining them
+        HashMap<SsaBlock, HashSet<MemTemp>> exposed = new HashMap<SsaBlock, HashSet<MemTemp>>();
+        HashMap<SsaBlock, HashSet<MemTemp>> killed = new HashMap<SsaBlock, HashSet<MemTemp>>();
+        LinkedHashMap<MemTemp, Vector<SsaBlock>> defs = new LinkedHashMap<MemTemp, Vector<SsaBlock>>();
+        for (SsaBlock block : order) {
+            exposed.put(block, new HashSet<MemTemp>());
+            killed.put(block, new HashSet<MemTemp>());
+            for (ImcStmt stmt : block.stmts) {
+                Vector<MemTemp> uses = new Vector<MemTemp>();
+                TempReplacer.uses(stmt, uses);
+                for (MemTemp use : uses)
+                    if (!killed.get(block).contains(use))
+                        exposed.get(block).add(use);
+                MemTemp def = TempReplacer.def(stmt);
+                if (def != null && !code.pinned(def)) {
+                    if (killed.get(block).add(def))
+                        defs.computeIfAbsent(def, __ -> new Vector<SsaBlock>()).add(block);
+                }
+            }
+        }
+
+        // the temporaries live at the start of every block
+        HashMap<SsaBlock, HashSet<MemTemp>> live = new HashMap<SsaBlock, HashSet<MemTemp>>();
+        for (SsaBlock block : order)
+            live.put(block, new HashSet<MemTemp>(exposed.get(block)));
+        boolean changed = true;
+        while (changed) {
+            changed = false;
+            for (int b = order.size() - 1; b >= 0; b--) {
+                SsaBlock block = order.get(b);
+                for (SsaBlock succ : block.succs)
+                    for (MemTemp temp : live.get(succ))
+                        if (!killed.get(block).contains(temp))
+                            changed |= live.get(block).add(temp);
+            }
+        }
+
+        for (Map.Entry<MemTemp, Vector<SsaBlock>> def : defs.entrySet()) {
+            HashSet<SsaBlock> placed = new HashSet<SsaBlock>();
+            Stack<SsaBlock> pending = new Stack<SsaBlock>();
+            pending.addAll(def.getValue());
+            HashSet<SsaBlock> defining = new HashSet<SsaBlock>(def.getValue());
+            while (!pending.isEmpty()) {
+                for (SsaBlock frontier : frontiers.get(pending.pop())) {
+                    if (!live.get(frontier).contains(def.getKey()) || !placed.add(frontier))
+                        continue;
+                    frontier.phis.add(new SsaPhi(def.getKey()));
+                    phis++;
+                    if (defining.add(frontier))
+                        pending.push(frontier);
+                }
+            }
+        }
+    }
+
+    /** Renames the temporaries in a preorder walk of the dominator tree. */
+    private static void rename(SsaCode code) {
+        HashMap<MemTemp, Stack<MemTemp>> names = new HashMap<MemTemp, Stack<MemTemp>>();
+        TempReplacer replacer = new TempReplacer(temp -> {
+            Stack<MemTemp> stack = names.get(temp);
+            return stack == null || stack.isEmpty() ? null : new ImcTEMP(stack.peek());
+        });
+
+        // a null entry marks the end of the subtree of the block below it
+        Stack<SsaBlock> pending = new Stack<SsaBlock>();
+        Stack<Vector<MemTemp>> renamed = new Stack<Vector<MemTemp>>();
+        pending.push(code.entry());
+        while (!pending.isEmpty()) {
+            SsaBlock block = pending.pop();
+            if (block == null) {
+                for (MemTemp var : renamed.pop())
+                    names.get(var).pop();
+                continue;
+            }
+
+            Vector<MemTemp> vars = new Vector<MemTemp>();
+            for (SsaPhi phi : block.phis) {
+                phi.dst = new MemTemp();
+                names.computeIfAbsent(phi.var, __ -> new Stack<MemTemp>()).push(phi.dst);
+                vars.add(phi.var);
+            }
+            for (int s = 0; s < block.stmts.size(); s++) {
+                ImcStmt stmt = replacer.replace(block.stmts.get(s));
+                MemTemp def = TempReplacer.def(stmt);
+                if (def != null && !code.pinned(def)) {
+                    MemTemp name = new MemTemp();
+                    names.computeIfAbsent(def, __ -> new Stack<MemTemp>()).push(name);
+                    vars.add(def);
+                    stmt = new ImcMOVE(new ImcTEMP(name), ((ImcMOVE) stmt).src);
+                }
+                block.stmts.set(s, stmt);
+            }
+            for (SsaBlock succ : block.succs)
+                for (SsaPhi phi : succ.phis)
+                    phi.args.put(block, new ImcTEMP(phi.var).accept(replacer, null));
+
+            renamed.push(vars);
+            pending.push(null);
+            for (SsaBlock child : block.children)
+                pending.push(child);
+        }
+    }
+
+}
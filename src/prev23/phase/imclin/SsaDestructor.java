@@ -0,0 +1,58 @@
+package prev23.phase.imclin;
+
+import java.util.*;
+
+import prev23.data.mem.*;
+import prev23.data.imc.code.expr.*;
+import prev23.data.imc.code.stmt.*;
+import prev23.data.ssa.*;
+
+/**
+ * Translation out of the static single assignment form.
+ *
+ * Every phi function is replaced by a fresh temporary that each predecessor
+ * assigns its argument to just before its closing jump, and by a move of that
+ * temporary into the temporary the phi function defines at the start of the
+ * block. As the fresh temporaries are not used anywhere else, the copies are
+ * correct even on edges that leave a block with a conditional jump and even if
+ * the live ranges of the arguments and of the defined temporaries overlap, so
+ * no edges need to be split. The copies are left to the register allocator to
+ * coalesce.
+ */
+public class SsaDestructor {
+
+    /**
+     * Translates a function body out of the static single assignment form.
+     *
+     * @param code The function body in static single assignment form.
+     * @return The canonical statements (the first one is the entry label, the
+     *         last one is a jump).
+     */
+    public Vector<ImcStmt> destruct(SsaCode code) {
+        HashMap<SsaBlock, Vector<ImcStmt>> starts = new HashMap<SsaBlock, Vector<ImcStmt>>();
+        HashMap<SsaBlock, Vector<ImcStmt>> ends = new HashMap<SsaBlock, Vector<ImcStmt>>();
+        for (SsaBlock block : code.blocks) {
+            starts.put(block, new Vector<ImcStmt>());
+            ends.put(block, new Vector<ImcStmt>());
+        }
+        for (SsaBlock block : code.blocks) {
+            for (SsaPhi phi : block.phis) {
+                ImcTEMP copy = new ImcTEMP(new MemTemp());
+                for (Map.Entry<SsaBlock, ImcExpr> arg : phi.args.entrySet())
+                    ends.get(arg.getKey()).add(new ImcMOVE(copy, arg.getValue()));
+                starts.get(block).add(new ImcMOVE(new ImcTEMP(phi.dst), copy));
+            }
+        }
+
+        Vector<ImcStmt> stmts = new Vector<ImcStmt>();
+        for (SsaBlock block : code.blocks) {
+            stmts.add(new ImcLABEL(block.label));
+            stmts.addAll(starts.get(block));
+            stmts.addAll(block.stmts.subList(0, block.stmts.size() - 1));
+            stmts.addAll(ends.get(block));
+            stmts.add(block.last());
+        }
+        return stmts;
+    }
+
+}
@@ -27,13 +27,7 @@ public class StmtCanonizer implements ImcVisitor<Vector<ImcStmt>, Object> {
 
         if(eStmt.expr instanceof ImcCALL) {
             ImcCALL call = (ImcCALL) eStmt.expr;
-            Vector<ImcExpr> args = new Vector<>();
-
-            for(ImcExpr argExpr : call.args) {
-                ImcExpr acc = argExpr.accept(new ExprCanonizer(), ret);
-                args.add(acc);
-            }
-
+            Vector<ImcExpr> args = new ExprCanonizer().args(call, ret);
             ret.add(new ImcESTMT(new ImcCALL(call.label, call.offs, args)));
         }
         else {
@@ -65,22 +59,27 @@ public class StmtCanonizer implements ImcVisitor<Vector<ImcStmt>, Object> {
         if(move.dst instanceof ImcMEM) {
             ImcMEM dstMem = (ImcMEM) move.dst;
             ImcExpr dstExpr = dstMem.addr.accept(new ExprCanonizer(), ret);
-            ImcTEMP dstTemp = new ImcTEMP(new MemTemp());
-            ret.add(new ImcMOVE(dstTemp, dstExpr));
 
-            ImcExpr srcExpr = move.src.accept(new ExprCanonizer(), ret);
-            ImcTEMP srcTemp = new ImcTEMP(new MemTemp());
-            ret.add(new ImcMOVE(srcTemp, srcExpr));
+            Vector<ImcStmt> srcStmts = new Vector<>();
+            ImcExpr srcExpr = move.src.accept(new ExprCanonizer(), srcStmts);
+            dstExpr = ExprCanonizer.protect(dstExpr, srcStmts, ret);
+            ret.addAll(srcStmts);
 
-            ret.add(new ImcMOVE(new ImcMEM(dstTemp), srcTemp));
+            ret.add(new ImcMOVE(new ImcMEM(dstExpr), srcExpr));
         }
         else if(move.dst instanceof ImcTEMP) {
             ImcTEMP dstTemp = (ImcTEMP) move.dst;
-            ImcExpr srcExpr = move.src.accept(new ExprCanonizer(), ret);
-            ImcTEMP srcTemp = new ImcTEMP(new MemTemp());
 
-            ret.add(new ImcMOVE(srcTemp, srcExpr));
-            ret.add(new ImcMOVE(new ImcTEMP(dstTemp.temp), srcTemp));
+            // the result of a call is moved into the destination directly
+            if(move.src instanceof ImcCALL) {
+                ImcCALL call = (ImcCALL) move.src;
+                Vector<ImcExpr> args = new ExprCanonizer().args(call, ret);
+                ret.add(new ImcMOVE(new ImcTEMP(dstTemp.temp), new ImcCALL(call.label, call.offs, args)));
+            }
+            else {
+                ImcExpr srcExpr = move.src.accept(new ExprCanonizer(), ret);
+                ret.add(new ImcMOVE(new ImcTEMP(dstTemp.temp), srcExpr));
+            }
         }
         else {
             throw new Report.Error(move.toString());
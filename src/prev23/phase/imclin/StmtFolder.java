@@ -0,0 +1,94 @@
+package prev23.phase.imclin;
+
+import java.util.*;
+
+import prev23.data.imc.code.*;
+import prev23.data.imc.code.expr.*;
+import prev23.data.imc.code.stmt.*;
+import prev23.data.imc.visitor.*;
+
+/**
+ * Statement folder.
+ *
+ * Folds all expressions within a statement (see {@link ExprFolder}) and
+ * replaces conditional jumps with constant conditions by unconditional jumps.
+ * The structure of statements is preserved.
+ */
+public class StmtFolder implements ImcVisitor<ImcStmt, Object> {
+
+    @Override
+    public ImcStmt visit(ImcCJUMP cjump, Object arg) {
+        ImcExpr cond = cjump.cond.accept(new ExprFolder(), arg);
+        if (cond instanceof ImcCONST)
+            return new ImcJUMP(((ImcCONST) cond).value != 0 ? cjump.posLabel : cjump.negLabel);
+        if (cjump.posLabel == cjump.negLabel && ExprFolder.pure(cond))
+            return new ImcJUMP(cjump.posLabel);
+        return new ImcCJUMP(cond, cjump.posLabel, cjump.negLabel);
+    }
+
+    @Override
+    public ImcStmt visit(ImcESTMT eStmt, Object arg) {
+        return new ImcESTMT(eStmt.expr.accept(new ExprFolder(), arg));
+    }
+
+    @Override
+    public ImcStmt visit(ImcJUMP jump, Object arg) {
+        return jump;
+    }
+
+    @Override
+    public ImcStmt visit(ImcLABEL label, Object arg) {
+        return label;
+    }
+
+    @Override
+    public ImcStmt visit(ImcMOVE move, Object arg) {
+        ImcExpr dst = move.dst instanceof ImcMEM ? new ImcMEM(((ImcMEM) move.dst).addr.accept(new ExprFolder(), arg)) : move.dst;
+        return new ImcMOVE(dst, move.src.accept(new ExprFolder(), arg));
+    }
+
+    @Override
+    public ImcStmt visit(ImcSTMTS stmts, Object arg) {
+        Vector<ImcStmt> folded = new Vector<ImcStmt>();
+        for (ImcStmt stmt : stmts.stmts)
+            folded.add(stmt.accept(this, arg));
+        return new ImcSTMTS(folded);
+    }
+
+    /**
+     * Returns the number of nodes of an intermediate code tree.
+     *
+     * @param instr The root of the tree.
+     * @return The number of nodes.
+     */
+    public static int size(ImcInstr instr) {
+        if (instr instanceof ImcBINOP binOp)
+            return 1 + size(binOp.fstExpr) + size(binOp.sndExpr);
+        if (instr instanceof ImcUNOP unOp)
+            return 1 + size(unOp.subExpr);
+        if (instr instanceof ImcMEM mem)
+            return 1 + size(mem.addr);
+        if (instr instanceof ImcSEXPR sExpr)
+            return 1 + size(sExpr.stmt) + size(sExpr.expr);
+        if (instr instanceof ImcCALL call) {
+            int size = 1;
+            for (ImcExpr arg : call.args)
+                size += size(arg);
+            return size;
+        }
+        if (instr instanceof ImcCJUMP cjump)
+            return 1 + size(cjump.cond);
+        if (instr instanceof ImcESTMT eStmt)
+            return 1 + size(eStmt.expr);
+        if (instr instanceof ImcMOVE move)
+            return 1 + size(move.dst) + size(move.src);
+        if (instr instanceof ImcSTMTS stmts) {
+            int size = 1;
+            for (ImcStmt stmt : stmts.stmts)
+                size += size(stmt);
+            return size;
+        }
+        return 1;
+    }
+
+}
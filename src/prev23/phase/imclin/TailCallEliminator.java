@@ -0,0 +1,200 @@
+package prev23.phase.imclin;
+
+import java.util.*;
+
+import prev23.data.ast.tree.*;
+import prev23.data.ast.tree.decl.*;
+import prev23.data.ast.visitor.*;
+import prev23.data.mem.*;
+import prev23.data.imc.code.expr.*;
+import prev23.data.imc.code.stmt.*;
+import prev23.phase.memory.*;
+
+/**
+ * Eliminator of calls in tail position.
+ *
+ * A call is in tail position if the statements following it (along the only
+ * path they form) do nothing but move its result into the return value and
+ * reach the exit. The frame of the caller is no longer needed then unless the
+ * address of one of its variables may have been passed on, i.e., unless one of
+ * them escapes.
+ *
+ * A recursive call of the function itself in tail position becomes a loop:
+ * the arguments are assigned to the parameters and the body is reentered (the
+ * static link stays the same). Any other call in tail position is marked as a
+ * tail call (the caller's frame is dropped and the function called is jumped
+ * to, so that it returns directly to the caller's caller) if its arguments fit
+ * into the caller's own arguments and if it is not nested within the caller
+ * (which would need the caller's frame through the static link).
+ */
+public class TailCallEliminator {
+
+    /** The functions of the program (by their labels). */
+    private final HashMap<MemLabel, AstFunDecl> funDecls = new HashMap<MemLabel, AstFunDecl>();
+
+    /** The alias oracle of the program. */
+    private final AliasOracle oracle;
+
+    /** The number of recursive calls turned into loops in the last function. */
+    private int loops = 0;
+
+    /**
+     * Constructs a new eliminator of calls in tail position.
+     *
+     * @param tree   The abstract syntax tree of the program.
+     * @param oracle The alias oracle of the program.
+     */
+    public TailCallEliminator(AstTree tree, AliasOracle oracle) {
+        this.oracle = oracle;
+        tree.accept(new AstFullVisitor<Object, Object>() {
+
+            @Override
+            public Object visit(AstFunDecl funDecl, Object arg) {
+                funDecls.put(Memory.frames().get(funDecl).label, funDecl);
+                return super.visit(funDecl, arg);
+            }
+
+        }, null);
+    }
+
+    /** Returns the number of recursive calls turned into loops in the last function. */
+    public int loops() {
+        return loops;
+    }
+
+    /**
+     * Turns recursive calls in tail position into loops.
+     *
+     * @param funDecl   The function.
+     * @param stmts     The canonical statements of the function body.
+     * @param bodyStart The index of the first statement after the parameters
+     *                  have been loaded (where the body is reentered).
+     * @param exitLabel The exit label of the function body.
+     * @return The statements with the recursive calls in tail position
+     *         replaced.
+     */
+    public Vector<ImcStmt> loop(AstFunDecl funDecl, Vector<ImcStmt> stmts, int bodyStart, MemLabel exitLabel) {
+        loops = 0;
+        MemFrame frame = Memory.frames().get(funDecl);
+        if (oracle.escapes(frame))
+            return stmts;
+
+        HashMap<MemLabel, Integer> labels = labels(stmts);
+        MemLabel bodyLabel = new MemLabel();
+        Vector<ImcStmt> loopStmts = new Vector<ImcStmt>();
+        for (int s = 0; s < stmts.size(); s++) {
+            if (s == bodyStart)
+                loopStmts.add(new ImcLABEL(bodyLabel));
+            ImcCALL call = tailCall(stmts, labels, s, frame, exitLabel);
+            if (call == null || call.label != frame.label) {
+                loopStmts.add(stmts.get(s));
+                continue;
+            }
+
+            // all arguments are evaluated before any parameter is assigned to
+            Vector<MemTemp> args = new Vector<MemTemp>();
+            for (int a = 1; a < call.args.size(); a++) {
+                args.add(new MemTemp());
+                loopStmts.add(new ImcMOVE(new ImcTEMP(args.lastElement()), call.args.get(a)));
+            }
+            int a = 0;
+            for (AstParDecl parDecl : funDecl.pars == null ? new Vector<AstParDecl>() : funDecl.pars) {
+                MemAccess access = Memory.accesses().get(parDecl);
+                ImcExpr par = access instanceof MemTempAccess tempAccess ? new ImcTEMP(tempAccess.temp)
+                        : new ImcMEM(new ImcBINOP(ImcBINOP.Oper.ADD, new ImcTEMP(frame.FP),
+                                new ImcCONST(((MemRelAccess) access).offset)));
+                loopStmts.add(new ImcMOVE(par, new ImcTEMP(args.get(a++))));
+            }
+            loopStmts.add(new ImcJUMP(bodyLabel));
+            loops++;
+        }
+        return loops == 0 ? stmts : loopStmts;
+    }
+
+    /**
+     * Finds the calls in tail position that can be made without the frame of
+     * the caller.
+     *
+     * @param funDecl   The function.
+     * @param stmts     The linearized statements of the function body.
+     * @param exitLabel The exit label of the function body.
+     * @return The tail calls.
+     */
+    public HashSet<ImcCALL> tailCalls(AstFunDecl funDecl, Vector<ImcStmt> stmts, MemLabel exitLabel) {
+        HashSet<ImcCALL> tailCalls = new HashSet<ImcCALL>();
+        MemFrame frame = Memory.frames().get(funDecl);
+        if (oracle.escapes(frame))
+            return tailCalls;
+
+        // the arguments the caller of the function has made room for
+        long argsSize = 8;
+        if (funDecl.pars != null) {
+            for (AstParDecl parDecl : funDecl.pars) {
+                MemAccess access = Memory.accesses().get(parDecl);
+                MemRelAccess arg = access instanceof MemTempAccess tempAccess ? tempAccess.arg : (MemRelAccess) access;
+                argsSize = Math.max(argsSize, arg.offset + arg.size);
+            }
+        }
+
+        HashMap<MemLabel, Integer> labels = labels(stmts);
+        for (int s = 0; s < stmts.size(); s++) {
+            ImcCALL call = tailCall(stmts, labels, s, frame, exitLabel);
+            AstFunDecl callee = call == null ? null : funDecls.get(call.label);
+            if (callee == null || callee.stmt == null || Memory.frames().get(callee).depth > frame.depth)
+                continue;
+            if (call.offs.lastElement() + 8 <= argsSize)
+                tailCalls.add(call);
+        }
+        return tailCalls;
+    }
+
+    /**
+     * Returns the call a statement makes if it is in tail position (or
+     * {@code null}).
+     */
+    private static ImcCALL tailCall(Vector<ImcStmt> stmts, HashMap<MemLabel, Integer> labels, int s, MemFrame frame,
+            MemLabel exitLabel) {
+        if (!(stmts.get(s) instanceof ImcMOVE move && move.dst instanceof ImcTEMP dst && move.src instanceof ImcCALL call))
+            return null;
+
+        // follow the statements to the exit, tracking the temporaries holding the result
+        HashSet<MemTemp> results = new HashSet<MemTemp>();
+        results.add(dst.temp);
+        HashSet<Integer> visited = new HashSet<Integer>();
+        int next = s + 1;
+        while (next < stmts.size() && visited.add(next)) {
+            ImcStmt stmt = stmts.get(next);
+            if (stmt instanceof ImcLABEL) {
+                next++;
+                continue;
+            }
+            if (stmt instanceof ImcJUMP jump) {
+                if (jump.label == exitLabel)
+                    return results.contains(frame.RV) ? call : null;
+                if (!labels.containsKey(jump.label))
+                    return null;
+                next = labels.get(jump.label);
+                continue;
+            }
+            if (!(stmt instanceof ImcMOVE copy && copy.dst instanceof ImcTEMP copyDst && ExprFolder.pure(copy.src)))
+                return null;
+            if (copy.src instanceof ImcTEMP copySrc && results.contains(copySrc.temp))
+                results.add(copyDst.temp);
+            else
+                results.remove(copyDst.temp);
+            next++;
+        }
+        // falling through the last statement reaches the exit
+        return next >= stmts.size() && results.contains(frame.RV) ? call : null;
+    }
+
+    /** Returns the positions of the labels among statements. */
+    private static HashMap<MemLabel, Integer> labels(Vector<ImcStmt> stmts) {
+        HashMap<MemLabel, Integer> labels = new HashMap<MemLabel, Integer>();
+        for (int s = 0; s < stmts.size(); s++)
+            if (stmts.get(s) instanceof ImcLABEL label)
+                labels.put(label.label, s);
+        return labels;
+    }
+
+}
@@ -0,0 +1,115 @@
+package prev23.phase.imclin;
+
+import java.util.*;
+import java.util.function.*;
+
+import prev23.data.mem.*;
+import prev23.data.imc.code.expr.*;
+import prev23.data.imc.code.stmt.*;
+import prev23.data.imc.visitor.*;
+
+/**
+ * Replacer of the uses of temporaries in canonical expressions.
+ *
+ * Every temporary is replaced by the expression a function maps it to (or is
+ * left unchanged if the function returns {@code null}).
+ */
+public class TempReplacer implements ImcVisitor<ImcExpr, Object> {
+
+    /** The replacements of temporaries. */
+    private final Function<MemTemp, ImcExpr> replacement;
+
+    /**
+     * Constructs a new replacer.
+     *
+     * @param replacement The replacements of temporaries.
+     */
+    public TempReplacer(Function<MemTemp, ImcExpr> replacement) {
+        this.replacement = replacement;
+    }
+
+    @Override
+    public ImcExpr visit(ImcBINOP binOp, Object arg) {
+        return new ImcBINOP(binOp.oper, binOp.fstExpr.accept(this, arg), binOp.sndExpr.accept(this, arg));
+    }
+
+    @Override
+    public ImcExpr visit(ImcCALL call, Object arg) {
+        Vector<ImcExpr> args = new Vector<ImcExpr>();
+        for (ImcExpr argExpr : call.args)
+            args.add(argExpr.accept(this, arg));
+        return new ImcCALL(call.label, call.offs, args);
+    }
+
+    @Override
+    public ImcExpr visit(ImcCONST constant, Object arg) {
+        return constant;
+    }
+
+    @Override
+    public ImcExpr visit(ImcMEM mem, Object arg) {
+        return new ImcMEM(mem.addr.accept(this, arg));
+    }
+
+    @Override
+    public ImcExpr visit(ImcNAME name, Object arg) {
+        return name;
+    }
+
+    @Override
+    public ImcExpr visit(ImcTEMP temp, Object arg) {
+        ImcExpr expr = replacement.apply(temp.temp);
+        return expr == null ? temp : expr;
+    }
+
+    @Override
+    public ImcExpr visit(ImcUNOP unOp, Object arg) {
+        return new ImcUNOP(unOp.oper, unOp.subExpr.accept(this, arg));
+    }
+
+    /**
+     * Replaces the uses of temporaries in a canonical statement (the
+     * temporary a move assigns to is not a use).
+     *
+     * @param stmt The statement.
+     * @return The statement with the uses replaced.
+     */
+    public ImcStmt replace(ImcStmt stmt) {
+        if (stmt instanceof ImcMOVE move) {
+            ImcExpr dst = move.dst instanceof ImcMEM mem ? new ImcMEM(mem.addr.accept(this, null)) : move.dst;
+            return new ImcMOVE(dst, move.src.accept(this, null));
+        }
+        if (stmt instanceof ImcCJUMP cjump)
+            return new ImcCJUMP(cjump.cond.accept(this, null), cjump.posLabel, cjump.negLabel);
+        if (stmt instanceof ImcESTMT eStmt)
+            return new ImcESTMT(eStmt.expr.accept(this, null));
+        return stmt;
+    }
+
+    /**
+     * Collects the temporaries used by a canonical statement.
+     *
+     * @param stmt  The statement.
+     * @param temps The temporaries used (the temporaries found are added).
+     */
+    public static void uses(ImcStmt stmt, Collection<MemTemp> temps) {
+        new TempReplacer(temp -> {
+            temps.add(temp);
+            return null;
+        }).replace(stmt);
+    }
+
+    /**
+     * Returns the temporary a canonical statement assigns to.
+     *
+     * @param stmt The statement.
+     * @return The temporary or {@code null} if the statement is not a move to a
+     *         temporary.
+     */
+    public static MemTemp def(ImcStmt stmt) {
+        if (stmt instanceof ImcMOVE move && move.dst instanceof ImcTEMP dst)
+            return dst.temp;
+        return null;
+    }
+
+}
@@ -0,0 +1,316 @@
+package prev23.phase.imclin;
+
+import java.util.*;
+
+import prev23.data.mem.*;
+import prev23.data.imc.code.expr.*;
+import prev23.data.imc.code.stmt.*;
+
+/**
+ * Trace scheduler.
+ *
+ * Splits the canonical statements of a function body into basic blocks,
+ * redirects jumps to blocks consisting of a single jump to the final target,
+ * drops the blocks that cannot be reached from the entry and lays out the
+ * remaining ones as traces: a trace is extended with the target of an
+ * unconditional jump and with the target of the hotter edge leaving a
+ * conditional jump (if both are equally hot, the one that followed in the original order or else
+ * the negative one). The weight of a block is estimated
+ * statically as its loop depth, where a loop spans the blocks between the
+ * target and the source of a jump backwards in the original order. Afterwards the
+ * negative label of every conditional jump follows it (the condition is
+ * negated if the positive label does, and an unconditional jump is added if
+ * neither does), jumps to the following label are removed and so are labels
+ * that are no longer jumped to.
+ */
+public class TraceScheduler {
+
+    /** A basic block. */
+    private static class Block {
+
+        /** The label at the start of the block. */
+        final MemLabel label;
+
+        /** The statements of the block (the first is the label, the last is a jump). */
+        final Vector<ImcStmt> stmts = new Vector<ImcStmt>();
+
+        /** The position of the block in the original order. */
+        int index = 0;
+
+        /** The estimated weight of the block (its loop depth). */
+        int weight = 0;
+
+        Block(MemLabel label) {
+            this.label = label;
+            stmts.add(new ImcLABEL(label));
+        }
+
+        ImcStmt last() {
+            return stmts.lastElement();
+        }
+
+    }
+
+    /** The number of basic blocks of the last body scheduled. */
+    private int blocks;
+
+    /** The number of unreachable basic blocks of the last body scheduled. */
+    private int unreachable;
+
+    /** The number of jumps removed from the last body scheduled. */
+    private int removedJumps;
+
+    /**
+     * Schedules the statements of a function body.
+     *
+     * @param stmts      The canonical statements (the first one is the entry
+     *                   label, the last one is a jump).
+     * @param entryLabel The entry label.
+     * @return The scheduled statements.
+     */
+    public Vector<ImcStmt> schedule(Vector<ImcStmt> stmts, MemLabel entryLabel) {
+        LinkedHashMap<MemLabel, Block> blocks = split(stmts);
+        this.blocks = blocks.size();
+        int jumps = jumps(stmts);
+
+        thread(blocks);
+        weigh(blocks);
+
+        HashSet<MemLabel> reachable = reachable(blocks, entryLabel);
+        unreachable = blocks.size() - reachable.size();
+        blocks.keySet().retainAll(reachable);
+
+        Vector<ImcStmt> scheduled = layout(traces(blocks, entryLabel), entryLabel);
+        removedJumps = jumps - jumps(scheduled);
+        return scheduled;
+    }
+
+    /** Returns the number of basic blocks of the last body scheduled. */
+    public int blocks() {
+        return blocks;
+    }
+
+    /** Returns the number of unreachable basic blocks of the last body scheduled. */
+    public int unreachable() {
+        return unreachable;
+    }
+
+    /** Returns the number of jumps removed from the last body scheduled. */
+    public int removedJumps() {
+        return removedJumps;
+    }
+
+    /** Splits the statements into basic blocks (in the original order). */
+    private LinkedHashMap<MemLabel, Block> split(Vector<ImcStmt> stmts) {
+        LinkedHashMap<MemLabel, Block> blocks = new LinkedHashMap<MemLabel, Block>();
+        Block block = null;
+        for (ImcStmt stmt : stmts) {
+            if (stmt instanceof ImcLABEL) {
+                MemLabel label = ((ImcLABEL) stmt).label;
+                // a block falling through to a label jumps to it
+                if (block != null)
+                    block.stmts.add(new ImcJUMP(label));
+                block = new Block(label);
+                blocks.put(label, block);
+                continue;
+            }
+            // a statement following a jump starts an (unreachable) block
+            if (block == null) {
+                block = new Block(new MemLabel());
+                blocks.put(block.label, block);
+            }
+            block.stmts.add(stmt);
+            if (stmt instanceof ImcJUMP || stmt instanceof ImcCJUMP)
+                block = null;
+        }
+        if (block != null)
+            throw new IllegalArgumentException("The last statement is not a jump.");
+        return blocks;
+    }
+
+    /** Redirects jumps to blocks that only jump elsewhere. */
+    private void thread(LinkedHashMap<MemLabel, Block> blocks) {
+        for (Block block : blocks.values()) {
+            ImcStmt last = block.last();
+            if (last instanceof ImcJUMP jump)
+                last = new ImcJUMP(target(blocks, jump.label));
+            if (last instanceof ImcCJUMP cjump)
+                last = new ImcCJUMP(cjump.cond, target(blocks, cjump.posLabel), target(blocks, cjump.negLabel));
+            block.stmts.set(block.stmts.size() - 1, last);
+        }
+    }
+
+    /** Returns the label reached by following jumps from blocks consisting of a single jump. */
+    private static MemLabel target(LinkedHashMap<MemLabel, Block> blocks, MemLabel label) {
+        HashSet<MemLabel> visited = new HashSet<MemLabel>();
+        Block block = blocks.get(label);
+        while (block != null && block.stmts.size() == 2 && block.last() instanceof ImcJUMP && visited.add(label)) {
+            label = ((ImcJUMP) block.last()).label;
+            block = blocks.get(label);
+        }
+        return label;
+    }
+
+    /** Sets the position and the weight of every block. */
+    private void weigh(LinkedHashMap<MemLabel, Block> blocks) {
+        Vector<Block> order = new Vector<Block>(blocks.values());
+        HashMap<MemLabel, Integer> index = new HashMap<MemLabel, Integer>();
+        for (int b = 0; b < order.size(); b++) {
+            order.get(b).index = b;
+            index.put(order.get(b).label, b);
+        }
+        for (int b = 0; b < order.size(); b++) {
+            for (MemLabel succ : successors(order.get(b))) {
+                Integer target = index.get(succ);
+                if (target != null && target <= b)
+                    for (int l = target; l <= b; l++)
+                        order.get(l).weight++;
+            }
+        }
+    }
+
+    /** Returns the labels of the blocks reachable from the entry. */
+    private HashSet<MemLabel> reachable(LinkedHashMap<MemLabel, Block> blocks, MemLabel entryLabel) {
+        HashSet<MemLabel> reachable = new HashSet<MemLabel>();
+        Stack<MemLabel> pending = new Stack<MemLabel>();
+        pending.push(entryLabel);
+        while (!pending.isEmpty()) {
+            MemLabel label = pending.pop();
+            Block block = blocks.get(label);
+            // the exit label is not in the body
+            if (block == null || !reachable.add(label))
+                continue;
+            for (MemLabel succ : successors(block))
+                pending.push(succ);
+        }
+        return reachable;
+    }
+
+    /**
+     * Returns the traces covering all blocks. The first one starts at the
+     * entry, blocks jumping to the exit (i.e., out of the body) start the last
+     * ones so that they fall through to the epilogue.
+     */
+    private Vector<Vector<Block>> traces(LinkedHashMap<MemLabel, Block> blocks, MemLabel entryLabel) {
+        Vector<Block> starts = new Vector<Block>();
+        starts.add(blocks.get(entryLabel));
+        for (Block block : blocks.values())
+            if (!exits(blocks, block))
+                starts.add(block);
+        for (Block block : blocks.values())
+            if (exits(blocks, block))
+                starts.add(block);
+
+        Vector<Vector<Block>> traces = new Vector<Vector<Block>>();
+        HashSet<MemLabel> marked = new HashSet<MemLabel>();
+        for (Block start : starts) {
+            if (marked.contains(start.label))
+                continue;
+            Vector<Block> trace = new Vector<Block>();
+            Block block = start;
+            while (block != null) {
+                marked.add(block.label);
+                trace.add(block);
+                Block next = null;
+                for (MemLabel succ : successors(block)) {
+                    Block candidate = blocks.get(succ);
+                    if (candidate == null || marked.contains(succ) || exits(blocks, candidate))
+                        continue;
+                    if (next == null || heat(block, candidate) > heat(block, next)
+                            || (heat(block, candidate) == heat(block, next) && candidate.index == block.index + 1))
+                        next = candidate;
+                }
+                block = next;
+            }
+            traces.add(trace);
+        }
+        return traces;
+    }
+
+    /** Checks whether a block jumps out of the body. */
+    private static boolean exits(LinkedHashMap<MemLabel, Block> blocks, Block block) {
+        return block.last() instanceof ImcJUMP jump && !blocks.containsKey(jump.label);
+    }
+
+    /**
+     * Returns the estimated weight of an edge (an edge entering a loop is no
+     * hotter than its source).
+     */
+    private static int heat(Block source, Block target) {
+        return Math.min(source.weight, target.weight);
+    }
+
+    /**
+     * Returns the successors of a block (the negative target of a conditional
+     * jump first).
+     */
+    private static Vector<MemLabel> successors(Block block) {
+        Vector<MemLabel> succs = new Vector<MemLabel>();
+        if (block.last() instanceof ImcCJUMP cjump) {
+            succs.add(cjump.negLabel);
+            succs.add(cjump.posLabel);
+        }
+        else
+            succs.add(((ImcJUMP) block.last()).label);
+        return succs;
+    }
+
+    /** Concatenates the traces and fixes up the jumps. */
+    private Vector<ImcStmt> layout(Vector<Vector<Block>> traces, MemLabel entryLabel) {
+        Vector<ImcStmt> stmts = new Vector<ImcStmt>();
+        for (Vector<Block> trace : traces)
+            for (Block block : trace)
+                stmts.addAll(block.stmts);
+
+        Vector<ImcStmt> fixed = new Vector<ImcStmt>();
+        for (int s = 0; s < stmts.size(); s++) {
+            ImcStmt stmt = stmts.get(s);
+            MemLabel next = s + 1 < stmts.size() && stmts.get(s + 1) instanceof ImcLABEL
+                    ? ((ImcLABEL) stmts.get(s + 1)).label
+                    : null;
+            if (stmt instanceof ImcCJUMP cjump) {
+                if (cjump.negLabel == next)
+                    fixed.add(cjump);
+                else if (cjump.posLabel == next)
+                    fixed.add(new ImcCJUMP(negate(cjump.cond), cjump.negLabel, cjump.posLabel));
+                else {
+                    MemLabel negLabel = new MemLabel();
+                    fixed.add(new ImcCJUMP(cjump.cond, cjump.posLabel, negLabel));
+                    fixed.add(new ImcLABEL(negLabel));
+                    fixed.add(new ImcJUMP(cjump.negLabel));
+                }
+            }
+            else if (!(stmt instanceof ImcJUMP && ((ImcJUMP) stmt).label == next))
+                fixed.add(stmt);
+        }
+
+        // labels no longer jumped to are removed
+        HashSet<MemLabel> targets = new HashSet<MemLabel>();
+        targets.add(entryLabel);
+        for (ImcStmt stmt : fixed) {
+            if (stmt instanceof ImcJUMP jump)
+                targets.add(jump.label);
+            if (stmt instanceof ImcCJUMP cjump) {
+                targets.add(cjump.posLabel);
+                targets.add(cjump.negLabel);
+            }
+        }
+        fixed.removeIf(stmt -> stmt instanceof ImcLABEL && !targets.contains(((ImcLABEL) stmt).label));
+        return fixed;
+    }
+
+    /** Returns the negated condition. */
+    private static ImcExpr negate(ImcExpr cond) {
+        return new ImcUNOP(ImcUNOP.Oper.NOT, cond).accept(new ExprFolder(), null);
+    }
+
+    /** Returns the number of conditional and unconditional jumps. */
+    private static int jumps(Vector<ImcStmt> stmts) {
+        int jumps = 0;
+        for (ImcStmt stmt : stmts)
+            if (stmt instanceof ImcJUMP || stmt instanceof ImcCJUMP)
+                jumps++;
+        return jumps;
+    }
+
+}
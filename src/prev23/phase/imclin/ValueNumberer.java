@@ -0,0 +1,433 @@
+package prev23.phase.imclin;
+
+import java.util.*;
+import java.util.function.*;
+
+import prev23.data.mem.*;
+import prev23.data.imc.code.expr.*;
+import prev23.data.imc.code.stmt.*;
+import prev23.data.ssa.*;
+
+/**
+ * Dominator-based global value numbering and redundant load elimination over
+ * a function body in static single assignment form.
+ *
+ * The blocks are visited in a preorder walk of the dominator tree with a
+ * scoped table of the values available at every point. Operations on the same
+ * value numbers (up to the order of the operands of commutative operators)
+ * have the same value number, a temporary defined once has the value number of
+ * the expression assigned to it, and a load has the value number of the last
+ * load from or store to the same address if no store or call in between may
+ * alias it (as decided by an {@link AliasOracle}); loads are only remembered
+ * within extended basic blocks, i.e., they are forgotten at blocks with more
+ * than one predecessor (except for static links). A load or an operation
+ * consisting of at least two nodes is replaced by the temporary holding its
+ * value if it is available: the temporary assigned the value or a fresh
+ * temporary that the first occurrence is computed into just before its
+ * statement (the first walk finds the occurrences that are reused, the second
+ * one rewrites the statements). A move of an available value into a temporary
+ * defined once is removed and the temporary is replaced by the value.
+ */
+public class ValueNumberer {
+
+    /** A value available in the table. */
+    private static class Avail {
+
+        /** The value number. */
+        final String number;
+
+        /** The occurrence computing the value (or -1). */
+        final int occurrence;
+
+        /** The temporary or the constant holding the value (or {@code null}). */
+        final ImcExpr leaf;
+
+        /** Whether the value has been loaded from (or stored to) memory. */
+        final boolean load;
+
+        /** The location of the memory (or {@code null} if unknown). */
+        final AliasOracle.Location location;
+
+        Avail(String number, int occurrence, ImcExpr leaf, boolean load, AliasOracle.Location location) {
+            this.number = number;
+            this.occurrence = occurrence;
+            this.leaf = leaf;
+            this.load = load;
+            this.location = location;
+        }
+
+    }
+
+    /** The value of an expression. */
+    private static class Value {
+
+        /** The value number. */
+        final String number;
+
+        /** The rewritten expression. */
+        final ImcExpr expr;
+
+        /** The key of the value in the table (or {@code null}). */
+        final String key;
+
+        /** The occurrence computing the value (or -1). */
+        final int occurrence;
+
+        /** Whether the expression is a constant or a temporary defined once. */
+        final boolean leaf;
+
+        Value(String number, ImcExpr expr, String key, int occurrence, boolean leaf) {
+            this.number = number;
+            this.expr = expr;
+            this.key = key;
+            this.occurrence = occurrence;
+            this.leaf = leaf;
+        }
+
+    }
+
+    /** The alias oracle. */
+    private final AliasOracle oracle;
+
+    /** The function body. */
+    private SsaCode code;
+
+    /** The number of definitions of every temporary. */
+    private final HashMap<MemTemp, Integer> defCounts = new HashMap<MemTemp, Integer>();
+
+    /** The expressions assigned to temporaries defined once (except calls). */
+    private final HashMap<MemTemp, ImcExpr> defs = new HashMap<MemTemp, ImcExpr>();
+
+    /** The occurrences that are reused. */
+    private final HashSet<Integer> reused = new HashSet<Integer>();
+
+    /** The temporaries the reused occurrences are computed into. */
+    private final HashMap<Integer, MemTemp> temps = new HashMap<Integer, MemTemp>();
+
+    /** The value numbers of operations (by their keys). */
+    private final HashMap<String, String> numbers = new HashMap<String, String>();
+
+    /** The available values (by their keys). */
+    private final HashMap<String, Avail> table = new HashMap<String, Avail>();
+
+    /** The keys and the previous values of the changes of the table. */
+    private final Stack<Object[]> undo = new Stack<Object[]>();
+
+    /** The value numbers of temporaries defined once. */
+    private final HashMap<MemTemp, String> tempNumbers = new HashMap<MemTemp, String>();
+
+    /** The replacements of the temporaries whose moves have been removed. */
+    private final HashMap<MemTemp, ImcExpr> replacements = new HashMap<MemTemp, ImcExpr>();
+
+    /** Whether the statements are being rewritten. */
+    private boolean rewriting;
+
+    /** The number of occurrences seen. */
+    private int occurrences;
+
+    /** The number of fresh value numbers. */
+    private int fresh;
+
+    /** The number of redundant operations removed. */
+    private int redundant;
+
+    /** The number of redundant loads removed. */
+    private int loads;
+
+    /**
+     * Constructs a new value numberer.
+     *
+     * @param oracle The alias oracle.
+     */
+    public ValueNumberer(AliasOracle oracle) {
+        this.oracle = oracle;
+    }
+
+    /**
+     * Removes redundant operations and loads from a function body.
+     *
+     * @param code The function body in static single assignment form.
+     */
+    public void number(SsaCode code) {
+        this.code = code;
+        collect(code);
+        SsaBuilder.dominators(code);
+        walk(false);
+        walk(true);
+
+        TempReplacer replacer = new TempReplacer(replacements::get);
+        for (SsaBlock block : code.blocks)
+            for (SsaPhi phi : block.phis)
+                phi.args.replaceAll((pred, arg) -> arg.accept(replacer, null));
+    }
+
+    /** Returns the number of redundant operations removed. */
+    public int redundant() {
+        return redundant;
+    }
+
+    /** Returns the number of redundant loads removed. */
+    public int loads() {
+        return loads;
+    }
+
+    /** Collects the definitions of temporaries. */
+    private void collect(SsaCode code) {
+        for (SsaBlock block : code.blocks) {
+            for (SsaPhi phi : block.phis)
+                defCounts.merge(phi.dst, 1, Integer::sum);
+            for (ImcStmt stmt : block.stmts) {
+                MemTemp def = TempReplacer.def(stmt);
+                if (def != null)
+                    defCounts.merge(def, 1, Integer::sum);
+            }
+        }
+        for (SsaBlock block : code.blocks) {
+            for (ImcStmt stmt : block.stmts) {
+                MemTemp def = TempReplacer.def(stmt);
+                if (def != null && once(def) && !(((ImcMOVE) stmt).src instanceof ImcCALL))
+                    defs.put(def, ((ImcMOVE) stmt).src);
+            }
+        }
+    }
+
+    /** Checks whether a temporary is defined once. */
+    private boolean once(MemTemp temp) {
+        return defCounts.getOrDefault(temp, 0) == 1 && !code.pinned(temp);
+    }
+
+    /** Walks the dominator tree and numbers (or rewrites) the statements. */
+    private void walk(boolean rewriting) {
+        this.rewriting = rewriting;
+        table.clear();
+        undo.clear();
+        tempNumbers.clear();
+        replacements.clear();
+        occurrences = 0;
+        fresh = 0;
+        redundant = 0;
+        loads = 0;
+
+        // a null entry marks the end of the subtree of the block below it
+        Stack<SsaBlock> pending = new Stack<SsaBlock>();
+        Stack<Integer> marks = new Stack<Integer>();
+        pending.push(code.entry());
+        while (!pending.isEmpty()) {
+            SsaBlock block = pending.pop();
+            if (block == null) {
+                int mark = marks.pop();
+                while (undo.size() > mark) {
+                    Object[] change = undo.pop();
+                    if (change[1] == null)
+                        table.remove(change[0]);
+                    else
+                        table.put((String) change[0], (Avail) change[1]);
+                }
+                continue;
+            }
+            marks.push(undo.size());
+
+            // loads are remembered within extended basic blocks only
+            if (block.preds.size() > 1)
+                kill(avail -> avail.location == null || !avail.location.link());
+
+            Vector<ImcStmt> stmts = new Vector<ImcStmt>();
+            for (ImcStmt stmt : block.stmts)
+                number(stmt, stmts);
+            if (rewriting) {
+                block.stmts.clear();
+                block.stmts.addAll(stmts);
+            }
+
+            pending.push(null);
+            for (SsaBlock child : block.children)
+                pending.push(child);
+        }
+    }
+
+    /** Numbers a statement and adds the rewritten statements. */
+    private void number(ImcStmt stmt, Vector<ImcStmt> stmts) {
+        Vector<ImcStmt> hoisted = new Vector<ImcStmt>();
+        if (stmt instanceof ImcMOVE move && move.dst instanceof ImcTEMP dst) {
+            Value src = value(move.src, hoisted);
+            stmts.addAll(hoisted);
+            if (once(dst.temp)) {
+                tempNumbers.put(dst.temp, src.number);
+                if (src.leaf) {
+                    replacements.put(dst.temp, src.expr);
+                    return;
+                }
+                // the temporary holds the value for later occurrences
+                Avail avail = src.key == null ? null : table.get(src.key);
+                if (avail != null && avail.occurrence == src.occurrence && avail.leaf == null)
+                    put(src.key, new Avail(avail.number, avail.occurrence, dst, avail.load, avail.location));
+            }
+            stmts.add(new ImcMOVE(dst, src.expr));
+            return;
+        }
+        if (stmt instanceof ImcMOVE move && move.dst instanceof ImcMEM mem) {
+            Value addr = value(mem.addr, hoisted);
+            Value src = value(move.src, hoisted);
+            stmts.addAll(hoisted);
+            stmts.add(new ImcMOVE(new ImcMEM(addr.expr), src.expr));
+
+            AliasOracle.Location location = oracle.locate(code.frame, mem.addr, defs);
+            kill(avail -> oracle.mayAlias(code.frame, location, avail.location));
+            // the stored value is available for later loads
+            if (src.leaf || src.occurrence >= 0)
+                put("M(" + addr.number + ")", new Avail(src.number, src.occurrence, src.leaf ? src.expr : null,
+                        true, location));
+            return;
+        }
+        if (stmt instanceof ImcESTMT eStmt) {
+            Value expr = value(eStmt.expr, hoisted);
+            stmts.addAll(hoisted);
+            stmts.add(new ImcESTMT(expr.expr));
+            return;
+        }
+        if (stmt instanceof ImcCJUMP cjump) {
+            Value cond = value(cjump.cond, hoisted);
+            stmts.addAll(hoisted);
+            stmts.add(new ImcCJUMP(cond.expr, cjump.posLabel, cjump.negLabel));
+            return;
+        }
+        stmts.add(stmt);
+    }
+
+    /** Numbers a canonical expression and returns its value. */
+    private Value value(ImcExpr expr, Vector<ImcStmt> hoisted) {
+        if (expr instanceof ImcCONST constant)
+            return new Value("C" + constant.value, expr, null, -1, true);
+        if (expr instanceof ImcNAME name)
+            return new Value("N" + name.label.name, expr, null, -1, true);
+        if (expr instanceof ImcTEMP temp) {
+            if (replacements.containsKey(temp.temp))
+                return value(replacements.get(temp.temp), hoisted);
+            // a temporary defined more than once may hold different values
+            if (defCounts.getOrDefault(temp.temp, 0) > 0 && !once(temp.temp))
+                return new Value(fresh(), expr, null, -1, false);
+            return new Value(tempNumbers.getOrDefault(temp.temp, "T" + temp.temp.temp), expr, null, -1, true);
+        }
+        if (expr instanceof ImcBINOP binOp) {
+            Value fst = value(binOp.fstExpr, hoisted);
+            Value snd = value(binOp.sndExpr, hoisted);
+            String fstNumber = fst.number;
+            String sndNumber = snd.number;
+            if (commutative(binOp.oper) && fstNumber.compareTo(sndNumber) > 0) {
+                fstNumber = snd.number;
+                sndNumber = fst.number;
+            }
+            String key = binOp.oper + "(" + fstNumber + "," + sndNumber + ")";
+            return occurrence(key, operation(key), new ImcBINOP(binOp.oper, fst.expr, snd.expr), size(expr) >= 2,
+                    null, hoisted);
+        }
+        if (expr instanceof ImcUNOP unOp) {
+            Value sub = value(unOp.subExpr, hoisted);
+            String key = unOp.oper + "(" + sub.number + ")";
+            return occurrence(key, operation(key), new ImcUNOP(unOp.oper, sub.expr), size(expr) >= 2, null,
+                    hoisted);
+        }
+        if (expr instanceof ImcMEM mem) {
+            Value addr = value(mem.addr, hoisted);
+            String key = "M(" + addr.number + ")";
+            Avail avail = table.get(key);
+            return occurrence(key, avail == null ? fresh() : avail.number, new ImcMEM(addr.expr), true,
+                    oracle.locate(code.frame, mem.addr, defs), hoisted);
+        }
+        if (expr instanceof ImcCALL call) {
+            Vector<ImcExpr> args = new Vector<ImcExpr>();
+            for (ImcExpr arg : call.args)
+                args.add(value(arg, hoisted).expr);
+            kill(avail -> oracle.clobbered(code.frame, avail.location));
+            return new Value(fresh(), new ImcCALL(call.label, call.offs, args), null, -1, false);
+        }
+        throw new IllegalArgumentException("The expression is not canonical.");
+    }
+
+    /**
+     * Looks up an occurrence of an operation or a load in the table.
+     *
+     * @param key       The key of the value.
+     * @param number    The value number.
+     * @param expr      The rewritten expression.
+     * @param candidate Whether the occurrence is worth replacing by a
+     *                  temporary computed earlier.
+     * @param location  The location of a load (or {@code null}).
+     * @param hoisted   The statements computing reused occurrences.
+     * @return The value.
+     */
+    private Value occurrence(String key, String number, ImcExpr expr, boolean candidate,
+            AliasOracle.Location location, Vector<ImcStmt> hoisted) {
+        int occurrence = occurrences++;
+        boolean load = expr instanceof ImcMEM;
+        Avail avail = table.get(key);
+        if (avail != null && (avail.leaf != null || candidate)) {
+            if (load)
+                loads++;
+            else
+                redundant++;
+            if (avail.leaf != null)
+                return new Value(avail.number, avail.leaf, key, -1, true);
+            reused.add(avail.occurrence);
+            return new Value(avail.number, rewriting ? new ImcTEMP(temp(avail.occurrence)) : expr, key,
+                    avail.occurrence, false);
+        }
+        if (avail == null)
+            put(key, new Avail(number, occurrence, null, load, location));
+        if (rewriting && reused.contains(occurrence)) {
+            ImcTEMP temp = new ImcTEMP(temp(occurrence));
+            hoisted.add(new ImcMOVE(temp, expr));
+            expr = temp;
+        }
+        return new Value(number, expr, key, occurrence, false);
+    }
+
+    /** Returns the temporary a reused occurrence is computed into. */
+    private MemTemp temp(int occurrence) {
+        return temps.computeIfAbsent(occurrence, __ -> new MemTemp());
+    }
+
+    /** Returns the value number of an operation. */
+    private String operation(String key) {
+        return numbers.computeIfAbsent(key, __ -> "V" + numbers.size());
+    }
+
+    /** Returns a fresh value number. */
+    private String fresh() {
+        return "F" + fresh++;
+    }
+
+    /** Adds a value to the table. */
+    private void put(String key, Avail avail) {
+        undo.push(new Object[] { key, table.put(key, avail) });
+    }
+
+    /** Removes the loads satisfying a condition from the table. */
+    private void kill(Predicate<Avail> killed) {
+        for (String key : new Vector<String>(table.keySet())) {
+            Avail avail = table.get(key);
+            if (avail.load && killed.test(avail))
+                undo.push(new Object[] { key, table.remove(key) });
+        }
+    }
+
+    /** Checks whether an operator is commutative. */
+    private static boolean commutative(ImcBINOP.Oper oper) {
+        return switch (oper) {
+            case OR, AND, EQU, NEQ, ADD, MUL -> true;
+            default -> false;
+        };
+    }
+
+    /** Returns the number of operations and loads in an expression. */
+    private static int size(ImcExpr expr) {
+        if (expr instanceof ImcBINOP binOp)
+            return 1 + size(binOp.fstExpr) + size(binOp.sndExpr);
+        if (expr instanceof ImcUNOP unOp)
+            return 1 + size(unOp.subExpr);
+        if (expr instanceof ImcMEM mem)
+            return 1 + size(mem.addr);
+        return 0;
+    }
+
+}
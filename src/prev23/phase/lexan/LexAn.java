@@ -17,6 +17,9 @@ public class LexAn extends Phase {
 	/** The ANTLR lexer that actually performs lexical analysis. */
 	public final PrevLexer lexer;
 
+	/** The number of tokens produced. */
+	private long numTokens = 0;
+
 	/**
 	 * Phase construction: sets up logging and the ANTLR lexer.
 	 */
@@ -32,6 +35,12 @@ public class LexAn extends Phase {
 		}
 	}
 
+	@Override
+	public void close() {
+		count("tokens", numTokens);
+		super.close();
+	}
+
 	/**
 	 * A customized token factory which logs tokens.
 	 */
@@ -41,6 +50,7 @@ public class LexAn extends Phase {
 		public Token create(int type, String text) {
 			Token token = new Token(type, text);
 			token.log(logger);
+			numTokens++;
 			return token;
 		}
 
@@ -49,6 +59,7 @@ public class LexAn extends Phase {
 				int stop, int line, int charPositionInLine) {
 			Token token = new Token(source, type, channel, start, stop);
 			token.log(logger);
+			numTokens++;
 			return token;
 		}
 	}
@@ -5,78 +5,280 @@ import prev23.data.asm.*;
 import prev23.phase.*;
 import prev23.phase.asmgen.*;
 
-import java.util.HashSet;
-import java.util.HashMap;
-import java.util.Vector;
+import java.util.*;
 
 /**
  * Liveness analysis.
+ * 
+ * The analysis is performed on basic blocks: temporaries are numbered densely,
+ * the use, def, in and out sets of every block are kept as bitsets and the
+ * backward dataflow equations are solved by a worklist algorithm. Finally, the
+ * in and out sets of individual instructions are derived from the block sets.
  */
 public class LiveAn extends Phase {
 
+	/** A basic block of instructions. */
+	private static class Block {
+
+		/** The index of the first instruction of this block. */
+		final int first;
+
+		/** The index of the last instruction of this block. */
+		int last;
+
+		/** The successors of this block. */
+		final Vector<Block> succs = new Vector<Block>();
+
+		/** The predecessors of this block. */
+		final Vector<Block> preds = new Vector<Block>();
+
+		/** Temporaries used in this block before being defined. */
+		long[] use;
+
+		/** Temporaries defined in this block. */
+		long[] def;
+
+		/** Temporaries live at the beginning of this block. */
+		long[] in;
+
+		/** Temporaries live at the end of this block. */
+		long[] out;
+
+		/** Whether this block is waiting in the worklist. */
+		boolean queued = false;
+
+		/** Whether this block has been visited by the depth-first search. */
+		boolean visited = false;
+
+		Block(int first) {
+			this.first = first;
+		}
+
+	}
+
 	public LiveAn() {
 		super("livean");
 	}
 
 	public void analysis() {
-		for(Code c : AsmGen.codes)
-			analyze(c);
+		for (Code c : AsmGen.codes()) {
+			count(c.frame.label.name, "instrs", c.instrs.size());
+			count(c.frame.label.name, "iterations", analyze(c));
+		}
 	}
 
-	public void analyze(Code c) {
-		HashMap<MemLabel, AsmLABEL> labelsMap = new HashMap<>();
+	/**
+	 * Computes the sets of temporaries live in and live out of each instruction
+	 * of a code.
+	 * 
+	 * @param c The code.
+	 * @return The number of block visits performed.
+	 */
+	public static int analyze(Code c) {
+		Vector<AsmInstr> instrs = c.instrs;
+		int numInstrs = instrs.size();
+		int iterations = 0;
+		if (numInstrs == 0)
+			return iterations;
 
-		for (AsmInstr instr : c.instrs) {
-			if (instr instanceof AsmLABEL) {
-				labelsMap.put(((AsmLABEL) instr).getLabel(), (AsmLABEL) instr);
-			}
+		// Number the temporaries and cache uses, defs and jumps of all instructions.
+		HashMap<MemTemp, Integer> tempIndex = new HashMap<MemTemp, Integer>();
+		Vector<MemTemp> temps = new Vector<MemTemp>();
+		int[][] uses = new int[numInstrs][];
+		int[][] defs = new int[numInstrs][];
+		Vector<Vector<MemLabel>> jumps = new Vector<Vector<MemLabel>>(numInstrs);
+		HashMap<MemLabel, Integer> labels = new HashMap<MemLabel, Integer>();
+		for (int i = 0; i < numInstrs; i++) {
+			AsmInstr instr = instrs.get(i);
+			uses[i] = number(instr.uses(), tempIndex, temps);
+			defs[i] = number(instr.defs(), tempIndex, temps);
+			jumps.add(isBranch(instr) ? instr.jumps() : null);
+			if (instr instanceof AsmLABEL)
+				labels.put(((AsmLABEL) instr).getLabel(), i);
 		}
-		
-		while(true) {
-			boolean shouldBreak = true;
-			Vector<AsmInstr> instrs = c.instrs;
+		int rv = number(c.frame.RV, tempIndex, temps);
+		int words = (temps.size() + 63) >>> 6;
 
-			for(int i = 0; i < instrs.size(); i++) {
-				AsmOPER oper = (AsmOPER)instrs.get(i);
+		// Split the instructions into basic blocks.
+		Block[] blockOf = new Block[numInstrs];
+		Vector<Block> blocks = new Vector<Block>();
+		for (int i = 0; i < numInstrs; i++) {
+			boolean leader = (i == 0) || (instrs.get(i) instanceof AsmLABEL) || (jumps.get(i - 1) != null);
+			if (leader)
+				blocks.add(new Block(i));
+			Block block = blocks.lastElement();
+			block.last = i;
+			blockOf[i] = block;
+		}
 
-				HashSet<MemTemp> liveIn = oper.out();
-				HashSet<MemTemp> liveOut = new HashSet<>();
+		// Connect the blocks.
+		long[] exitLive = new long[words];
+		exitLive[rv >>> 6] |= 1L << rv;
+		long[][] exitOut = new long[blocks.size()][];
+		for (int b = 0; b < blocks.size(); b++) {
+			Block block = blocks.get(b);
+			Vector<MemLabel> targets = jumps.get(block.last);
+			if (targets == null) {
+				if (b + 1 < blocks.size())
+					connect(block, blocks.get(b + 1));
+				continue;
+			}
+			for (MemLabel label : targets) {
+				Integer target = labels.get(label);
+				if (target != null)
+					connect(block, blockOf[target]);
+				else if (label == c.exitLabel)
+					exitOut[b] = exitLive;
+			}
+		}
+
+		// Compute the local use and def sets.
+		for (int b = 0; b < blocks.size(); b++) {
+			Block block = blocks.get(b);
+			block.use = new long[words];
+			block.def = new long[words];
+			block.in = new long[words];
+			block.out = exitOut[b] == null ? new long[words] : exitOut[b].clone();
+			for (int i = block.last; i >= block.first; i--) {
+				for (int t : defs[i]) {
+					block.def[t >>> 6] |= 1L << t;
+					block.use[t >>> 6] &= ~(1L << t);
+				}
+				for (int t : uses[i])
+					block.use[t >>> 6] |= 1L << t;
+			}
+		}
 
-				oper.defs().forEach(liveIn::remove);
-				liveIn.addAll(oper.uses());
+		// Solve the dataflow equations, visiting blocks in postorder first.
+		ArrayDeque<Block> worklist = new ArrayDeque<Block>();
+		postorder(blocks.get(0), worklist);
+		for (Block block : blocks)
+			if (!block.visited)
+				postorder(block, worklist);
+		while (!worklist.isEmpty()) {
+			Block block = worklist.poll();
+			block.queued = false;
+			iterations++;
 
-				if(i == instrs.size() - 1)
-					break;
+			for (Block succ : block.succs)
+				or(block.out, succ.in);
 
-				if(!oper.jumps().isEmpty() && !oper.instr().contains("PUSHJ")) {
-					for(MemLabel label : oper.jumps()) {
-						if(labelsMap.get(label) != null)
-							liveOut.addAll(labelsMap.get(label).out());
-					}
+			boolean changed = false;
+			for (int w = 0; w < words; w++) {
+				long in = block.use[w] | (block.out[w] & ~block.def[w]);
+				if (in != block.in[w]) {
+					block.in[w] = in;
+					changed = true;
 				}
-				else {
-					liveOut.addAll(instrs.get(i + 1).in());
+			}
+			if (changed) {
+				for (Block pred : block.preds) {
+					if (!pred.queued) {
+						pred.queued = true;
+						worklist.add(pred);
+					}
 				}
+			}
+		}
 
-				if(!oper.in().equals(liveIn) || !oper.out().equals(liveOut))
-					shouldBreak = false;
-
-				oper.removeAllFromIn();
+		// Derive the sets of individual instructions.
+		long[] live = new long[words];
+		for (Block block : blocks) {
+			System.arraycopy(block.out, 0, live, 0, words);
+			for (int i = block.last; i >= block.first; i--) {
+				AsmOPER oper = (AsmOPER) instrs.get(i);
 				oper.removeAllFromOut();
+				oper.addOutTemp(toSet(live, temps));
+				for (int t : defs[i])
+					live[t >>> 6] &= ~(1L << t);
+				for (int t : uses[i])
+					live[t >>> 6] |= 1L << t;
+				oper.removeAllFromIn();
+				oper.addInTemps(toSet(live, temps));
+			}
+		}
+		return iterations;
+	}
 
-				oper.addInTemps(liveIn);
-				oper.addOutTemp(liveOut);
+	/**
+	 * Checks whether an instruction ends a basic block, i.e., whether it transfers
+	 * control elsewhere instead of falling through (function calls return, so they
+	 * fall through).
+	 */
+	private static boolean isBranch(AsmInstr instr) {
+		return !instr.jumps().isEmpty() && !((AsmOPER) instr).instr().contains("PUSHJ");
+	}
+
+	private static int number(MemTemp temp, HashMap<MemTemp, Integer> tempIndex, Vector<MemTemp> temps) {
+		Integer index = tempIndex.get(temp);
+		if (index == null) {
+			index = temps.size();
+			tempIndex.put(temp, index);
+			temps.add(temp);
+		}
+		return index;
+	}
+
+	private static int[] number(Vector<MemTemp> instrTemps, HashMap<MemTemp, Integer> tempIndex,
+			Vector<MemTemp> temps) {
+		int[] indices = new int[instrTemps.size()];
+		for (int t = 0; t < indices.length; t++)
+			indices[t] = number(instrTemps.get(t), tempIndex, temps);
+		return indices;
+	}
+
+	private static void connect(Block pred, Block succ) {
+		pred.succs.add(succ);
+		succ.preds.add(pred);
+	}
+
+	/** Adds blocks reachable from the given block to the worklist in postorder. */
+	private static void postorder(Block start, ArrayDeque<Block> worklist) {
+		Stack<Block> blockStack = new Stack<Block>();
+		Stack<Integer> succStack = new Stack<Integer>();
+		start.visited = true;
+		blockStack.push(start);
+		succStack.push(0);
+		while (!blockStack.isEmpty()) {
+			Block block = blockStack.peek();
+			int s = succStack.pop();
+			if (s < block.succs.size()) {
+				succStack.push(s + 1);
+				Block succ = block.succs.get(s);
+				if (!succ.visited) {
+					succ.visited = true;
+					blockStack.push(succ);
+					succStack.push(0);
+				}
+			} else {
+				blockStack.pop();
+				block.queued = true;
+				worklist.add(block);
 			}
+		}
+	}
 
-			if(shouldBreak)
-				break;
+	private static void or(long[] dst, long[] src) {
+		for (int w = 0; w < dst.length; w++)
+			dst[w] |= src[w];
+	}
+
+	private static HashSet<MemTemp> toSet(long[] bits, Vector<MemTemp> temps) {
+		HashSet<MemTemp> set = new HashSet<MemTemp>();
+		for (int w = 0; w < bits.length; w++) {
+			long word = bits[w];
+			while (word != 0) {
+				set.add(temps.get((w << 6) + Long.numberOfTrailingZeros(word)));
+				word &= word - 1;
+			}
 		}
+		return set;
 	}
 
 	public void log() {
 		if (logger == null)
 			return;
-		for (Code code : AsmGen.codes) {
+		for (Code code : AsmGen.codes()) {
 			logger.begElement("code");
 			logger.addAttribute("entrylabel", code.entryLabel.name);
 			logger.addAttribute("exitlabel", code.exitLabel.name);
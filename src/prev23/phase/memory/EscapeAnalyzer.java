@@ -0,0 +1,172 @@
+package prev23.phase.memory;
+
+import java.util.*;
+
+import prev23.data.ast.tree.decl.*;
+import prev23.data.ast.tree.expr.*;
+import prev23.data.ast.visitor.*;
+import prev23.data.typ.*;
+import prev23.phase.seman.*;
+
+/**
+ * Escape analysis of variables and parameters.
+ *
+ * A variable escapes if its address is taken, i.e., if it is the root of the
+ * lvalue (see {@link AddrResolver}) a reference is applied to, or if a
+ * function nested in the function declaring it accesses it through the static
+ * link.
+ *
+ * A record or an array is accessed componentwise if every access to it selects
+ * a scalar component through constant names and indices within bounds, i.e.,
+ * if it is never used as a whole.
+ */
+public class EscapeAnalyzer extends AstFullVisitor<Object, Integer> {
+
+	/** The static depths of the functions declaring variables and parameters. */
+	private final HashMap<AstMemDecl, Integer> declDepths = new HashMap<AstMemDecl, Integer>();
+
+	/** The static depths of the functions accessing variables and parameters. */
+	private final HashMap<AstMemDecl, HashSet<Integer>> useDepths = new HashMap<AstMemDecl, HashSet<Integer>>();
+
+	/** The variables and parameters whose addresses are taken. */
+	private final HashSet<AstMemDecl> addrTaken = new HashSet<AstMemDecl>();
+
+	/** The variables and parameters used other than through constant components. */
+	private final HashSet<AstMemDecl> usedWhole = new HashSet<AstMemDecl>();
+
+	/** The inner expressions of chains of component selections already inspected. */
+	private final HashSet<AstExpr> selections = new HashSet<AstExpr>();
+
+	/**
+	 * Checks whether a variable or a parameter escapes.
+	 *
+	 * @param decl The declaration of the variable or the parameter.
+	 * @return {@code true} if its address is taken or if it is accessed from a
+	 *         nested function.
+	 */
+	public boolean escapes(AstMemDecl decl) {
+		if (addrTaken.contains(decl))
+			return true;
+		for (int depth : useDepths.getOrDefault(decl, new HashSet<Integer>()))
+			if (depth != declDepths.get(decl))
+				return true;
+		return false;
+	}
+
+	/**
+	 * Checks whether a variable or a parameter is accessed componentwise.
+	 *
+	 * @param decl The declaration of the variable or the parameter.
+	 * @return {@code true} if it is only accessed through scalar components
+	 *         selected by constant names and indices.
+	 */
+	public boolean componentwise(AstMemDecl decl) {
+		return !usedWhole.contains(decl);
+	}
+
+	@Override
+	public Object visit(AstFunDecl funDecl, Integer depth) {
+		return super.visit(funDecl, depth(depth) + 1);
+	}
+
+	@Override
+	public Object visit(AstParDecl parDecl, Integer depth) {
+		declDepths.put(parDecl, depth(depth));
+		return super.visit(parDecl, depth);
+	}
+
+	@Override
+	public Object visit(AstVarDecl varDecl, Integer depth) {
+		declDepths.put(varDecl, depth(depth));
+		return super.visit(varDecl, depth);
+	}
+
+	@Override
+	public Object visit(AstNameExpr nameExpr, Integer depth) {
+		if (SemAn.declaredAt().get(nameExpr) instanceof AstMemDecl decl) {
+			useDepths.computeIfAbsent(decl, __ -> new HashSet<Integer>()).add(depth(depth));
+			if (!selections.contains(nameExpr))
+				usedWhole.add(decl);
+		}
+		return super.visit(nameExpr, depth);
+	}
+
+	@Override
+	public Object visit(AstArrExpr arrExpr, Integer depth) {
+		select(arrExpr);
+		return super.visit(arrExpr, depth);
+	}
+
+	@Override
+	public Object visit(AstRecExpr recExpr, Integer depth) {
+		select(recExpr);
+		return super.visit(recExpr, depth);
+	}
+
+	/**
+	 * Inspects the chain of component selections an outermost selection
+	 * consists of.
+	 */
+	private void select(AstExpr expr) {
+		if (selections.contains(expr))
+			return;
+		SemType type = SemAn.ofType().get(expr).actualType();
+		boolean constant = type instanceof SemInt || type instanceof SemChar || type instanceof SemBool
+				|| type instanceof SemPtr;
+		while (true) {
+			if (expr instanceof AstArrExpr arrExpr) {
+				long index = index(arrExpr.idx);
+				constant &= index >= 0 && index < ((SemArr) SemAn.ofType().get(arrExpr.arr).actualType()).numElems;
+				expr = arrExpr.arr;
+			}
+			else if (expr instanceof AstRecExpr recExpr)
+				expr = recExpr.rec;
+			else
+				break;
+			selections.add(expr);
+		}
+		if (!constant && expr instanceof AstNameExpr nameExpr
+				&& SemAn.declaredAt().get(nameExpr) instanceof AstMemDecl decl)
+			usedWhole.add(decl);
+	}
+
+	/**
+	 * Returns the value of a constant index.
+	 *
+	 * @param idx The index.
+	 * @return The value of the index or -1 if it is not an integer constant.
+	 */
+	public static long index(AstExpr idx) {
+		if (!(idx instanceof AstAtomExpr atomExpr) || atomExpr.type != AstAtomExpr.Type.INT)
+			return -1;
+		try {
+			return Long.parseLong(atomExpr.value);
+		} catch (NumberFormatException __) {
+			return -1;
+		}
+	}
+
+	@Override
+	public Object visit(AstPfxExpr pfxExpr, Integer depth) {
+		if (pfxExpr.oper == AstPfxExpr.Oper.PTR) {
+			// the lvalue is a component of a variable unless it is dereferenced
+			AstExpr expr = pfxExpr.expr;
+			while (Boolean.TRUE.equals(SemAn.isAddr().get(expr))) {
+				if (expr instanceof AstArrExpr arrExpr)
+					expr = arrExpr.arr;
+				else if (expr instanceof AstRecExpr recExpr)
+					expr = recExpr.rec;
+				else
+					break;
+			}
+			if (expr instanceof AstNameExpr nameExpr && SemAn.declaredAt().get(nameExpr) instanceof AstMemDecl decl)
+				addrTaken.add(decl);
+		}
+		return super.visit(pfxExpr, depth);
+	}
+
+	private static int depth(Integer depth) {
+		return depth == null ? 0 : depth;
+	}
+
+}
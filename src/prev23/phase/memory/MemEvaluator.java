@@ -1,5 +1,7 @@
 package prev23.phase.memory;
 
+import java.util.*;
+
 import prev23.data.ast.tree.*;
 import prev23.data.ast.tree.decl.*;
 import prev23.data.ast.tree.expr.*;
@@ -11,9 +13,31 @@ import prev23.phase.seman.*;
 
 /**
  * Computing memory layout: frames and accesses.
+ *
+ * Scalar variables and parameters that do not escape are kept in temporary
+ * variables: a variable gets no slot in the frame, a parameter keeps its slot
+ * in the arguments of the caller (and is loaded from it on entry). Small
+ * records and arrays that do not escape and are only accessed componentwise
+ * are split: every word of such a variable is kept in a temporary variable of
+ * its own.
  */
 public class MemEvaluator extends AstFullVisitor<Object, MemEvaluator.Context> {
 
+    /** The maximal size of a record or an array that is split. */
+    private static final long MAX_SPLIT_SIZE = 8 * 8;
+
+    /** The escape analysis of variables and parameters. */
+    private final EscapeAnalyzer escapes;
+
+    /**
+     * Constructs a new memory layout evaluator.
+     *
+     * @param escapes The escape analysis of variables and parameters.
+     */
+    public MemEvaluator(EscapeAnalyzer escapes) {
+        this.escapes = escapes;
+    }
+
     public class Context {
         int depth = 0;
         int offset = 0;
@@ -52,18 +76,19 @@ public class MemEvaluator extends AstFullVisitor<Object, MemEvaluator.Context> {
         
         MemLabel label = ctx.depth == 0 ? new MemLabel(funDecl.name) : new MemLabel();
         MemFrame frame = new MemFrame(label, ctx.depth, ctx2.locsSize, ctx2.argsSize);
-        Memory.frames.put(funDecl, frame);
+        Memory.frames().put(funDecl, frame);
         return null;
     }
 
     @Override
 	public Object visit(AstParDecl parDecl, Context ctx) {
         parDecl.type.accept(this, ctx);
-        SemType type = SemAn.isType.get(parDecl.type);
+        SemType type = SemAn.isType().get(parDecl.type);
         ctx.offset += type.size();
 
-        MemAccess access = new MemRelAccess(type.size(), ctx.offset, ctx.depth);
-        Memory.accesses.put(parDecl, access);
+        MemRelAccess arg = new MemRelAccess(type.size(), ctx.offset, ctx.depth);
+        MemAccess access = promoted(parDecl, type) ? new MemTempAccess(type.size(), new MemTemp(), arg) : arg;
+        Memory.accesses().put(parDecl, access);
         return null;
     }
 
@@ -71,10 +96,19 @@ public class MemEvaluator extends AstFullVisitor<Object, MemEvaluator.Context> {
     public Object visit(AstVarDecl varDecl, Context ctx) {
         varDecl.type.accept(this, ctx);
 
-        SemType type = SemAn.isType.get(varDecl.type);
+        SemType type = SemAn.isType().get(varDecl.type);
         MemAccess access = null;
 
-        if (ctx.inFunction) {
+        if (ctx.inFunction && promoted(varDecl, type)) {
+            access = new MemTempAccess(type.size(), new MemTemp(), null);
+        }
+        else if (ctx.inFunction && split(varDecl, type)) {
+            Vector<MemTemp> temps = new Vector<MemTemp>();
+            for (long offset = 0; offset < type.size(); offset += 8)
+                temps.add(new MemTemp());
+            access = new MemSplitAccess(type.size(), temps);
+        }
+        else if (ctx.inFunction) {
             ctx.offset -= type.size();
             ctx.locsSize += type.size();
             access = new MemRelAccess(type.size(), ctx.offset, ctx.depth);
@@ -83,10 +117,26 @@ public class MemEvaluator extends AstFullVisitor<Object, MemEvaluator.Context> {
             access = new MemAbsAccess(type.size(), new MemLabel(varDecl.name));
         }
 
-        Memory.accesses.put(varDecl, access);
+        Memory.accesses().put(varDecl, access);
         return null;
     }
 
+    /** Checks whether a variable or a parameter is kept in a temporary variable. */
+    private boolean promoted(AstMemDecl decl, SemType type) {
+        SemType actualType = type.actualType();
+        boolean scalar = actualType instanceof SemInt || actualType instanceof SemChar || actualType instanceof SemBool
+                || actualType instanceof SemPtr;
+        return scalar && !escapes.escapes(decl);
+    }
+
+    /** Checks whether a record or an array variable is kept in temporary variables. */
+    private boolean split(AstVarDecl decl, SemType type) {
+        SemType actualType = type.actualType();
+        boolean aggregate = actualType instanceof SemRec || actualType instanceof SemArr;
+        return aggregate && type.size() > 0 && type.size() <= MAX_SPLIT_SIZE && !escapes.escapes(decl)
+                && escapes.componentwise(decl);
+    }
+
     @Override
 	public Object visit(AstTypDecl typDecl, Context ctx) {
 		typDecl.type.accept(this, ctx);
@@ -107,7 +157,7 @@ public class MemEvaluator extends AstFullVisitor<Object, MemEvaluator.Context> {
         long size = 8 * (temp.length() + 1);
 
         MemAbsAccess access = new MemAbsAccess(size, new MemLabel(), temp);
-        Memory.strings.put(atomExpr, access);
+        Memory.strings().put(atomExpr, access);
         return null;
     }
 
@@ -119,7 +169,7 @@ public class MemEvaluator extends AstFullVisitor<Object, MemEvaluator.Context> {
             callExpr.args.accept(this, ctx);
 
             for(AstExpr expr : callExpr.args) {
-                SemType type = SemAn.ofType.get(expr);
+                SemType type = SemAn.ofType().get(expr);
                 size += type.size();
             }
         }
@@ -137,11 +187,11 @@ public class MemEvaluator extends AstFullVisitor<Object, MemEvaluator.Context> {
         for(AstCmpDecl decl : recType.comps) {
             decl.type.accept(this, ctx);
 
-            SemType type = SemAn.isType.get(decl.type);
+            SemType type = SemAn.isType().get(decl.type);
             MemAccess access = new MemRelAccess(type.size(), offset, 0);
             offset += type.size();
             
-            Memory.accesses.put(decl, access);
+            Memory.accesses().put(decl, access);
         }
 
         return null;
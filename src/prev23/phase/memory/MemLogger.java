@@ -29,7 +29,7 @@ public class MemLogger extends AstNullVisitor<Object, Object> {
 
 	@Override
 	public Object visit(AstCmpDecl cmpDecl, Object arg) {
-		MemAccess access = Memory.accesses.get(cmpDecl);
+		MemAccess access = Memory.accesses().get(cmpDecl);
 		if (access != null)
 			access.log(logger);
 		return null;
@@ -37,7 +37,7 @@ public class MemLogger extends AstNullVisitor<Object, Object> {
 
 	@Override
 	public Object visit(AstFunDecl funDecl, Object arg) {
-		MemFrame frame = Memory.frames.get(funDecl);
+		MemFrame frame = Memory.frames().get(funDecl);
 		if (frame != null)
 			frame.log(logger);
 		return null;
@@ -45,7 +45,7 @@ public class MemLogger extends AstNullVisitor<Object, Object> {
 
 	@Override
 	public Object visit(AstParDecl parDecl, Object arg) {
-		MemAccess access = Memory.accesses.get(parDecl);
+		MemAccess access = Memory.accesses().get(parDecl);
 		if (access != null)
 			access.log(logger);
 		return null;
@@ -53,7 +53,7 @@ public class MemLogger extends AstNullVisitor<Object, Object> {
 
 	@Override
 	public Object visit(AstVarDecl varDecl, Object arg) {
-		MemAccess access = Memory.accesses.get(varDecl);
+		MemAccess access = Memory.accesses().get(varDecl);
 		if (access != null)
 			access.log(logger);
 		return null;
@@ -65,7 +65,7 @@ public class MemLogger extends AstNullVisitor<Object, Object> {
 	public Object visit(AstAtomExpr atomExpr, Object arg) {
 		switch (atomExpr.type) {
 		case STR:
-			MemAbsAccess access = Memory.strings.get(atomExpr);
+			MemAbsAccess access = Memory.strings().get(atomExpr);
 			if (access != null)
 				access.log(logger);
 			break;
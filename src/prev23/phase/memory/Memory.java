@@ -1,5 +1,6 @@
 package prev23.phase.memory;
 
+import prev23.CompilationContext;
 import prev23.data.ast.tree.decl.*;
 import prev23.data.ast.tree.expr.*;
 import prev23.data.ast.attribute.*;
@@ -12,13 +13,19 @@ import prev23.phase.*;
 public class Memory extends Phase {
 
 	/** Maps function declarations to frames. */
-	public static final AstAttribute<AstFunDecl, MemFrame> frames = new AstAttribute<AstFunDecl, MemFrame>();
+	public static AstAttribute<AstFunDecl, MemFrame> frames() {
+		return CompilationContext.current().frames;
+	}
 
 	/** Maps variable declarations to accesses. */
-	public static final AstAttribute<AstMemDecl, MemAccess> accesses = new AstAttribute<AstMemDecl, MemAccess>();
+	public static AstAttribute<AstMemDecl, MemAccess> accesses() {
+		return CompilationContext.current().accesses;
+	}
 
 	/** Maps string constants to accesses. */
-	public static final AstAttribute<AstAtomExpr, MemAbsAccess> strings = new AstAttribute<AstAtomExpr, MemAbsAccess>();
+	public static AstAttribute<AstAtomExpr, MemAbsAccess> strings() {
+		return CompilationContext.current().strings;
+	}
 
 	/**
 	 * Constructs a new phase for computing layout.
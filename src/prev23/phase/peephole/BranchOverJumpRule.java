@@ -0,0 +1,54 @@
+package prev23.phase.peephole;
+
+import java.util.*;
+
+import prev23.data.asm.*;
+import prev23.data.mem.*;
+
+/**
+ * Replaces a branch over an unconditional jump by the inverted branch, i.e.,
+ * <code>Bcc $X,L1; JMP L2; L1:</code> by <code>B!cc $X,L2; L1:</code>.
+ */
+public class BranchOverJumpRule extends PeepholeRule {
+
+	/** The inverted branches. */
+	private static final HashMap<String, String> inverted = new HashMap<String, String>();
+
+	static {
+		String[][] pairs = { { "BZ", "BNZ" }, { "BN", "BNN" }, { "BP", "BNP" }, { "BOD", "BEV" } };
+		for (String[] pair : pairs) {
+			inverted.put(pair[0], pair[1]);
+			inverted.put(pair[1], pair[0]);
+		}
+	}
+
+	public BranchOverJumpRule() {
+		super("branch-over-jump");
+	}
+
+	@Override
+	public boolean apply(Code code, int pos) {
+		AsmInstr branch = instr(code, pos);
+		AsmInstr jump = instr(code, pos + 1);
+		String inverse = inverted.get(mnemonic(branch));
+		if (inverse == null || !"JMP".equals(mnemonic(jump)))
+			return false;
+		MemLabel target = branch.jumps().get(0);
+		int next = pos + 2;
+		while (instr(code, next) instanceof AsmLABEL && !isLabel(instr(code, next), target))
+			next++;
+		if (!isLabel(instr(code, next), target))
+			return false;
+
+		MemLabel jumpTarget = jump.jumps().get(0);
+		String text = inverse + template(branch).substring(mnemonic(branch).length(), template(branch).lastIndexOf(',') + 1)
+				+ jumpTarget.name;
+		Vector<MemLabel> jumps = new Vector<MemLabel>();
+		jumps.add(jumpTarget);
+		jumps.add(target);
+		code.instrs.set(pos, new AsmOPER(text, branch.uses(), branch.defs(), jumps));
+		code.instrs.remove(pos + 1);
+		return true;
+	}
+
+}
@@ -0,0 +1,50 @@
+package prev23.phase.peephole;
+
+import java.util.*;
+
+import prev23.data.asm.*;
+import prev23.data.mem.*;
+
+/**
+ * Redirects a jump or a branch to a label followed by an unconditional jump to
+ * the final target of the chain of jumps.
+ */
+public class JumpThreadingRule extends PeepholeRule {
+
+	public JumpThreadingRule() {
+		super("jump-threading");
+	}
+
+	@Override
+	public boolean apply(Code code, int pos) {
+		AsmInstr instr = instr(code, pos);
+		if (!isJump(instr))
+			return false;
+		MemLabel target = instr.jumps().get(0);
+		MemLabel finalTarget = target;
+		HashSet<MemLabel> visited = new HashSet<MemLabel>();
+		visited.add(target);
+		for (MemLabel next = jumpAfter(code, target); next != null; next = jumpAfter(code, next)) {
+			// an endless loop of jumps is left as it is
+			if (!visited.add(next))
+				return false;
+			finalTarget = next;
+		}
+		if (finalTarget == target)
+			return false;
+		code.instrs.set(pos, retarget(instr, target, finalTarget));
+		return true;
+	}
+
+	/** Returns the target of the unconditional jump following a label (if any). */
+	private MemLabel jumpAfter(Code code, MemLabel label) {
+		int next = position(code, label);
+		if (next < 0)
+			return null;
+		while (instr(code, next) instanceof AsmLABEL)
+			next++;
+		AsmInstr instr = instr(code, next);
+		return "JMP".equals(mnemonic(instr)) ? instr.jumps().get(0) : null;
+	}
+
+}
@@ -0,0 +1,32 @@
+package prev23.phase.peephole;
+
+import prev23.data.asm.*;
+import prev23.data.mem.*;
+
+/**
+ * Removes a jump to a label that immediately follows it (the epilogue follows
+ * the last instruction of a function).
+ */
+public class JumpToNextRule extends PeepholeRule {
+
+	public JumpToNextRule() {
+		super("jump-to-next");
+	}
+
+	@Override
+	public boolean apply(Code code, int pos) {
+		AsmInstr instr = instr(code, pos);
+		if (!"JMP".equals(mnemonic(instr)))
+			return false;
+		MemLabel target = instr.jumps().get(0);
+		int next = pos + 1;
+		while (instr(code, next) instanceof AsmLABEL && !isLabel(instr(code, next), target))
+			next++;
+		if (isLabel(instr(code, next), target) || (next == code.instrs.size() && target == code.exitLabel)) {
+			code.instrs.remove(pos);
+			return true;
+		}
+		return false;
+	}
+
+}
@@ -0,0 +1,40 @@
+package prev23.phase.peephole;
+
+import prev23.data.asm.*;
+import prev23.data.mem.*;
+
+/**
+ * Merges adjacent labels (and a label at the end of the code with the label of
+ * the epilogue), so that no empty instruction is needed between them.
+ */
+public class LabelMergeRule extends PeepholeRule {
+
+	public LabelMergeRule() {
+		super("label-merge");
+	}
+
+	@Override
+	public boolean apply(Code code, int pos) {
+		if (!(instr(code, pos) instanceof AsmLABEL))
+			return false;
+		MemLabel label = ((AsmLABEL) instr(code, pos)).getLabel();
+		MemLabel into;
+		if (pos == code.instrs.size() - 1)
+			into = code.exitLabel;
+		else if (instr(code, pos - 1) instanceof AsmLABEL)
+			into = ((AsmLABEL) instr(code, pos - 1)).getLabel();
+		else
+			return false;
+		if (label == code.entryLabel || label == code.exitLabel)
+			return false;
+
+		for (int i = 0; i < code.instrs.size(); i++) {
+			AsmInstr instr = code.instrs.get(i);
+			if (!(instr instanceof AsmLABEL) && instr.jumps().contains(label))
+				code.instrs.set(i, retarget(instr, label, into));
+		}
+		code.instrs.remove(pos);
+		return true;
+	}
+
+}
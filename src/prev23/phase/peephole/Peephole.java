@@ -0,0 +1,100 @@
+package prev23.phase.peephole;
+
+import java.util.*;
+
+import prev23.Compiler;
+import prev23.common.report.*;
+import prev23.data.asm.*;
+import prev23.phase.*;
+import prev23.phase.asmgen.*;
+import prev23.phase.regall.*;
+
+/**
+ * Peephole optimization.
+ * 
+ * The rules selected by the command line argument <code>--peephole</code>
+ * (<code>all</code>, the default, <code>none</code>, or a comma-separated list
+ * of rule names) are applied to the code of every function after register
+ * allocation until none of them matches any more. The number of times each
+ * rule has been applied is reported as a counter of this phase.
+ */
+public class Peephole extends Phase {
+
+	/** All rules in the order they are tried. */
+	private static PeepholeRule[] allRules() {
+		return new PeepholeRule[] { new SelfMoveRule(), new SpillReloadRule(), new JumpThreadingRule(),
+				new BranchOverJumpRule(), new JumpToNextRule(), new UnreachableCodeRule(),
+				new LabelMergeRule() };
+	}
+
+	/** The rules selected by the command line. */
+	private final Vector<PeepholeRule> rules = new Vector<PeepholeRule>();
+
+	/**
+	 * Constructs a new phase for peephole optimization.
+	 */
+	public Peephole() {
+		super("peephole");
+		String selection = Compiler.cmdLineArgValue("--peephole");
+		if (selection == null)
+			selection = "all";
+		HashSet<String> names = new HashSet<String>(Arrays.asList(selection.split(",")));
+		for (PeepholeRule rule : allRules()) {
+			boolean selected = names.remove(rule.name);
+			if (selected || selection.equals("all"))
+				rules.add(rule);
+		}
+		names.remove("all");
+		names.remove("none");
+		if (!names.isEmpty())
+			throw new Report.Error("Unknown peephole rule(s) " + names + ".");
+	}
+
+	/**
+	 * Applies the selected rules to the code of all functions.
+	 */
+	public void optimize() {
+		for (Code code : AsmGen.codes()) {
+			int[] hits = new int[rules.size()];
+			for (PeepholeRule rule : rules)
+				rule.invalidate();
+			boolean changed = true;
+			while (changed) {
+				changed = false;
+				for (int pos = 0; pos < code.instrs.size(); pos++) {
+					for (int r = 0; r < rules.size(); r++) {
+						if (rules.get(r).apply(code, pos)) {
+							hits[r]++;
+							changed = true;
+							for (PeepholeRule rule : rules)
+								rule.invalidate();
+						}
+					}
+				}
+			}
+			for (int r = 0; r < rules.size(); r++)
+				count(code.frame.label.name, rules.get(r).name, hits[r]);
+		}
+	}
+
+	public void log() {
+		if (logger == null)
+			return;
+		for (Code code : AsmGen.codes()) {
+			logger.begElement("code");
+			logger.addAttribute("entrylabel", code.entryLabel.name);
+			logger.addAttribute("exitlabel", code.exitLabel.name);
+			logger.addAttribute("tempsize", Long.toString(code.tempSize));
+			code.frame.log(logger);
+			logger.begElement("instructions");
+			for (AsmInstr instr : code.instrs) {
+				logger.begElement("instruction");
+				logger.addAttribute("code", instr.toString(RegAll.tempToReg()));
+				logger.endElement();
+			}
+			logger.endElement();
+			logger.endElement();
+		}
+	}
+
+}
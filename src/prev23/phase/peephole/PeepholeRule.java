@@ -0,0 +1,122 @@
+package prev23.phase.peephole;
+
+import java.util.*;
+import java.util.regex.*;
+
+import prev23.data.asm.*;
+import prev23.data.mem.*;
+import prev23.phase.regall.*;
+
+/**
+ * A rule of the peephole optimizer.
+ * 
+ * A rule inspects a window of instructions starting at a given position in the
+ * code of a function (after register allocation) and rewrites it if it matches.
+ */
+public abstract class PeepholeRule {
+
+	/** The name of the rule (as used in the command line and in statistics). */
+	public final String name;
+
+	/** The positions of labels (or {@code null} if they must be recomputed). */
+	private HashMap<MemLabel, Integer> positions = null;
+
+	/**
+	 * Constructs a new rule.
+	 * 
+	 * @param name The name of the rule.
+	 */
+	protected PeepholeRule(String name) {
+		this.name = name;
+	}
+
+	/**
+	 * Tries to rewrite the instructions starting at a given position.
+	 * 
+	 * @param code The code of a function.
+	 * @param pos  The position of the first instruction of the window.
+	 * @return {@code true} if the instructions have been rewritten,
+	 *         {@code false} otherwise.
+	 */
+	public abstract boolean apply(Code code, int pos);
+
+	/**
+	 * Notifies the rule that the code has been changed.
+	 */
+	public void invalidate() {
+		positions = null;
+	}
+
+	/**
+	 * Returns the position of a label in the code (or -1 if it is not there).
+	 * 
+	 * @param code  The code of a function.
+	 * @param label The label.
+	 * @return The position of the label.
+	 */
+	protected int position(Code code, MemLabel label) {
+		if (positions == null) {
+			positions = new HashMap<MemLabel, Integer>();
+			for (int pos = 0; pos < code.instrs.size(); pos++) {
+				if (code.instrs.get(pos) instanceof AsmLABEL)
+					positions.put(((AsmLABEL) code.instrs.get(pos)).getLabel(), pos);
+			}
+		}
+		Integer pos = positions.get(label);
+		return pos == null ? -1 : pos;
+	}
+
+	/** Returns the register a temporary has been allocated to. */
+	protected static Integer reg(MemTemp temp) {
+		return RegAll.tempToReg().get(temp);
+	}
+
+	/** Returns the instruction at a position (or {@code null} if there is none). */
+	protected static AsmInstr instr(Code code, int pos) {
+		return pos >= 0 && pos < code.instrs.size() ? code.instrs.get(pos) : null;
+	}
+
+	/** Returns the mnemonic of an instruction (or {@code null} for a label). */
+	protected static String mnemonic(AsmInstr instr) {
+		if (instr == null || instr instanceof AsmLABEL)
+			return null;
+		String text = ((AsmOPER) instr).instr();
+		int space = text.indexOf(' ');
+		return space < 0 ? text : text.substring(0, space);
+	}
+
+	/** Returns the template of an instruction (or {@code null} for a label). */
+	protected static String template(AsmInstr instr) {
+		if (instr == null || instr instanceof AsmLABEL)
+			return null;
+		return ((AsmOPER) instr).instr();
+	}
+
+	/** Checks whether an instruction is a label. */
+	protected static boolean isLabel(AsmInstr instr, MemLabel label) {
+		return instr instanceof AsmLABEL && ((AsmLABEL) instr).getLabel() == label;
+	}
+
+	/** Checks whether an instruction is a jump or a branch (but not a call). */
+	protected static boolean isJump(AsmInstr instr) {
+		return !(instr instanceof AsmLABEL) && instr != null && !instr.jumps().isEmpty() && !"PUSHJ".equals(mnemonic(instr));
+	}
+
+	/**
+	 * Returns a jump or a branch with its (first) target replaced.
+	 * 
+	 * @param instr The jump or the branch.
+	 * @param from  The old target.
+	 * @param to    The new target.
+	 * @return The new instruction.
+	 */
+	protected static AsmOPER retarget(AsmInstr instr, MemLabel from, MemLabel to) {
+		String text = template(instr).replaceAll("(?<![\\w])" + Pattern.quote(from.name) + "(?![\\w])",
+				Matcher.quoteReplacement(to.name));
+		Vector<MemLabel> jumps = new Vector<MemLabel>();
+		for (MemLabel label : instr.jumps())
+			jumps.add(label == from ? to : label);
+		return new AsmOPER(text, instr.uses(), instr.defs(), jumps);
+	}
+
+}
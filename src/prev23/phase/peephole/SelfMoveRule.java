@@ -0,0 +1,28 @@
+package prev23.phase.peephole;
+
+import prev23.data.asm.*;
+
+/**
+ * Removes moves between temporaries allocated to the same register.
+ */
+public class SelfMoveRule extends PeepholeRule {
+
+	public SelfMoveRule() {
+		super("self-move");
+	}
+
+	@Override
+	public boolean apply(Code code, int pos) {
+		AsmInstr instr = instr(code, pos);
+		String template = template(instr);
+		if (template == null || !(template.equals("ADD `d0,`s0,0") || template.equals("OR `d0,`s0,0")))
+			return false;
+		if (instr.uses().size() != 1 || instr.defs().size() != 1)
+			return false;
+		if (reg(instr.uses().get(0)) == null || !reg(instr.uses().get(0)).equals(reg(instr.defs().get(0))))
+			return false;
+		code.instrs.remove(pos);
+		return true;
+	}
+
+}
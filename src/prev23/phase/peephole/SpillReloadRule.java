@@ -0,0 +1,124 @@
+package prev23.phase.peephole;
+
+import java.util.*;
+
+import prev23.data.asm.*;
+import prev23.data.mem.*;
+
+/**
+ * Replaces a load from the location just stored to (typically a spill slot)
+ * by a move of the stored register. The location is given by the same base
+ * register and either the same immediate offset or an offset loaded by the
+ * same sequence of instructions; a sequence loading an offset used by the load
+ * only is removed as well.
+ */
+public class SpillReloadRule extends PeepholeRule {
+
+	public SpillReloadRule() {
+		super("spill-reload");
+	}
+
+	@Override
+	public boolean apply(Code code, int pos) {
+		AsmInstr store = instr(code, pos);
+		if (!"STO".equals(mnemonic(store)) || !template(store).startsWith("STO `s0,`s1,"))
+			return false;
+
+		// the instructions between the store and the load may only compute the offset of the load
+		int next = pos + 1;
+		Vector<AsmInstr> offsetInstrs = new Vector<AsmInstr>();
+		while (loadsConstant(instr(code, next), offsetInstrs))
+			offsetInstrs.add(instr(code, next++));
+		AsmInstr load = instr(code, next);
+		if (!"LDO".equals(mnemonic(load)) || !template(load).startsWith("LDO `d0,`s0,"))
+			return false;
+
+		MemTemp value = store.uses().get(0);
+		if (!Objects.equals(reg(store.uses().get(1)), reg(load.uses().get(0))))
+			return false;
+		String storeOffset = template(store).substring("STO `s0,`s1,".length());
+		String loadOffset = template(load).substring("LDO `d0,`s0,".length());
+		if (!storeOffset.startsWith("`") && !loadOffset.startsWith("`")) {
+			if (!storeOffset.equals(loadOffset) || !offsetInstrs.isEmpty())
+				return false;
+		}
+		else if (storeOffset.equals("`s2") && loadOffset.equals("`s1")) {
+			MemTemp storeTemp = store.uses().get(2);
+			MemTemp loadTemp = load.uses().get(1);
+			if (offsetInstrs.isEmpty()) {
+				if (!Objects.equals(reg(storeTemp), reg(loadTemp)))
+					return false;
+			}
+			else {
+				if (offsetInstrs.get(0).defs().get(0) != loadTemp)
+					return false;
+				if (!sameConstant(constantInstrs(code, pos, storeTemp), offsetInstrs))
+					return false;
+			}
+		}
+		else
+			return false;
+
+		// the offset of the load is not needed any more
+		MemTemp loadTemp = offsetInstrs.isEmpty() ? null : offsetInstrs.get(0).defs().get(0);
+		boolean offsetUsed = loadTemp != null && loadTemp == value;
+		for (int i = 0; i < code.instrs.size() && loadTemp != null && !offsetUsed; i++)
+			offsetUsed = i != next && code.instrs.get(i).uses().contains(loadTemp);
+		if (offsetUsed)
+			return false;
+
+		MemTemp dst = load.defs().get(0);
+		if (Objects.equals(reg(dst), reg(value)))
+			code.instrs.remove(next);
+		else {
+			Vector<MemTemp> uses = new Vector<MemTemp>();
+			Vector<MemTemp> defs = new Vector<MemTemp>();
+			uses.add(value);
+			defs.add(dst);
+			code.instrs.set(next, new AsmMOVE("ADD `d0,`s0,0", uses, defs));
+		}
+		for (int i = 0; i < offsetInstrs.size(); i++)
+			code.instrs.remove(pos + 1);
+		return true;
+	}
+
+	/**
+	 * Checks whether an instruction continues a sequence loading a constant
+	 * into a single temporary.
+	 */
+	private static boolean loadsConstant(AsmInstr instr, Vector<AsmInstr> seq) {
+		String mnemonic = mnemonic(instr);
+		if (mnemonic == null || !mnemonic.matches("SET.*|OR[LMH]+|NEGU?|NOR") || instr.defs().size() != 1)
+			return false;
+		if (seq.isEmpty())
+			return instr.uses().isEmpty();
+		return instr.defs().get(0) == seq.get(0).defs().get(0);
+	}
+
+	/** Returns the sequence loading a constant into a temporary right before a position. */
+	private static Vector<AsmInstr> constantInstrs(Code code, int pos, MemTemp temp) {
+		int first = pos;
+		while (instr(code, first - 1) != null && instr(code, first - 1).defs().size() == 1
+				&& instr(code, first - 1).defs().get(0) == temp)
+			first--;
+		Vector<AsmInstr> seq = new Vector<AsmInstr>();
+		for (int i = first; i < pos; i++) {
+			if (!loadsConstant(instr(code, i), seq))
+				return null;
+			seq.add(instr(code, i));
+		}
+		return seq;
+	}
+
+	/** Checks whether two sequences load the same constant. */
+	private static boolean sameConstant(Vector<AsmInstr> fst, Vector<AsmInstr> snd) {
+		if (fst == null || snd == null || fst.isEmpty() || fst.size() != snd.size())
+			return false;
+		for (int i = 0; i < fst.size(); i++) {
+			if (!template(fst.get(i)).equals(template(snd.get(i))))
+				return false;
+		}
+		return true;
+	}
+
+}
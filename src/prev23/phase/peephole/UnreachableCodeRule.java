@@ -0,0 +1,45 @@
+package prev23.phase.peephole;
+
+import java.util.*;
+
+import prev23.data.asm.*;
+import prev23.data.mem.*;
+
+/**
+ * Removes the instructions following an unconditional jump or a return up to
+ * the next label that is still jumped to (e.g., the jumps left behind by jump
+ * threading).
+ */
+public class UnreachableCodeRule extends PeepholeRule {
+
+	public UnreachableCodeRule() {
+		super("unreachable");
+	}
+
+	@Override
+	public boolean apply(Code code, int pos) {
+		String mnemonic = mnemonic(instr(code, pos));
+		if (!"JMP".equals(mnemonic) && !"POP".equals(mnemonic))
+			return false;
+		if (instr(code, pos + 1) == null)
+			return false;
+
+		HashSet<MemLabel> targets = new HashSet<MemLabel>();
+		targets.add(code.entryLabel);
+		targets.add(code.exitLabel);
+		for (AsmInstr instr : code.instrs) {
+			if (!(instr instanceof AsmLABEL))
+				targets.addAll(instr.jumps());
+		}
+
+		int end = pos + 1;
+		while (instr(code, end) != null
+				&& !(instr(code, end) instanceof AsmLABEL && targets.contains(((AsmLABEL) instr(code, end)).getLabel())))
+			end++;
+		if (end == pos + 1)
+			return false;
+		code.instrs.subList(pos + 1, end).clear();
+		return true;
+	}
+
+}
@@ -0,0 +1,4 @@
+/**
+ * Peephole optimization.
+ */
+package prev23.phase.peephole;
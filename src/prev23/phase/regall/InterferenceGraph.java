@@ -0,0 +1,121 @@
+package prev23.phase.regall;
+
+import java.util.*;
+
+/**
+ * An interference graph over densely numbered nodes.
+ *
+ * Edges are stored twice: in a triangular bit-matrix for constant-time
+ * adjacency tests and in adjacency lists for fast iteration over the neighbours
+ * of a node. Adjacency lists and degrees are maintained for non-precolored
+ * nodes only; edges to precolored nodes are not counted in degrees because
+ * precolored nodes never compete for the registers being allocated.
+ */
+class InterferenceGraph {
+
+	/** The number of nodes. */
+	final int size;
+
+	/** The triangular bit-matrix of edges. */
+	private final long[] matrix;
+
+	/** Adjacency lists. */
+	private final int[][] adjList;
+
+	/** The lengths of adjacency lists. */
+	private final int[] adjSize;
+
+	/** The number of non-precolored neighbours of each node. */
+	final int[] degree;
+
+	/** Whether a node is precolored. */
+	final boolean[] precolored;
+
+	/**
+	 * Constructs a new graph without edges.
+	 *
+	 * @param size       The number of nodes.
+	 * @param precolored Whether a node is precolored.
+	 */
+	InterferenceGraph(int size, boolean[] precolored) {
+		this.size = size;
+		this.matrix = new long[(int) ((((long) size * (size - 1) / 2) + 63) >>> 6) + 1];
+		this.adjList = new int[size][];
+		this.adjSize = new int[size];
+		this.degree = new int[size];
+		this.precolored = precolored;
+	}
+
+	private static long bit(int u, int v) {
+		return u < v ? (long) v * (v - 1) / 2 + u : (long) u * (u - 1) / 2 + v;
+	}
+
+	/**
+	 * Checks whether two nodes interfere.
+	 *
+	 * @param u A node.
+	 * @param v A node.
+	 * @return {@code true} if the nodes interfere, {@code false} otherwise.
+	 */
+	boolean adjacent(int u, int v) {
+		if (u == v)
+			return false;
+		long b = bit(u, v);
+		return (matrix[(int) (b >>> 6)] & (1L << b)) != 0;
+	}
+
+	/**
+	 * Adds an edge (unless already present).
+	 *
+	 * @param u A node.
+	 * @param v A node.
+	 */
+	void addEdge(int u, int v) {
+		if (u == v)
+			return;
+		long b = bit(u, v);
+		if ((matrix[(int) (b >>> 6)] & (1L << b)) != 0)
+			return;
+		matrix[(int) (b >>> 6)] |= 1L << b;
+		if (!precolored[u]) {
+			append(u, v);
+			if (!precolored[v])
+				degree[u]++;
+		}
+		if (!precolored[v]) {
+			append(v, u);
+			if (!precolored[u])
+				degree[v]++;
+		}
+	}
+
+	private void append(int u, int v) {
+		if (adjList[u] == null)
+			adjList[u] = new int[4];
+		else if (adjSize[u] == adjList[u].length)
+			adjList[u] = Arrays.copyOf(adjList[u], 2 * adjSize[u]);
+		adjList[u][adjSize[u]++] = v;
+	}
+
+	/**
+	 * Returns the adjacency list of a node (only the first
+	 * {@link #adjSize(int)} elements are valid).
+	 *
+	 * @param u A node.
+	 * @return The adjacency list.
+	 */
+	int[] adjList(int u) {
+		return adjList[u] == null ? new int[0] : adjList[u];
+	}
+
+	/**
+	 * Returns the length of the adjacency list of a node.
+	 *
+	 * @param u A node.
+	 * @return The length of the adjacency list.
+	 */
+	int adjSize(int u) {
+		return adjSize[u];
+	}
+
+}
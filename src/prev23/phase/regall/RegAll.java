@@ -2,6 +2,7 @@ package prev23.phase.regall;
 
 import java.util.*;
 
+import prev23.CompilationContext;
 import prev23.data.mem.*;
 import prev23.common.report.Report;
 import prev23.data.asm.*;
@@ -12,309 +13,548 @@ import prev23.phase.livean.*;
 
 /**
  * Register allocation.
+ * 
+ * Registers are allocated by iterated register coalescing (George and Appel):
+ * the interference graph is simplified, moves are coalesced conservatively,
+ * move-related nodes are frozen when nothing else can be done, and potential
+ * spills are selected only as the last resort. All actual spills of a round are
+ * rewritten at once before the liveness analysis and allocation are repeated.
  */
 public class RegAll extends Phase {
 
 	/** Mapping of temporary variables to registers. */
-	public static final HashMap<MemTemp, Integer> tempToReg = new HashMap<MemTemp, Integer>();
-	public final HashMap<MemTemp, Node> tempToNode = new HashMap<MemTemp, Node>();
-	public final HashMap<MemTemp, Long> offsets = new HashMap<MemTemp, Long>();
+	public static HashMap<MemTemp, Integer> tempToReg() {
+		return CompilationContext.current().tempToReg;
+	}
 
 	public static final int NUM_REGISTERS = 32;
 
-	class Node {
-		private HashSet<MemTemp> cNodes;
-		private MemTemp temp;
-		private int regNum;
+	/** The register holding the frame pointer. */
+	private static final int FP_REGISTER = 253;
+
+	// Node states.
+	private static final int INITIAL = -1;
+	private static final int PRECOLORED = 0;
+	private static final int SIMPLIFY = 1;
+	private static final int FREEZE = 2;
+	private static final int SPILL = 3;
+	private static final int SPILLED = 4;
+	private static final int COALESCED = 5;
+	private static final int COLORED = 6;
+	private static final int SELECTED = 7;
+
+	// Move states.
+	private static final int WORKLIST_MOVE = 0;
+	private static final int ACTIVE_MOVE = 1;
+	private static final int COALESCED_MOVE = 2;
+	private static final int CONSTRAINED_MOVE = 3;
+	private static final int FROZEN_MOVE = 4;
+
+	/** Temporaries introduced by spilling (these should never be spilled again). */
+	private final HashSet<MemTemp> spillTemps = new HashSet<MemTemp>();
+
+	/** The number of allocation rounds needed for the last code. */
+	public int rounds = 0;
+
+	// The state of the allocation of the current code.
+	private Vector<MemTemp> temps;
+	private HashMap<MemTemp, Integer> tempIndex;
+	private InterferenceGraph graph;
+	private int[] nodeState;
+	private int[] alias;
+	private int[] color;
+	private int[] occurrences;
+	private int[][] moveList;
+	private int[] moveListSize;
+	private int[] moveSrc;
+	private int[] moveDst;
+	private int[] moveState;
+	private Vector<AsmMOVE> moveInstrs;
+	private ArrayDeque<Integer> simplifyWorklist;
+	private ArrayDeque<Integer> freezeWorklist;
+	private HashSet<Integer> spillWorklist;
+	private ArrayDeque<Integer> worklistMoves;
+	private int[] selectStack;
+	private int selectStackSize;
 
-		public Node(MemTemp temp) {
-			this.temp = temp;
-			this.regNum = -1;
-			cNodes = new HashSet<MemTemp>();
-		}
+	public RegAll() {
+		super("regall");
+	}
 
-		// Getters
-		public HashSet<MemTemp> getCNodes() {
-			return cNodes;
+	public void allocate() {
+		for(Code c : AsmGen.codes()) {
+			rounds = 0;
+			// try allocating until successful
+			while(!allocateCode(c));
+			count(c.frame.label.name, "rounds", rounds);
 		}
+	}
 
-		public MemTemp getTemp() {
-			return temp;
+	public boolean allocateCode(Code code) {
+		rounds++;
+
+		build(code);
+		makeWorklist();
+		while (true) {
+			if (!simplifyWorklist.isEmpty())
+				simplify();
+			else if (!worklistMoves.isEmpty())
+				coalesce();
+			else if (!freezeWorklist.isEmpty())
+				freeze();
+			else if (!spillWorklist.isEmpty())
+				selectSpill();
+			else
+				break;
 		}
+		Vector<MemTemp> spilled = assignColors();
 
-		public int getReg() {
-			return regNum;
-		}
+		if (!spilled.isEmpty()) {
+			rewriteProgram(code, spilled);
 
-		public int numConns() {
-			return cNodes.size();
+			// reanalyze code
+			count(code.frame.label.name, "spills", spilled.size());
+			count(code.frame.label.name, "livean-iterations", LiveAn.analyze(code));
+			return false;
 		}
 
-		// checking
-		public boolean hasConnection(MemTemp temp) {
-			return cNodes.contains(temp);
-		}
+		for (int n = 0; n < temps.size(); n++)
+			tempToReg().put(temps.get(n), Integer.valueOf(color[getAlias(n)]));
 
-		// adding
-		public void addConnection(MemTemp conn) {
-			cNodes.add(conn);
-			cNodes.remove(temp);
-		}
+		// Coalesced moves have become redundant.
+		for (int m = 0; m < moveInstrs.size(); m++)
+			if (moveState[m] == COALESCED_MOVE)
+				code.instrs.remove(moveInstrs.get(m));
+		return true;
+	}
 
-		public void addAllConnections(HashSet<MemTemp> conns) {
-			cNodes.addAll(conns);
-			cNodes.remove(temp);
-		}
+	// BUILD
 
-		// removing
-		public void removeConnection(MemTemp conn) {
-			cNodes.remove(conn);
+	private int index(MemTemp temp) {
+		Integer index = tempIndex.get(temp);
+		if (index == null) {
+			index = temps.size();
+			tempIndex.put(temp, index);
+			temps.add(temp);
 		}
+		return index;
+	}
 
-		public void removeConnection(Node node) {
-			cNodes.remove(node.getTemp());
+	private void build(Code code) {
+		temps = new Vector<MemTemp>();
+		tempIndex = new HashMap<MemTemp, Integer>();
+		index(code.frame.FP);
+		for (AsmInstr instr : code.instrs) {
+			for (MemTemp temp : instr.defs())
+				index(temp);
+			for (MemTemp temp : instr.uses())
+				index(temp);
+			for (MemTemp temp : instr.out())
+				index(temp);
 		}
 
-		// coloring
-		public boolean color(int maxColors) {
-			boolean success = false;
-
-			for(int i = 0; i < maxColors && !success; i++) {
-				boolean valid = true;
-
-				for(MemTemp temp : cNodes) {
-					if(tempToReg.containsKey(temp) && tempToReg.get(temp).intValue() == i) {
-						valid = false;
-						break;
-					}
-				}
-
-				if(valid) {
-					success = true;
-					regNum = i;
+		int size = temps.size();
+		boolean[] precolored = new boolean[size];
+		precolored[0] = true;
+		graph = new InterferenceGraph(size, precolored);
+		nodeState = new int[size];
+		alias = new int[size];
+		color = new int[size];
+		occurrences = new int[size];
+		moveList = new int[size][];
+		moveListSize = new int[size];
+		for (int n = 0; n < size; n++) {
+			nodeState[n] = INITIAL;
+			alias[n] = n;
+			color[n] = -1;
+		}
+		nodeState[0] = PRECOLORED;
+		color[0] = FP_REGISTER;
+
+		Vector<Integer> srcs = new Vector<Integer>();
+		Vector<Integer> dsts = new Vector<Integer>();
+		moveInstrs = new Vector<AsmMOVE>();
+
+		for (AsmInstr instr : code.instrs) {
+			HashSet<MemTemp> live = instr.out();
+			Vector<MemTemp> uses = instr.uses();
+			Vector<MemTemp> defs = instr.defs();
+			if (instr instanceof AsmMOVE) {
+				int src = tempIndex.get(uses.get(0));
+				int dst = tempIndex.get(defs.get(0));
+				if (src != dst) {
+					live.removeAll(uses);
+					int move = srcs.size();
+					srcs.add(src);
+					dsts.add(dst);
+					moveInstrs.add((AsmMOVE) instr);
+					addMove(src, move);
+					addMove(dst, move);
 				}
 			}
-
-			return success;
+			live.addAll(defs);
+			for (MemTemp def : defs) {
+				int d = tempIndex.get(def);
+				for (MemTemp temp : live)
+					graph.addEdge(tempIndex.get(temp), d);
+			}
+			for (MemTemp temp : uses)
+				occurrences[tempIndex.get(temp)]++;
+			for (MemTemp temp : defs)
+				occurrences[tempIndex.get(temp)]++;
 		}
-	}
 
-	public RegAll() {
-		super("regall");
+		int numMoves = srcs.size();
+		moveSrc = new int[numMoves];
+		moveDst = new int[numMoves];
+		moveState = new int[numMoves];
+		worklistMoves = new ArrayDeque<Integer>();
+		for (int m = 0; m < numMoves; m++) {
+			moveSrc[m] = srcs.get(m);
+			moveDst[m] = dsts.get(m);
+			moveState[m] = WORKLIST_MOVE;
+			worklistMoves.add(m);
+		}
 	}
 
-	public Vector<AsmInstr> saveNumber(long offset, MemTemp temp) {
-		Vector<AsmInstr> saveVec = new Vector<>();
-		Vector<MemTemp> defs = new Vector<>();
-
-		defs.add(temp);
-		long value = Math.abs(offset);
-
-		saveVec.add(new AsmOPER(String.format("SETL `d0,%d", value & 0x000000000000FFFFL), null, defs, null));
-		if((value & 0x00000000FFFF0000L) > 0)
-			saveVec.add(new AsmOPER(String.format("INCML `d0,%d", ((value & 0x00000000FFFF0000L) >> 16)), defs, defs, null));
-		if((value & 0x0000FFFF00000000L) > 0)
-			saveVec.add(new AsmOPER(String.format("INCMH `d0,%d", ((value & 0x0000FFFF00000000L) >> 32)), defs, defs, null));
-		if((value & 0xFFFF000000000000L) > 0)
-			saveVec.add(new AsmOPER(String.format("INCH `d0,%d", ((value & 0xFFFF000000000000L) >> 48)), defs, defs, null));
-
-		if (offset < 0)
-			saveVec.add(new AsmOPER("NEG `d0,0,`s0", defs, defs, null));
-
-		return saveVec;
+	private void addMove(int node, int move) {
+		if (moveList[node] == null)
+			moveList[node] = new int[2];
+		else if (moveListSize[node] == moveList[node].length)
+			moveList[node] = Arrays.copyOf(moveList[node], 2 * moveListSize[node]);
+		moveList[node][moveListSize[node]++] = move;
 	}
 
-	public void allocate() {
-		for(Code c : AsmGen.codes) {
-			// try allocating until successful
-			while(!allocateCode(c));
-
-			offsets.clear();
+	private void makeWorklist() {
+		simplifyWorklist = new ArrayDeque<Integer>();
+		freezeWorklist = new ArrayDeque<Integer>();
+		spillWorklist = new HashSet<Integer>();
+		selectStack = new int[temps.size()];
+		selectStackSize = 0;
+		for (int n = 0; n < temps.size(); n++) {
+			if (nodeState[n] == PRECOLORED)
+				continue;
+			if (graph.degree[n] >= NUM_REGISTERS) {
+				nodeState[n] = SPILL;
+				spillWorklist.add(n);
+			} else if (moveRelated(n)) {
+				nodeState[n] = FREEZE;
+				freezeWorklist.add(n);
+			} else {
+				nodeState[n] = SIMPLIFY;
+				simplifyWorklist.add(n);
+			}
 		}
 	}
 
-	public boolean allocateCode(Code code) {
-		Stack<Node> stack = new Stack<Node>();
-		boolean colored = false;
+	// SIMPLIFY
 
-		tempToNode.clear();
+	private boolean isRemoved(int n) {
+		return nodeState[n] == SELECTED || nodeState[n] == COALESCED;
+	}
 
-		// 1) Create graph
-		for(AsmInstr instr : code.instrs) {
-			HashSet<MemTemp> allTemps = instr.in();
-			allTemps.addAll(instr.out());
-			allTemps.addAll(instr.defs());
+	private void simplify() {
+		int n = simplifyWorklist.poll();
+		if (nodeState[n] != SIMPLIFY)
+			return;
+		nodeState[n] = SELECTED;
+		selectStack[selectStackSize++] = n;
+		int[] adj = graph.adjList(n);
+		for (int i = 0; i < graph.adjSize(n); i++)
+			if (!isRemoved(adj[i]))
+				decrementDegree(adj[i]);
+	}
 
-			for(MemTemp temp : allTemps) {
-				if(!tempToNode.containsKey(temp)) {
-					tempToNode.put(temp, new Node(temp));
+	private void decrementDegree(int m) {
+		if (nodeState[m] == PRECOLORED)
+			return;
+		int d = graph.degree[m]--;
+		if (d == NUM_REGISTERS) {
+			enableMoves(m);
+			int[] adj = graph.adjList(m);
+			for (int i = 0; i < graph.adjSize(m); i++)
+				if (!isRemoved(adj[i]))
+					enableMoves(adj[i]);
+			if (nodeState[m] == SPILL) {
+				spillWorklist.remove(m);
+				if (moveRelated(m)) {
+					nodeState[m] = FREEZE;
+					freezeWorklist.add(m);
+				} else {
+					nodeState[m] = SIMPLIFY;
+					simplifyWorklist.add(m);
 				}
-
-				if(tempToReg.containsKey(temp))
-					tempToReg.remove(temp);
-
-				tempToNode.get(temp).addAllConnections(allTemps);
 			}
 		}
+	}
 
-		// 2) Simplify graph
-		while(tempToNode.size() > 0) {
-			boolean simplfiable = true;
-
-			while(simplfiable) {
-				simplfiable = false;
-
-				for(Node node : tempToNode.values()) {
-					if(node.numConns() < NUM_REGISTERS) {
-						// very nice :)
-						stack.push(node);
+	private boolean isActive(int move) {
+		return moveState[move] == ACTIVE_MOVE || moveState[move] == WORKLIST_MOVE;
+	}
 
-						// remove this node from all neighbours
-						for(Node n : tempToNode.values())
-							n.removeConnection(node);
+	private boolean moveRelated(int n) {
+		for (int i = 0; i < moveListSize[n]; i++)
+			if (isActive(moveList[n][i]))
+				return true;
+		return false;
+	}
 
-						tempToNode.remove(node.getTemp());
-						simplfiable = true;
-						break;
-					}
-				}
+	private void enableMoves(int n) {
+		for (int i = 0; i < moveListSize[n]; i++) {
+			int m = moveList[n][i];
+			if (moveState[m] == ACTIVE_MOVE) {
+				moveState[m] = WORKLIST_MOVE;
+				worklistMoves.add(m);
 			}
+		}
+	}
 
-			// 3) Spill
-			if(tempToNode.size() > 0) {
-				for(Node node : tempToNode.values()) {
-					if(node.numConns() >= NUM_REGISTERS) {
-						stack.push(node);
+	// COALESCE
 
-						// remove this node from all neighbours
-						for(Node n : tempToNode.values())
-							n.removeConnection(node);
+	private int getAlias(int n) {
+		while (nodeState[n] == COALESCED)
+			n = alias[n];
+		return n;
+	}
 
-						tempToNode.remove(node.getTemp());
-						break;	
-					}
-				}
-			}
+	private void addWorkList(int u) {
+		if (nodeState[u] != PRECOLORED && !moveRelated(u) && graph.degree[u] < NUM_REGISTERS
+				&& nodeState[u] == FREEZE) {
+			nodeState[u] = SIMPLIFY;
+			simplifyWorklist.add(u);
 		}
+	}
 
-		// 4) Select
-		boolean succeeded = true;
-		Node node = stack.peek();
-		// Stack<Node> stack2 = new Stack<Node>();
-		// stack2.addAll(stack);
-
-		while(!stack.isEmpty() && succeeded) {
-			node = stack.pop();
-
-			// check if we have fp
-			if(node.getTemp() == code.frame.FP) {
-				tempToReg.put(node.getTemp(), Integer.valueOf(253));
-				succeeded = true;
-			}
-			else {
-				succeeded = node.color(NUM_REGISTERS);
+	private boolean ok(int t, int r) {
+		return graph.degree[t] < NUM_REGISTERS || nodeState[t] == PRECOLORED || graph.adjacent(t, r);
+	}
 
-				if(succeeded)
-					tempToReg.put(node.getTemp(), Integer.valueOf(node.getReg()));
+	private boolean conservative(int u, int v) {
+		HashSet<Integer> seen = new HashSet<Integer>();
+		int k = 0;
+		for (int node : new int[] { u, v }) {
+			int[] adj = graph.adjList(node);
+			for (int i = 0; i < graph.adjSize(node); i++) {
+				int n = adj[i];
+				if (isRemoved(n) || nodeState[n] == PRECOLORED || !seen.add(n))
+					continue;
+				if (graph.degree[n] >= NUM_REGISTERS)
+					k++;
 			}
 		}
+		return k < NUM_REGISTERS;
+	}
 
-		// 5) Have fun :)
-		if(!succeeded) {
-			Vector<AsmInstr> modifiedInstrs = new Vector<>();
-			modifiedInstrs.addAll(code.instrs);
-
-			MemTemp changeTemp = node.getTemp();
-
-			for(AsmInstr instr : code.instrs) {
-				int pos = modifiedInstrs.indexOf(instr);
-				modifiedInstrs.remove(pos);
+	private void coalesce() {
+		int m = worklistMoves.poll();
+		if (moveState[m] != WORKLIST_MOVE)
+			return;
+		int x = getAlias(moveSrc[m]);
+		int y = getAlias(moveDst[m]);
+		int u = x;
+		int v = y;
+		if (nodeState[y] == PRECOLORED) {
+			u = y;
+			v = x;
+		}
 
-				MemTemp replacementTemp = new MemTemp();
-				MemTemp offsetsTemp = new MemTemp();
+		if (u == v) {
+			moveState[m] = COALESCED_MOVE;
+			addWorkList(u);
+		} else if (nodeState[v] == PRECOLORED || graph.adjacent(u, v)) {
+			moveState[m] = CONSTRAINED_MOVE;
+			addWorkList(u);
+			addWorkList(v);
+		} else if (nodeState[u] == PRECOLORED ? allOk(v, u) : conservative(u, v)) {
+			moveState[m] = COALESCED_MOVE;
+			combine(u, v);
+			addWorkList(u);
+		} else {
+			moveState[m] = ACTIVE_MOVE;
+		}
+	}
 
+	private boolean allOk(int v, int u) {
+		int[] adj = graph.adjList(v);
+		for (int i = 0; i < graph.adjSize(v); i++)
+			if (!isRemoved(adj[i]) && !ok(adj[i], u))
+				return false;
+		return true;
+	}
 
-				if(instr.defs().contains(changeTemp)) {
-					// Modify defines
-					Vector<MemTemp> newDefs = instr.defs();
-					newDefs.remove(changeTemp);
-					newDefs.add(replacementTemp);
+	private void combine(int u, int v) {
+		if (nodeState[v] == SPILL)
+			spillWorklist.remove(v);
+		nodeState[v] = COALESCED;
+		alias[v] = u;
+		for (int i = 0; i < moveListSize[v]; i++)
+			addMove(u, moveList[v][i]);
+		enableMoves(v);
+		int[] adj = graph.adjList(v);
+		for (int i = 0; i < graph.adjSize(v); i++) {
+			int t = adj[i];
+			if (isRemoved(t))
+				continue;
+			graph.addEdge(t, u);
+			decrementDegree(t);
+		}
+		if (graph.degree[u] >= NUM_REGISTERS && nodeState[u] == FREEZE) {
+			nodeState[u] = SPILL;
+			spillWorklist.add(u);
+		}
+	}
 
-					Vector<MemTemp> uses = new Vector<>();
-					Vector<MemTemp> defs = new Vector<>();
+	// FREEZE
 
-					defs.add(offsetsTemp);
+	private void freeze() {
+		int u = freezeWorklist.poll();
+		if (nodeState[u] != FREEZE)
+			return;
+		nodeState[u] = SIMPLIFY;
+		simplifyWorklist.add(u);
+		freezeMoves(u);
+	}
 
-					uses.add(replacementTemp);
-					uses.add(code.frame.FP);
-					uses.add(offsetsTemp);
+	private void freezeMoves(int u) {
+		for (int i = 0; i < moveListSize[u]; i++) {
+			int m = moveList[u][i];
+			if (!isActive(m))
+				continue;
+			int x = moveSrc[m];
+			int y = moveDst[m];
+			int v = getAlias(y) == getAlias(u) ? getAlias(x) : getAlias(y);
+			moveState[m] = FROZEN_MOVE;
+			if (nodeState[v] == FREEZE && !moveRelated(v) && graph.degree[v] < NUM_REGISTERS) {
+				nodeState[v] = SIMPLIFY;
+				simplifyWorklist.add(v);
+			}
+		}
+	}
 
-					code.tempSize += 8;
-					long tempOffset = -code.tempSize - code.frame.locsSize - 16;
+	// SPILL
 
-					offsets.put(changeTemp, Long.valueOf(tempOffset)); 
+	private void selectSpill() {
+		int best = -1;
+		double bestCost = 0;
+		for (int n : spillWorklist) {
+			double cost = (spillTemps.contains(temps.get(n)) ? 1e9 : 1) * occurrences[n] / (double) graph.degree[n];
+			if (best == -1 || cost < bestCost || (cost == bestCost && n < best)) {
+				best = n;
+				bestCost = cost;
+			}
+		}
+		spillWorklist.remove(best);
+		nodeState[best] = SIMPLIFY;
+		simplifyWorklist.add(best);
+		freezeMoves(best);
+	}
 
-					AsmInstr newInstr = new AsmOPER(((AsmOPER)instr).instr(), instr.uses(), newDefs, instr.jumps());
-					Vector<AsmInstr> numDInstr = saveNumber(tempOffset, offsetsTemp);
+	// SELECT
+
+	private Vector<MemTemp> assignColors() {
+		Vector<MemTemp> spilled = new Vector<MemTemp>();
+		boolean[] used = new boolean[NUM_REGISTERS];
+		while (selectStackSize > 0) {
+			int n = selectStack[--selectStackSize];
+			Arrays.fill(used, false);
+			int[] adj = graph.adjList(n);
+			for (int i = 0; i < graph.adjSize(n); i++) {
+				int a = getAlias(adj[i]);
+				if ((nodeState[a] == COLORED || nodeState[a] == PRECOLORED) && color[a] >= 0
+						&& color[a] < NUM_REGISTERS)
+					used[color[a]] = true;
+			}
+			int c = 0;
+			while (c < NUM_REGISTERS && used[c])
+				c++;
+			if (c == NUM_REGISTERS) {
+				nodeState[n] = SPILLED;
+				spilled.add(temps.get(n));
+			} else {
+				nodeState[n] = COLORED;
+				color[n] = c;
+			}
+		}
+		return spilled;
+	}
 
-					AsmInstr store = new AsmOPER("STO `s0,`s1,`s2", uses, null, null);
-					modifiedInstrs.insertElementAt(newInstr, pos);
+	// REWRITE
 
-					int iterator = 1;
-					for(AsmInstr tmpInstr : numDInstr) {
-						modifiedInstrs.insertElementAt(tmpInstr, pos + iterator);
-						iterator++;
-					}
+	private void rewriteProgram(Code code, Vector<MemTemp> spilled) {
+		HashMap<MemTemp, Long> offsets = new HashMap<MemTemp, Long>();
+		for (MemTemp temp : spilled) {
+			code.tempSize += 8;
+			offsets.put(temp, Long.valueOf(-code.tempSize - code.frame.locsSize - 16));
+		}
 
-					modifiedInstrs.insertElementAt(store, pos + iterator);
+		Vector<AsmInstr> modifiedInstrs = new Vector<AsmInstr>();
+		for (AsmInstr instr : code.instrs) {
+			Vector<MemTemp> uses = instr.uses();
+			Vector<MemTemp> defs = instr.defs();
+			HashMap<MemTemp, MemTemp> replacements = new HashMap<MemTemp, MemTemp>();
+			Vector<AsmInstr> stores = new Vector<AsmInstr>();
+
+			for (int i = 0; i < uses.size(); i++) {
+				MemTemp temp = uses.get(i);
+				if (!offsets.containsKey(temp))
+					continue;
+				MemTemp replacement = replacements.get(temp);
+				if (replacement == null) {
+					replacement = spillTemp();
+					replacements.put(temp, replacement);
+					modifiedInstrs.addAll(spillAccess("LDO", replacement, offsets.get(temp), code));
 				}
-				else if(instr.uses().contains(changeTemp)) {
-					Vector<MemTemp> newUses = instr.uses();
-					newUses.remove(changeTemp);
-					newUses.add(replacementTemp);
-
-					Vector<MemTemp> uses = new Vector<>();
-					Vector<MemTemp> defs = new Vector<>();
-					Vector<MemTemp> defsLoad = new Vector<>();
-
-					defs.add(offsetsTemp);
-					defsLoad.add(replacementTemp);
-
-					uses.add(code.frame.FP);
-					uses.add(offsetsTemp);
-
-					long tempOffset = offsets.get(changeTemp).longValue();
-					Vector<AsmInstr> numDInstr = saveNumber(tempOffset, offsetsTemp);
-
-					AsmInstr load = new AsmOPER("LDO `d0,`s0,`s1", uses, defsLoad, null);
-					AsmInstr newInstr = new AsmOPER(((AsmOPER)instr).instr(), newUses, instr.defs(), instr.jumps());
-
-					int iterator = 0;
-					for(AsmInstr tmpInstr : numDInstr) {
-						modifiedInstrs.insertElementAt(tmpInstr, pos + iterator);
-						iterator++;
-					}
-
-					modifiedInstrs.insertElementAt(load, pos + iterator);
-					modifiedInstrs.insertElementAt(newInstr, pos + iterator + 1);
+				uses.set(i, replacement);
+			}
+			for (int i = 0; i < defs.size(); i++) {
+				MemTemp temp = defs.get(i);
+				if (!offsets.containsKey(temp))
+					continue;
+				MemTemp replacement = replacements.get(temp);
+				if (replacement == null) {
+					replacement = spillTemp();
+					replacements.put(temp, replacement);
 				}
+				defs.set(i, replacement);
+				stores.addAll(spillAccess("STO", replacement, offsets.get(temp), code));
 			}
 
-			// clear current instructions and add mofified ones
-			code.instrs.clear();
-			code.instrs.addAll(modifiedInstrs);
-
-			// reanalyze code
-			LiveAn livean = new LiveAn();
-			livean.analyze(code);
-			colored = false;
-		}
-		// we have succeeded
-		else {
-			colored = true;
+			if (replacements.isEmpty())
+				modifiedInstrs.add(instr);
+			else if (instr instanceof AsmMOVE)
+				modifiedInstrs.add(new AsmMOVE(((AsmOPER) instr).instr(), uses, defs));
+			else
+				modifiedInstrs.add(new AsmOPER(((AsmOPER) instr).instr(), uses, defs, instr.jumps()));
+			modifiedInstrs.addAll(stores);
 		}
 
-		return colored;
+		// clear current instructions and add mofified ones
+		code.instrs.clear();
+		code.instrs.addAll(modifiedInstrs);
+	}
+
+	private MemTemp spillTemp() {
+		MemTemp temp = new MemTemp();
+		spillTemps.add(temp);
+		return temp;
+	}
+
+	private Vector<AsmInstr> spillAccess(String oper, MemTemp temp, long offset, Code code) {
+		MemTemp offsetsTemp = spillTemp();
+		Vector<AsmInstr> instrs = ConstMaterializer.materialize(offset, offsetsTemp);
+		Vector<MemTemp> uses = new Vector<MemTemp>();
+		Vector<MemTemp> defs = new Vector<MemTemp>();
+		if (oper.equals("LDO"))
+			defs.add(temp);
+		else
+			uses.add(temp);
+		uses.add(code.frame.FP);
+		uses.add(offsetsTemp);
+		if (oper.equals("LDO"))
+			instrs.add(new AsmOPER("LDO `d0,`s0,`s1", uses, defs, null));
+		else
+			instrs.add(new AsmOPER("STO `s0,`s1,`s2", uses, defs, null));
+		return instrs;
 	}
 
 	public void log() {
@@ -322,7 +562,7 @@ public class RegAll extends Phase {
 			return;
 
 		// tempToReg.forEach((key, value) -> System.out.println(key + " " + value));
-		for (Code code : AsmGen.codes) {
+		for (Code code : AsmGen.codes()) {
 			logger.begElement("code");
 			logger.addAttribute("entrylabel", code.entryLabel.name);
 			logger.addAttribute("exitlabel", code.exitLabel.name);
@@ -331,7 +571,7 @@ public class RegAll extends Phase {
 			logger.begElement("instructions");
 			for (AsmInstr instr : code.instrs) {
 				logger.begElement("instruction");
-				logger.addAttribute("code", instr.toString(tempToReg));
+				logger.addAttribute("code", instr.toString(tempToReg()));
 				logger.begElement("temps");
 				logger.addAttribute("name", "use");
 				for (MemTemp temp : instr.uses()) {
@@ -14,7 +14,7 @@ public class AddrResolver extends AstFullVisitor<Object, Object> {
 		assStmt.dst.accept(this, mode);
 		assStmt.src.accept(this, mode);
 
-		Boolean ok = SemAn.isAddr.get(assStmt.dst);
+		Boolean ok = SemAn.isAddr().get(assStmt.dst);
 
 		if(ok == null || !ok) {
 			throw new Report.Error(assStmt, "Address error: Lvalue expected!");
@@ -25,10 +25,10 @@ public class AddrResolver extends AstFullVisitor<Object, Object> {
 
 	@Override
     public Object visit(AstNameExpr nameExpr, Object mode) {
-		AstNameDecl decl = SemAn.declaredAt.get(nameExpr);
+		AstNameDecl decl = SemAn.declaredAt().get(nameExpr);
 
 		if (decl instanceof AstVarDecl || decl instanceof AstParDecl)
-			SemAn.isAddr.put(nameExpr, true);
+			SemAn.isAddr().put(nameExpr, true);
 
 		return null;
 	}
@@ -36,10 +36,10 @@ public class AddrResolver extends AstFullVisitor<Object, Object> {
 	@Override
     public Object visit(AstSfxExpr sfxExpr, Object mode) {
 		sfxExpr.expr.accept(this, mode);
-		SemType type = SemAn.ofType.get(sfxExpr.expr).actualType();
+		SemType type = SemAn.ofType().get(sfxExpr.expr).actualType();
 		
 		if (type instanceof SemPtr)
-			SemAn.isAddr.put(sfxExpr, true);
+			SemAn.isAddr().put(sfxExpr, true);
 
 		return null;
 	}
@@ -49,10 +49,10 @@ public class AddrResolver extends AstFullVisitor<Object, Object> {
 		arrExpr.arr.accept(this, mode);
 		arrExpr.idx.accept(this, mode);
 
-		Boolean ok = SemAn.isAddr.get(arrExpr.arr);
+		Boolean ok = SemAn.isAddr().get(arrExpr.arr);
 		
 		if (ok != null && ok)
-			SemAn.isAddr.put(arrExpr, true);
+			SemAn.isAddr().put(arrExpr, true);
 		
         return null;
 	}
@@ -60,10 +60,10 @@ public class AddrResolver extends AstFullVisitor<Object, Object> {
 	@Override
     public Object visit(AstRecExpr recExpr, Object mode) {
 		recExpr.rec.accept(this, mode);
-		Boolean ok = SemAn.isAddr.get(recExpr.rec);
+		Boolean ok = SemAn.isAddr().get(recExpr.rec);
 
 		if (ok != null && ok)
-			SemAn.isAddr.put(recExpr, true);
+			SemAn.isAddr().put(recExpr, true);
 
 		return null;
 	}
@@ -141,7 +141,7 @@ public class NameResolver extends AstFullVisitor<Object, NameResolver.Mode> {
 	public Object visit(AstCallExpr callExpr, Mode mode) {
 		if(mode == Mode.BODY) {
 			try {
-				SemAn.declaredAt.put(callExpr, symbTable.fnd(callExpr.name));
+				SemAn.declaredAt().put(callExpr, symbTable.fnd(callExpr.name));
 			}
 			catch (SymbTable.CannotFndNameException e) {
 				throw new Report.Error(callExpr, "Semantic error: cannot find name " + callExpr.name);
@@ -159,7 +159,7 @@ public class NameResolver extends AstFullVisitor<Object, NameResolver.Mode> {
 	public Object visit(AstNameExpr nameExpr, Mode mode) {
 		if(mode == Mode.BODY) {
 			try {
-				SemAn.declaredAt.put(nameExpr, symbTable.fnd(nameExpr.name));
+				SemAn.declaredAt().put(nameExpr, symbTable.fnd(nameExpr.name));
 			}
 			catch (SymbTable.CannotFndNameException e) {
 				throw new Report.Error(nameExpr, "Semantic error: cannot find name " + nameExpr.name);
@@ -184,7 +184,7 @@ public class NameResolver extends AstFullVisitor<Object, NameResolver.Mode> {
 	public Object visit(AstNameType nameType, Mode mode) {
 		if(mode == Mode.BODY) {
 			try {
-				SemAn.declaredAt.put(nameType, symbTable.fnd(nameType.name));
+				SemAn.declaredAt().put(nameType, symbTable.fnd(nameType.name));
 			}
 			catch (SymbTable.CannotFndNameException e) {
 				throw new Report.Error(nameType, "Semantic error: cannot find name " + nameType.name);
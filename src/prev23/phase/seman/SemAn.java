@@ -1,5 +1,6 @@
 package prev23.phase.seman;
 
+import prev23.CompilationContext;
 import prev23.phase.*;
 import prev23.data.ast.attribute.*;
 import prev23.data.ast.tree.*;
@@ -14,19 +15,29 @@ import prev23.data.typ.*;
 public class SemAn extends Phase {
 
 	/** Maps names to declarations. */
-	public static final AstAttribute<AstName, AstNameDecl> declaredAt = new AstAttribute<AstName, AstNameDecl>();
+	public static AstAttribute<AstName, AstNameDecl> declaredAt() {
+		return CompilationContext.current().declaredAt;
+	}
 
 	/** Maps type declarations to semantic representations of types. */
-	public static final AstAttribute<AstTypDecl, SemName> declaresType = new AstAttribute<AstTypDecl, SemName>();
+	public static AstAttribute<AstTypDecl, SemName> declaresType() {
+		return CompilationContext.current().declaresType;
+	}
 
 	/** Maps syntax types to semantic representations of types. */
-	public static final AstAttribute<AstType, SemType> isType = new AstAttribute<AstType, SemType>();
+	public static AstAttribute<AstType, SemType> isType() {
+		return CompilationContext.current().isType;
+	}
 
 	/** Maps syntax expressions to semantic representations of types. */
-	public static final AstAttribute<AstExec, SemType> ofType = new AstAttribute<AstExec, SemType>();
+	public static AstAttribute<AstExec, SemType> ofType() {
+		return CompilationContext.current().ofType;
+	}
 
 	/** Indicates which syntax expressions denote lvalues. */
-	public static final AstAttribute<AstExpr, Boolean> isAddr = new AstAttribute<AstExpr, Boolean>();
+	public static AstAttribute<AstExpr, Boolean> isAddr() {
+		return CompilationContext.current().isAddr;
+	}
 
 	/**
 	 * Phase construction.
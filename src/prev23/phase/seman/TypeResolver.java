@@ -4,6 +4,7 @@ import java.util.HashMap;
 import java.util.Iterator;
 import java.util.LinkedList;
 
+import prev23.CompilationContext;
 import prev23.common.report.*;
 import prev23.data.ast.tree.*;
 import prev23.data.ast.tree.decl.*;
@@ -20,7 +21,9 @@ public class TypeResolver extends AstFullVisitor<SemType, TypeResolver.Mode> {
 		HEAD, BODY, THIRD
 	}
 
-	public static final HashMap<SemRec, SymbTable> recDeclares = new HashMap<>();
+	public static HashMap<SemRec, SymbTable> recDeclares() {
+		return CompilationContext.current().recDeclares;
+	}
 
 
 	public boolean areEqual(SemType first, SemType second) {
@@ -85,7 +88,7 @@ public class TypeResolver extends AstFullVisitor<SemType, TypeResolver.Mode> {
 			case INT -> new SemInt();
 		};
 
-		SemAn.isType.put(atomType, ret);
+		SemAn.isType().put(atomType, ret);
 		return ret;
 	}
 
@@ -114,7 +117,7 @@ public class TypeResolver extends AstFullVisitor<SemType, TypeResolver.Mode> {
 						throw new Report.Error(arrType, "Type error: index value cannot be negative.");
 
 					ret = new SemArr(elemType, value);
-					SemAn.isType.put(arrType, ret);
+					SemAn.isType().put(arrType, ret);
 				} catch (NumberFormatException e) {
 					throw new Report.Error(arrType, "Type error: index value too big.");
 				}
@@ -139,7 +142,7 @@ public class TypeResolver extends AstFullVisitor<SemType, TypeResolver.Mode> {
 		SymbTable table = new SymbTable();
 
 		for(AstCmpDecl cdecl : recType.comps) {
-			SemType type = SemAn.isType.get(cdecl.type);
+			SemType type = SemAn.isType().get(cdecl.type);
 
 			try {
 				table.ins(cdecl.name, cdecl);
@@ -157,8 +160,8 @@ public class TypeResolver extends AstFullVisitor<SemType, TypeResolver.Mode> {
 		}
 
 		SemRec rec = new SemRec(recs);
-		SemAn.isType.put(recType, rec);
-		recDeclares.put(rec, table);
+		SemAn.isType().put(recType, rec);
+		recDeclares().put(rec, table);
 		return rec;
 	}
 
@@ -172,21 +175,21 @@ public class TypeResolver extends AstFullVisitor<SemType, TypeResolver.Mode> {
 		}
 
 		SemType ret = new SemPtr(type);
-		SemAn.isType.put(ptrType, ret);
+		SemAn.isType().put(ptrType, ret);
 		return ret;
 	}
 
 	@Override
 	public SemType visit(AstNameType nameType, Mode mode) {
-		AstNameDecl decl = SemAn.declaredAt.get(nameType);
+		AstNameDecl decl = SemAn.declaredAt().get(nameType);
 
 		if(decl instanceof AstTypDecl) {
-			SemName name = SemAn.declaresType.get((AstTypDecl) decl);
+			SemName name = SemAn.declaresType().get((AstTypDecl) decl);
 			if(name == null) {
 				throw new Report.Error(nameType, "Type error: undecleared name - " + nameType.name);
 			}
 
-			SemAn.isType.put(nameType, name);
+			SemAn.isType().put(nameType, name);
 			return name;
 		}
 		else {
@@ -209,7 +212,7 @@ public class TypeResolver extends AstFullVisitor<SemType, TypeResolver.Mode> {
 			case STR -> new SemPtr(new SemChar());
 		};
 
-		SemAn.ofType.put(atomExpr, ret);
+		SemAn.ofType().put(atomExpr, ret);
 		return ret;
 	}
 
@@ -239,7 +242,7 @@ public class TypeResolver extends AstFullVisitor<SemType, TypeResolver.Mode> {
 				break;
 		};
 
-		SemAn.ofType.put(pfxExpr, ret);
+		SemAn.ofType().put(pfxExpr, ret);
 		return ret;
 	}
 
@@ -296,7 +299,7 @@ public class TypeResolver extends AstFullVisitor<SemType, TypeResolver.Mode> {
 				throw new Report.Error(binExpr, "Type error: invalid binary operator.");
 		}
 
-		SemAn.ofType.put(binExpr, ret);
+		SemAn.ofType().put(binExpr, ret);
 		return ret;
 	}
 
@@ -318,7 +321,7 @@ public class TypeResolver extends AstFullVisitor<SemType, TypeResolver.Mode> {
 		}
 		else throw new Report.Error(sfxExpr, "Type error: invalid suffix type.");
 		
-		SemAn.ofType.put(sfxExpr, ret);
+		SemAn.ofType().put(sfxExpr, ret);
 		return ret;
 	}
 
@@ -327,7 +330,7 @@ public class TypeResolver extends AstFullVisitor<SemType, TypeResolver.Mode> {
 	public SemType visit(AstNewExpr newExpr, Mode mode) {
 		SemType type = newExpr.type.accept(this, mode);
 		SemType ret = new SemPtr(type);
-		SemAn.ofType.put(newExpr, ret);
+		SemAn.ofType().put(newExpr, ret);
 		return ret;
 	}
 	
@@ -344,7 +347,7 @@ public class TypeResolver extends AstFullVisitor<SemType, TypeResolver.Mode> {
 			throw new Report.Error(delExpr, "Type error: del expression must be of pointer type.");
 		}
 
-		SemAn.ofType.put(delExpr, ret);
+		SemAn.ofType().put(delExpr, ret);
 		return ret;
 	}
 
@@ -364,7 +367,7 @@ public class TypeResolver extends AstFullVisitor<SemType, TypeResolver.Mode> {
 			throw new Report.Error(arrExpr, "Type error: expression not of array type.");
 
 		SemType ret = ((SemArr)arrType.actualType()).elemType;
-		SemAn.ofType.put(arrExpr, ret);
+		SemAn.ofType().put(arrExpr, ret);
 		return ret;
 	}
 
@@ -374,14 +377,14 @@ public class TypeResolver extends AstFullVisitor<SemType, TypeResolver.Mode> {
 		SemType recType = recExpr.rec.accept(this, mode).actualType();
 
 		if(recType instanceof SemRec) {
-			SymbTable table = recDeclares.get(recType);
+			SymbTable table = recDeclares().get(recType);
 
 			try {
 				AstNameDecl decl = table.fnd(recExpr.comp.name);
 				if(decl instanceof AstCmpDecl) {
 					AstCmpDecl cmpDecl = (AstCmpDecl) decl;
-					SemType type = SemAn.isType.get(cmpDecl.type);
-					SemAn.ofType.put(recExpr, type);
+					SemType type = SemAn.isType().get(cmpDecl.type);
+					SemAn.ofType().put(recExpr, type);
 					return type;
 				}
 				else throw new Report.Error(recExpr, "Type error: record expression invalid type.");
@@ -396,11 +399,11 @@ public class TypeResolver extends AstFullVisitor<SemType, TypeResolver.Mode> {
 	// V12
 	@Override
 	public SemType visit(AstCallExpr callExpr, Mode mode) {
-		AstNameDecl nameDecl = SemAn.declaredAt.get(callExpr);
+		AstNameDecl nameDecl = SemAn.declaredAt().get(callExpr);
 		if(!(nameDecl instanceof AstFunDecl))
 			throw new Report.Error(callExpr, "Type error: call expression not of function type.");
 		
-		AstFunDecl decl = (AstFunDecl) SemAn.declaredAt.get(callExpr);
+		AstFunDecl decl = (AstFunDecl) SemAn.declaredAt().get(callExpr);
 		SemType ret = decl.type.accept(this, mode);
 
 		int argSize = callExpr.args != null ? callExpr.args.size() : 0;
@@ -414,7 +417,7 @@ public class TypeResolver extends AstFullVisitor<SemType, TypeResolver.Mode> {
 			Iterator<AstExpr> args = callExpr.args.iterator();
 
 			while(params.hasNext()) {
-				SemType pType = SemAn.isType.get(params.next().type);
+				SemType pType = SemAn.isType().get(params.next().type);
 				AstExpr expr = args.next();
 				SemType aType = expr.accept(this, mode);
 
@@ -423,7 +426,7 @@ public class TypeResolver extends AstFullVisitor<SemType, TypeResolver.Mode> {
 			}
 		}
 
-		SemAn.ofType.put(callExpr, ret);
+		SemAn.ofType().put(callExpr, ret);
 		return ret;
 	}
 
@@ -439,13 +442,13 @@ public class TypeResolver extends AstFullVisitor<SemType, TypeResolver.Mode> {
 		if(!isChar(castType) && !isInt(castType) && !isPtr(castType))
 			throw new Report.Error(castExpr, "Type error: cast type must be of char, int or ptr type.");
 
-		SemAn.ofType.put(castExpr, castType);
+		SemAn.ofType().put(castExpr, castType);
 		return castType;
 	}
 
 	@Override
 	public SemType visit(AstNameExpr nameExpr, Mode mode) {
-		AstNameDecl decl = SemAn.declaredAt.get(nameExpr);
+		AstNameDecl decl = SemAn.declaredAt().get(nameExpr);
 		SemType ret = null;
 
 		if(decl instanceof AstFunDecl) {
@@ -453,18 +456,18 @@ public class TypeResolver extends AstFullVisitor<SemType, TypeResolver.Mode> {
 			if (funDecl.pars != null) {
 				throw new Report.Error(nameExpr, "Provide arguments for a function call");
 			}
-			ret = SemAn.isType.get(funDecl.type);
+			ret = SemAn.isType().get(funDecl.type);
 		}
 		else if(decl instanceof AstVarDecl) {
 			AstVarDecl varDecl = (AstVarDecl) decl;
-			ret = SemAn.isType.get(varDecl.type);
+			ret = SemAn.isType().get(varDecl.type);
 		}
 		else if(decl instanceof AstParDecl) {
 			AstParDecl parDecl = (AstParDecl) decl;
-			ret = SemAn.isType.get(parDecl.type);
+			ret = SemAn.isType().get(parDecl.type);
 		}
 
-		SemAn.ofType.put(nameExpr, ret);
+		SemAn.ofType().put(nameExpr, ret);
 		return ret;
 	}
 
@@ -494,7 +497,7 @@ public class TypeResolver extends AstFullVisitor<SemType, TypeResolver.Mode> {
 			throw new Report.Error(assignStmt, "Type error: types in assignment statement must be of bool, int, char or pointer type.");
 
 		SemType ret = new SemVoid();
-		SemAn.ofType.put(assignStmt, ret);
+		SemAn.ofType().put(assignStmt, ret);
 		return ret;
 	}
 
@@ -510,7 +513,7 @@ public class TypeResolver extends AstFullVisitor<SemType, TypeResolver.Mode> {
 			throw new Report.Error(ifStmt, "Type error: condition in if statement must be of bool type.");
 			
 		SemType ret = new SemVoid();
-		SemAn.ofType.put(ifStmt, ret);
+		SemAn.ofType().put(ifStmt, ret);
 		return ret;
 	}
 
@@ -524,7 +527,7 @@ public class TypeResolver extends AstFullVisitor<SemType, TypeResolver.Mode> {
 			throw new Report.Error(whileStmt, "Type error: condition in while statement must be of bool type.");
 		
 		SemType ret = new SemVoid();
-		SemAn.ofType.put(whileStmt, ret);
+		SemAn.ofType().put(whileStmt, ret);
 		return ret;
 	}
 
@@ -534,14 +537,14 @@ public class TypeResolver extends AstFullVisitor<SemType, TypeResolver.Mode> {
 		declStmt.decls.accept(this, mode);
 
 		SemType ret = declStmt.stmt.accept(this, mode);
-		SemAn.ofType.put(declStmt, ret);
+		SemAn.ofType().put(declStmt, ret);
 		return ret;
 	}
 
 	@Override
 	public SemType visit(AstExprStmt exprStmt, Mode mode) {
 		SemType ret = exprStmt.expr.accept(this, mode);
-		SemAn.ofType.put(exprStmt, ret);
+		SemAn.ofType().put(exprStmt, ret);
 		return ret;
 	}
 
@@ -551,8 +554,8 @@ public class TypeResolver extends AstFullVisitor<SemType, TypeResolver.Mode> {
 		stmts.stmts.accept(this, mode);
 		int lastIndex = stmts.stmts.size() - 1;
 
-        SemType type = SemAn.ofType.get(stmts.stmts.get(lastIndex));
-        SemAn.ofType.put(stmts, type);
+        SemType type = SemAn.ofType().get(stmts.stmts.get(lastIndex));
+        SemAn.ofType().put(stmts, type);
         return type;
 	}
 
@@ -562,17 +565,17 @@ public class TypeResolver extends AstFullVisitor<SemType, TypeResolver.Mode> {
 	@Override
 	public SemType visit(AstTypDecl typDecl, Mode mode) {
 		if(mode == Mode.HEAD) {
-			SemAn.declaresType.put(typDecl, new SemName(typDecl.name));
+			SemAn.declaresType().put(typDecl, new SemName(typDecl.name));
 		}
 		else if(mode == Mode.BODY) {
 			SemType typ = typDecl.type.accept(this, mode);
-			SemAn.declaresType.get(typDecl).define(typ);
+			SemAn.declaresType().get(typDecl).define(typ);
 		}
 		else if(mode == Mode.THIRD) {
 			typDecl.type.accept(this, mode);
 		}
 
-		return SemAn.declaresType.get(typDecl);
+		return SemAn.declaresType().get(typDecl);
 	}
 
 	// D2
@@ -618,7 +621,7 @@ public class TypeResolver extends AstFullVisitor<SemType, TypeResolver.Mode> {
 					throw new Report.Error(funDecl, "Type error: function return type does not match statement's return type.");
 			}
 			
-			SemAn.isType.put(funDecl.type, ret);
+			SemAn.isType().put(funDecl.type, ret);
 		}
 
 		return ret;
@@ -629,7 +632,7 @@ public class TypeResolver extends AstFullVisitor<SemType, TypeResolver.Mode> {
 		SemType ret = cmpDecl.type.accept(this, mode);
 
 		if(mode == Mode.BODY) {
-			SemAn.isType.put(cmpDecl.type, ret);
+			SemAn.isType().put(cmpDecl.type, ret);
 		}
 		else if(mode == Mode.THIRD && isVoid(ret)) {
 			throw new Report.Error(cmpDecl, "Type error: component cannot be of void type.");
@@ -640,11 +643,11 @@ public class TypeResolver extends AstFullVisitor<SemType, TypeResolver.Mode> {
 
 	@Override
 	public SemType visit(AstParDecl parDecl, Mode mode) {
-		SemType ret = SemAn.isType.get(parDecl.type);
+		SemType ret = SemAn.isType().get(parDecl.type);
 
 		if(mode == Mode.BODY) {
 			ret = parDecl.type.accept(this, mode);
-			SemAn.isType.put(parDecl.type, ret);
+			SemAn.isType().put(parDecl.type, ret);
 		}
 		else if(mode == Mode.THIRD) {
 			if(ret.actualType() instanceof SemRec || ret.actualType() instanceof SemVoid || ret.actualType() instanceof SemArr)
@@ -3,6 +3,7 @@ package prev23.phase.synan;
 import org.antlr.v4.runtime.*;
 import org.antlr.v4.runtime.tree.*;
 
+import prev23.CompilationContext;
 import prev23.common.report.*;
 import prev23.data.sym.Token;
 import prev23.phase.*;
@@ -13,8 +14,23 @@ import prev23.phase.lexan.*;
  */
 public class SynAn extends Phase {
 	
-	/** The parse tree. */
-	public static PrevParser.SourceContext tree;
+	/**
+	 * Returns the parse tree of the current compilation.
+	 * 
+	 * @return The parse tree.
+	 */
+	public static PrevParser.SourceContext tree() {
+		return CompilationContext.current().synTree;
+	}
+
+	/**
+	 * Sets the parse tree of the current compilation.
+	 * 
+	 * @param tree The parse tree.
+	 */
+	public static void setTree(PrevParser.SourceContext tree) {
+		CompilationContext.current().synTree = tree;
+	}
 		
 	/** The ANTLR parser that actually performs syntax analysis. */
 	public final PrevParser parser;
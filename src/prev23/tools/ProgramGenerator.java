@@ -0,0 +1,563 @@
+package prev23.tools;
+
+import java.io.*;
+import java.util.*;
+
+/**
+ * A generator of synthetic PREV'23 programs.
+ *
+ * The generator produces valid (and terminating) programs of arbitrary size for
+ * stress testing and benchmarking the compiler. It should be run as
+ *
+ * <p>
+ * <code>$ java prev23.tools.ProgramGenerator </code><i>options...</i>
+ * </p>
+ *
+ * The following options are available (defaults in parentheses):
+ *
+ * <ul>
+ * <li><code>--funs</code>: The number of top-level functions (10).</li>
+ * <li><code>--size</code>: The approximate size of the program in bytes, with
+ * an optional suffix <code>K</code>, <code>M</code> or <code>G</code>; if
+ * specified, functions are generated until the size is reached and
+ * <code>--funs</code> is ignored (0).</li>
+ * <li><code>--nesting</code>: The depth of nested function declarations
+ * (1).</li>
+ * <li><code>--types</code>: The depth of record and array types of local
+ * variables (2).</li>
+ * <li><code>--expr-depth</code>: The maximal depth of expressions (3).</li>
+ * <li><code>--loops</code>: The maximal depth of loop nesting (2).</li>
+ * <li><code>--temps</code>: The number of integer variables per function
+ * (8).</li>
+ * <li><code>--stmts</code>: The number of statements per function (8).</li>
+ * <li><code>--strings</code>: The number of string constants in the program
+ * (10).</li>
+ * <li><code>--seed</code>: The seed of the random generator (0).</li>
+ * <li><code>--out</code>: The name of the output file (standard output).</li>
+ * </ul>
+ *
+ * All functions take two integers and a pointer to an integer and return an
+ * integer. A function calls only functions declared before it and never from
+ * within a loop, and all loops are bounded, so programs terminate. The same
+ * options always produce the same program.
+ */
+public class ProgramGenerator {
+
+	/** The number of top-level functions. */
+	public int funs = 10;
+
+	/** The approximate size of the program in bytes (0 if not specified). */
+	public long size = 0;
+
+	/** The depth of nested function declarations. */
+	public int nesting = 1;
+
+	/** The depth of record and array types of local variables. */
+	public int types = 2;
+
+	/** The maximal depth of expressions. */
+	public int exprDepth = 3;
+
+	/** The maximal depth of loop nesting. */
+	public int loops = 2;
+
+	/** The number of integer variables per function. */
+	public int temps = 8;
+
+	/** The number of statements per function. */
+	public int stmts = 8;
+
+	/** The number of string constants in the program. */
+	public int strings = 10;
+
+	/** The seed of the random generator. */
+	public long seed = 0;
+
+	/** The number of iterations of each loop. */
+	private static final int LOOP_COUNT = 4;
+
+	/** The length of local arrays. */
+	private static final int ARRAY_LENGTH = 8;
+
+	/** The random generator. */
+	private Random random;
+
+	/** The number of string constants still to be generated. */
+	private int stringsLeft;
+
+	/** The number of calls the function being generated can still make. */
+	private int callsLeft;
+
+	/**
+	 * Sets an option.
+	 *
+	 * @param name  The name of the option (without the leading dashes).
+	 * @param value The value of the option.
+	 * @throws IllegalArgumentException If the option is unknown or its value is
+	 *                                  invalid.
+	 */
+	public void configure(String name, String value) {
+		switch (name) {
+		case "funs" -> funs = count(name, value);
+		case "size" -> size = bytes(value);
+		case "nesting" -> nesting = count(name, value);
+		case "types" -> types = count(name, value);
+		case "expr-depth" -> exprDepth = count(name, value);
+		case "loops" -> loops = count(name, value);
+		case "temps" -> temps = Math.max(1, count(name, value));
+		case "stmts" -> stmts = count(name, value);
+		case "strings" -> strings = count(name, value);
+		case "seed" -> seed = Long.parseLong(value);
+		default -> throw new IllegalArgumentException("Unknown option '" + name + "'.");
+		}
+	}
+
+	private static int count(String name, String value) {
+		int count = Integer.parseInt(value);
+		if (count < 0)
+			throw new IllegalArgumentException("Option '" + name + "' must not be negative.");
+		return count;
+	}
+
+	private static long bytes(String value) {
+		long unit = switch (value.isEmpty() ? ' ' : Character.toUpperCase(value.charAt(value.length() - 1))) {
+		case 'K' -> 1L << 10;
+		case 'M' -> 1L << 20;
+		case 'G' -> 1L << 30;
+		default -> 1;
+		};
+		return Long.parseLong(unit == 1 ? value : value.substring(0, value.length() - 1)) * unit;
+	}
+
+	/**
+	 * Generates a program.
+	 *
+	 * @param out The output the program is written to.
+	 * @throws IOException If the program cannot be written.
+	 */
+	public void generate(Appendable out) throws IOException {
+		random = new Random(seed);
+		stringsLeft = strings;
+		long written = 0;
+
+		String header = "# Generated by prev23.tools.ProgramGenerator.\n\n";
+		out.append(header);
+		written += header.length();
+
+		int numFuns = 0;
+		while (size > 0 ? written < size : numFuns < funs) {
+			int funsLeft = size > 0 ? Math.max(1, (int) ((size - written) / 2048)) : funs - numFuns;
+			String fun = topFun(numFuns, funsLeft);
+			out.append(fun);
+			written += fun.length();
+			numFuns++;
+		}
+
+		StringBuffer main = new StringBuffer();
+		main.append("fun main():int =\n");
+		main.append("    let var x:int;\n");
+		main.append("    in {\n");
+		main.append("        x = 1;\n");
+		if (numFuns > 0)
+			main.append("        x = f" + (numFuns - 1) + "(1, 2, ^x);\n");
+		main.append("        if x < 0 then x = -x;\n");
+		main.append("        x % 256\n");
+		main.append("    };\n");
+		out.append(main);
+	}
+
+	// FUNCTIONS
+
+	/**
+	 * The variables and functions visible at some point of a function body.
+	 */
+	private static class Scope {
+
+		/** Integer lvalues (variables, array elements and record components). */
+		final Vector<String> ints = new Vector<String>();
+
+		/** Boolean variables. */
+		final Vector<String> bools = new Vector<String>();
+
+		/** Loop counters of the enclosing loops (read only). */
+		final Vector<String> counters = new Vector<String>();
+
+		/** Functions that can be called. */
+		final Vector<String> funs = new Vector<String>();
+
+		Scope copy() {
+			Scope scope = new Scope();
+			scope.ints.addAll(ints);
+			scope.bools.addAll(bools);
+			scope.counters.addAll(counters);
+			scope.funs.addAll(funs);
+			return scope;
+		}
+
+	}
+
+	/** Names of top-level functions generated so far. */
+	private final Vector<String> topFuns = new Vector<String>();
+
+	/**
+	 * Generates a top-level function (and the record type it uses).
+	 *
+	 * @param num      The number of the function.
+	 * @param funsLeft The (estimated) number of functions still to be generated.
+	 * @return The source of the function.
+	 */
+	private String topFun(int num, int funsLeft) {
+		if (num == 0)
+			topFuns.clear();
+		StringBuffer src = new StringBuffer();
+		String name = "f" + num;
+		String typeName = "R" + num;
+
+		Vector<String> paths = new Vector<String>();
+		String type = type(types, paths);
+		src.append("typ " + typeName + " = " + type + ";\n\n");
+
+		Scope scope = new Scope();
+		// Only a few most recently generated functions can be called.
+		for (int f = Math.max(0, topFuns.size() - 4); f < topFuns.size(); f++)
+			scope.funs.add(topFuns.get(f));
+		int numStrings = funsLeft <= 1 ? stringsLeft : stringsLeft / funsLeft;
+		src.append(fun(name, typeName, paths, scope, nesting, numStrings, ""));
+		src.append(";\n\n");
+		topFuns.add(name);
+		return src.toString();
+	}
+
+	/**
+	 * Generates a function declaration.
+	 *
+	 * @param name       The name of the function.
+	 * @param typeName   The name of the record type of the local record.
+	 * @param paths      The paths to integer components of the record type.
+	 * @param outer      The scope of the enclosing function.
+	 * @param nesting    The depth of nested functions still to be generated.
+	 * @param numStrings The number of string constants to be generated.
+	 * @param indent     The indentation.
+	 * @return The source of the function declaration.
+	 */
+	private String fun(String name, String typeName, Vector<String> paths, Scope outer, int nesting, int numStrings,
+			String indent) {
+		StringBuffer src = new StringBuffer();
+		Scope scope = outer.copy();
+		String prefix = name + "_";
+		src.append(indent + "fun " + name + "(n:int, m:int, p:^int):int =\n");
+
+		// Declarations.
+		Vector<String> decls = new Vector<String>();
+		Vector<String> inits = new Vector<String>();
+		for (int t = 0; t < temps; t++) {
+			String var = prefix + "t" + t;
+			decls.add("var " + var + ":int");
+			inits.add(var);
+		}
+		String bool = prefix + "b";
+		decls.add("var " + bool + ":bool");
+		String arr = prefix + "a";
+		decls.add("var " + arr + ":[" + ARRAY_LENGTH + "]int");
+		String rec = prefix + "r";
+		decls.add("var " + rec + ":" + typeName);
+		for (int l = 0; l < loops; l++)
+			decls.add("var " + prefix + "l" + l + ":int");
+		String str = prefix + "s";
+		if (numStrings > 0)
+			decls.add("var " + str + ":^char");
+
+		scope.ints.add("n");
+		scope.ints.add("m");
+		scope.ints.add("p^");
+		scope.ints.addAll(inits);
+		for (int i = 0; i < ARRAY_LENGTH; i++)
+			scope.ints.add(arr + "[" + i + "]");
+		for (String path : paths)
+			scope.ints.add(rec + path);
+		scope.bools.add(bool);
+
+		// Nested functions (they can access all variables declared above).
+		if (nesting > 0) {
+			String nested = prefix + "g";
+			String nestedIndent = indent + "        ";
+			decls.add(fun(nested, typeName, paths, scope, nesting - 1, 0, nestedIndent).substring(nestedIndent.length()));
+			scope.funs.add(nested);
+		}
+
+		src.append(indent + "    let ");
+		for (int d = 0; d < decls.size(); d++)
+			src.append((d == 0 ? "" : "\n" + indent + "        ") + decls.get(d) + ";");
+		src.append("\n" + indent + "    in {\n");
+
+		// Calls are made at most once per function invocation.
+		callsLeft = 1;
+
+		// Initialization of all variables (using initialized variables only).
+		Scope init = outer.copy();
+		init.ints.add("n");
+		init.ints.add("m");
+		init.ints.add("p^");
+		String body = indent + "        ";
+		String counter = prefix + "l0";
+		if (loops > 0) {
+			src.append(body + counter + " = 0;\n");
+			src.append(body + "while " + counter + " < " + ARRAY_LENGTH + " do {\n");
+			src.append(body + "    " + arr + "[" + counter + "] = " + counter + ";\n");
+			src.append(body + "    " + counter + " = " + counter + " + 1\n");
+			src.append(body + "};\n");
+		} else
+			for (int i = 0; i < ARRAY_LENGTH; i++)
+				src.append(body + arr + "[" + i + "] = " + i + ";\n");
+		for (int i = 0; i < ARRAY_LENGTH; i++)
+			init.ints.add(arr + "[" + i + "]");
+		for (String var : inits) {
+			src.append(body + var + " = " + intExpr(init, 1) + ";\n");
+			init.ints.add(var);
+		}
+		for (String path : paths) {
+			src.append(body + rec + path + " = " + intExpr(init, 1) + ";\n");
+			init.ints.add(rec + path);
+		}
+		src.append(body + bool + " = " + boolExpr(init, 1) + ";\n");
+
+		// Statements.
+		for (int s = 0; s < stmts; s++)
+			src.append(body + stmt(scope, prefix, 0, body) + ";\n");
+		for (int s = 0; s < numStrings; s++) {
+			src.append(body + str + " = " + string() + ";\n");
+			src.append(body + inits.get(s % inits.size()) + " = " + inits.get(s % inits.size()) + " + (" + str
+					+ "^ : int) % 128;\n");
+			stringsLeft--;
+		}
+
+		// The result.
+		src.append(body + intExpr(scope, exprDepth) + "\n");
+		src.append(indent + "    }");
+		return src.toString();
+	}
+
+	// TYPES
+
+	/**
+	 * Generates a type of the specified depth.
+	 *
+	 * @param depth The depth of the type.
+	 * @param paths The paths leading to (some) integer components of the type.
+	 * @return The source of the type.
+	 */
+	private String type(int depth, Vector<String> paths) {
+		if (depth == 0) {
+			paths.add("");
+			return "int";
+		}
+		int numComps = 2 + random.nextInt(2);
+		StringBuffer src = new StringBuffer("{");
+		for (int c = 0; c < numComps; c++) {
+			String comp = "c" + c;
+			Vector<String> compPaths = new Vector<String>();
+			String compType;
+			switch (c == 0 ? 0 : random.nextInt(3)) {
+			case 0:
+				compType = "int";
+				compPaths.add("");
+				break;
+			case 1: {
+				int length = 2 + random.nextInt(3);
+				Vector<String> elemPaths = new Vector<String>();
+				compType = "[" + length + "]" + type(depth - 1, elemPaths);
+				for (String elemPath : elemPaths)
+					compPaths.add("[" + random.nextInt(length) + "]" + elemPath);
+				break;
+			}
+			default:
+				compType = type(depth - 1, compPaths);
+				break;
+			}
+			src.append((c == 0 ? "" : ", ") + comp + ":" + compType);
+			// Keep the number of paths linear in the depth of the type.
+			for (int p = 0; p < compPaths.size() && p < 2; p++)
+				paths.add("." + comp + compPaths.get(p));
+		}
+		src.append("}");
+		return src.toString();
+	}
+
+	// STATEMENTS
+
+	/**
+	 * Generates a statement.
+	 *
+	 * @param scope     The scope.
+	 * @param prefix    The prefix of names of local variables.
+	 * @param loopDepth The depth of enclosing loops.
+	 * @param indent    The indentation.
+	 * @return The source of the statement.
+	 */
+	private String stmt(Scope scope, String prefix, int loopDepth, String indent) {
+		int kind = random.nextInt(10);
+		if (kind < 2 && loopDepth < loops) {
+			String counter = prefix + "l" + loopDepth;
+			Scope loopScope = scope.copy();
+			loopScope.counters.add(counter);
+			int numStmts = 1 + random.nextInt(3);
+			StringBuffer src = new StringBuffer();
+			src.append(counter + " = 0;\n");
+			src.append(indent + "while " + counter + " < " + LOOP_COUNT + " do {\n");
+			for (int s = 0; s < numStmts; s++)
+				src.append(indent + "    " + stmt(loopScope, prefix, loopDepth + 1, indent + "    ") + ";\n");
+			src.append(indent + "    " + counter + " = " + counter + " + 1\n");
+			src.append(indent + "}");
+			return src.toString();
+		}
+		if (kind < 4)
+			return "if " + boolExpr(scope, exprDepth) + " then " + assign(scope) + " else " + assign(scope);
+		if (kind < 5 && loopDepth == 0 && callsLeft > 0 && !scope.funs.isEmpty()) {
+			callsLeft--;
+			String fun = scope.funs.get(random.nextInt(scope.funs.size()));
+			return pick(scope.ints) + " = " + fun + "(" + intExpr(scope, exprDepth - 1) + ", "
+					+ intExpr(scope, exprDepth - 1) + ", ^" + pick(scope.ints) + ")";
+		}
+		if (kind < 6)
+			return pick(scope.bools) + " = " + boolExpr(scope, exprDepth);
+		return assign(scope);
+	}
+
+	/**
+	 * Generates an assignment to an integer lvalue.
+	 *
+	 * @param scope The scope.
+	 * @return The source of the assignment.
+	 */
+	private String assign(Scope scope) {
+		return pick(scope.ints) + " = " + intExpr(scope, exprDepth);
+	}
+
+	// EXPRESSIONS
+
+	/**
+	 * Generates an integer expression.
+	 *
+	 * @param scope The scope.
+	 * @param depth The maximal depth of the expression.
+	 * @return The source of the expression.
+	 */
+	private String intExpr(Scope scope, int depth) {
+		if (depth <= 0 || random.nextInt(4) == 0) {
+			int kind = random.nextInt(8);
+			if (kind == 0)
+				return Integer.toString(random.nextInt(100));
+			if (kind == 1 && !scope.counters.isEmpty())
+				return pick(scope.counters);
+			return pick(scope.ints);
+		}
+		switch (random.nextInt(7)) {
+		case 0:
+			return "(" + intExpr(scope, depth - 1) + " + " + intExpr(scope, depth - 1) + ")";
+		case 1:
+			return "(" + intExpr(scope, depth - 1) + " - " + intExpr(scope, depth - 1) + ")";
+		case 2:
+			return "(" + intExpr(scope, depth - 1) + " * " + intExpr(scope, depth - 1) + ")";
+		case 3:
+			return "(" + natExpr(scope) + " / " + (1 + random.nextInt(9)) + ")";
+		case 4:
+			return "(" + natExpr(scope) + " % " + (1 + random.nextInt(9)) + ")";
+		case 5:
+			return "-" + intExpr(scope, depth - 1);
+		default:
+			return "(" + intExpr(scope, depth - 1) + " + " + random.nextInt(100) + ")";
+		}
+	}
+
+	/**
+	 * Generates a non-negative integer expression (as the result of division of a
+	 * negative number differs between the interpreter and MMIX).
+	 *
+	 * @param scope The scope.
+	 * @return The source of the expression.
+	 */
+	private String natExpr(Scope scope) {
+		if (!scope.counters.isEmpty() && random.nextBoolean())
+			return pick(scope.counters);
+		return Integer.toString(random.nextInt(1000));
+	}
+
+	/**
+	 * Generates a boolean expression.
+	 *
+	 * @param scope The scope.
+	 * @param depth The maximal depth of the expression.
+	 * @return The source of the expression.
+	 */
+	private String boolExpr(Scope scope, int depth) {
+		if (depth <= 0 || random.nextInt(4) == 0)
+			return random.nextBoolean() && !scope.bools.isEmpty() ? pick(scope.bools)
+					: (random.nextBoolean() ? "true" : "false");
+		String[] relOps = { "==", "!=", "<", ">", "<=", ">=" };
+		switch (random.nextInt(4)) {
+		case 0:
+			return "(" + boolExpr(scope, depth - 1) + " & " + boolExpr(scope, depth - 1) + ")";
+		case 1:
+			return "(" + boolExpr(scope, depth - 1) + " | " + boolExpr(scope, depth - 1) + ")";
+		case 2:
+			return "!" + boolExpr(scope, depth - 1);
+		default:
+			return "(" + intExpr(scope, depth - 1) + " " + relOps[random.nextInt(relOps.length)] + " "
+					+ intExpr(scope, depth - 1) + ")";
+		}
+	}
+
+	/**
+	 * Generates a string constant.
+	 *
+	 * @return The source of the string constant.
+	 */
+	private String string() {
+		int length = 1 + random.nextInt(24);
+		StringBuffer src = new StringBuffer("\"");
+		for (int c = 0; c < length; c++)
+			src.append((char) ('a' + random.nextInt(26)));
+		src.append("\"");
+		return src.toString();
+	}
+
+	private String pick(Vector<String> names) {
+		return names.get(random.nextInt(names.size()));
+	}
+
+	// THE GENERATOR'S STARTUP METHOD
+
+	/**
+	 * The generator.
+	 *
+	 * @param args Command line arguments (see {@link ProgramGenerator}).
+	 */
+	public static void main(String[] args) {
+		ProgramGenerator generator = new ProgramGenerator();
+		String outFileName = null;
+		try {
+			for (String arg : args) {
+				if (!arg.matches("--[a-z-]+=.*"))
+					throw new IllegalArgumentException("Invalid argument '" + arg + "'.");
+				String name = arg.substring(2, arg.indexOf('='));
+				String value = arg.substring(arg.indexOf('=') + 1);
+				if (name.equals("out"))
+					outFileName = value;
+				else
+					generator.configure(name, value);
+			}
+		} catch (IllegalArgumentException exception) {
+			System.err.println(":-( " + exception.getMessage());
+			System.exit(1);
+		}
+
+		try (Writer out = new BufferedWriter(outFileName == null ? new OutputStreamWriter(System.out)
+				: new FileWriter(outFileName), 1 << 16)) {
+			generator.generate(out);
+		} catch (IOException exception) {
+			System.err.println(":-( " + exception.getMessage());
+			System.exit(1);
+		}
+	}
+
+}
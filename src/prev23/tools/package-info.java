@@ -0,0 +1,4 @@
+/**
+ * Tools supporting the development of the compiler.
+ */
+package prev23.tools;